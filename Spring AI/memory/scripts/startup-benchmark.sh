@@ -0,0 +1,89 @@
+#!/usr/bin/env bash
+# 启动耗时与首个请求延迟基准
+#
+# 分别以 普通jar / CDS / AOT / AOT+CDS 四种方式启动pro环境各RUNS次，记录：
+#   started  日志中 "Started BackEndApplication in X seconds" 的耗时
+#   ready    从启动进程到端口可以响应请求的耗时
+#   first    第一个请求的耗时（URL可配置，默认是只查数据库的游标分页接口）
+#
+# 用法：scripts/startup-benchmark.sh [RUNS]
+# 环境变量：PORT、URL，以及pro环境需要的数据库连接，例如
+#   SPRING_DATASOURCE_URL=jdbc:mysql://localhost:3306/chat SPRING_DATASOURCE_USERNAME=root SPRING_DATASOURCE_PASSWORD=xxx
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+
+RUNS=${1:-5}
+PORT=${PORT:-8081}
+URL=${URL:-"http://localhost:${PORT}/api/AI/getAIChatPageByUserId?userId=1&limit=1&fields=meta"}
+WORK=target/startup-benchmark
+COMMON_ARGS=(-Dspring.profiles.active=pro "-Dserver.port=${PORT}")
+
+now_ms() {
+  echo $(( $(date +%s%N) / 1000000 ))
+}
+
+echo "== 打包（-Paot） =="
+./mvnw -q -B -Paot -DskipTests package
+JAR=$(ls target/back-end-*.jar | grep -v -- '-plain' | head -n 1)
+
+echo "== 解压为CDS需要的目录结构 =="
+rm -rf "${WORK}"
+java -Djarmode=tools -jar "${JAR}" extract --destination "${WORK}/app"
+APP="${WORK}/app/$(basename "${JAR}")"
+
+echo "== CDS训练运行 =="
+# 刷新完上下文就退出，把加载过的类写入归档；AOT与非AOT加载的类不同，分别训练
+java -XX:ArchiveClassesAtExit="${WORK}/plain.jsa" -Dspring.context.exit=onRefresh "${COMMON_ARGS[@]}" \
+  -jar "${APP}" > "${WORK}/train-plain.log" 2>&1
+java -XX:ArchiveClassesAtExit="${WORK}/aot.jsa" -Dspring.context.exit=onRefresh -Dspring.aot.enabled=true \
+  "${COMMON_ARGS[@]}" -jar "${APP}" > "${WORK}/train-aot.log" 2>&1
+
+run_once() {
+  local name=$1
+  shift
+  local log="${WORK}/${name}.log"
+  local start
+  start=$(now_ms)
+  java "$@" "${COMMON_ARGS[@]}" -jar "${APP}" > "${log}" 2>&1 &
+  local pid=$!
+
+  until grep -q "Started BackEndApplication" "${log}"; do
+    if ! kill -0 "${pid}" 2>/dev/null; then
+      echo "${name} 启动失败，日志见 ${log}" >&2
+      exit 1
+    fi
+    sleep 0.05
+  done
+  local ready
+  ready=$(( $(now_ms) - start ))
+
+  local before first
+  before=$(now_ms)
+  curl -s -o /dev/null "${URL}"
+  first=$(( $(now_ms) - before ))
+
+  local started
+  started=$(grep -o "Started BackEndApplication in [0-9.]* seconds" "${log}" | awk '{print $4 * 1000}')
+
+  kill "${pid}"
+  wait "${pid}" 2>/dev/null || true
+  echo "${started} ${ready} ${first}"
+}
+
+bench() {
+  local name=$1
+  shift
+  local results=()
+  for ((i = 0; i < RUNS; i++)); do
+    results+=("$(run_once "${name}" "$@")")
+  done
+  printf '%s\n' "${results[@]}" | awk -v name="${name}" \
+    '{ s += $1; r += $2; f += $3 } END { printf "%-10s started %7.0f ms   ready %7.0f ms   first %6.0f ms\n", name, s / NR, r / NR, f / NR }'
+}
+
+echo "== 每种方式启动${RUNS}次取平均 =="
+bench plain
+bench cds -XX:SharedArchiveFile="${WORK}/plain.jsa"
+bench aot -Dspring.aot.enabled=true
+bench aot-cds -XX:SharedArchiveFile="${WORK}/aot.jsa" -Dspring.aot.enabled=true
@@ -0,0 +1,38 @@
+package com.example.backend.JFR;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 聊天记忆仓库的一次数据库操作，stage为"memory/操作名"
+ */
+@Name("com.example.backend.ChatMemorySql")
+@Label("Chat Memory SQL")
+@Description("JdbcChatMemoryRepository中一次查询或写入的耗时")
+public class ChatMemorySqlEvent extends StageEvent {
+
+    @Label("Operation")
+    private String operation;
+
+    @Label("Rows")
+    private int rows;
+
+    /**
+     * 结束计时并在需要时提交
+     *
+     * @param operation 操作名，例如find、saveAll
+     * @param conversationId 会话ID，可以为null
+     * @param rows 读取或写入的行数
+     */
+    public void complete(String operation, String conversationId, int rows) {
+        end();
+        if (shouldCommit()) {
+            this.stage = "memory/" + operation;
+            this.operation = operation;
+            this.conversationId = conversationId;
+            this.rows = rows;
+            commit();
+        }
+    }
+}
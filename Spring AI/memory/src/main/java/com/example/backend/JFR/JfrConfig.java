@@ -0,0 +1,51 @@
+package com.example.backend.JFR;
+
+import jdk.jfr.Recording;
+import org.springframework.ai.chat.client.ChatClientCustomizer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * JFR配置类
+ *
+ * 1. 为自动配置的ChatClient.Builder注册JfrModelCallAdvisor，记录模型调用耗时
+ * 2. jfr.recording.enabled（默认开启）时启动一个只包含本项目事件的常驻录制，不记录调用栈，开销可以忽略，
+ *    需要分析时用 jcmd <pid> JFR.dump name=chat-stages filename=stages.jfr 导出，再用JfrStageReport生成各阶段耗时报告
+ */
+@Configuration
+public class JfrConfig {
+
+    /** 本项目的事件，都在StageEvent的子类中定义 */
+    private static final String[] EVENTS = {
+            "com.example.backend.JwtFilter",
+            "com.example.backend.ChatMemorySql",
+            "com.example.backend.ModelCall"
+    };
+
+    @Bean
+    public ChatClientCustomizer jfrModelCallCustomizer() {
+        JfrModelCallAdvisor advisor = new JfrModelCallAdvisor();
+        return builder -> builder.defaultAdvisors(advisor);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "jfr.recording", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public Recording chatStagesRecording(@Value("${jfr.recording.max-age:1h}") Duration maxAge,
+                                         @Value("${jfr.recording.max-size:64MB}") DataSize maxSize) {
+        Recording recording = new Recording();
+        recording.setName("chat-stages");
+        for (String event : EVENTS) {
+            recording.enable(event).withoutStackTrace().withThreshold(Duration.ZERO);
+        }
+        recording.setToDisk(true);
+        recording.setMaxAge(maxAge);
+        recording.setMaxSize(maxSize.toBytes());
+        recording.start();
+        return recording;
+    }
+}
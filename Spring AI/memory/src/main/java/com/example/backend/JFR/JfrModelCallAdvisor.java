@@ -0,0 +1,109 @@
+package com.example.backend.JFR;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import reactor.core.publisher.Flux;
+
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.core.Ordered;
+
+/**
+ * JfrModelCallAdvisor - 记录模型调用耗时的Advisor
+ *
+ * 排在调用链的最后（紧挨着真正调用模型的ChatModelCallAdvisor），事件耗时只包含模型本身，
+ * 不包含前面其他Advisor的处理时间。流式调用额外记录首个分片的时间。
+ * 会话ID从Advisor上下文的ChatMemory.CONVERSATION_ID参数中读取。
+ */
+public class JfrModelCallAdvisor implements CallAdvisor, StreamAdvisor {
+
+    @Override
+    public String getName() {
+        return this.getClass().getSimpleName();
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE - 1;
+    }
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest request, CallAdvisorChain chain) {
+        ModelCallEvent event = new ModelCallEvent();
+        if (!event.isEnabled()) {
+            return chain.nextCall(request);
+        }
+        long start = System.nanoTime();
+        event.begin();
+        ChatClientResponse response = chain.nextCall(request);
+        ChatResponse chatResponse = response.chatResponse();
+        event.complete("call", conversationId(request), model(chatResponse), request.prompt().getInstructions().size(),
+                promptChars(request), responseChars(chatResponse), 1, System.nanoTime() - start);
+        return response;
+    }
+
+    @Override
+    public Flux<ChatClientResponse> adviseStream(ChatClientRequest request, StreamAdvisorChain chain) {
+        if (!new ModelCallEvent().isEnabled()) {
+            return chain.nextStream(request);
+        }
+        return Flux.defer(() -> {
+            ModelCallEvent event = new ModelCallEvent();
+            long start = System.nanoTime();
+            AtomicLong firstToken = new AtomicLong();
+            AtomicLong responseChars = new AtomicLong();
+            AtomicInteger chunks = new AtomicInteger();
+            String[] model = new String[1];
+            event.begin();
+            return chain.nextStream(request)
+                    .doOnNext(response -> {
+                        if (chunks.getAndIncrement() == 0) {
+                            firstToken.set(System.nanoTime() - start);
+                        }
+                        responseChars.addAndGet(responseChars(response.chatResponse()));
+                        if (model[0] == null) {
+                            model[0] = model(response.chatResponse());
+                        }
+                    })
+                    .doFinally(signal -> event.complete("stream", conversationId(request), model[0],
+                            request.prompt().getInstructions().size(), promptChars(request), responseChars.get(),
+                            chunks.get(), firstToken.get()));
+        });
+    }
+
+    private static String conversationId(ChatClientRequest request) {
+        Object id = request.context().get(ChatMemory.CONVERSATION_ID);
+        return id == null ? null : id.toString();
+    }
+
+    private static long promptChars(ChatClientRequest request) {
+        long chars = 0;
+        for (Message message : request.prompt().getInstructions()) {
+            chars += message.getText() == null ? 0 : message.getText().length();
+        }
+        return chars;
+    }
+
+    private static String model(ChatResponse response) {
+        if (response == null || response.getMetadata() == null) {
+            return null;
+        }
+        String model = response.getMetadata().getModel();
+        return model == null || model.isEmpty() ? null : model;
+    }
+
+    private static long responseChars(ChatResponse response) {
+        if (response == null || response.getResult() == null || response.getResult().getOutput().getText() == null) {
+            return 0;
+        }
+        return response.getResult().getOutput().getText().length();
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.backend.JFR;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * JfrStageReport - 把.jfr录制文件整理为各阶段的耗时报告
+ *
+ * 读取本项目的StageEvent事件，按"事件类型 + stage"分组，输出次数、总耗时、占比和p50/p95/p99/max，
+ * 用于判断延迟花在JWTFilter、聊天记忆SQL还是模型调用（JfrModelCallAdvisor之后的整条调用链）。
+ *
+ * 用法：
+ * 1. 导出录制：jcmd <pid> JFR.dump name=chat-stages filename=stages.jfr
+ * 2. 生成报告：java -cp back-end.jar -Dloader.main=com.example.backend.JFR.JfrStageReport
+ *        org.springframework.boot.loader.launch.PropertiesLauncher stages.jfr [conversationId]
+ *    或者在源码目录中：mvn -q compile exec:java -Dexec.mainClass=com.example.backend.JFR.JfrStageReport
+ *        -Dexec.args="stages.jfr"
+ */
+public final class JfrStageReport {
+
+    private static final String EVENT_PREFIX = "com.example.backend.";
+
+    private JfrStageReport() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: JfrStageReport <recording.jfr> [conversationId]");
+            System.exit(1);
+        }
+        String conversationId = args.length > 1 ? args[1] : null;
+        Map<String, Stage> stages = read(Path.of(args[0]), conversationId);
+        print(stages);
+    }
+
+    /**
+     * 读取录制文件并按阶段分组
+     *
+     * @param file 录制文件
+     * @param conversationId 只统计该会话的事件，为null时统计全部
+     * @return 阶段名称到统计的映射
+     */
+    static Map<String, Stage> read(Path file, String conversationId) throws IOException {
+        Map<String, Stage> stages = new TreeMap<>();
+        try (RecordingFile recording = new RecordingFile(file)) {
+            while (recording.hasMoreEvents()) {
+                RecordedEvent event = recording.readEvent();
+                String type = event.getEventType().getName();
+                if (!type.startsWith(EVENT_PREFIX)) {
+                    continue;
+                }
+                if (conversationId != null && !conversationId.equals(event.getString("conversationId"))) {
+                    continue;
+                }
+                String stage = event.getString("stage");
+                Stage stats = stages.computeIfAbsent(stage != null ? stage : type.substring(EVENT_PREFIX.length()),
+                        key -> new Stage());
+                stats.durations.add(event.getDuration().toNanos());
+                if (event.hasField("firstTokenNanos")) {
+                    stats.firstTokens.add(event.getLong("firstTokenNanos"));
+                }
+            }
+        }
+        return stages;
+    }
+
+    private static void print(Map<String, Stage> stages) {
+        long grandTotal = 0;
+        for (Stage stage : stages.values()) {
+            grandTotal += stage.total();
+        }
+        System.out.printf("%-40s %8s %12s %7s %10s %10s %10s %10s %10s%n", "stage", "count", "total(ms)", "share",
+                "p50(ms)", "p95(ms)", "p99(ms)", "max(ms)", "ttft50(ms)");
+        List<Map.Entry<String, Stage>> sorted = new ArrayList<>(stages.entrySet());
+        sorted.sort((a, b) -> Long.compare(b.getValue().total(), a.getValue().total()));
+        for (Map.Entry<String, Stage> entry : sorted) {
+            Stage stage = entry.getValue();
+            long[] durations = stage.sorted(stage.durations);
+            long[] firstTokens = stage.sorted(stage.firstTokens);
+            System.out.printf("%-40s %8d %12.1f %6.1f%% %10.2f %10.2f %10.2f %10.2f %10s%n", entry.getKey(),
+                    durations.length, millis(stage.total()), grandTotal == 0 ? 0 : 100.0 * stage.total() / grandTotal,
+                    millis(percentile(durations, 0.50)), millis(percentile(durations, 0.95)),
+                    millis(percentile(durations, 0.99)), millis(durations[durations.length - 1]),
+                    firstTokens.length == 0 ? "-" : String.format("%.2f", millis(percentile(firstTokens, 0.50))));
+        }
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000d;
+    }
+
+    /**
+     * 单个阶段的耗时样本
+     */
+    static final class Stage {
+
+        private final List<Long> durations = new ArrayList<>();
+
+        private final List<Long> firstTokens = new ArrayList<>();
+
+        long total() {
+            long total = 0;
+            for (long duration : this.durations) {
+                total += duration;
+            }
+            return total;
+        }
+
+        int count() {
+            return this.durations.size();
+        }
+
+        private long[] sorted(List<Long> values) {
+            long[] array = values.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(array);
+            return array;
+        }
+    }
+}
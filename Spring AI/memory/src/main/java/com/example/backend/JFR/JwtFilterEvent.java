@@ -0,0 +1,34 @@
+package com.example.backend.JFR;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JWTFilter自身的耗时（不包含后续过滤器和控制器）
+ */
+@Name("com.example.backend.JwtFilter")
+@Label("JWT Filter")
+@Description("JWTFilter中放行判断和token校验的耗时")
+public class JwtFilterEvent extends StageEvent {
+
+    @Label("URI")
+    private String uri;
+
+    /** bypass、ok、missing、invalid */
+    @Label("Result")
+    private String result;
+
+    /**
+     * 结束计时并在需要时提交
+     */
+    public void complete(String uri, String result) {
+        end();
+        if (shouldCommit()) {
+            this.stage = "jwt";
+            this.uri = uri;
+            this.result = result;
+            commit();
+        }
+    }
+}
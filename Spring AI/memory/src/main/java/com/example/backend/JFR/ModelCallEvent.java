@@ -0,0 +1,53 @@
+package com.example.backend.JFR;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * 一次模型调用，从发出请求到最后一个分片，stage为model/call或model/stream
+ */
+@Name("com.example.backend.ModelCall")
+@Label("Model Call")
+@Description("ChatClient调用链最内层到模型返回的耗时")
+public class ModelCallEvent extends StageEvent {
+
+    @Label("Model")
+    private String model;
+
+    @Label("Prompt Messages")
+    private int promptMessages;
+
+    @Label("Prompt Characters")
+    private long promptChars;
+
+    @Label("Response Characters")
+    private long responseChars;
+
+    @Label("Chunks")
+    private int chunks;
+
+    @Label("Time To First Token")
+    @Timespan(Timespan.NANOSECONDS)
+    private long firstTokenNanos;
+
+    /**
+     * 结束计时并在需要时提交
+     */
+    public void complete(String streaming, String conversationId, String model, int promptMessages, long promptChars,
+                         long responseChars, int chunks, long firstTokenNanos) {
+        end();
+        if (shouldCommit()) {
+            this.stage = "model/" + streaming;
+            this.conversationId = conversationId;
+            this.model = model;
+            this.promptMessages = promptMessages;
+            this.promptChars = promptChars;
+            this.responseChars = responseChars;
+            this.chunks = chunks;
+            this.firstTokenNanos = firstTokenNanos;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.backend.JFR;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * 请求处理阶段事件的基类
+ *
+ * 1. stage 是阶段名称，JfrStageReport按事件类型+stage分组统计耗时
+ * 2. conversationId 在能拿到会话ID的阶段填写，便于只看某一个会话
+ * 3. 不记录调用栈，事件只在shouldCommit()为true时才填字段并提交，录制关闭时几乎没有开销
+ */
+@Category({"Backend", "Chat"})
+@StackTrace(false)
+public abstract class StageEvent extends Event {
+
+    @Label("Stage")
+    protected String stage;
+
+    @Label("Conversation Id")
+    protected String conversationId;
+}
@@ -2,6 +2,7 @@ package com.example.backend.JWT;
 
 import com.alibaba.fastjson.JSON;
 import com.auth0.jwt.interfaces.Claim;
+import com.example.backend.JFR.JwtFilterEvent;
 import com.example.backend.entity.RestBean;
 import jakarta.servlet.*;
 import jakarta.servlet.annotation.WebFilter;
@@ -24,9 +25,13 @@ public class JWTFilter implements Filter {
         HttpServletRequest request = (HttpServletRequest) req;
         HttpServletResponse response = (HttpServletResponse) res;
         String requestURI = request.getRequestURI();
+        //只统计过滤器自身的耗时，在调用chain.doFilter之前结束
+        JwtFilterEvent event = new JwtFilterEvent();
+        event.begin();
 
         // 放行认证相关路径
         if (requestURI.startsWith("/api/auth")||requestURI.startsWith("/api/AI")) {
+            event.complete(requestURI, "bypass");
             chain.doFilter(request, response);
             return;
         }
@@ -34,6 +39,7 @@ public class JWTFilter implements Filter {
         // 处理OPTIONS请求
         if ("OPTIONS".equals(request.getMethod())) {
             response.setStatus(HttpServletResponse.SC_OK);
+            event.complete(requestURI, "bypass");
             chain.doFilter(request, response);
             return;
         }
@@ -42,12 +48,14 @@ public class JWTFilter implements Filter {
         String token = request.getHeader("authorization");
         if (token == null) {
             response.getWriter().write(JSON.toJSONString(RestBean.failure(401,"未提供token")));
+            event.complete(requestURI, "missing");
             return;
         }
 
         Map<String, Claim> userData = JWTUtil.verifyToken(token);
         if (userData == null) {
             response.getWriter().write(JSON.toJSONString(RestBean.failure(401,"token不合法")));
+            event.complete(requestURI, "invalid");
             return;
         }
 
@@ -57,6 +65,7 @@ public class JWTFilter implements Filter {
         request.setAttribute("username", userData.get("username").asString());
         request.setAttribute("password", userData.get("password").asString());
 
+        event.complete(requestURI, "ok");
         chain.doFilter(request, response);
     }
 
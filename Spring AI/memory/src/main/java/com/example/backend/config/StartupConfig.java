@@ -0,0 +1,78 @@
+package com.example.backend.config;
+
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.backend.controller.AI.Prompt.PromptTemplateRegistry;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 启动相关配置
+ *
+ * 1. pro环境开启了spring.main.lazy-initialization，这里把对话请求路径上的热点bean排除在外，
+ *    避免第一个请求承担模型客户端、记忆仓库、控制器的创建开销；带@Scheduled方法的bean也必须提前创建，否则定时任务不会注册
+ * 2. schema-init profile下执行完建表脚本后直接退出，用于发布时一次性建表
+ */
+@Configuration
+public class StartupConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupConfig.class);
+
+    /**
+     * 对话请求路径上的热点bean类型
+     *
+     * ChatClient.Builder是prototype作用域，不会被提前创建，放在这里没有作用；
+     * ChatClient在控制器构造时构建，控制器提前创建时就完成了预热
+     */
+    private static final List<Class<?>> HOT_TYPES = List.of(ChatModel.class, ChatMemoryRepository.class,
+            ChatMemory.class, PromptTemplateRegistry.class);
+
+    @Bean
+    public static LazyInitializationExcludeFilter hotBeansLazyInitializationExcludeFilter() {
+        return (beanName, beanDefinition, beanType) -> beanType != null && isHot(beanType);
+    }
+
+    @Bean
+    @Profile("schema-init")
+    public ApplicationRunner schemaInitExit(ConfigurableApplicationContext context) {
+        return args -> {
+            logger.info("数据库表结构初始化完成，退出");
+            System.exit(SpringApplication.exit(context));
+        };
+    }
+
+    static boolean isHot(Class<?> beanType) {
+        for (Class<?> hotType : HOT_TYPES) {
+            if (hotType.isAssignableFrom(beanType)) {
+                return true;
+            }
+        }
+        // 常驻的JFR录制要在启动时开始，否则第一次使用前的事件都不会被记录
+        return AnnotatedElementUtils.hasAnnotation(beanType, RestController.class) || hasScheduledMethods(beanType)
+                || Recording.class.isAssignableFrom(beanType);
+    }
+
+    private static boolean hasScheduledMethods(Class<?> beanType) {
+        AtomicBoolean found = new AtomicBoolean();
+        ReflectionUtils.doWithMethods(beanType, method -> found.set(true),
+                method -> !found.get() && AnnotatedElementUtils.hasAnnotation(method, Scheduled.class));
+        return found.get();
+    }
+}
@@ -2,6 +2,13 @@ package com.example.backend.controller.AI;
 
 
 //import com.example.backend.controller.AI.Advisor.SimpleLoggerAdvisor;
+import com.example.backend.controller.AI.Memory.ChatHistoryReader;
+import com.example.backend.controller.AI.Memory.ChatMemorySearchIndex;
+import com.example.backend.controller.AI.Memory.ChatMemoryVectorIndex;
+import com.example.backend.controller.AI.Memory.ConversationSequencer;
+import com.example.backend.controller.AI.Prompt.PromptAssembler;
+import com.example.backend.controller.AI.Prompt.PromptTemplateRegistry;
+import com.example.backend.controller.AI.Routing.ComplexityRouter;
 import com.example.backend.entity.AIChat;
 import com.example.backend.entity.RestBean;
 import com.example.backend.service.AIService;
@@ -10,6 +17,7 @@ import org.springframework.ai.chat.client.ChatClient;
 
 
 import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
 import org.springframework.ai.chat.memory.MessageWindowChatMemory;
 
 
@@ -17,16 +25,18 @@ import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.prompt.Prompt;
-import org.springframework.ai.chat.prompt.SystemPromptTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -50,24 +60,113 @@ public class AIChatController {
         return RestBean.success("cg",aiService.getAIChatByUserId(userId));
     }
 
+    @Resource
+    ChatHistoryReader chatHistoryReader;
+
+    //游标分页获取对话记录，cursor传上一页返回的nextCursor；fields为full/preview/meta，列表视图用preview即可
+    @GetMapping("/getAIChatPageByUserId")
+    public RestBean<ChatHistoryReader.ChatHistoryPage> getAIChatPageByUserId(@RequestParam("userId") Integer userId,
+                                                                             @RequestParam(value = "cursor", required = false) String cursor,
+                                                                             @RequestParam(value = "limit", defaultValue = "50") int limit,
+                                                                             @RequestParam(value = "fields", defaultValue = "full") String fields) {
+        return RestBean.success("cg", chatHistoryReader.page(userId.toString(), cursor, Math.min(limit, 500),
+                ChatHistoryReader.Projection.parse(fields)));
+    }
+
+    //流式获取全部对话记录，一行一条JSON，边查边写
+    @GetMapping(value = "/streamAIChatByUserId", produces = "application/x-ndjson")
+    public StreamingResponseBody streamAIChatByUserId(@RequestParam("userId") Integer userId,
+                                                      @RequestParam(value = "fields", defaultValue = "full") String fields) {
+        ChatHistoryReader.Projection projection = ChatHistoryReader.Projection.parse(fields);
+        return out -> chatHistoryReader.stream(userId.toString(), projection, out);
+    }
+
+    //全文搜索之前的对话记录，按相关度排序分页返回（需要开启chat.memory.search.enabled）
+    //按page翻页只能访问前max-result-window条，更深的翻页传上一页返回的nextCursor
+    @Autowired(required = false)
+    private ChatMemorySearchIndex chatMemorySearchIndex;
+    @GetMapping("/searchAIChat")
+    public RestBean<ChatMemorySearchIndex.SearchPage> searchAIChat(@RequestParam("userId") Integer userId,
+                                                                  @RequestParam("keyword") String keyword,
+                                                                  @RequestParam(value = "page", defaultValue = "0") int page,
+                                                                  @RequestParam(value = "size", defaultValue = "10") int size,
+                                                                  @RequestParam(value = "cursor", required = false) String cursor) {
+        if (chatMemorySearchIndex == null) {
+            return RestBean.failure(400, "未开启对话搜索");
+        }
+        //chat4中以userId作为会话ID
+        try {
+            return RestBean.success("cg", cursor != null
+                    ? chatMemorySearchIndex.searchAfter(userId.toString(), keyword, cursor, Math.min(size, 100))
+                    : chatMemorySearchIndex.search(userId.toString(), keyword, page, Math.min(size, 100)));
+        }
+        catch (IllegalArgumentException ex) {
+            return RestBean.failure(400, "翻页过深或游标无效，请使用上一页返回的nextCursor继续翻页");
+        }
+    }
+
+    //=============================================模型路由=============================================
+
+    //按提示词复杂度选择小模型或大模型（需要开启chat.router.enabled），未开启时使用默认模型
+    @Autowired(required = false)
+    private ComplexityRouter complexityRouter;
+
+    //流式调用，historySize为会话中已有的消息数（没有记忆的接口传0），已经读出历史的接口直接传入，不再查一次ChatMemory
+    private Flux<String> routedStream(ChatClient.ChatClientRequestSpec spec, String message, int historySize) {
+        if (complexityRouter == null) {
+            return spec.stream().content();
+        }
+        ComplexityRouter.RouteDecision decision = complexityRouter.route(message, historySize);
+        return complexityRouter.track(decision, spec.options(decision.options()).stream().content());
+    }
+
+    //各模型的请求数和平均延迟，用于比较大小模型的延迟差异、调整路由规则
+    @GetMapping("/routerStats")
+    public RestBean<Map<String, ComplexityRouter.ModelStats>> routerStats() {
+        if (complexityRouter == null) {
+            return RestBean.failure(400, "未开启模型路由");
+        }
+        return RestBean.success("cg", complexityRouter.stats());
+    }
+
+    //各路由规则的请求数、平均延迟以及与默认路由的延迟差
+    @GetMapping("/routeStats")
+    public RestBean<Map<String, ComplexityRouter.RouteStats>> routeStats() {
+        if (complexityRouter == null) {
+            return RestBean.failure(400, "未开启模型路由");
+        }
+        return RestBean.success("cg", complexityRouter.routeStats());
+    }
+
+    //提示词前缀稳定度，越接近1说明越多的输入可以命中服务商的提示词缓存
+    @GetMapping("/promptStats")
+    public RestBean<PromptAssembler.PrefixStats> promptStats() {
+        return RestBean.success("cg", promptAssembler.stats());
+    }
+
+    //=============================================模型路由=============================================
+
+
     //=============================================基础对话=============================================
 
     //最简单的问答
     @GetMapping("/chat1")
     public String chat(@RequestParam("message") String message) {
-        return chatClient.prompt()
-                .user(message)
-                .call()
-                .content();
+        ChatClient.ChatClientRequestSpec spec = chatClient.prompt().user(message);
+        if (complexityRouter == null) {
+            return spec.call().content();
+        }
+        ComplexityRouter.RouteDecision decision = complexityRouter.route(message, 0);
+        long start = System.nanoTime();
+        String content = spec.options(decision.options()).call().content();
+        complexityRouter.recordCall(decision, System.nanoTime() - start);
+        return content;
     }
 
     //流式输出---在跨域里面需要配置异步操作（实现configureAsyncSupport）、JWT也需要配置asyncSupported = true
     @GetMapping(value = "/chat2", produces = MediaType.TEXT_EVENT_STREAM_VALUE )
     public Flux<String> chat2(@RequestParam("message") String message) {
-        return chatClient.prompt()
-                .user(message)
-                .stream()
-                .content()
+        return routedStream(chatClient.prompt().user(message), message, 0)
                 .delayElements(Duration.ofMillis(100));//延迟
     }
 
@@ -89,10 +188,9 @@ public class AIChatController {
 
         StringBuilder aiReplyBuilder = new StringBuilder();//字符串拼接
 
-        Flux<String> aiResponseFlux = chatClient.prompt()
-                .messages(memory.get("test"))//根据记忆进行回复
-                .stream()
-                .content()
+        List<Message> history = memory.get("test");
+        Flux<String> aiResponseFlux = routedStream(chatClient.prompt()
+                .messages(history), message, 0)//根据记忆进行回复，本地窗口记忆不经过ChatMemory，不按会话长度路由
                 .doOnNext(aiReplyBuilder::append) // 每收到一段就拼接
                 .doOnComplete(() -> {
                     // 流式结束后，把完整回复存入memory
@@ -105,46 +203,56 @@ public class AIChatController {
 
     //数据库存储+流式输出+永久记忆
     @Autowired
-    private com.example.backend.controller.AI.Memory.JdbcChatMemoryRepository chatMemoryRepository;
+    private ChatMemoryRepository chatMemoryRepository;//单库时是JdbcChatMemoryRepository，分片时是ShardedChatMemoryRepository
+    @Resource
+    ConversationSequencer conversationSequencer;
+    @Resource
+    PromptAssembler promptAssembler;
+    //向量检索记忆（需要开启chat.memory.vector.enabled），开启后在历史消息之后追加按相关性召回的更早消息
+    @Autowired(required = false)
+    private ChatMemoryVectorIndex chatMemoryVectorIndex;
+    /** chat4保存的最大消息数 */
+    private static final int CHAT4_MAX_MESSAGES = 20;
     @GetMapping(value="/chat4", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public Flux<String> chat4(@RequestParam("message") String message,
                             @RequestParam("userId") Integer userId) {
 
-        // 创建聊天记忆实例
-        ChatMemory chatMemory = MessageWindowChatMemory.builder()
-                .chatMemoryRepository(chatMemoryRepository)  // 使用注入的自定义repository
-                .maxMessages(20)
-                .build();
-
-        // 获取历史消息
-        List<Message> historyMessages = chatMemoryRepository.findByConversationId(userId.toString());
-        for (Message msg : historyMessages) {
-            chatMemory.add(userId.toString(), msg);
-        }
-
-        // 添加新消息
-        Message userMessage = new UserMessage(message);
-        chatMemory.add(userId.toString(), userMessage);
-
-        StringBuilder aiReplyBuilder = new StringBuilder();
-
-        // 获取历史消息并生成回复
-        Flux<String> aiResponseFlux = chatClient.prompt()
-                .messages(chatMemory.get(userId.toString()))
-                .stream()
-                .content()
-                .doOnNext(aiReplyBuilder::append)
-                .doOnComplete(() -> {
-                    // 流式结束后，保存完整对话到数据库
-                    String fullReply = aiReplyBuilder.toString();
-                    Message aiMessage = new AssistantMessage(fullReply);
-                    chatMemory.add(userId.toString(), aiMessage);
-                    // 保存所有消息到数据库
-                    List<Message> allMessages = chatMemory.get(userId.toString());
-                    //saveAll会先删除之前的记录，然后再添加记录
-                    chatMemoryRepository.saveAll(userId.toString(), allMessages);
-                });
-        return aiResponseFlux.delayElements(Duration.ofMillis(100));
+        //同一个userId的请求排队执行：从加载历史到saveAll都在一轮之内，避免并发时后保存的一轮覆盖另一轮
+        //不同userId之间互不影响，排队也不占用线程
+        return conversationSequencer.sequence(userId.toString(), () -> {
+            // 获取历史消息（按时间排序）
+            List<Message> historyMessages = chatMemoryRepository.findByConversationId(userId.toString());
+
+            // 历史在前、新消息在后，历史超出窗口时按块丢弃，相邻几轮的提示词前缀保持一致，可以命中服务商的提示词缓存
+            List<Message> history = promptAssembler.trimHistory(historyMessages, CHAT4_MAX_MESSAGES - 1);
+            // 数据库中已裁剪掉、与当前问题相关的较早消息追加在历史之后，不影响历史部分的缓存；问题的向量化不阻塞当前线程
+            Mono<List<Message>> recalled = chatMemoryVectorIndex == null ? Mono.just(List.of())
+                    : chatMemoryVectorIndex.recall(userId.toString(), message, history);
+
+            StringBuilder aiReplyBuilder = new StringBuilder();
+
+            return recalled.flatMapMany(recalledMessages -> {
+                List<Message> messages = promptAssembler.prompt(userId.toString())
+                        .history(history, history.size())
+                        .recalled(recalledMessages)
+                        .user(message)
+                        .messages();
+                return routedStream(chatClient.prompt()
+                        .messages(messages)
+                        .advisors(advisor -> advisor.param(ChatMemory.CONVERSATION_ID, userId.toString())),//会话ID，JFR事件按会话统计
+                        message, historyMessages.size());
+            })
+                    .doOnNext(aiReplyBuilder::append)
+                    .doOnComplete(() -> {
+                        // 流式结束后，保存完整对话到数据库
+                        List<Message> allMessages = new ArrayList<>(historyMessages);
+                        allMessages.add(new UserMessage(message));
+                        allMessages.add(new AssistantMessage(aiReplyBuilder.toString()));
+                        //saveAll会先删除之前的记录，然后再添加记录；存储同样按块裁剪，下一轮的历史前缀不变
+                        chatMemoryRepository.saveAll(userId.toString(),
+                                promptAssembler.trimHistory(allMessages, CHAT4_MAX_MESSAGES));
+                    });
+        }).delayElements(Duration.ofMillis(100));
     }
 
     //===============================================记忆对话===============================================
@@ -173,6 +281,12 @@ public class AIChatController {
 
 
     //==========================================Prompts==========================================
+    @Resource
+    PromptTemplateRegistry promptTemplateRegistry;
+
+    /** chat6的模板变量，固定人设只需要渲染一次 */
+    private static final Map<String, String> CHAT6_PERSONA = Map.of("name", "嘿嘿", "voice", "小孩子");
+
     /**
      * 使用自定义提示模板的聊天API
      * Prompts类似于提示词工程，用于控制AI的行为、角色和回答风格
@@ -181,32 +295,20 @@ public class AIChatController {
      */
     @GetMapping(value = "/chat6", produces = MediaType.TEXT_EVENT_STREAM_VALUE )
     public Flux<String> chat6(@RequestParam("message") String message) {
-        // 将用户消息转换为UserMessage对象
-        Message userMessage = new UserMessage(message);
-        
-        // 定义系统提示模板文本，使用{name}和{voice}作为可替换变量
-        // 这里定义了AI助手的角色、名称和回复风格
-        String systemText = """
-                          You are a helpful AI assistant that helps people find information.
-                          Your name is {name}
-                          You should reply to the user's request with your name and also in the style of a {voice}.
-                          """;
+        // 系统提示模板定义在 resources/prompts/assistant.st 中，使用{name}和{voice}作为可替换变量
+        // 模板在启动时编译一次，这里只做渲染（相同变量的渲染结果会被缓存）
+        // 这里设置AI名称为"嘿嘿"，回复风格为"小孩子"
+        String system = promptTemplateRegistry.render("assistant", CHAT6_PERSONA);
         
-        // 创建系统提示模板对象
-        SystemPromptTemplate systemPromptTemplate = new SystemPromptTemplate(systemText);
-        
-        // 填充模板变量，创建系统消息
-        // 这里设置AI名称为"嘿嘿"，回复风格为"voice"
-        Message systemMessage = systemPromptTemplate.createMessage(Map.of("name", "嘿嘿", "voice", "小孩子"));
-        
-        // 将用户消息和系统消息组合成一个Prompt对象
-        // 系统消息会指导AI如何回复用户消息
-        Prompt prompt = new Prompt(List.of(userMessage, systemMessage));
+        // 将系统消息和用户消息组合成一个Prompt对象，系统消息在前
+        // 系统消息会指导AI如何回复用户消息，放在最前面也能让每次请求的前缀相同，命中服务商的提示词缓存
+        Prompt prompt = new Prompt(promptAssembler.prompt("chat6")
+                .system(system)
+                .user(message)
+                .messages());
         
         // 使用chatClient调用AI，传入自定义的prompt
-        return chatClient.prompt(prompt)
-                .stream()
-                .content()
+        return routedStream(chatClient.prompt(prompt), message, 0)
                 .delayElements(Duration.ofMillis(100));//延迟100毫秒，使输出更平滑
     }
     //==========================================Prompts==========================================
@@ -0,0 +1,59 @@
+package com.example.backend.controller.AI.Batch;
+
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.ChatClientCustomizer;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.util.StringUtils;
+
+import java.nio.file.Path;
+
+/**
+ * 批量对话任务配置类
+ *
+ * 通过 chat.batch.enabled=true 开启。
+ * 启动完成后继续执行上次退出时还在运行的任务，已完成的输入从结果文件中跳过。
+ * 批量任务直接使用OpenAiChatModel，不经过HedgingChatModel：离线任务不在意尾延迟，
+ * 对冲请求只会让大批量输入的调用量翻倍，并占用在线对话的备用端点配额。
+ * 模型自身的spring.ai.retry重试在批量任务中关闭，只由BatchChatJobService按max-retries重试：
+ * 两层叠加时一条输入最多调用(max-retries + 1) × max-attempts次，模型内部的退避等待也会计入item-timeout。
+ */
+@Configuration
+@EnableConfigurationProperties(BatchChatProperties.class)
+@ConditionalOnProperty(prefix = "chat.batch", name = "enabled", havingValue = "true")
+public class BatchChatConfig {
+
+    @Bean(destroyMethod = "close")
+    public BatchChatJobService batchChatJobService(OpenAiChatModel openAiChatModel,
+                                                   ObjectProvider<ChatClientCustomizer> customizers,
+                                                   BatchChatProperties properties) {
+        OpenAiChatModel batchChatModel = openAiChatModel.mutate()
+                .retryTemplate(RetryTemplate.builder().maxAttempts(1).build())
+                .build();
+        ChatClient.Builder chatClientBuilder = ChatClient.builder(batchChatModel);
+        customizers.orderedStream().forEach(customizer -> customizer.customize(chatClientBuilder));
+        return BatchChatJobService.builder()
+                .chatClient(chatClientBuilder.build())
+                .directory(Path.of(properties.getDir()))
+                .inputDirectory(StringUtils.hasText(properties.getInputDir()) ? Path.of(properties.getInputDir()) : null)
+                .concurrency(properties.getConcurrency())
+                .maxRetries(properties.getMaxRetries())
+                .retryBackoff(properties.getRetryBackoff())
+                .itemTimeout(properties.getItemTimeout())
+                .checkpointInterval(properties.getCheckpointInterval())
+                .maxUploadBytes(properties.getMaxUploadSize().toBytes())
+                .build();
+    }
+
+    @Bean
+    public ApplicationListener<ApplicationReadyEvent> batchChatJobResumer(BatchChatJobService batchChatJobService) {
+        return event -> batchChatJobService.resumeInterrupted();
+    }
+}
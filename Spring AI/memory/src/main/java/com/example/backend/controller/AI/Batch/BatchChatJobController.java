@@ -0,0 +1,136 @@
+package com.example.backend.controller.AI.Batch;
+
+import com.example.backend.entity.RestBean;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * 批量对话任务接口
+ *
+ * 位于 /api/batch 下，需要经过JWTFilter认证，需要开启chat.batch.enabled。
+ * 任务归属于提交者（token中的用户ID），其他用户查询、下载、取消和继续时按任务不存在处理。
+ * 提交后立即返回任务ID，通过状态接口轮询进度，结果以NDJSON流式下载，
+ * 下载中断时把已收到的字节数作为offset参数传入即可继续。
+ */
+@RestController
+@RequestMapping("/api/batch/")
+public class BatchChatJobController {
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    @Autowired(required = false)
+    private BatchChatJobService batchChatJobService;
+
+    //上传输入提交任务，请求体每行一条输入，可以是纯文本或{"id": "...", "text": "..."}，大小不超过chat.batch.max-upload-size
+    @PostMapping("/jobs")
+    public RestBean<BatchChatJobService.JobStatus> submit(HttpServletRequest request,
+                                                          @RequestAttribute("id") Integer userId,
+                                                          @RequestParam(value = "system", required = false) String system,
+                                                          @RequestParam(value = "model", required = false) String model)
+            throws IOException {
+        if (batchChatJobService == null) {
+            return RestBean.failure(400, "未开启批量任务");
+        }
+        try (InputStream in = request.getInputStream()) {
+            return RestBean.success("cg", batchChatJobService.submit(userId, in, system, model));
+        }
+        catch (IllegalArgumentException ex) {
+            return RestBean.failure(413, "输入超过上传大小限制，请放到输入目录下按文件提交");
+        }
+    }
+
+    //按服务器本地文件提交任务，path为chat.batch.input-dir下的相对路径
+    @PostMapping("/jobs/file")
+    public RestBean<BatchChatJobService.JobStatus> submitFile(@RequestAttribute("id") Integer userId,
+                                                              @RequestParam("path") String path,
+                                                              @RequestParam(value = "system", required = false) String system,
+                                                              @RequestParam(value = "model", required = false) String model)
+            throws IOException {
+        if (batchChatJobService == null) {
+            return RestBean.failure(400, "未开启批量任务");
+        }
+        try {
+            return RestBean.success("cg", batchChatJobService.submitFile(userId, path, system, model));
+        }
+        catch (IllegalArgumentException | IllegalStateException ex) {
+            return RestBean.failure(400, ex.getMessage());
+        }
+    }
+
+    //当前用户所有任务的状态
+    @GetMapping("/jobs")
+    public RestBean<List<BatchChatJobService.JobStatus>> list(@RequestAttribute("id") Integer userId) {
+        if (batchChatJobService == null) {
+            return RestBean.failure(400, "未开启批量任务");
+        }
+        return RestBean.success("cg", batchChatJobService.list(userId));
+    }
+
+    //轮询任务状态
+    @GetMapping("/jobs/{id}")
+    public RestBean<BatchChatJobService.JobStatus> status(@RequestAttribute("id") Integer userId,
+                                                          @PathVariable("id") String id) {
+        if (batchChatJobService == null) {
+            return RestBean.failure(400, "未开启批量任务");
+        }
+        BatchChatJobService.JobStatus status = batchChatJobService.status(userId, id);
+        return status == null ? RestBean.failure(404, "任务不存在") : RestBean.success("cg", status);
+    }
+
+    //流式下载结果，运行中的任务返回已经落盘的部分；offset为已收到的字节数
+    @GetMapping("/jobs/{id}/results")
+    public ResponseEntity<StreamingResponseBody> results(@RequestAttribute("id") Integer userId,
+                                                         @PathVariable("id") String id,
+                                                         @RequestParam(value = "offset", defaultValue = "0") long offset) {
+        Path results = batchChatJobService == null ? null : batchChatJobService.results(userId, id);
+        if (results == null) {
+            return ResponseEntity.notFound().build();
+        }
+        StreamingResponseBody body = out -> {
+            try (FileChannel channel = FileChannel.open(results, StandardOpenOption.READ)) {
+                channel.position(Math.max(0, offset));
+                Channels.newInputStream(channel).transferTo(out);
+            }
+        };
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    //取消任务，已完成的结果保留
+    @DeleteMapping("/jobs/{id}")
+    public RestBean<Boolean> cancel(@RequestAttribute("id") Integer userId, @PathVariable("id") String id) {
+        if (batchChatJobService == null) {
+            return RestBean.failure(400, "未开启批量任务");
+        }
+        return RestBean.success("cg", batchChatJobService.cancel(userId, id));
+    }
+
+    //继续执行已取消或失败的任务，已有结果的输入跳过
+    @PostMapping("/jobs/{id}/resume")
+    public RestBean<BatchChatJobService.JobStatus> resume(@RequestAttribute("id") Integer userId,
+                                                          @PathVariable("id") String id) throws IOException {
+        if (batchChatJobService == null) {
+            return RestBean.failure(400, "未开启批量任务");
+        }
+        BatchChatJobService.JobStatus status = batchChatJobService.resume(userId, id);
+        return status == null ? RestBean.failure(404, "任务不存在") : RestBean.success("cg", status);
+    }
+}
@@ -0,0 +1,867 @@
+package com.example.backend.controller.AI.Batch;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * BatchChatJobService - 异步批量对话任务
+ *
+ * 把大量离线输入（分类、翻译等）交给模型处理，替代逐条调用/chat1：
+ * 1. 输入为UTF-8文本，每行一条，可以是纯文本，也可以是 {"id": "...", "text": "..."} 形式的JSON，空行跳过
+ * 2. 输入逐行流式读取，经过有界并发的flatMap调用ChatClient，内存占用与输入大小无关
+ * 3. 模型调用运行在独立的有界线程池上，所有批量任务合计最多concurrency个并发调用，不占用在线对话的线程
+ * 4. 单条输入超时或出现可重试的错误时按指数退避重试，重试耗尽后记为失败，不影响其它输入；
+ *    超时从调用在线程池上开始执行时计时，等待其他任务占用的线程不计入；
+ *    重试只在这一层进行，传入的ChatClient不应再带有模型自身的重试（见BatchChatConfig）
+ * 5. 结果逐条追加到results.ndjson（完成顺序，带输入行号），同时也是检查点：
+ *    任务中断（取消、进程退出）后继续执行时，结果文件中已有的行直接跳过
+ * 6. 每完成checkpointInterval条输入刷新结果文件并更新job.json中的进度，用于状态查询和重启后恢复
+ * 7. 任务记录提交者的用户ID，查询、下载、取消和继续只对提交者可见，其他用户看到的是任务不存在；
+ *    上传的输入超过maxUploadBytes时拒绝提交并删除已写入的部分
+ *
+ * 任务目录结构：{dir}/{jobId}/job.json、input.ndjson（上传的输入）、results.ndjson
+ */
+public final class BatchChatJobService implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchChatJobService.class);
+
+    private static final String JOB_FILE = "job.json";
+
+    private static final String INPUT_FILE = "input.ndjson";
+
+    private static final String RESULTS_FILE = "results.ndjson";
+
+    private final ChatClient chatClient;
+
+    private final Path directory;
+
+    @Nullable
+    private final Path inputDirectory;
+
+    private final int concurrency;
+
+    private final int maxRetries;
+
+    private final Duration retryBackoff;
+
+    private final Duration itemTimeout;
+
+    private final int checkpointInterval;
+
+    private final long maxUploadBytes;
+
+    /** 批量任务专用的有界线程池 */
+    private final Scheduler scheduler;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    private BatchChatJobService(Builder builder) {
+        this.chatClient = builder.chatClient;
+        this.directory = builder.directory;
+        this.inputDirectory = builder.inputDirectory == null ? null
+                : builder.inputDirectory.toAbsolutePath().normalize();
+        this.concurrency = builder.concurrency;
+        this.maxRetries = builder.maxRetries;
+        this.retryBackoff = builder.retryBackoff;
+        this.itemTimeout = builder.itemTimeout;
+        this.checkpointInterval = builder.checkpointInterval;
+        this.maxUploadBytes = builder.maxUploadBytes;
+        this.scheduler = Schedulers.newBoundedElastic(builder.concurrency, Integer.MAX_VALUE, "chat-batch");
+        try {
+            Files.createDirectories(this.directory);
+            loadJobs();
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException("Failed to open batch job directory " + this.directory, ex);
+        }
+    }
+
+    /**
+     * 提交上传的输入，输入先流式写入任务目录再开始处理
+     *
+     * @param owner 提交者的用户ID
+     * @param input 输入流，不会被关闭
+     * @param system 系统提示词，例如"把下面的文本翻译成英文"，可以为null
+     * @param model 使用的模型，为null时使用默认模型
+     * @return 任务状态
+     * @throws IllegalArgumentException 如果输入超过maxUploadBytes
+     */
+    public JobStatus submit(int owner, InputStream input, @Nullable String system, @Nullable String model)
+            throws IOException {
+        Assert.notNull(input, "input cannot be null");
+        String id = UUID.randomUUID().toString();
+        Path jobDirectory = Files.createDirectories(this.directory.resolve(id));
+        Path inputFile = jobDirectory.resolve(INPUT_FILE);
+        try {
+            copyBounded(input, inputFile);
+        }
+        catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(inputFile);
+            Files.deleteIfExists(jobDirectory);
+            throw ex;
+        }
+        return start(new Job(id, owner, jobDirectory, inputFile, system, model, Instant.now()));
+    }
+
+    /**
+     * 按服务器本地文件提交，文件必须位于配置的inputDir下，不会复制文件
+     *
+     * @param owner 提交者的用户ID
+     * @param path 相对inputDir的路径
+     * @param system 系统提示词，可以为null
+     * @param model 使用的模型，为null时使用默认模型
+     * @return 任务状态
+     * @throws IllegalArgumentException 如果未配置inputDir、路径超出inputDir或文件不存在
+     */
+    public JobStatus submitFile(int owner, String path, @Nullable String system, @Nullable String model)
+            throws IOException {
+        Assert.state(this.inputDirectory != null, "Local file input is not enabled");
+        Assert.hasText(path, "path cannot be null or empty");
+        Path inputFile = this.inputDirectory.resolve(path).normalize();
+        Assert.isTrue(inputFile.startsWith(this.inputDirectory), "path must stay inside the input directory");
+        Assert.isTrue(Files.isRegularFile(inputFile), "input file does not exist: " + path);
+        String id = UUID.randomUUID().toString();
+        Path jobDirectory = Files.createDirectories(this.directory.resolve(id));
+        return start(new Job(id, owner, jobDirectory, inputFile, system, model, Instant.now()));
+    }
+
+    /**
+     * 查询任务状态
+     *
+     * @param owner 当前用户ID
+     * @param id 任务ID
+     * @return 任务状态，任务不存在或不属于该用户时返回null
+     */
+    @Nullable
+    public JobStatus status(int owner, String id) {
+        Job job = find(owner, id);
+        return job == null ? null : job.status();
+    }
+
+    /**
+     * 用户提交的所有任务的状态，按创建时间倒序
+     *
+     * @param owner 当前用户ID
+     */
+    public List<JobStatus> list(int owner) {
+        List<JobStatus> statuses = new ArrayList<>();
+        for (Job job : this.jobs.values()) {
+            if (job.isOwnedBy(owner)) {
+                statuses.add(job.status());
+            }
+        }
+        statuses.sort(Comparator.comparing(JobStatus::createdAt).reversed());
+        return statuses;
+    }
+
+    /**
+     * 任务的结果文件，运行中的任务也可以读取已经落盘的部分
+     *
+     * @param owner 当前用户ID
+     * @param id 任务ID
+     * @return 结果文件，任务不存在、不属于该用户或还没有结果时返回null
+     */
+    @Nullable
+    public Path results(int owner, String id) {
+        Job job = find(owner, id);
+        if (job == null) {
+            return null;
+        }
+        Path results = job.directory.resolve(RESULTS_FILE);
+        return Files.exists(results) ? results : null;
+    }
+
+    /**
+     * 取消运行中的任务，已完成的结果保留，之后可以继续执行
+     *
+     * @param owner 当前用户ID
+     * @param id 任务ID
+     * @return 任务是否属于该用户、处于运行状态并已取消
+     */
+    public boolean cancel(int owner, String id) {
+        Job job = find(owner, id);
+        if (job == null) {
+            return false;
+        }
+        int run;
+        Disposable disposable;
+        synchronized (job) {
+            if (job.state != JobState.RUNNING) {
+                return false;
+            }
+            run = job.run;
+            disposable = job.disposable;
+        }
+        if (disposable != null) {
+            disposable.dispose();
+        }
+        return finish(job, run, JobState.CANCELLED, null);
+    }
+
+    /**
+     * 继续执行已取消或失败的任务，结果文件中已有的输入跳过
+     *
+     * @param owner 当前用户ID
+     * @param id 任务ID
+     * @return 任务状态，任务不存在或不属于该用户时返回null
+     */
+    @Nullable
+    public JobStatus resume(int owner, String id) throws IOException {
+        Job job = find(owner, id);
+        return job == null ? null : start(job);
+    }
+
+    /**
+     * 继续执行上次进程退出时仍在运行的任务
+     */
+    public void resumeInterrupted() {
+        for (Job job : this.jobs.values()) {
+            if (job.state == JobState.RUNNING) {
+                logger.info("继续执行中断的批量任务 {}", job.id);
+                try {
+                    start(job);
+                }
+                catch (IOException | RuntimeException ex) {
+                    logger.warn("批量任务 {} 恢复失败", job.id, ex);
+                    finish(job, job.run, JobState.FAILED, ex);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Job job : this.jobs.values()) {
+            if (job.state == JobState.RUNNING && job.disposable != null) {
+                // 只停止处理，不修改状态，下次启动时继续执行
+                job.disposable.dispose();
+                synchronized (job) {
+                    job.closeWriter();
+                }
+            }
+        }
+        this.scheduler.dispose();
+    }
+
+    /**
+     * 查找属于该用户的任务
+     */
+    @Nullable
+    private Job find(int owner, String id) {
+        Job job = this.jobs.get(id);
+        return job != null && job.isOwnedBy(owner) ? job : null;
+    }
+
+    /**
+     * 把上传的输入写入文件，超过maxUploadBytes时抛出异常
+     */
+    private void copyBounded(InputStream input, Path target) throws IOException {
+        byte[] buffer = new byte[8192];
+        long copied = 0;
+        try (OutputStream out = Files.newOutputStream(target, StandardOpenOption.CREATE_NEW)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                copied += read;
+                if (copied > this.maxUploadBytes) {
+                    throw new IllegalArgumentException("input exceeds " + this.maxUploadBytes + " bytes");
+                }
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * 开始或继续执行任务。检查与状态转换在同一把锁内完成：
+     * 任务已在本进程中执行时直接返回状态，并发的多次继续只会启动一条流水线
+     */
+    private JobStatus start(Job job) throws IOException {
+        BitSet completed;
+        int run;
+        synchronized (job) {
+            if (job.active) {
+                return job.status();
+            }
+            completed = recover(job);
+            job.writer = Files.newBufferedWriter(job.directory.resolve(RESULTS_FILE), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            JobState previous = job.state;
+            job.state = JobState.RUNNING;
+            job.total = -1;
+            job.finishedAt = null;
+            job.error = null;
+            job.disposable = null;
+            try {
+                checkpoint(job);
+            }
+            catch (IOException ex) {
+                job.state = previous;
+                job.closeWriter();
+                throw ex;
+            }
+            job.active = true;
+            run = ++job.run;
+            this.jobs.put(job.id, job);
+        }
+
+        AtomicLong lines = new AtomicLong();
+        Flux<Item> items = Flux.using(() -> Files.newBufferedReader(job.input, StandardCharsets.UTF_8),
+                        reader -> Flux.fromStream(reader.lines()), BatchChatJobService::closeQuietly)
+                .index()
+                .filter(line -> !line.getT2().isBlank())
+                .doOnNext(line -> lines.incrementAndGet())
+                .doOnComplete(() -> job.total = lines.get())
+                .filter(line -> !completed.get(Math.toIntExact(line.getT1())))
+                .map(line -> new Item(line.getT1(), line.getT2()));
+
+        Disposable disposable = items
+                .flatMap(item -> process(job, item), this.concurrency)
+                .subscribeOn(this.scheduler)
+                .subscribe(result -> record(job, run, result),
+                        error -> finish(job, run, JobState.FAILED, error),
+                        () -> finish(job, run, JobState.SUCCEEDED, null));
+        synchronized (job) {
+            // 订阅之前任务已被取消或已结束，停止刚启动的流水线
+            if (job.run != run || job.state != JobState.RUNNING) {
+                disposable.dispose();
+            }
+            else {
+                job.disposable = disposable;
+            }
+        }
+        logger.info("批量任务 {} 开始执行，已完成{}条", job.id, completed.cardinality());
+        return job.status();
+    }
+
+    private Mono<JSONObject> process(Job job, Item item) {
+        Input input;
+        try {
+            input = parse(item);
+        }
+        catch (RuntimeException ex) {
+            return Mono.just(result(item.line(), null, null, "invalid input: " + ex.getMessage()));
+        }
+        return Mono.defer(() -> timedCall(job, input.text()))
+                .retryWhen(Retry.backoff(this.maxRetries, this.retryBackoff)
+                        .filter(BatchChatJobService::isRetryable)
+                        .doBeforeRetry(signal -> job.retries.incrementAndGet()))
+                .map(output -> result(item.line(), input.id(), output, null))
+                .onErrorResume(ex -> {
+                    Throwable cause = Exceptions.isRetryExhausted(ex) && ex.getCause() != null ? ex.getCause() : ex;
+                    return Mono.just(result(item.line(), input.id(), null, String.valueOf(cause.getMessage())));
+                });
+    }
+
+    /**
+     * 在线程池上调用模型，超时从调用开始执行时计时：
+     * 所有任务共用concurrency个线程，每个任务各自最多concurrency个在途输入，排队时间可能远超itemTimeout
+     */
+    private Mono<String> timedCall(Job job, String text) {
+        Sinks.Empty<Void> started = Sinks.empty();
+        return Mono.fromCallable(() -> {
+                    started.tryEmitEmpty();
+                    return call(job, text);
+                })
+                .subscribeOn(this.scheduler)
+                .timeout(started.asMono().then(Mono.delay(this.itemTimeout)))
+                .onErrorMap(TimeoutException.class,
+                        ex -> new TimeoutException("model call did not finish within " + this.itemTimeout));
+    }
+
+    /**
+     * 解析一行输入：JSON对象取id和text字段，否则整行作为文本，id默认为行号
+     */
+    private static Input parse(Item item) {
+        String id = String.valueOf(item.line());
+        String text = item.raw();
+        if (text.startsWith("{")) {
+            JSONObject json = JSON.parseObject(text);
+            if (json.containsKey("id")) {
+                id = json.getString("id");
+            }
+            text = json.getString("text");
+        }
+        Assert.hasText(text, "text cannot be empty");
+        return new Input(id, text);
+    }
+
+    /**
+     * 参数错误等不会因为重试而成功的错误不重试
+     */
+    private static boolean isRetryable(Throwable ex) {
+        return !(ex instanceof NonTransientAiException) && !(ex instanceof IllegalArgumentException);
+    }
+
+    private String call(Job job, String text) {
+        ChatClient.ChatClientRequestSpec spec = this.chatClient.prompt().user(text);
+        if (StringUtils.hasText(job.system)) {
+            spec = spec.system(job.system);
+        }
+        if (StringUtils.hasText(job.model)) {
+            spec = spec.options(ChatOptions.builder().model(job.model).build());
+        }
+        return spec.call().content();
+    }
+
+    private static JSONObject result(long line, @Nullable String id, @Nullable String output,
+                                     @Nullable String error) {
+        JSONObject result = new JSONObject(4);
+        result.put("line", line);
+        result.put("id", id);
+        if (error == null) {
+            result.put("output", output);
+        }
+        else {
+            result.put("error", error);
+        }
+        return result;
+    }
+
+    /**
+     * 追加一条结果，flatMap保证这里不会被并发调用
+     */
+    private void record(Job job, int run, JSONObject result) {
+        synchronized (job) {
+            // 服务关闭后writer为null，任务保持RUNNING状态以便下次启动时继续；
+            // 取消后又继续时，上一次执行中还没停下的调用结果也在这里丢弃
+            if (job.run != run || job.state != JobState.RUNNING || job.writer == null) {
+                return;
+            }
+            try {
+                job.writer.write(result.toJSONString());
+                job.writer.write('\n');
+                if (result.containsKey("error")) {
+                    job.failed.incrementAndGet();
+                }
+                else {
+                    job.succeeded.incrementAndGet();
+                }
+                if ((job.succeeded.get() + job.failed.get()) % this.checkpointInterval == 0) {
+                    job.writer.flush();
+                    checkpoint(job);
+                }
+            }
+            catch (IOException ex) {
+                if (job.disposable != null) {
+                    job.disposable.dispose();
+                }
+                finish(job, run, JobState.FAILED, ex);
+            }
+        }
+    }
+
+    /**
+     * 结束一次执行
+     *
+     * @return 是否由这次调用结束，run已过期或任务已经结束时返回false
+     */
+    private boolean finish(Job job, int run, JobState state, @Nullable Throwable error) {
+        synchronized (job) {
+            if (job.run != run || job.state != JobState.RUNNING) {
+                return false;
+            }
+            job.active = false;
+            job.state = state;
+            job.finishedAt = Instant.now();
+            job.error = error == null ? null : String.valueOf(error.getMessage());
+            job.closeWriter();
+            try {
+                checkpoint(job);
+            }
+            catch (IOException ex) {
+                logger.warn("批量任务 {} 写入检查点失败", job.id, ex);
+            }
+        }
+        if (error != null) {
+            logger.warn("批量任务 {} 失败", job.id, error);
+        }
+        else {
+            logger.info("批量任务 {} {}，成功{}条，失败{}条", job.id, state, job.succeeded.get(), job.failed.get());
+        }
+        return true;
+    }
+
+    /**
+     * 写入job.json，先写临时文件再原子替换
+     */
+    private static void checkpoint(Job job) throws IOException {
+        JSONObject json = new JSONObject();
+        json.put("id", job.id);
+        json.put("owner", job.owner);
+        json.put("input", job.input.toString());
+        json.put("system", job.system);
+        json.put("model", job.model);
+        json.put("state", job.state.name());
+        json.put("total", job.total);
+        json.put("succeeded", job.succeeded.get());
+        json.put("failed", job.failed.get());
+        json.put("retries", job.retries.get());
+        json.put("createdAt", job.createdAt.toEpochMilli());
+        json.put("finishedAt", job.finishedAt == null ? null : job.finishedAt.toEpochMilli());
+        json.put("error", job.error);
+        Path tmp = job.directory.resolve(JOB_FILE + ".tmp");
+        Files.writeString(tmp, json.toJSONString(), StandardCharsets.UTF_8);
+        Files.move(tmp, job.directory.resolve(JOB_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 从结果文件恢复已完成的输入行号和计数，截掉进程退出时写了一半的最后一行
+     */
+    private static BitSet recover(Job job) throws IOException {
+        BitSet completed = new BitSet();
+        job.succeeded.set(0);
+        job.failed.set(0);
+        Path results = job.directory.resolve(RESULTS_FILE);
+        if (!Files.exists(results)) {
+            return completed;
+        }
+        long valid = 0;
+        try (BufferedReader reader = Files.newBufferedReader(results, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JSONObject json;
+                try {
+                    json = JSON.parseObject(line);
+                }
+                catch (RuntimeException ex) {
+                    break;
+                }
+                completed.set(Math.toIntExact(json.getLongValue("line")));
+                if (json.containsKey("error")) {
+                    job.failed.incrementAndGet();
+                }
+                else {
+                    job.succeeded.incrementAndGet();
+                }
+                valid += line.getBytes(StandardCharsets.UTF_8).length + 1;
+            }
+        }
+        try (RandomAccessFile file = new RandomAccessFile(results.toFile(), "rw")) {
+            if (file.length() > valid) {
+                file.setLength(valid);
+            }
+            else if (file.length() == valid - 1) {
+                // 最后一行完整但缺少换行
+                file.seek(file.length());
+                file.write('\n');
+            }
+        }
+        return completed;
+    }
+
+    private void loadJobs() throws IOException {
+        try (Stream<Path> stream = Files.list(this.directory)) {
+            for (Path jobDirectory : stream.filter(Files::isDirectory).toList()) {
+                Path jobFile = jobDirectory.resolve(JOB_FILE);
+                if (!Files.exists(jobFile)) {
+                    continue;
+                }
+                JSONObject json = JSON.parseObject(Files.readString(jobFile, StandardCharsets.UTF_8));
+                Job job = new Job(json.getString("id"), json.getIntValue("owner"), jobDirectory,
+                        Path.of(json.getString("input")), json.getString("system"), json.getString("model"),
+                        Instant.ofEpochMilli(json.getLongValue("createdAt")));
+                job.state = JobState.valueOf(json.getString("state"));
+                job.total = json.getLongValue("total");
+                job.succeeded.set(json.getLongValue("succeeded"));
+                job.failed.set(json.getLongValue("failed"));
+                job.retries.set(json.getLongValue("retries"));
+                job.finishedAt = json.getLong("finishedAt") == null ? null
+                        : Instant.ofEpochMilli(json.getLong("finishedAt"));
+                job.error = json.getString("error");
+                this.jobs.put(job.id, job);
+            }
+        }
+    }
+
+    private static void closeQuietly(BufferedReader reader) {
+        try {
+            reader.close();
+        }
+        catch (IOException ex) {
+            logger.debug("关闭批量任务输入失败", ex);
+        }
+    }
+
+    /**
+     * 创建Builder实例
+     *
+     * @return 新的Builder实例
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 任务状态
+     */
+    public enum JobState {
+        /** 正在执行，进程退出时处于该状态的任务会在下次启动后继续 */
+        RUNNING,
+        /** 所有输入都已处理，单条输入的失败记录在结果文件中 */
+        SUCCEEDED,
+        /** 读取输入或写入结果出错 */
+        FAILED,
+        /** 被取消，可以继续执行 */
+        CANCELLED
+    }
+
+    /**
+     * 任务状态快照
+     *
+     * @param id 任务ID
+     * @param state 任务状态
+     * @param total 输入的非空行数，还没有读完输入时为-1
+     * @param succeeded 成功的输入数
+     * @param failed 重试耗尽或输入无效的输入数
+     * @param retries 累计重试次数
+     * @param createdAt 创建时间
+     * @param finishedAt 结束时间，运行中为null
+     * @param error 任务失败的原因
+     */
+    public record JobStatus(String id, JobState state, long total, long succeeded, long failed, long retries,
+                            Instant createdAt, @Nullable Instant finishedAt, @Nullable String error) {
+    }
+
+    private record Item(long line, String raw) {
+    }
+
+    private record Input(String id, String text) {
+    }
+
+    private static final class Job {
+
+        private final String id;
+
+        /** 提交者的用户ID */
+        private final int owner;
+
+        private final Path directory;
+
+        private final Path input;
+
+        @Nullable
+        private final String system;
+
+        @Nullable
+        private final String model;
+
+        private final Instant createdAt;
+
+        private final AtomicLong succeeded = new AtomicLong();
+
+        private final AtomicLong failed = new AtomicLong();
+
+        private final AtomicLong retries = new AtomicLong();
+
+        private volatile JobState state = JobState.RUNNING;
+
+        private volatile long total = -1;
+
+        @Nullable
+        private volatile Instant finishedAt;
+
+        @Nullable
+        private volatile String error;
+
+        private volatile Disposable disposable;
+
+        /** 本进程中是否有流水线在执行该任务，与state不同，从job.json恢复的RUNNING任务为false */
+        private boolean active;
+
+        /** 执行次数，每次开始或继续时加1，用来丢弃上一次执行遗留的回调 */
+        private int run;
+
+        private BufferedWriter writer;
+
+        Job(String id, int owner, Path directory, Path input, @Nullable String system,
+            @Nullable String model, Instant createdAt) {
+            this.id = id;
+            this.owner = owner;
+            this.directory = directory;
+            this.input = input;
+            this.system = system;
+            this.model = model;
+            this.createdAt = createdAt;
+        }
+
+        boolean isOwnedBy(int owner) {
+            return this.owner == owner;
+        }
+
+        JobStatus status() {
+            return new JobStatus(this.id, this.state, this.total, this.succeeded.get(), this.failed.get(),
+                    this.retries.get(), this.createdAt, this.finishedAt, this.error);
+        }
+
+        void closeWriter() {
+            if (this.writer == null) {
+                return;
+            }
+            try {
+                this.writer.close();
+            }
+            catch (IOException ex) {
+                logger.warn("关闭批量任务 {} 的结果文件失败", this.id, ex);
+            }
+            this.writer = null;
+        }
+    }
+
+    /**
+     * Builder类 - 用于构建BatchChatJobService实例
+     */
+    public static final class Builder {
+
+        private ChatClient chatClient;
+
+        private Path directory;
+
+        @Nullable
+        private Path inputDirectory;
+
+        private int concurrency = 8;
+
+        private int maxRetries = 3;
+
+        private Duration retryBackoff = Duration.ofSeconds(1);
+
+        private Duration itemTimeout = Duration.ofMinutes(2);
+
+        private int checkpointInterval = 100;
+
+        private long maxUploadBytes = 100L * 1024 * 1024;
+
+        private Builder() {
+        }
+
+        /**
+         * 设置调用模型使用的ChatClient
+         */
+        public Builder chatClient(ChatClient chatClient) {
+            this.chatClient = chatClient;
+            return this;
+        }
+
+        /**
+         * 设置任务目录
+         */
+        public Builder directory(Path directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        /**
+         * 设置允许按本地文件提交任务的目录，为null时不允许
+         */
+        public Builder inputDirectory(@Nullable Path inputDirectory) {
+            this.inputDirectory = inputDirectory;
+            return this;
+        }
+
+        /**
+         * 设置所有任务合计的最大并发调用数
+         */
+        public Builder concurrency(int concurrency) {
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * 设置单条输入的最大重试次数
+         */
+        public Builder maxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * 设置第一次重试前的等待时间
+         */
+        public Builder retryBackoff(Duration retryBackoff) {
+            this.retryBackoff = retryBackoff;
+            return this;
+        }
+
+        /**
+         * 设置单次模型调用的超时时间
+         */
+        public Builder itemTimeout(Duration itemTimeout) {
+            this.itemTimeout = itemTimeout;
+            return this;
+        }
+
+        /**
+         * 设置每完成多少条输入写一次检查点
+         */
+        public Builder checkpointInterval(int checkpointInterval) {
+            this.checkpointInterval = checkpointInterval;
+            return this;
+        }
+
+        /**
+         * 设置上传输入的最大字节数
+         */
+        public Builder maxUploadBytes(long maxUploadBytes) {
+            this.maxUploadBytes = maxUploadBytes;
+            return this;
+        }
+
+        /**
+         * 构建BatchChatJobService实例
+         *
+         * @return 新的BatchChatJobService实例
+         * @throws IllegalArgumentException 如果没有设置ChatClient或任务目录
+         */
+        public BatchChatJobService build() {
+            Assert.notNull(this.chatClient, "chatClient cannot be null");
+            Assert.notNull(this.directory, "directory cannot be null");
+            Assert.isTrue(this.concurrency > 0, "concurrency must be positive");
+            Assert.isTrue(this.maxRetries >= 0, "maxRetries cannot be negative");
+            Assert.isTrue(this.checkpointInterval > 0, "checkpointInterval must be positive");
+            Assert.isTrue(this.maxUploadBytes > 0, "maxUploadBytes must be positive");
+            return new BatchChatJobService(this);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.backend.controller.AI.Batch;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * 批量对话任务配置
+ *
+ * 对应配置前缀 chat.batch
+ */
+@Data
+@ConfigurationProperties(prefix = "chat.batch")
+public class BatchChatProperties {
+
+    /** 是否启用批量对话任务 */
+    private boolean enabled = false;
+
+    /** 任务目录，每个任务一个子目录，保存输入、结果和检查点 */
+    private String dir = "./batch-jobs";
+
+    /** 允许按本地文件提交任务的目录，为空时不允许按本地文件提交 */
+    private String inputDir;
+
+    /** 所有批量任务合计同时进行的模型调用数，使用独立的线程池，不占用在线对话的线程 */
+    private int concurrency = 8;
+
+    /** 单条输入失败后的最大重试次数，批量任务的模型不使用spring.ai.retry的重试 */
+    private int maxRetries = 3;
+
+    /** 第一次重试前的等待时间，之后指数退避 */
+    private Duration retryBackoff = Duration.ofSeconds(1);
+
+    /** 单次模型调用的超时时间，从调用开始执行时计时，在线程池中排队的时间不计入 */
+    private Duration itemTimeout = Duration.ofMinutes(2);
+
+    /** 每完成多少条输入写一次检查点 */
+    private int checkpointInterval = 100;
+
+    /** 上传输入的最大大小，超过时拒绝提交；更大的输入放到inputDir下按本地文件提交 */
+    private DataSize maxUploadSize = DataSize.ofMegabytes(100);
+}
@@ -0,0 +1,315 @@
+package com.example.backend.controller.AI.Memory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.alibaba.fastjson.JSONObject;
+
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+/**
+ * ChatHistoryReader - 对话记录的游标分页与流式读取
+ *
+ * 通过聊天记忆存储定位会话所在的数据库（分片时为会话所属的分片，迁移期间再看旧分片）和归档，
+ * 数据库中的记录直接读取 spring_ai_chat_memory，不经过Message对象：
+ * 1. 游标分页：游标是上一页最后一条消息的时间戳，加上该时间戳下已经返回的条数。
+ *    同一次saveAll的消息时间戳逐条加1毫秒，timestamp列为TIMESTAMP(3)时互不相同；
+ *    升级前写入的秒级时间戳会重复，按条数跳过已返回的同时间戳记录，翻页不会漏掉或重复
+ * 2. 按 (conversation_id, timestamp) 索引做keyset查询，OFFSET只跳过同一时间戳的记录，翻到第几页代价都一样
+ * 3. 流式读取：按fetchSize分批拉取，边读边写NDJSON，不在堆中构造完整列表
+ * 4. 字段投影：列表视图只取前若干个字符或不取正文，正文截断在SQL中完成，不传输完整TEXT
+ * 5. 数据库中没有的会话从归档中读取，归档的会话整体解压后在内存中分页
+ */
+public class ChatHistoryReader {
+
+    /** 预览模式下截取的字符数 */
+    public static final int PREVIEW_LENGTH = 80;
+
+    private static final String FULL_COLUMNS = "type, `timestamp`, content";
+
+    private static final String PREVIEW_COLUMNS = "type, `timestamp`, LEFT(content, " + PREVIEW_LENGTH + ")";
+
+    private static final String META_COLUMNS = "type, `timestamp`";
+
+    private static final String PAGE_SQL = "SELECT %s FROM spring_ai_chat_memory "
+            + "WHERE conversation_id = ? AND `timestamp` >= ? ORDER BY `timestamp` LIMIT ? OFFSET ?";
+
+    private static final String STREAM_SQL = "SELECT %s FROM spring_ai_chat_memory "
+            + "WHERE conversation_id = ? ORDER BY `timestamp`";
+
+    /** 第一页的游标 */
+    private static final Cursor BEGINNING = new Cursor(0, 0);
+
+    private final ChatMemoryRepository repository;
+
+    private final int fetchSize;
+
+    /**
+     * @param repository 聊天记忆存储，JdbcChatMemoryRepository或由它组成的ShardedChatMemoryRepository
+     * @param fetchSize 流式读取时每次拉取的行数
+     */
+    public ChatHistoryReader(ChatMemoryRepository repository, int fetchSize) {
+        Assert.isTrue(repository instanceof JdbcChatMemoryRepository || repository instanceof ShardedChatMemoryRepository,
+                "repository must be a JdbcChatMemoryRepository or ShardedChatMemoryRepository");
+        Assert.isTrue(fetchSize > 0, "fetchSize must be positive");
+        this.repository = repository;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * 读取一页对话记录
+     *
+     * @param conversationId 会话ID
+     * @param cursor 上一页返回的nextCursor，第一页传null
+     * @param limit 每页条数
+     * @param projection 字段投影
+     * @return 一页记录，没有下一页时nextCursor为null
+     */
+    public ChatHistoryPage page(String conversationId, @Nullable String cursor, int limit, Projection projection) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        Assert.isTrue(limit > 0, "limit must be positive");
+        Cursor after = decodeCursor(cursor);
+        // 多取一条用来判断是否还有下一页
+        List<ChatHistoryItem> items = read(conversationId, locations -> {
+            for (JdbcChatMemoryRepository location : locations) {
+                List<ChatHistoryItem> found = location.jdbcTemplate().query(PAGE_SQL.formatted(columns(projection)),
+                        (rs, i) -> mapItem(rs, projection), conversationId, new Timestamp(after.timestamp()),
+                        limit + 1, after.skip());
+                if (found.isEmpty() && location.archiveStore() != null) {
+                    found = archivedPage(location.archiveStore(), conversationId, after, limit + 1, projection);
+                }
+                if (!found.isEmpty()) {
+                    return found;
+                }
+            }
+            return List.<ChatHistoryItem>of();
+        });
+        String nextCursor = null;
+        if (items.size() > limit) {
+            items = new ArrayList<>(items.subList(0, limit));
+            nextCursor = encodeCursor(next(after, items));
+        }
+        return new ChatHistoryPage(items, nextCursor);
+    }
+
+    /**
+     * 以NDJSON流式写出会话的全部记录
+     *
+     * @param conversationId 会话ID
+     * @param projection 字段投影
+     * @param out 输出流，不会被关闭
+     * @return 写出的条数
+     */
+    public long stream(String conversationId, Projection projection, OutputStream out) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 14);
+        JSONObject line = new JSONObject(3);
+        long[] count = { 0 };
+        Consumer<ChatHistoryItem> write = item -> {
+            line.put("type", item.type().name());
+            line.put("timestamp", item.timestamp());
+            if (item.content() != null) {
+                line.put("content", item.content());
+            }
+            try {
+                writer.write(line.toJSONString());
+                writer.write('\n');
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            count[0]++;
+        };
+        read(conversationId, locations -> {
+            for (JdbcChatMemoryRepository location : locations) {
+                JdbcTemplate streamingJdbcTemplate = new JdbcTemplate(location.jdbcTemplate().getDataSource());
+                streamingJdbcTemplate.setFetchSize(this.fetchSize);
+                streamingJdbcTemplate.query(STREAM_SQL.formatted(columns(projection)),
+                        rs -> {
+                            write.accept(mapItem(rs, projection));
+                        }, conversationId);
+                if (count[0] == 0 && location.archiveStore() != null) {
+                    for (ChatMemoryArchiveStore.ArchivedMessage message
+                            : location.archiveStore().findArchived(conversationId)) {
+                        write.accept(archivedItem(message, projection));
+                    }
+                }
+                if (count[0] > 0) {
+                    break;
+                }
+            }
+            return null;
+        });
+        try {
+            writer.flush();
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return count[0];
+    }
+
+    /**
+     * 在会话可能所在的存储上执行读取，分片时按当前所属分片、迁移中的旧分片依次查找
+     */
+    private <T> T read(String conversationId, Function<List<JdbcChatMemoryRepository>, T> reader) {
+        if (this.repository instanceof ShardedChatMemoryRepository sharded) {
+            return sharded.readFrom(conversationId, shards -> {
+                List<JdbcChatMemoryRepository> locations = new ArrayList<>(shards.size());
+                for (ChatMemoryRepository shard : shards) {
+                    Assert.state(shard instanceof JdbcChatMemoryRepository,
+                            "ChatHistoryReader only supports JdbcChatMemoryRepository shards");
+                    locations.add((JdbcChatMemoryRepository) shard);
+                }
+                return reader.apply(locations);
+            });
+        }
+        return reader.apply(List.of((JdbcChatMemoryRepository) this.repository));
+    }
+
+    private static List<ChatHistoryItem> archivedPage(ChatMemoryArchiveStore archiveStore, String conversationId,
+                                                      Cursor after, int limit, Projection projection) {
+        List<ChatHistoryItem> items = new ArrayList<>(limit);
+        long skipped = 0;
+        for (ChatMemoryArchiveStore.ArchivedMessage message : archiveStore.findArchived(conversationId)) {
+            if (message.timestamp() < after.timestamp() || skipped++ < after.skip()) {
+                continue;
+            }
+            items.add(archivedItem(message, projection));
+            if (items.size() == limit) {
+                break;
+            }
+        }
+        return items;
+    }
+
+    private static ChatHistoryItem archivedItem(ChatMemoryArchiveStore.ArchivedMessage message,
+                                                Projection projection) {
+        String content = switch (projection) {
+            case FULL -> message.text();
+            case PREVIEW -> message.text().codePointCount(0, message.text().length()) <= PREVIEW_LENGTH
+                    ? message.text() : message.text().substring(0, message.text().offsetByCodePoints(0, PREVIEW_LENGTH));
+            case META -> null;
+        };
+        return new ChatHistoryItem(message.type(), message.timestamp(), content);
+    }
+
+    private static ChatHistoryItem mapItem(ResultSet rs, Projection projection) throws SQLException {
+        return new ChatHistoryItem(MessageType.valueOf(rs.getString(1)), rs.getTimestamp(2).getTime(),
+                projection == Projection.META ? null : rs.getString(3));
+    }
+
+    private static String columns(Projection projection) {
+        return switch (projection) {
+            case FULL -> FULL_COLUMNS;
+            case PREVIEW -> PREVIEW_COLUMNS;
+            case META -> META_COLUMNS;
+        };
+    }
+
+    /**
+     * 本页之后的游标：最后一条的时间戳，以及该时间戳下累计返回的条数
+     */
+    private static Cursor next(Cursor after, List<ChatHistoryItem> items) {
+        long timestamp = items.get(items.size() - 1).timestamp();
+        long same = 0;
+        for (int i = items.size() - 1; i >= 0 && items.get(i).timestamp() == timestamp; i--) {
+            same++;
+        }
+        // 整页都是上一页最后的时间戳，要加上之前页已经返回的条数
+        if (same == items.size() && timestamp == after.timestamp()) {
+            same += after.skip();
+        }
+        return new Cursor(timestamp, same);
+    }
+
+    private static String encodeCursor(Cursor cursor) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((cursor.timestamp() + "." + cursor.skip()).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static Cursor decodeCursor(@Nullable String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return BEGINNING;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            int dot = value.indexOf('.');
+            Assert.isTrue(dot > 0, "cursor must be timestamp.skip");
+            long skip = Long.parseLong(value.substring(dot + 1));
+            Assert.isTrue(skip >= 0, "skip must not be negative");
+            return new Cursor(Long.parseLong(value.substring(0, dot)), skip);
+        }
+        catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, ex);
+        }
+    }
+
+    /**
+     * 分页游标
+     *
+     * @param timestamp 上一页最后一条的时间戳（毫秒）
+     * @param skip 该时间戳下已经返回的条数
+     */
+    private record Cursor(long timestamp, long skip) {
+    }
+
+    /**
+     * 字段投影
+     */
+    public enum Projection {
+        /** 完整正文 */
+        FULL,
+        /** 正文前PREVIEW_LENGTH个字符 */
+        PREVIEW,
+        /** 只有类型和时间 */
+        META;
+
+        public static Projection parse(@Nullable String value) {
+            if (value == null) {
+                return FULL;
+            }
+            return switch (value.toLowerCase(Locale.ROOT)) {
+                case "preview" -> PREVIEW;
+                case "meta" -> META;
+                default -> FULL;
+            };
+        }
+    }
+
+    /**
+     * 一条对话记录
+     *
+     * @param type 消息类型
+     * @param timestamp 时间戳（毫秒）
+     * @param content 正文，META投影时为null
+     */
+    public record ChatHistoryItem(MessageType type, long timestamp, @Nullable String content) {
+    }
+
+    /**
+     * 一页对话记录
+     *
+     * @param items 记录
+     * @param nextCursor 下一页游标，没有下一页时为null
+     */
+    public record ChatHistoryPage(List<ChatHistoryItem> items, @Nullable String nextCursor) {
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.backend.controller.AI.Memory;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.time.Clock;
+
+/**
+ * 冷会话归档配置类
+ *
+ * 通过 chat.memory.archive.enabled=true 开启，
+ * 归档存储会注入到JdbcChatMemoryRepository中，读取时透明回落到段文件。
+ */
+@Configuration
+@EnableScheduling
+@EnableConfigurationProperties(ChatMemoryArchiveProperties.class)
+@ConditionalOnProperty(prefix = "chat.memory.archive", name = "enabled", havingValue = "true")
+public class ChatMemoryArchiveConfig {
+
+    @Bean(destroyMethod = "close")
+    public ChatMemoryArchiveStore chatMemoryArchiveStore(ChatMemoryArchiveProperties properties) {
+        return new ChatMemoryArchiveStore(Path.of(properties.getDir()));
+    }
+
+    @Bean
+    public ChatMemoryArchiver chatMemoryArchiver(DataSource dataSource, ChatMemoryArchiveStore archiveStore,
+                                                 ChatMemoryArchiveProperties properties) {
+        return new ChatMemoryArchiver(new JdbcTemplate(dataSource), archiveStore, properties.getIdleAfter(),
+                properties.getBatchSize(), Clock.systemUTC());
+    }
+
+    @Bean
+    public ArchiveScheduler chatMemoryArchiveScheduler(ChatMemoryArchiver archiver) {
+        return new ArchiveScheduler(archiver);
+    }
+
+    /**
+     * 定时触发归档
+     */
+    public static class ArchiveScheduler {
+
+        private final ChatMemoryArchiver archiver;
+
+        public ArchiveScheduler(ChatMemoryArchiver archiver) {
+            this.archiver = archiver;
+        }
+
+        @Scheduled(cron = "${chat.memory.archive.cron:0 45 3 * * *}")
+        public void archiveIdle() {
+            this.archiver.archiveIdle();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.backend.controller.AI.Memory;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 冷会话归档配置
+ *
+ * 对应配置前缀 chat.memory.archive
+ */
+@Data
+@ConfigurationProperties(prefix = "chat.memory.archive")
+public class ChatMemoryArchiveProperties {
+
+    /** 是否启用归档 */
+    private boolean enabled = false;
+
+    /** 段文件所在目录 */
+    private String dir = "./archive/chat-memory";
+
+    /** 最后一条消息早于该时长的会话会被归档 */
+    private Duration idleAfter = Duration.ofDays(7);
+
+    /** 每个段文件包含的会话数量上限 */
+    private int batchSize = 10000;
+
+    /** 归档任务的cron表达式 */
+    private String cron = "0 45 3 * * *";
+}
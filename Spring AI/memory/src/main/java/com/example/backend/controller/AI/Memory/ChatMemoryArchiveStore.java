@@ -0,0 +1,799 @@
+package com.example.backend.controller.AI.Memory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+/**
+ * ChatMemoryArchiveStore - 冷会话归档段文件存储
+ *
+ * 长时间未访问的会话从 spring_ai_chat_memory 移出后写入本地段文件：
+ * 1. 每次归档生成一个不可变的段文件(segment-*.seg)，会话按ID排序，每个会话一个Deflate压缩块
+ * 2. 每个段文件配一个稀疏索引(segment-*.idx)，每隔INDEX_INTERVAL个块记录一次键和偏移量
+ * 3. 读取时通过内存映射访问段文件，从最新的段开始查找，新段覆盖旧段；
+ *    段文件按REGION_SIZE分成多个映射区域，偏移量都是long，段文件可以超过2GB
+ * 4. 删除会话只追加墓碑记录(tombstones.log)，墓碑之后写入的段仍然有效
+ * 5. 打开段时校验块头，末尾不完整的块（写入中断或文件损坏）被忽略；墓碑日志中不完整的行同样忽略
+ * 6. 归档中的会话ID列表在写入新段或删除会话之前一直有效，缓存后重复调用不再扫描块头
+ * 7. close()之后的读取抛出IllegalStateException；内存映射不主动释放，store不再被引用后由GC回收
+ * 8. 过期清理通过purgeExpired()按消息类型的截止时间重写含有过期消息的段，归档中的消息与数据库中的一样会过期
+ *
+ * 段文件格式：MAGIC(int) VERSION(int) 之后是若干块，
+ * 块 = keyLen(int) key(UTF-8) rawLen(int) compressedLen(int) compressed
+ * 解压后 = count(int) 之后每条消息 type(byte) timestamp(long) textLen(int) text
+ *         payloadLen(int，-1表示没有) payload(UTF-8)
+ */
+public class ChatMemoryArchiveStore implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatMemoryArchiveStore.class);
+
+    private static final int MAGIC = 0x434D5347; // "CMSG"
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 8;
+
+    /** 稀疏索引间隔，查找时最多顺序跳过这么多个块头 */
+    private static final int INDEX_INTERVAL = 32;
+
+    private static final String TOMBSTONE_FILE = "tombstones.log";
+
+    /** 每个内存映射区域的大小 */
+    private static final int REGION_SIZE = 1 << 30;
+
+    private static final MessageType[] TYPES = MessageType.values();
+
+    private final Path directory;
+
+    /** 按序号升序排列的段，查找时倒序遍历；只读列表，变化时整体替换 */
+    private volatile List<Segment> segments = List.of();
+
+    /** 会话ID -> 删除时已存在的最大段序号 */
+    private final Map<String, Long> tombstones = new ConcurrentHashMap<>();
+
+    private final int regionSize;
+
+    /** 写入新段或删除会话时递增，会话ID缓存只在代数相同时有效 */
+    private final AtomicLong generation = new AtomicLong();
+
+    @Nullable
+    private volatile IdCache idCache;
+
+    private long lastSequence;
+
+    private volatile boolean closed;
+
+    public ChatMemoryArchiveStore(Path directory) {
+        this(directory, REGION_SIZE);
+    }
+
+    /**
+     * @param regionSize 每个内存映射区域的大小，测试中用较小的值验证跨区域读取
+     */
+    ChatMemoryArchiveStore(Path directory, int regionSize) {
+        Assert.notNull(directory, "directory cannot be null");
+        Assert.isTrue(regionSize >= HEADER_SIZE, "regionSize too small");
+        this.directory = directory;
+        this.regionSize = regionSize;
+        try {
+            Files.createDirectories(directory);
+            loadSegments();
+            loadTombstones();
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException("Failed to open chat memory archive " + directory, ex);
+        }
+    }
+
+    /**
+     * 写入一个新段
+     *
+     * @param conversations 会话ID到消息列表的有序映射
+     * @return 新段的序号
+     */
+    public synchronized long write(SortedMap<String, List<ArchivedMessage>> conversations) {
+        Assert.notEmpty(conversations, "conversations cannot be empty");
+        return guarded(() -> writeSegment(conversations));
+    }
+
+    private long writeSegment(SortedMap<String, List<ArchivedMessage>> conversations) {
+        long sequence = this.lastSequence + 1;
+        Path segmentFile = this.directory.resolve(segmentName(sequence, ".seg"));
+        Path indexFile = this.directory.resolve(segmentName(sequence, ".idx"));
+        Path tmpSegment = this.directory.resolve(segmentName(sequence, ".seg.tmp"));
+        Path tmpIndex = this.directory.resolve(segmentName(sequence, ".idx.tmp"));
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (FileChannel channel = FileChannel.open(tmpSegment, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+             DataOutputStream index = new DataOutputStream(
+                     new BufferedOutputStream(Files.newOutputStream(tmpIndex)))) {
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            long offset = HEADER_SIZE;
+            int block = 0;
+            index.writeInt(conversations.size());
+            index.writeUTF(conversations.lastKey());
+
+            for (Map.Entry<String, List<ArchivedMessage>> entry : conversations.entrySet()) {
+                byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                byte[] raw = encode(entry.getValue());
+                byte[] compressed = compress(deflater, raw);
+                if (block % INDEX_INTERVAL == 0) {
+                    index.writeBoolean(true);
+                    index.writeUTF(entry.getKey());
+                    index.writeLong(offset);
+                }
+                out.writeInt(key.length);
+                out.write(key);
+                out.writeInt(raw.length);
+                out.writeInt(compressed.length);
+                out.write(compressed);
+                offset += 12L + key.length + compressed.length;
+                block++;
+            }
+            index.writeBoolean(false);
+            out.flush();
+            channel.force(true);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException("Failed to write archive segment " + segmentFile, ex);
+        }
+        finally {
+            deflater.end();
+        }
+
+        try {
+            Files.move(tmpIndex, indexFile, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(tmpSegment, segmentFile, StandardCopyOption.ATOMIC_MOVE);
+            List<Segment> segments = new ArrayList<>(this.segments);
+            segments.add(Segment.open(sequence, segmentFile, indexFile, this.regionSize));
+            this.segments = List.copyOf(segments);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException("Failed to publish archive segment " + segmentFile, ex);
+        }
+        this.lastSequence = sequence;
+        this.generation.incrementAndGet();
+        logger.info("写入归档段 {}，包含{}个会话", segmentFile.getFileName(), conversations.size());
+        return sequence;
+    }
+
+    /**
+     * 从归档中读取会话
+     *
+     * @param conversationId 会话ID
+     * @return 消息列表，不存在时返回空列表
+     */
+    public List<Message> find(String conversationId) {
+        List<ArchivedMessage> archived = findArchived(conversationId);
+        if (archived.isEmpty()) {
+            return List.of();
+        }
+        List<Message> messages = new ArrayList<>(archived.size());
+        for (ArchivedMessage message : archived) {
+            messages.add(message.toMessage());
+        }
+        return messages;
+    }
+
+    /**
+     * 从归档中读取会话的原始记录（带时间戳）
+     */
+    public List<ArchivedMessage> findArchived(String conversationId) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        return guarded(() -> lookup(conversationId));
+    }
+
+    private List<ArchivedMessage> lookup(String conversationId) {
+        long deletedAt = this.tombstones.getOrDefault(conversationId, 0L);
+        byte[] key = conversationId.getBytes(StandardCharsets.UTF_8);
+        List<Segment> segments = this.segments;
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            Segment segment = segments.get(i);
+            if (segment.sequence <= deletedAt) {
+                break;
+            }
+            byte[] raw = segment.lookup(conversationId, key);
+            if (raw != null) {
+                return decode(raw);
+            }
+        }
+        return List.of();
+    }
+
+    /**
+     * 判断会话是否存在于归档中
+     */
+    public boolean contains(String conversationId) {
+        return guarded(() -> locate(conversationId));
+    }
+
+    private boolean locate(String conversationId) {
+        long deletedAt = this.tombstones.getOrDefault(conversationId, 0L);
+        byte[] key = conversationId.getBytes(StandardCharsets.UTF_8);
+        List<Segment> segments = this.segments;
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            Segment segment = segments.get(i);
+            if (segment.sequence <= deletedAt) {
+                return false;
+            }
+            if (segment.locate(conversationId, key) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 列出归档中所有有效的会话ID，只读取块头，不解压内容；结果缓存到下一次写入或删除
+     *
+     * @return 按ID排序的只读集合
+     */
+    public Set<String> conversationIds() {
+        long current = this.generation.get();
+        IdCache cache = this.idCache;
+        if (cache != null && cache.generation() == current) {
+            return cache.ids();
+        }
+        Set<String> ids = guarded(() -> {
+            Set<String> found = new TreeSet<>();
+            for (Segment segment : this.segments) {
+                segment.forEachKey(id -> {
+                    if (segment.sequence > this.tombstones.getOrDefault(id, 0L)) {
+                        found.add(id);
+                    }
+                });
+            }
+            return Collections.unmodifiableSet(found);
+        });
+        // 扫描期间有写入或删除时不缓存，下一次调用重新扫描
+        if (this.generation.get() == current) {
+            this.idCache = new IdCache(current, ids);
+        }
+        return ids;
+    }
+
+    /**
+     * 标记会话已删除，追加一条墓碑记录
+     */
+    public synchronized void delete(String conversationId) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        if (contains(conversationId)) {
+            appendTombstone(conversationId);
+        }
+    }
+
+    /**
+     * 删除归档中早于各消息类型截止时间的消息，由过期清理调用
+     *
+     * 1. 只检查每个会话最新的有效副本；含有过期消息或无效副本（被新段覆盖、被墓碑删除）的段整体重写
+     * 2. 重写时把原段中有效的会话写入一个序号更大的新段，再删除原段；
+     *    新段中的会话在其他段中都没有更新的副本，提升序号不会覆盖任何数据
+     * 3. 消息全部过期的会话先追加墓碑，重写中断时原段中的副本也不会再被读出
+     *
+     * @param cutoffs 各消息类型的截止时间，早于该时间的消息被删除
+     * @return 有消息被删除的会话ID
+     */
+    public synchronized Set<String> purgeExpired(Map<MessageType, Instant> cutoffs) {
+        Assert.notNull(cutoffs, "cutoffs cannot be null");
+        return guarded(() -> {
+            // 会话ID -> 最新副本所在段的序号
+            Map<String, Long> newest = new HashMap<>();
+            List<Segment> segments = this.segments;
+            for (int i = segments.size() - 1; i >= 0; i--) {
+                Segment segment = segments.get(i);
+                segment.forEachKey(id -> newest.putIfAbsent(id, segment.sequence));
+            }
+
+            Set<String> affected = new TreeSet<>();
+            for (Segment segment : segments) {
+                List<String> ids = new ArrayList<>();
+                segment.forEachKey(ids::add);
+                SortedMap<String, List<ArchivedMessage>> kept = new TreeMap<>();
+                List<String> emptied = new ArrayList<>();
+                boolean changed = false;
+                for (String id : ids) {
+                    if (newest.get(id) != segment.sequence
+                            || segment.sequence <= this.tombstones.getOrDefault(id, 0L)) {
+                        changed = true;
+                        continue;
+                    }
+                    List<ArchivedMessage> messages = decode(segment.lookup(id, id.getBytes(StandardCharsets.UTF_8)));
+                    List<ArchivedMessage> remaining = new ArrayList<>(messages.size());
+                    for (ArchivedMessage message : messages) {
+                        Instant cutoff = cutoffs.get(message.type());
+                        if (cutoff == null || message.timestamp() >= cutoff.toEpochMilli()) {
+                            remaining.add(message);
+                        }
+                    }
+                    if (remaining.size() < messages.size()) {
+                        changed = true;
+                        affected.add(id);
+                    }
+                    if (remaining.isEmpty()) {
+                        emptied.add(id);
+                    }
+                    else {
+                        kept.put(id, remaining);
+                    }
+                }
+                if (changed) {
+                    emptied.forEach(this::appendTombstone);
+                    if (!kept.isEmpty()) {
+                        writeSegment(kept);
+                    }
+                    removeSegment(segment);
+                }
+            }
+            if (!affected.isEmpty()) {
+                logger.info("归档中{}个会话的过期消息已删除", affected.size());
+            }
+            return affected;
+        });
+    }
+
+    /**
+     * 从查找列表中移除段并删除其文件；已映射的内容在GC之前仍可被正在进行的读取访问
+     */
+    private void removeSegment(Segment segment) {
+        List<Segment> segments = new ArrayList<>(this.segments);
+        segments.remove(segment);
+        this.segments = List.copyOf(segments);
+        this.generation.incrementAndGet();
+        Path segmentFile = this.directory.resolve(segmentName(segment.sequence, ".seg"));
+        try {
+            // 先删索引，段文件残留时重新打开会因缺少索引被跳过
+            Files.deleteIfExists(this.directory.resolve(segmentName(segment.sequence, ".idx")));
+            Files.deleteIfExists(segmentFile);
+        }
+        catch (IOException ex) {
+            logger.warn("删除归档段 {} 失败，其中的会话已写入新段", segmentFile.getFileName(), ex);
+        }
+    }
+
+    private void appendTombstone(String conversationId) {
+        try (BufferedWriter writer = Files.newBufferedWriter(this.directory.resolve(TOMBSTONE_FILE),
+                StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(this.lastSequence + "\t" + conversationId + "\n");
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException("Failed to write archive tombstone", ex);
+        }
+        this.tombstones.put(conversationId, this.lastSequence);
+        this.generation.incrementAndGet();
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+    }
+
+    /**
+     * 检查store未关闭后执行
+     */
+    private <T> T guarded(Supplier<T> action) {
+        Assert.state(!this.closed, "Chat memory archive store is closed");
+        return action.get();
+    }
+
+    private void loadSegments() throws IOException {
+        List<Path> files;
+        List<Path> leftovers;
+        try (Stream<Path> stream = Files.list(this.directory)) {
+            List<Path> all = stream.toList();
+            files = all.stream()
+                    .filter(p -> p.getFileName().toString().endsWith(".seg"))
+                    .sorted(Comparator.comparing(Path::getFileName))
+                    .toList();
+            leftovers = all.stream().filter(p -> p.getFileName().toString().endsWith(".tmp")).toList();
+        }
+        // 写入中断留下的临时文件
+        for (Path leftover : leftovers) {
+            Files.deleteIfExists(leftover);
+        }
+        List<Segment> segments = new ArrayList<>();
+        for (Path segmentFile : files) {
+            String name = segmentFile.getFileName().toString();
+            long sequence = Long.parseLong(name.substring("segment-".length(), name.length() - ".seg".length()));
+            Path indexFile = this.directory.resolve(segmentName(sequence, ".idx"));
+            if (!Files.exists(indexFile)) {
+                logger.warn("归档段 {} 缺少索引文件，已跳过", name);
+                continue;
+            }
+            segments.add(Segment.open(sequence, segmentFile, indexFile, this.regionSize));
+            this.lastSequence = Math.max(this.lastSequence, sequence);
+        }
+        this.segments = List.copyOf(segments);
+    }
+
+    private void loadTombstones() throws IOException {
+        Path file = this.directory.resolve(TOMBSTONE_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        int complete = bytes.length;
+        while (complete > 0 && bytes[complete - 1] != '\n') {
+            complete--;
+        }
+        if (complete < bytes.length) {
+            // 追加墓碑时进程退出留下的半行，截掉后下一条记录不会接在它后面
+            logger.warn("墓碑日志末尾有不完整的记录，已截断到{}字节", complete);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(complete);
+            }
+        }
+        for (String line : new String(bytes, 0, complete, StandardCharsets.UTF_8).split("\r?\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            int tab = line.indexOf('\t');
+            long sequence;
+            try {
+                sequence = tab > 0 ? Long.parseLong(line.substring(0, tab)) : -1;
+            }
+            catch (NumberFormatException ex) {
+                sequence = -1;
+            }
+            if (sequence < 0 || tab == line.length() - 1) {
+                logger.warn("忽略墓碑日志中无法解析的记录: {}", line);
+                continue;
+            }
+            this.tombstones.merge(line.substring(tab + 1), sequence, Math::max);
+        }
+    }
+
+    private static String segmentName(long sequence, String suffix) {
+        return String.format("segment-%010d%s", sequence, suffix);
+    }
+
+    private static byte[] encode(List<ArchivedMessage> messages) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(messages.size());
+        for (ArchivedMessage message : messages) {
+            byte[] text = message.text() == null ? new byte[0] : message.text().getBytes(StandardCharsets.UTF_8);
+            out.writeByte(message.type().ordinal());
+            out.writeLong(message.timestamp());
+            out.writeInt(text.length);
+            out.write(text);
+            if (message.payload() == null) {
+                out.writeInt(-1);
+            }
+            else {
+                byte[] payload = message.payload().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(payload.length);
+                out.write(payload);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<ArchivedMessage> decode(byte[] raw) {
+        ByteBuffer buffer = ByteBuffer.wrap(raw);
+        int count = buffer.getInt();
+        List<ArchivedMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            MessageType type = TYPES[buffer.get()];
+            long timestamp = buffer.getLong();
+            int length = buffer.getInt();
+            String text = new String(raw, buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            String payload = null;
+            int payloadLength = buffer.getInt();
+            if (payloadLength >= 0) {
+                payload = new String(raw, buffer.position(), payloadLength, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + payloadLength);
+            }
+            messages.add(new ArchivedMessage(type, text, timestamp, payload));
+        }
+        return messages;
+    }
+
+    private static byte[] compress(Deflater deflater, byte[] raw) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 2));
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(chunk);
+            out.write(chunk, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 归档中的一条消息
+     *
+     * @param type 消息类型
+     * @param text 消息文本
+     * @param timestamp 原始时间戳（毫秒）
+     * @param payload ChatMessagePayload编码的工具调用、工具响应和元数据，纯文本消息为null
+     */
+    public record ArchivedMessage(MessageType type, String text, long timestamp, @Nullable String payload) {
+
+        public Message toMessage() {
+            return ChatMessagePayload.toMessage(this.type, this.text, this.payload);
+        }
+    }
+
+    private record IdCache(long generation, Set<String> ids) {
+    }
+
+    /**
+     * 一个只读段：内存映射的数据文件 + 常驻内存的稀疏索引
+     */
+    private static final class Segment {
+
+        private final long sequence;
+
+        private final MappedFile data;
+
+        /** 最后一个完整块之后的位置，之后的字节被忽略 */
+        private final long limit;
+
+        private final String[] indexKeys;
+
+        private final long[] indexOffsets;
+
+        @Nullable
+        private final String maxKey;
+
+        private Segment(long sequence, MappedFile data, long limit, String[] indexKeys, long[] indexOffsets,
+                        @Nullable String maxKey) {
+            this.sequence = sequence;
+            this.data = data;
+            this.limit = limit;
+            this.indexKeys = indexKeys;
+            this.indexOffsets = indexOffsets;
+            this.maxKey = maxKey;
+        }
+
+        static Segment open(long sequence, Path segmentFile, Path indexFile, int regionSize) throws IOException {
+            MappedFile data = MappedFile.map(segmentFile, regionSize);
+            if (data.size() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+                throw new IOException("Not an archive segment " + segmentFile);
+            }
+            if (data.getInt(4) != VERSION) {
+                throw new IOException("Unsupported archive segment " + segmentFile);
+            }
+
+            // 索引文件没有fsync，断电后可能不完整：缺少的尾部索引项只会让查找多跳过一些块头
+            int expected = -1;
+            List<String> keys = new ArrayList<>();
+            List<Long> offsets = new ArrayList<>();
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(indexFile)))) {
+                expected = in.readInt();
+                in.readUTF();
+                while (in.readBoolean()) {
+                    String key = in.readUTF();
+                    long offset = in.readLong();
+                    keys.add(key);
+                    offsets.add(offset);
+                }
+            }
+            catch (EOFException ex) {
+                logger.warn("归档段 {} 的索引文件不完整，读取到{}个索引项", segmentFile.getFileName(), keys.size());
+            }
+
+            // 顺序校验块头，找到最后一个完整的块
+            long position = HEADER_SIZE;
+            long last = -1;
+            int blocks = 0;
+            while (position + 12 <= data.size()) {
+                int keyLength = data.getInt(position);
+                long lengths = position + 4 + keyLength;
+                if (keyLength <= 0 || lengths + 8 > data.size()) {
+                    break;
+                }
+                int compressedLength = data.getInt(lengths + 4);
+                long end = lengths + 8 + compressedLength;
+                if (compressedLength < 0 || end > data.size()) {
+                    break;
+                }
+                last = position;
+                position = end;
+                blocks++;
+            }
+            if (position != data.size() || (expected >= 0 && blocks != expected)) {
+                logger.warn("归档段 {} 末尾不完整，只读取前{}个会话", segmentFile.getFileName(), blocks);
+            }
+            String maxKey = null;
+            if (last >= 0) {
+                byte[] key = new byte[data.getInt(last)];
+                data.read(last + 4, key);
+                maxKey = new String(key, StandardCharsets.UTF_8);
+            }
+            int valid = 0;
+            while (valid < offsets.size() && offsets.get(valid) < position) {
+                valid++;
+            }
+            return new Segment(sequence, data, position, keys.subList(0, valid).toArray(String[]::new),
+                    offsets.subList(0, valid).stream().mapToLong(Long::longValue).toArray(), maxKey);
+        }
+
+        /**
+         * 查找会话块并解压
+         *
+         * @return 解压后的原始字节，不存在时返回null
+         */
+        byte[] lookup(String conversationId, byte[] key) {
+            long position = locate(conversationId, key);
+            if (position < 0) {
+                return null;
+            }
+            long lengths = position + 4 + key.length;
+            int rawLength = this.data.getInt(lengths);
+            byte[] compressed = new byte[this.data.getInt(lengths + 4)];
+            this.data.read(lengths + 8, compressed);
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed);
+                byte[] raw = new byte[rawLength];
+                inflater.inflate(raw);
+                return raw;
+            }
+            catch (DataFormatException ex) {
+                throw new IllegalStateException("Corrupted archive block for " + conversationId, ex);
+            }
+            finally {
+                inflater.end();
+            }
+        }
+
+        /**
+         * 定位会话块起始位置
+         *
+         * @return 块起始偏移量，不存在时返回-1
+         */
+        long locate(String conversationId, byte[] key) {
+            if (this.indexKeys.length == 0 || this.maxKey == null || conversationId.compareTo(this.indexKeys[0]) < 0
+                    || conversationId.compareTo(this.maxKey) > 0) {
+                return -1;
+            }
+            int slot = Arrays.binarySearch(this.indexKeys, conversationId);
+            if (slot < 0) {
+                slot = -slot - 2;
+            }
+            long position = this.indexOffsets[slot];
+            long end = slot + 1 < this.indexOffsets.length ? this.indexOffsets[slot + 1] : this.limit;
+            byte[] candidate = new byte[key.length];
+            while (position < end) {
+                int keyLength = this.data.getInt(position);
+                if (keyLength == key.length) {
+                    this.data.read(position + 4, candidate);
+                    if (Arrays.equals(candidate, key)) {
+                        return position;
+                    }
+                }
+                long lengths = position + 4 + keyLength;
+                position = lengths + 8 + this.data.getInt(lengths + 4);
+            }
+            return -1;
+        }
+
+        void forEachKey(Consumer<String> action) {
+            long position = HEADER_SIZE;
+            while (position < this.limit) {
+                byte[] key = new byte[this.data.getInt(position)];
+                this.data.read(position + 4, key);
+                long lengths = position + 4 + key.length;
+                position = lengths + 8 + this.data.getInt(lengths + 4);
+                action.accept(new String(key, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    /**
+     * 按固定大小分区域映射的只读文件，单个MappedByteBuffer最大2GB，这里用long偏移量跨区域读取；
+     * 映射在MappedFile不再被引用后由GC释放
+     */
+    private static final class MappedFile {
+
+        private final MappedByteBuffer[] regions;
+
+        private final int regionSize;
+
+        private final long size;
+
+        private MappedFile(MappedByteBuffer[] regions, int regionSize, long size) {
+            this.regions = regions;
+            this.regionSize = regionSize;
+            this.size = size;
+        }
+
+        static MappedFile map(Path file, int regionSize) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                MappedByteBuffer[] regions = new MappedByteBuffer[(int) ((size + regionSize - 1) / regionSize)];
+                for (int i = 0; i < regions.length; i++) {
+                    long start = (long) i * regionSize;
+                    regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(regionSize, size - start));
+                }
+                return new MappedFile(regions, regionSize, size);
+            }
+        }
+
+        long size() {
+            return this.size;
+        }
+
+        int getInt(long position) {
+            MappedByteBuffer region = this.regions[(int) (position / this.regionSize)];
+            int offset = (int) (position % this.regionSize);
+            if (offset + 4 <= region.limit()) {
+                return region.getInt(offset);
+            }
+            byte[] bytes = new byte[4];
+            read(position, bytes);
+            return ByteBuffer.wrap(bytes).getInt();
+        }
+
+        /**
+         * 从position开始读满dst，可以跨越区域边界
+         */
+        void read(long position, byte[] dst) {
+            if (position + dst.length > this.size) {
+                throw new IllegalStateException("Read past the end of archive segment at " + position);
+            }
+            int copied = 0;
+            while (copied < dst.length) {
+                MappedByteBuffer region = this.regions[(int) (position / this.regionSize)];
+                int offset = (int) (position % this.regionSize);
+                int n = Math.min(dst.length - copied, region.limit() - offset);
+                region.get(offset, dst, copied, n);
+                copied += n;
+                position += n;
+            }
+        }
+    }
+}
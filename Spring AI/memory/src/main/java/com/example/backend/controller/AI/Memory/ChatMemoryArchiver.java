@@ -0,0 +1,118 @@
+package com.example.backend.controller.AI.Memory;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+/**
+ * ChatMemoryArchiver - 冷会话归档任务
+ *
+ * 找出最后一条消息早于空闲阈值的会话，整批写入ChatMemoryArchiveStore后再从数据库删除。
+ * 删除时只删除时间戳不晚于已归档最大时间戳的行：如果会话在归档过程中又有新的对话，
+ * saveAll会用新的时间戳重新写入，这些行会保留在数据库中并优先于归档被读取。
+ */
+public class ChatMemoryArchiver {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatMemoryArchiver.class);
+
+    private static final String SELECT_IDLE_SQL = "SELECT conversation_id FROM spring_ai_chat_memory "
+            + "WHERE conversation_id > ? GROUP BY conversation_id HAVING MAX(`timestamp`) < ? "
+            + "ORDER BY conversation_id LIMIT ?";
+
+    private static final String SELECT_MESSAGES_SQL = "SELECT content, type, `timestamp`, payload "
+            + "FROM spring_ai_chat_memory WHERE conversation_id = ? ORDER BY `timestamp`";
+
+    private static final String DELETE_ARCHIVED_SQL = "DELETE FROM spring_ai_chat_memory "
+            + "WHERE conversation_id = ? AND `timestamp` <= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ChatMemoryArchiveStore archiveStore;
+
+    private final Duration idleAfter;
+
+    private final int batchSize;
+
+    private final Clock clock;
+
+    public ChatMemoryArchiver(JdbcTemplate jdbcTemplate, ChatMemoryArchiveStore archiveStore, Duration idleAfter,
+                              int batchSize, Clock clock) {
+        Assert.notNull(jdbcTemplate, "jdbcTemplate cannot be null");
+        Assert.notNull(archiveStore, "archiveStore cannot be null");
+        Assert.isTrue(batchSize > 0, "batchSize must be positive");
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(
+                new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+        this.archiveStore = archiveStore;
+        this.idleAfter = idleAfter;
+        this.batchSize = batchSize;
+        this.clock = clock;
+    }
+
+    /**
+     * 归档所有空闲会话，每batchSize个会话生成一个段文件
+     *
+     * @return 归档的会话数量
+     */
+    public int archiveIdle() {
+        Timestamp cutoff = Timestamp.from(this.clock.instant().minus(this.idleAfter));
+        String after = "";
+        int archived = 0;
+        while (true) {
+            List<String> ids = this.jdbcTemplate.queryForList(SELECT_IDLE_SQL, String.class, after, cutoff,
+                    this.batchSize);
+            if (ids.isEmpty()) {
+                break;
+            }
+            archived += archiveBatch(ids);
+            after = ids.get(ids.size() - 1);
+        }
+        if (archived > 0) {
+            logger.info("归档空闲会话{}个", archived);
+        }
+        return archived;
+    }
+
+    private int archiveBatch(List<String> ids) {
+        SortedMap<String, List<ChatMemoryArchiveStore.ArchivedMessage>> batch = new TreeMap<>();
+        for (String id : ids) {
+            List<ChatMemoryArchiveStore.ArchivedMessage> messages = this.jdbcTemplate.query(SELECT_MESSAGES_SQL,
+                    (rs, i) -> new ChatMemoryArchiveStore.ArchivedMessage(MessageType.valueOf(rs.getString(2)),
+                            rs.getString(1), rs.getTimestamp(3).getTime(), rs.getString(4)),
+                    id);
+            if (!messages.isEmpty()) {
+                batch.put(id, messages);
+            }
+        }
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        // 先落盘再删库，中途失败最多留下重复数据，不会丢数据
+        this.archiveStore.write(batch);
+        this.transactionTemplate.executeWithoutResult(status -> {
+            for (Map.Entry<String, List<ChatMemoryArchiveStore.ArchivedMessage>> entry : batch.entrySet()) {
+                // 消息按时间戳升序读取，最后一条即最大时间戳
+                List<ChatMemoryArchiveStore.ArchivedMessage> messages = entry.getValue();
+                long maxTimestamp = messages.get(messages.size() - 1).timestamp();
+                this.jdbcTemplate.update(DELETE_ARCHIVED_SQL, entry.getKey(), new Timestamp(maxTimestamp));
+            }
+        });
+        return batch.size();
+    }
+}
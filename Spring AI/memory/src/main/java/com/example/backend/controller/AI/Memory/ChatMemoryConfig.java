@@ -1,20 +1,85 @@
 package com.example.backend.controller.AI.Memory;
 
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
 
 import javax.sql.DataSource;
+import java.nio.file.Path;
 
 @Configuration
 public class ChatMemoryConfig {
     
+    /**
+     * 单库聊天记忆存储，启用分片时由ShardedChatMemoryRepository代替
+     */
     @Bean
     @Primary
-    public JdbcChatMemoryRepository chatMemoryRepository(DataSource dataSource) {
+    @ConditionalOnProperty(prefix = "chat.memory.sharding", name = "enabled", havingValue = "false",
+            matchIfMissing = true)
+    public JdbcChatMemoryRepository chatMemoryRepository(DataSource dataSource,
+                                                         ObjectProvider<ChatMemoryArchiveStore> archiveStore,
+                                                         ObjectProvider<ChatMemoryListener> listeners) {
         return JdbcChatMemoryRepository.builder()
                 .dataSource(dataSource)
                 .dialect(new MysqlChatMemoryRepositoryDialect())
+                .archiveStore(archiveStore.getIfAvailable())
+                .listeners(listeners.orderedStream().toList())
                 .build();
     }
-} 
\ No newline at end of file
+
+    /**
+     * 聊天记忆流式导出/导入，基于主数据源，只在memory-transfer profile下由命令行使用；分片时主数据源中没有聊天记忆，不创建
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "chat.memory.sharding", name = "enabled", havingValue = "false",
+            matchIfMissing = true)
+    public ChatMemoryTransfer chatMemoryTransfer(DataSource dataSource,
+                                                 @Value("${chat.memory.transfer.fetch-size:1000}") int fetchSize,
+                                                 @Value("${chat.memory.transfer.insert-batch-rows:500}") int insertBatchRows) {
+        return new ChatMemoryTransfer(new JdbcTemplate(dataSource), fetchSize, insertBatchRows);
+    }
+
+    /**
+     * memory-transfer profile下执行导出或导入后退出，参数见ChatMemoryTransferRunner
+     */
+    @Bean
+    @Profile("memory-transfer")
+    public ApplicationRunner chatMemoryTransferRunner(ChatMemoryTransfer chatMemoryTransfer,
+                                                      ConfigurableApplicationContext context,
+                                                      @Value("${chat.memory.transfer.mode}") String mode,
+                                                      @Value("${chat.memory.transfer.file}") String file,
+                                                      @Value("${chat.memory.transfer.format:ndjson}") String format) {
+        ChatMemoryTransferRunner runner = new ChatMemoryTransferRunner(chatMemoryTransfer, mode, Path.of(file), format);
+        return args -> {
+            runner.run();
+            System.exit(SpringApplication.exit(context));
+        };
+    }
+
+    /**
+     * 对话记录的游标分页与流式读取，通过聊天记忆存储定位会话所在的分片和归档
+     */
+    @Bean
+    public ChatHistoryReader chatHistoryReader(ChatMemoryRepository chatMemoryRepository,
+                                               @Value("${chat.memory.history.fetch-size:200}") int fetchSize) {
+        return new ChatHistoryReader(chatMemoryRepository, fetchSize);
+    }
+
+    /**
+     * 同一会话的对话轮次串行执行，避免并发的saveAll互相覆盖
+     */
+    @Bean
+    public ConversationSequencer conversationSequencer() {
+        return new ConversationSequencer();
+    }
+} 
@@ -0,0 +1,52 @@
+package com.example.backend.controller.AI.Memory;
+
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 聊天记忆变更监听器
+ *
+ * JdbcChatMemoryRepository在事务提交后回调，用于增量维护搜索索引等派生数据。
+ * 回调在调用saveAll/deleteByConversationId的线程上同步执行，实现应尽量轻量，
+ * 抛出的异常只会被记录，不会影响已提交的写入。
+ */
+public interface ChatMemoryListener {
+
+    /**
+     * 会话的全部消息已被saveAll替换
+     *
+     * @param conversationId 会话ID
+     * @param messages 保存后的完整消息列表
+     */
+    void onSaved(String conversationId, List<Message> messages);
+
+    /**
+     * 会话已被删除
+     *
+     * @param conversationId 会话ID
+     */
+    default void onDeleted(String conversationId) {
+    }
+
+    /**
+     * 过期清理删除了会话中早于截止时间的消息
+     * 默认按剩余消息回调onSaved，全部过期时回调onDeleted；
+     * 保存了数据库之外消息的实现（如保留窗口外消息的向量索引）需要自己按截止时间清理
+     *
+     * @param conversationId 会话ID
+     * @param remaining 清理后剩余的完整消息列表
+     * @param cutoffs 各消息类型的截止时间，早于该时间的消息已被删除
+     */
+    default void onExpired(String conversationId, List<Message> remaining, Map<MessageType, Instant> cutoffs) {
+        if (remaining.isEmpty()) {
+            onDeleted(conversationId);
+        }
+        else {
+            onSaved(conversationId, remaining);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.backend.controller.AI.Memory;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.time.Clock;
+
+/**
+ * 聊天记忆保留策略配置类
+ *
+ * 通过 chat.memory.retention.enabled=true 开启，
+ * 应用启动完成后初始化分区，之后按cron定时清理过期消息，并通过聊天记忆存储通知全文索引、向量索引等监听器。
+ */
+@Configuration
+@EnableScheduling
+@EnableConfigurationProperties(ChatMemoryRetentionProperties.class)
+@ConditionalOnProperty(prefix = "chat.memory.retention", name = "enabled", havingValue = "true")
+public class ChatMemoryRetentionConfig {
+
+    @Bean
+    public ChatMemoryRetentionManager chatMemoryRetentionManager(DataSource dataSource,
+                                                                 ChatMemoryRetentionProperties properties,
+                                                                 ObjectProvider<JdbcChatMemoryRepository> repository) {
+        return new ChatMemoryRetentionManager(new JdbcTemplate(dataSource), properties, Clock.systemUTC(),
+                repository.getIfAvailable());
+    }
+
+    @Bean
+    public RetentionScheduler chatMemoryRetentionScheduler(ChatMemoryRetentionManager retentionManager) {
+        return new RetentionScheduler(retentionManager);
+    }
+
+    /**
+     * 定时触发清理
+     */
+    public static class RetentionScheduler {
+
+        private final ChatMemoryRetentionManager retentionManager;
+
+        public RetentionScheduler(ChatMemoryRetentionManager retentionManager) {
+            this.retentionManager = retentionManager;
+        }
+
+        /**
+         * 等待建表脚本执行完毕后再做分区初始化
+         */
+        @EventListener(ApplicationReadyEvent.class)
+        public void initializePartitions() {
+            this.retentionManager.initialize();
+        }
+
+        @Scheduled(cron = "${chat.memory.retention.cron:0 15 3 * * *}")
+        public void purgeExpired() {
+            this.retentionManager.purgeExpired();
+        }
+    }
+}
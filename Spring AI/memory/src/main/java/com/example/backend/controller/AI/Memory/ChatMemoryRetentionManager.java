@@ -0,0 +1,311 @@
+package com.example.backend.controller.AI.Memory;
+
+import java.sql.DatabaseMetaData;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+/**
+ * ChatMemoryRetentionManager - 聊天记忆过期清理
+ *
+ * spring_ai_chat_memory 表只会按会话整体删除，从不过期。该类负责：
+ * 1. 表已经分区时（手动执行 repository/optional/chat_memory_partition.sql），提前从pmax拆分出未来分区；
+ *    分区改造会重建整张表，不在应用启动时自动执行
+ * 2. 整个分区都超过最长保留时长时直接DROP PARTITION，代价与分区内行数无关
+ * 3. 每种消息类型都再用 DELETE ... LIMIT 按 (type, timestamp) 索引分批删除，避免长事务和大量undo日志：
+ *    分区模式下只剩跨越截止时间的分区和保留时长更短的类型需要逐行删除，未分区的表全部逐行删除
+ * 4. 聊天记忆存储注册了ChatMemoryListener时，删除前记下受影响的会话，清理后逐个回调onExpired，
+ *    全文索引和向量索引随之删除过期的内容
+ * 5. 聊天记忆存储启用了冷会话归档时，按同样的截止时间清理归档段中的过期消息，
+ *    已移出数据库的会话同样遵守按消息类型配置的保留时长
+ */
+public class ChatMemoryRetentionManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatMemoryRetentionManager.class);
+
+    private static final String TABLE = "spring_ai_chat_memory";
+
+    /** 兜底分区，所有超出已建分区上界的数据都会落入这里 */
+    private static final String MAX_PARTITION = "pmax";
+
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'p'yyyyMMddHHmm")
+            .withZone(ZoneOffset.UTC);
+
+    private static final String SELECT_PARTITIONS_SQL = "SELECT PARTITION_NAME, PARTITION_DESCRIPTION "
+            + "FROM information_schema.PARTITIONS WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = '" + TABLE
+            + "' AND PARTITION_NAME IS NOT NULL";
+
+    /** 手动执行的分区改造脚本 */
+    public static final String PARTITION_SCRIPT = "repository/optional/chat_memory_partition.sql";
+
+    private static final String SELECT_EXPIRED_CONVERSATIONS_SQL = "SELECT DISTINCT conversation_id FROM " + TABLE
+            + " WHERE type = ? AND `timestamp` < ?";
+
+    private static final String DELETE_EXPIRED_SQL = "DELETE FROM " + TABLE
+            + " WHERE type = ? AND `timestamp` < ? LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ChatMemoryRetentionProperties properties;
+
+    private final Clock clock;
+
+    /** 用于通知ChatMemoryListener和清理冷会话归档，可以为null */
+    @Nullable
+    private final JdbcChatMemoryRepository repository;
+
+    public ChatMemoryRetentionManager(JdbcTemplate jdbcTemplate, ChatMemoryRetentionProperties properties,
+                                      Clock clock) {
+        this(jdbcTemplate, properties, clock, null);
+    }
+
+    /**
+     * @param jdbcTemplate 聊天记忆表所在的数据源
+     * @param properties 保留策略
+     * @param clock 时钟
+     * @param repository 同一数据源上的聊天记忆存储，清理后通过它通知ChatMemoryListener并清理它的冷会话归档，可以为null
+     */
+    public ChatMemoryRetentionManager(JdbcTemplate jdbcTemplate, ChatMemoryRetentionProperties properties,
+                                      Clock clock, @Nullable JdbcChatMemoryRepository repository) {
+        Assert.notNull(jdbcTemplate, "jdbcTemplate cannot be null");
+        Assert.notNull(properties, "properties cannot be null");
+        Assert.notNull(clock, "clock cannot be null");
+        Assert.isTrue(properties.getPartitionInterval().toSeconds() > 0, "partitionInterval must be positive");
+        Assert.isTrue(properties.getDeleteChunkSize() > 0, "deleteChunkSize must be positive");
+        this.jdbcTemplate = jdbcTemplate;
+        this.properties = properties;
+        this.clock = clock;
+        this.repository = repository;
+    }
+
+    /**
+     * 初始化分区：表已分区时补齐未来分区，不会修改未分区的表
+     *
+     * @throws IllegalStateException 如果mode为PARTITION但表尚未分区
+     */
+    public void initialize() {
+        if (!usePartitions()) {
+            logger.info("聊天记忆保留策略使用分批删除模式，需要整区删除时先执行{}", PARTITION_SCRIPT);
+            return;
+        }
+        ensureFuturePartitions();
+    }
+
+    /**
+     * 清理过期消息
+     *
+     * @return 删除的分区数与分批删除的行数
+     */
+    public RetentionResult purgeExpired() {
+        Instant now = this.clock.instant();
+        Map<MessageType, Instant> cutoffs = new EnumMap<>(MessageType.class);
+        for (MessageType type : MessageType.values()) {
+            cutoffs.put(type, now.minus(this.properties.ttlOf(type)));
+        }
+        Set<String> affected = this.repository != null && this.repository.hasListeners() ? new HashSet<>() : null;
+        int droppedPartitions = 0;
+
+        if (usePartitions()) {
+            ensureFuturePartitions();
+            droppedPartitions = dropPartitionsBefore(now.minus(maxTtl()), affected);
+        }
+
+        // 整区删除只覆盖上界不晚于截止时间的分区，跨越截止时间的分区（包括容纳历史数据的第一个分区）仍要逐行删除
+        long deletedRows = 0;
+        for (MessageType type : MessageType.values()) {
+            deletedRows += deleteInChunks(type, cutoffs.get(type), affected);
+        }
+
+        int archivedConversations = 0;
+        ChatMemoryArchiveStore archiveStore = this.repository != null ? this.repository.archiveStore() : null;
+        if (archiveStore != null) {
+            Set<String> archived = archiveStore.purgeExpired(cutoffs);
+            archivedConversations = archived.size();
+            if (affected != null) {
+                affected.addAll(archived);
+            }
+        }
+
+        if (affected != null) {
+            for (String conversationId : affected) {
+                this.repository.expired(conversationId, cutoffs);
+            }
+            logger.info("已通知{}个会话的过期清理", affected.size());
+        }
+
+        logger.info("聊天记忆过期清理完成，删除分区{}个，分批删除{}行，清理归档会话{}个", droppedPartitions, deletedRows,
+                archivedConversations);
+        return new RetentionResult(droppedPartitions, deletedRows, archivedConversations);
+    }
+
+    /**
+     * 分批删除某个类型在截止时间之前的消息
+     * 每批单独提交，单批行数由deleteChunkSize控制
+     *
+     * @param affected 不为null时先把受影响的会话ID加入其中
+     */
+    private long deleteInChunks(MessageType type, Instant cutoff, @Nullable Set<String> affected) {
+        int chunkSize = this.properties.getDeleteChunkSize();
+        Timestamp cutoffTs = Timestamp.from(cutoff);
+        if (affected != null) {
+            this.jdbcTemplate.query(SELECT_EXPIRED_CONVERSATIONS_SQL,
+                    (RowCallbackHandler) rs -> affected.add(rs.getString(1)), type.name(), cutoffTs);
+        }
+        long total = 0;
+        int deleted;
+        do {
+            deleted = this.jdbcTemplate.update(DELETE_EXPIRED_SQL, type.name(), cutoffTs, chunkSize);
+            total += deleted;
+        } while (deleted >= chunkSize);
+        return total;
+    }
+
+    /**
+     * 从pmax中拆分出未来的分区，pmax通常为空，拆分代价很小
+     */
+    private void ensureFuturePartitions() {
+        long interval = intervalSeconds();
+        long target = alignedBoundary(this.clock.instant()) + interval * (this.properties.getPartitionsAhead() + 1L);
+        long highest = loadPartitions().values().stream()
+                .mapToLong(Long::longValue)
+                .filter(bound -> bound != Long.MAX_VALUE)
+                .max()
+                .orElse(alignedBoundary(this.clock.instant()));
+
+        List<String> definitions = new ArrayList<>();
+        for (long bound = highest + interval; bound <= target; bound += interval) {
+            definitions.add(partitionDefinition(bound));
+        }
+        if (definitions.isEmpty()) {
+            return;
+        }
+        definitions.add("PARTITION " + MAX_PARTITION + " VALUES LESS THAN MAXVALUE");
+        this.jdbcTemplate.execute("ALTER TABLE " + TABLE + " REORGANIZE PARTITION " + MAX_PARTITION
+                + " INTO (" + String.join(", ", definitions) + ")");
+        logger.info("新增聊天记忆分区{}个", definitions.size() - 1);
+    }
+
+    /**
+     * 删除上界不晚于截止时间的分区
+     *
+     * @param affected 不为null时先把这些分区中的会话ID加入其中
+     */
+    private int dropPartitionsBefore(Instant cutoff, @Nullable Set<String> affected) {
+        long cutoffSeconds = cutoff.getEpochSecond();
+        List<String> expired = new ArrayList<>();
+        loadPartitions().forEach((name, bound) -> {
+            if (bound != Long.MAX_VALUE && bound <= cutoffSeconds) {
+                expired.add(name);
+            }
+        });
+        if (expired.isEmpty()) {
+            return 0;
+        }
+        if (affected != null) {
+            this.jdbcTemplate.query("SELECT DISTINCT conversation_id FROM " + TABLE + " PARTITION ("
+                    + String.join(", ", expired) + ")", (RowCallbackHandler) rs -> affected.add(rs.getString(1)));
+        }
+        this.jdbcTemplate.execute("ALTER TABLE " + TABLE + " DROP PARTITION " + String.join(", ", expired));
+        logger.info("删除过期聊天记忆分区: {}", expired);
+        return expired.size();
+    }
+
+    /**
+     * 读取分区名与分区上界（秒），MAXVALUE记为Long.MAX_VALUE
+     */
+    private Map<String, Long> loadPartitions() {
+        Map<String, Long> partitions = new TreeMap<>();
+        this.jdbcTemplate.query(SELECT_PARTITIONS_SQL, rs -> {
+            String description = rs.getString(2);
+            partitions.put(rs.getString(1),
+                    "MAXVALUE".equalsIgnoreCase(description) ? Long.MAX_VALUE : Long.parseLong(description));
+        });
+        return partitions;
+    }
+
+    private String partitionDefinition(long upperBound) {
+        // 按下界命名，便于直接看出分区覆盖的时间段
+        String name = PARTITION_NAME.format(Instant.ofEpochSecond(upperBound - intervalSeconds()));
+        return "PARTITION " + name + " VALUES LESS THAN (" + upperBound + ")";
+    }
+
+    /**
+     * 返回严格大于给定时间、且对齐到分区间隔的边界（秒）
+     */
+    private long alignedBoundary(Instant instant) {
+        long interval = intervalSeconds();
+        return Math.floorDiv(instant.getEpochSecond(), interval) * interval + interval;
+    }
+
+    private long intervalSeconds() {
+        return this.properties.getPartitionInterval().toSeconds();
+    }
+
+    private Duration maxTtl() {
+        Duration max = Duration.ZERO;
+        for (MessageType type : MessageType.values()) {
+            Duration ttl = this.properties.ttlOf(type);
+            if (ttl.compareTo(max) > 0) {
+                max = ttl;
+            }
+        }
+        return max;
+    }
+
+    /**
+     * 每次都重新检查，运行期间执行了分区脚本的表下一次清理即可整区删除
+     */
+    private boolean usePartitions() {
+        return switch (this.properties.getMode()) {
+            case PARTITION -> {
+                Assert.state(!loadPartitions().isEmpty(),
+                        "spring_ai_chat_memory is not partitioned, run " + PARTITION_SCRIPT + " first");
+                yield true;
+            }
+            case DELETE -> false;
+            case AUTO -> isMysql() && !loadPartitions().isEmpty();
+        };
+    }
+
+    private boolean isMysql() {
+        try {
+            String product = JdbcUtils.extractDatabaseMetaData(this.jdbcTemplate.getDataSource(),
+                    DatabaseMetaData::getDatabaseProductName);
+            return product != null && product.toLowerCase().contains("mysql");
+        }
+        catch (Exception ex) {
+            logger.warn("无法识别数据库类型，使用分批删除模式", ex);
+            return false;
+        }
+    }
+
+    /**
+     * 一次清理的结果
+     *
+     * @param droppedPartitions 删除的分区数
+     * @param deletedRows 分批删除的行数
+     * @param archivedConversations 归档中有过期消息被删除的会话数
+     */
+    public record RetentionResult(int droppedPartitions, long deletedRows, int archivedConversations) {
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.backend.controller.AI.Memory;
+
+import lombok.Data;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 聊天记忆保留策略配置
+ *
+ * 对应配置前缀 chat.memory.retention，示例：
+ * chat:
+ *   memory:
+ *     retention:
+ *       enabled: true
+ *       default-ttl: 90d
+ *       ttl:
+ *         TOOL: 7d
+ *         SYSTEM: 30d
+ */
+@Data
+@ConfigurationProperties(prefix = "chat.memory.retention")
+public class ChatMemoryRetentionProperties {
+
+    /** 是否启用过期清理 */
+    private boolean enabled = false;
+
+    /**
+     * 清理方式：AUTO表示表已分区（手动执行repository/optional/chat_memory_partition.sql）时整区删除，否则分批删除；
+     * PARTITION要求表已分区；DELETE只用分批删除
+     */
+    private Mode mode = Mode.AUTO;
+
+    /** 未单独配置的消息类型使用的保留时长 */
+    private Duration defaultTtl = Duration.ofDays(90);
+
+    /** 按消息类型单独配置的保留时长 */
+    private Map<MessageType, Duration> ttl = new HashMap<>();
+
+    /** 每个分区覆盖的时间跨度 */
+    private Duration partitionInterval = Duration.ofDays(1);
+
+    /** 预先创建的未来分区数量 */
+    private int partitionsAhead = 7;
+
+    /** 分批删除时每批的最大行数 */
+    private int deleteChunkSize = 5000;
+
+    /** 清理任务的cron表达式 */
+    private String cron = "0 15 3 * * *";
+
+    /**
+     * 获取某个消息类型实际生效的保留时长
+     *
+     * @param type 消息类型
+     * @return 保留时长
+     */
+    public Duration ttlOf(MessageType type) {
+        return this.ttl.getOrDefault(type, this.defaultTtl);
+    }
+
+    public enum Mode {
+        AUTO, PARTITION, DELETE
+    }
+}
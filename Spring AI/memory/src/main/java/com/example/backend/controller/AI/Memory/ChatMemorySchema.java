@@ -0,0 +1,61 @@
+package com.example.backend.controller.AI.Memory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+/**
+ * ChatMemorySchema - 聊天记忆表结构脚本
+ *
+ * 1. repository/schema-mysql.sql 按最新结构建表（CREATE TABLE IF NOT EXISTS，已有的表不会被修改）
+ * 2. repository/migration/V{n}__*.sql 把已有的表升级到最新结构，按版本号顺序执行；
+ *    每个脚本都先检查information_schema，可以重复执行，表不存在时什么都不做
+ * 主数据源通过spring.sql.init执行迁移脚本（dev每次启动、pro在schema-init发布步骤中），分片数据源由这里执行
+ */
+public final class ChatMemorySchema {
+
+    public static final String SCHEMA = "repository/schema-mysql.sql";
+
+    public static final String MIGRATIONS = "classpath:repository/migration/V*__*.sql";
+
+    private ChatMemorySchema() {
+    }
+
+    /**
+     * 先执行迁移脚本升级已有的表，再按最新结构创建不存在的表
+     */
+    public static ResourceDatabasePopulator populator() {
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator();
+        for (Resource migration : migrations()) {
+            populator.addScript(migration);
+        }
+        populator.addScript(new ClassPathResource(SCHEMA));
+        return populator;
+    }
+
+    /**
+     * 按版本号排序的迁移脚本
+     */
+    static Resource[] migrations() {
+        try {
+            Resource[] migrations = new PathMatchingResourcePatternResolver().getResources(MIGRATIONS);
+            Arrays.sort(migrations, Comparator.comparingInt(ChatMemorySchema::version));
+            return migrations;
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException("Failed to list chat memory migrations", ex);
+        }
+    }
+
+    private static int version(Resource migration) {
+        String name = Objects.requireNonNull(migration.getFilename());
+        return Integer.parseInt(name.substring(1, name.indexOf("__")));
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.backend.controller.AI.Memory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.function.Consumer;
+
+/**
+ * 聊天记忆全文搜索配置类
+ *
+ * 通过 chat.memory.search.enabled=true 开启。
+ * 索引作为ChatMemoryListener注册到聊天记忆存储中，随saveAll增量更新，定期提交并记录高水位；
+ * 启动后在后台线程从数据库补齐索引，不阻塞启动：
+ * 1. 索引从未提交过时完整构建，单库时流式遍历会话ID，分片时由各分片并行查询
+ * 2. 否则只重建上次提交的高水位之后保存过的会话，补回崩溃时还没提交的增量；
+ *    分片时没有按时间查询会话的入口，重建全部会话
+ * 3. 补齐完成前提交的高水位不超过补齐的起点，补齐中途崩溃时下次启动从同一起点重新补齐
+ */
+@Configuration
+@EnableScheduling
+@EnableConfigurationProperties(ChatMemorySearchProperties.class)
+@ConditionalOnProperty(prefix = "chat.memory.search", name = "enabled", havingValue = "true")
+public class ChatMemorySearchConfig {
+
+    @Bean(destroyMethod = "close")
+    public ChatMemorySearchIndex chatMemorySearchIndex(ChatMemorySearchProperties properties) {
+        return new ChatMemorySearchIndex(Path.of(properties.getDir()), properties.getMaxResultWindow());
+    }
+
+    @Bean
+    public SearchIndexMaintainer chatMemorySearchIndexMaintainer(ChatMemorySearchIndex searchIndex,
+                                                                 ChatMemoryRepository chatMemoryRepository,
+                                                                 ObjectProvider<ChatMemoryTransfer> chatMemoryTransfer,
+                                                                 ChatMemorySearchProperties properties) {
+        return new SearchIndexMaintainer(searchIndex, chatMemoryRepository, chatMemoryTransfer.getIfAvailable(),
+                properties);
+    }
+
+    /**
+     * 负责索引的启动补齐和定期落盘
+     */
+    public static class SearchIndexMaintainer {
+
+        private static final Logger logger = LoggerFactory.getLogger(SearchIndexMaintainer.class);
+
+        private final ChatMemorySearchIndex searchIndex;
+
+        private final ChatMemoryRepository chatMemoryRepository;
+
+        /** 分片时为null */
+        @Nullable
+        private final ChatMemoryTransfer chatMemoryTransfer;
+
+        private final ChatMemorySearchProperties properties;
+
+        public SearchIndexMaintainer(ChatMemorySearchIndex searchIndex, ChatMemoryRepository chatMemoryRepository,
+                                     @Nullable ChatMemoryTransfer chatMemoryTransfer,
+                                     ChatMemorySearchProperties properties) {
+            this.searchIndex = searchIndex;
+            this.chatMemoryRepository = chatMemoryRepository;
+            this.chatMemoryTransfer = chatMemoryTransfer;
+            this.properties = properties;
+        }
+
+        /**
+         * 在后台线程补齐索引，补齐期间搜索结果可能不完整
+         */
+        @EventListener(ApplicationReadyEvent.class)
+        public void catchUpInBackground() {
+            if (!this.properties.isRebuildOnStartup()) {
+                return;
+            }
+            Thread thread = new Thread(() -> {
+                try {
+                    catchUp();
+                }
+                catch (RuntimeException ex) {
+                    logger.error("聊天记忆索引补齐失败，下次启动时从同一高水位重新补齐", ex);
+                }
+            }, "chat-memory-search-catch-up");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * 从数据库补齐索引
+         *
+         * @return 重建的会话数
+         */
+        public long catchUp() {
+            Instant since = this.searchIndex.highWaterMark();
+            // 补齐完成前定时提交不能越过起点
+            this.searchIndex.capHighWaterMark(since == null ? Instant.EPOCH : since);
+            long[] count = { 0 };
+            Consumer<String> index = conversationId -> {
+                this.searchIndex.onSaved(conversationId,
+                        this.chatMemoryRepository.findByConversationId(conversationId));
+                count[0]++;
+            };
+            if (since == null) {
+                logger.info("聊天记忆索引从未提交过，开始从数据库完整构建");
+                if (this.chatMemoryTransfer != null) {
+                    this.chatMemoryTransfer.forEachConversationId(index);
+                }
+                else {
+                    this.chatMemoryRepository.findConversationIds().forEach(index);
+                }
+            }
+            else if (this.chatMemoryTransfer != null) {
+                logger.info("开始补齐聊天记忆索引，重建{}之后保存过的会话", since);
+                this.chatMemoryTransfer.forEachConversationIdSince(since, index);
+            }
+            else {
+                logger.info("分片时无法按时间查询会话，开始重建全部会话的索引");
+                this.chatMemoryRepository.findConversationIds().forEach(index);
+            }
+            this.searchIndex.capHighWaterMark(null);
+            this.searchIndex.commit();
+            logger.info("聊天记忆索引补齐完成，重建{}个会话", count[0]);
+            return count[0];
+        }
+
+        @Scheduled(fixedDelayString = "${chat.memory.search.commit-interval:30s}")
+        public void commit() {
+            this.searchIndex.commit();
+        }
+    }
+}
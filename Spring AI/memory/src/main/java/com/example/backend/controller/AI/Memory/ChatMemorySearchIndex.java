@@ -0,0 +1,357 @@
+package com.example.backend.controller.AI.Memory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.cn.smart.SmartChineseAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.QueryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * ChatMemorySearchIndex - 聊天记忆全文索引
+ *
+ * 基于进程内Lucene索引，替代对TEXT字段的 LIKE '%...%' 扫描：
+ * 1. 使用SmartChineseAnalyzer分词，中文按词切分，英文按单词切分
+ * 2. 作为ChatMemoryListener挂在JdbcChatMemoryRepository上，saveAll提交后只替换该会话的文档
+ * 3. 搜索前按需刷新近实时读取器，写入不会因为刷新而阻塞
+ * 4. 结果按相关度排序并分页返回：按页码翻页时(page + 1) * size不能超过maxResultWindow，
+ *    更深的翻页使用上一页返回的nextCursor（searchAfter），每次只收集一页的结果
+ * 5. saveAll的变更定期提交，提交时在commit user data中记录数据库高水位，之前保存的会话都已落盘；
+ *    进程崩溃丢失的增量由启动时重建高水位之后变化的会话补齐（见ChatMemorySearchConfig）。
+ *    删除和过期清理不会留下更新的时间戳，无法按高水位补齐，回调后立即提交
+ *
+ * 每条消息一个文档，字段：conversationId、position（在会话中的序号）、type、content
+ */
+public class ChatMemorySearchIndex implements ChatMemoryListener, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatMemorySearchIndex.class);
+
+    private static final String FIELD_CONVERSATION_ID = "conversationId";
+
+    private static final String FIELD_POSITION = "position";
+
+    private static final String FIELD_TYPE = "type";
+
+    private static final String FIELD_CONTENT = "content";
+
+    /** 默认的按页码翻页最多能访问到的结果数 */
+    public static final int DEFAULT_MAX_RESULT_WINDOW = 1000;
+
+    private static final String HIGH_WATER_MARK = "highWaterMark";
+
+    /**
+     * saveAll在事务开始前取消息时间戳，事务提交后才回调索引，
+     * 高水位比提交时间提前这么多，覆盖提交时还在进行中的saveAll
+     */
+    private static final Duration HIGH_WATER_MARK_LAG = Duration.ofMinutes(1);
+
+    private final FSDirectory directory;
+
+    private final Analyzer analyzer;
+
+    private final IndexWriter writer;
+
+    private final SearcherManager searcherManager;
+
+    private final QueryBuilder queryBuilder;
+
+    private final int maxResultWindow;
+
+    /** 补齐进行中时为补齐的起点，提交的高水位不能超过它 */
+    @Nullable
+    private volatile Instant highWaterMarkCap;
+
+    public ChatMemorySearchIndex(Path indexDir) {
+        this(indexDir, DEFAULT_MAX_RESULT_WINDOW);
+    }
+
+    /**
+     * @param indexDir 索引目录
+     * @param maxResultWindow 按页码翻页时(page + 1) * size的上限
+     */
+    public ChatMemorySearchIndex(Path indexDir, int maxResultWindow) {
+        Assert.notNull(indexDir, "indexDir cannot be null");
+        Assert.isTrue(maxResultWindow > 0, "maxResultWindow must be positive");
+        this.maxResultWindow = maxResultWindow;
+        try {
+            this.directory = FSDirectory.open(indexDir);
+            this.analyzer = new SmartChineseAnalyzer();
+            IndexWriterConfig config = new IndexWriterConfig(this.analyzer)
+                    .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+            this.writer = new IndexWriter(this.directory, config);
+            this.searcherManager = new SearcherManager(this.writer, null);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException("Failed to open chat memory search index " + indexDir, ex);
+        }
+        this.queryBuilder = new QueryBuilder(this.analyzer);
+    }
+
+    /**
+     * 用会话的最新消息替换索引中该会话的全部文档
+     */
+    @Override
+    public void onSaved(String conversationId, List<Message> messages) {
+        List<Document> documents = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            if (!StringUtils.hasText(message.getText())) {
+                continue;
+            }
+            Document document = new Document();
+            document.add(new StringField(FIELD_CONVERSATION_ID, conversationId, Field.Store.YES));
+            document.add(new StoredField(FIELD_POSITION, i));
+            document.add(new StringField(FIELD_TYPE, message.getMessageType().name(), Field.Store.YES));
+            document.add(new TextField(FIELD_CONTENT, message.getText(), Field.Store.YES));
+            documents.add(document);
+        }
+        try {
+            this.writer.updateDocuments(new Term(FIELD_CONVERSATION_ID, conversationId), documents);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException("Failed to index conversation " + conversationId, ex);
+        }
+    }
+
+    @Override
+    public void onDeleted(String conversationId) {
+        try {
+            this.writer.deleteDocuments(new Term(FIELD_CONVERSATION_ID, conversationId));
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException("Failed to remove conversation " + conversationId + " from index", ex);
+        }
+        commit();
+    }
+
+    /**
+     * 过期清理只删除旧消息，剩余消息的时间戳不变，启动时按高水位补不回来，回调后立即提交
+     */
+    @Override
+    public void onExpired(String conversationId, List<Message> remaining, Map<MessageType, Instant> cutoffs) {
+        ChatMemoryListener.super.onExpired(conversationId, remaining, cutoffs);
+        commit();
+    }
+
+    /**
+     * 全文搜索，按页码翻页
+     *
+     * @param conversationId 限定会话，为null时搜索全部会话
+     * @param keyword 搜索内容
+     * @param page 页码，从0开始
+     * @param size 每页条数
+     * @return 按相关度排序的一页结果
+     * @throws IllegalArgumentException 如果(page + 1) * size超过maxResultWindow
+     */
+    public SearchPage search(@Nullable String conversationId, String keyword, int page, int size) {
+        Assert.isTrue(page >= 0, "page must not be negative");
+        Assert.isTrue(size > 0, "size must be positive");
+        Assert.isTrue((long) (page + 1) * size <= this.maxResultWindow,
+                () -> "(page + 1) * size cannot exceed " + this.maxResultWindow + ", use nextCursor for deeper pages");
+        return search(conversationId, keyword, null, page * size, size);
+    }
+
+    /**
+     * 全文搜索，从游标之后继续，翻页深度不受maxResultWindow限制
+     *
+     * 游标记录上一页最后一条的得分和Lucene文档号，两次请求之间索引发生合并时可能有少量结果重复或遗漏
+     *
+     * @param conversationId 限定会话，为null时搜索全部会话
+     * @param keyword 搜索内容
+     * @param cursor 上一页返回的nextCursor，为null时从第一条开始
+     * @param size 每页条数
+     * @return 按相关度排序的一页结果
+     * @throws IllegalArgumentException 如果游标无效
+     */
+    public SearchPage searchAfter(@Nullable String conversationId, String keyword, @Nullable String cursor,
+                                  int size) {
+        Assert.isTrue(size > 0, "size must be positive");
+        return search(conversationId, keyword, decodeCursor(cursor), 0, size);
+    }
+
+    private SearchPage search(@Nullable String conversationId, String keyword, @Nullable ScoreDoc after, int offset,
+                              int size) {
+        Query textQuery = StringUtils.hasText(keyword)
+                ? this.queryBuilder.createBooleanQuery(FIELD_CONTENT, keyword) : null;
+        if (textQuery == null) {
+            return new SearchPage(0, List.of(), null);
+        }
+        BooleanQuery.Builder query = new BooleanQuery.Builder().add(textQuery, BooleanClause.Occur.MUST);
+        if (conversationId != null) {
+            query.add(new TermQuery(new Term(FIELD_CONVERSATION_ID, conversationId)), BooleanClause.Occur.FILTER);
+        }
+
+        try {
+            this.searcherManager.maybeRefresh();
+            IndexSearcher searcher = this.searcherManager.acquire();
+            try {
+                TopDocs topDocs = after == null ? searcher.search(query.build(), offset + size)
+                        : searcher.searchAfter(after, query.build(), size);
+                StoredFields storedFields = searcher.storedFields();
+                List<SearchHit> hits = new ArrayList<>(size);
+                ScoreDoc[] scoreDocs = topDocs.scoreDocs;
+                for (int i = offset; i < scoreDocs.length; i++) {
+                    Document document = storedFields.document(scoreDocs[i].doc);
+                    hits.add(new SearchHit(document.get(FIELD_CONVERSATION_ID),
+                            document.getField(FIELD_POSITION).numericValue().intValue(),
+                            MessageType.valueOf(document.get(FIELD_TYPE)),
+                            document.get(FIELD_CONTENT),
+                            scoreDocs[i].score));
+                }
+                // 取满一页时才可能还有下一页
+                String nextCursor = scoreDocs.length == offset + size
+                        ? encodeCursor(scoreDocs[scoreDocs.length - 1]) : null;
+                return new SearchPage(topDocs.totalHits.value, hits, nextCursor);
+            }
+            finally {
+                this.searcherManager.release(searcher);
+            }
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException("Failed to search chat memory", ex);
+        }
+    }
+
+    /**
+     * 索引中是否没有任何文档
+     */
+    public boolean isEmpty() {
+        return this.writer.getDocStats().numDocs == 0;
+    }
+
+    /**
+     * 最近一次提交记录的数据库高水位，之前保存的会话都已在索引中
+     *
+     * @return 高水位，索引从未提交过时为null
+     */
+    @Nullable
+    public Instant highWaterMark() {
+        // 打开索引时取自最近一次提交的commit user data
+        Iterable<Map.Entry<String, String>> commitData = this.writer.getLiveCommitData();
+        if (commitData == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> entry : commitData) {
+            if (HIGH_WATER_MARK.equals(entry.getKey())) {
+                return Instant.ofEpochMilli(Long.parseLong(entry.getValue()));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 限制之后提交的高水位：从数据库补齐期间设为补齐的起点，补齐完成前崩溃时下次启动仍从该起点补齐
+     *
+     * @param cap 高水位上限，为null时取消限制
+     */
+    public void capHighWaterMark(@Nullable Instant cap) {
+        this.highWaterMarkCap = cap;
+    }
+
+    /**
+     * 把已写入的变更持久化到磁盘，同时记录高水位
+     */
+    public synchronized void commit() {
+        try {
+            if (this.writer.hasUncommittedChanges()) {
+                Instant highWaterMark = Instant.now().minus(HIGH_WATER_MARK_LAG);
+                Instant cap = this.highWaterMarkCap;
+                if (cap != null && cap.isBefore(highWaterMark)) {
+                    highWaterMark = cap;
+                }
+                this.writer.setLiveCommitData(
+                        Map.of(HIGH_WATER_MARK, Long.toString(highWaterMark.toEpochMilli())).entrySet());
+                this.writer.commit();
+            }
+        }
+        catch (IOException ex) {
+            logger.warn("提交聊天记忆索引失败", ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        commit();
+        this.searcherManager.close();
+        this.writer.close();
+        this.directory.close();
+        this.analyzer.close();
+    }
+
+    private static String encodeCursor(ScoreDoc last) {
+        String value = Integer.toHexString(Float.floatToIntBits(last.score)) + "." + last.doc;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Nullable
+    private static ScoreDoc decodeCursor(@Nullable String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            int dot = value.indexOf('.');
+            float score = Float.intBitsToFloat(Integer.parseUnsignedInt(value.substring(0, dot), 16));
+            return new ScoreDoc(Integer.parseInt(value.substring(dot + 1)), score);
+        }
+        catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, ex);
+        }
+    }
+
+    /**
+     * 一页搜索结果
+     *
+     * @param total 命中总数
+     * @param hits 当前页的结果
+     * @param nextCursor 下一页的游标，传给searchAfter继续翻页，没有更多结果时为null
+     */
+    public record SearchPage(long total, List<SearchHit> hits, @Nullable String nextCursor) {
+    }
+
+    /**
+     * 一条搜索结果
+     *
+     * @param conversationId 会话ID
+     * @param position 消息在会话中的序号
+     * @param type 消息类型
+     * @param content 消息内容
+     * @param score 相关度得分
+     */
+    public record SearchHit(String conversationId, int position, MessageType type, String content, float score) {
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.backend.controller.AI.Memory;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 聊天记忆全文搜索配置
+ *
+ * 对应配置前缀 chat.memory.search
+ */
+@Data
+@ConfigurationProperties(prefix = "chat.memory.search")
+public class ChatMemorySearchProperties {
+
+    /** 是否启用全文搜索 */
+    private boolean enabled = false;
+
+    /** 索引目录 */
+    private String dir = "./index/chat-memory";
+
+    /** 索引变更落盘的间隔，崩溃时最多丢失这段时间的增量，启动时按高水位补齐 */
+    private Duration commitInterval = Duration.ofSeconds(30);
+
+    /**
+     * 启动后是否在后台从数据库补齐索引：索引从未提交过时完整构建，
+     * 否则重建上次提交的高水位之后保存过的会话，补回进程崩溃时还没提交的增量
+     */
+    private boolean rebuildOnStartup = true;
+
+    /** 按页码翻页最多能访问到的结果数，更深的翻页需要使用游标 */
+    private int maxResultWindow = ChatMemorySearchIndex.DEFAULT_MAX_RESULT_WINDOW;
+}
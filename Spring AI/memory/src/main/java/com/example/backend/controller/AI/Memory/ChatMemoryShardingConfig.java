@@ -0,0 +1,152 @@
+package com.example.backend.controller.AI.Memory;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.time.Clock;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 聊天记忆分片配置类
+ *
+ * 通过 chat.memory.sharding.enabled=true 开启，
+ * 为每个分片创建独立的数据源和JdbcChatMemoryRepository，再用ShardedChatMemoryRepository按会话ID路由。
+ * 标记为joining的分片在启动后在线加入，归属变化的会话在后台迁移。
+ * 迁移只在本实例内串行化同一会话的读写，实例通过ShardInstanceRegistry在各分片上登记，
+ * 带有joining分片时存在其他存活的实例、或与正在运行的实例分片集合不同时启动失败。
+ *
+ * 过期清理、冷会话归档和导出导入（memory-transfer profile）直接操作主数据源上的表，分片后主数据源中没有聊天记忆，
+ * 这些功能与分片互斥，同时开启时启动失败，而不是静默地什么都不做。
+ */
+@Configuration
+@EnableScheduling
+@EnableConfigurationProperties(ChatMemoryShardingProperties.class)
+@ConditionalOnProperty(prefix = "chat.memory.sharding", name = "enabled", havingValue = "true")
+public class ChatMemoryShardingConfig {
+
+    /** 只支持主数据源的功能开关 */
+    private static final List<String> SINGLE_DATABASE_FEATURES = List.of(
+            "chat.memory.retention.enabled", "chat.memory.archive.enabled");
+
+    public ChatMemoryShardingConfig(Environment environment) {
+        for (String feature : SINGLE_DATABASE_FEATURES) {
+            if (environment.getProperty(feature, Boolean.class, false)) {
+                throw new IllegalStateException(feature + " cannot be used with chat.memory.sharding.enabled, "
+                        + "chat memory is no longer stored in the primary data source");
+            }
+        }
+        if (environment.matchesProfiles("memory-transfer")) {
+            throw new IllegalStateException("memory-transfer profile cannot be used with chat.memory.sharding.enabled, "
+                    + "chat memory is no longer stored in the primary data source");
+        }
+    }
+
+    /**
+     * 为每个分片创建独立的数据源和JdbcChatMemoryRepository
+     */
+    @Bean
+    public Shards chatMemoryShards(ChatMemoryShardingProperties properties) {
+        Map<String, JdbcChatMemoryRepository> active = new LinkedHashMap<>();
+        Map<String, JdbcChatMemoryRepository> joining = new LinkedHashMap<>();
+        for (ChatMemoryShardingProperties.Shard shard : properties.getShards()) {
+            DataSource dataSource = DataSourceBuilder.create()
+                    .url(shard.getUrl())
+                    .username(shard.getUsername())
+                    .password(shard.getPassword())
+                    .driverClassName(shard.getDriverClassName())
+                    .build();
+            if (properties.isInitializeSchema()) {
+                ChatMemorySchema.populator().execute(dataSource);
+            }
+            JdbcChatMemoryRepository repository = JdbcChatMemoryRepository.builder()
+                    .dataSource(dataSource)
+                    .dialect(new MysqlChatMemoryRepositoryDialect())
+                    .build();
+            (shard.isJoining() ? joining : active).put(shard.getName(), repository);
+        }
+        return new Shards(active, joining);
+    }
+
+    /**
+     * 在所有分片上登记本实例，分片集合与其他存活的实例冲突时启动失败
+     */
+    @Bean(destroyMethod = "close")
+    public ShardInstanceRegistry chatMemoryShardInstanceRegistry(Shards shards,
+                                                                 ChatMemoryShardingProperties properties) {
+        Map<String, JdbcTemplate> jdbcTemplates = new LinkedHashMap<>();
+        shards.active().forEach((name, repository) -> jdbcTemplates.put(name, repository.jdbcTemplate()));
+        shards.joining().forEach((name, repository) -> jdbcTemplates.put(name, repository.jdbcTemplate()));
+        ShardInstanceRegistry registry = new ShardInstanceRegistry(jdbcTemplates, properties.getHeartbeatInterval(),
+                Clock.systemUTC());
+        registry.register(!shards.joining().isEmpty());
+        return registry;
+    }
+
+    @Bean(destroyMethod = "close")
+    @Primary
+    public ShardedChatMemoryRepository shardedChatMemoryRepository(Shards shards,
+                                                                   ShardInstanceRegistry registry,
+                                                                   ChatMemoryShardingProperties properties,
+                                                                   ObjectProvider<ChatMemoryListener> listeners) {
+        List<ChatMemoryListener> effectiveListeners = listeners.orderedStream().toList();
+        // 监听器挂在分片路由层，避免迁移过程中的内部复制和删除触发回调
+        ShardedChatMemoryRepository.Builder builder = ShardedChatMemoryRepository.builder()
+                .virtualNodes(properties.getVirtualNodes())
+                .listeners(effectiveListeners);
+        shards.active().forEach(builder::shard);
+        ShardedChatMemoryRepository repository = builder.build();
+        if (!shards.joining().isEmpty()) {
+            // 新哈希环立即生效，迁移在后台进行，失败时读取继续回落到旧分片
+            repository.addShards(shards.joining());
+        }
+        return repository;
+    }
+
+    @Bean
+    public ShardHeartbeat chatMemoryShardHeartbeat(ShardInstanceRegistry registry,
+                                                   ShardedChatMemoryRepository repository) {
+        return new ShardHeartbeat(registry, repository);
+    }
+
+    /**
+     * 配置的分片
+     *
+     * @param active 启动时就在哈希环上的分片
+     * @param joining 启动后在线加入的分片
+     */
+    public record Shards(Map<String, JdbcChatMemoryRepository> active,
+                         Map<String, JdbcChatMemoryRepository> joining) {
+    }
+
+    /**
+     * 定时刷新实例登记
+     */
+    public static class ShardHeartbeat {
+
+        private final ShardInstanceRegistry registry;
+
+        private final ShardedChatMemoryRepository repository;
+
+        public ShardHeartbeat(ShardInstanceRegistry registry, ShardedChatMemoryRepository repository) {
+            this.registry = registry;
+            this.repository = repository;
+        }
+
+        @Scheduled(fixedDelayString = "${chat.memory.sharding.heartbeat-interval:10s}")
+        public void heartbeat() {
+            this.registry.heartbeat(this.repository.isRebalancing());
+        }
+    }
+}
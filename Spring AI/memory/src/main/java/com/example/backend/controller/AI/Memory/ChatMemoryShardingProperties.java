@@ -0,0 +1,69 @@
+package com.example.backend.controller.AI.Memory;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 聊天记忆分片配置
+ *
+ * 对应配置前缀 chat.memory.sharding，示例：
+ * chat:
+ *   memory:
+ *     sharding:
+ *       enabled: true
+ *       shards:
+ *         - name: shard-0
+ *           url: jdbc:mysql://db0:3306/chat
+ *           username: root
+ *           password: xxx
+ *         - name: shard-1
+ *           url: jdbc:mysql://db1:3306/chat
+ *           joining: true
+ *
+ * 分片后聊天记忆不在主数据源中，基于主数据源的过期清理、冷会话归档和导出导入不能同时开启。
+ * 增加分片（joining）时只能运行一个实例：先停掉所有实例，用新配置启动一个实例，迁移完成并去掉joining标记后再扩容，
+ * 启动时由ShardInstanceRegistry检查
+ */
+@Data
+@ConfigurationProperties(prefix = "chat.memory.sharding")
+public class ChatMemoryShardingProperties {
+
+    /** 是否启用分片，启用后主数据源不再存放聊天记忆 */
+    private boolean enabled = false;
+
+    /** 每个分片在哈希环上的虚拟节点数 */
+    private int virtualNodes = 160;
+
+    /** 启动时是否在每个分片上执行迁移和建表脚本，见ChatMemorySchema */
+    private boolean initializeSchema = true;
+
+    /** 实例登记的心跳间隔，超过3个间隔没有刷新的实例视为已退出 */
+    private Duration heartbeatInterval = Duration.ofSeconds(10);
+
+    /** 分片列表，名称参与哈希计算，上线后不要修改 */
+    private List<Shard> shards = new ArrayList<>();
+
+    @Data
+    public static class Shard {
+
+        private String name;
+
+        private String url;
+
+        private String username;
+
+        private String password;
+
+        private String driverClassName = "com.mysql.cj.jdbc.Driver";
+
+        /**
+         * 新加入的分片，启动时先按不含它的哈希环建立路由，再在线加入并把归属变化的会话迁移过来。
+         * 迁移是幂等的，日志提示迁移完成后去掉该标记即可；带有该标记时不能有其他实例在运行
+         */
+        private boolean joining = false;
+    }
+}
@@ -0,0 +1,514 @@
+package com.example.backend.controller.AI.Memory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+/**
+ * ChatMemoryTransfer - 聊天记忆流式导出/导入
+ *
+ * 1. 导出按 (conversation_id, timestamp) 顺序流式读取，JDBC按fetchSize分批拉取，内存占用与总行数无关
+ *    MySQL需要在连接串中加 useCursorFetch=true，fetchSize才会生效
+ * 2. 导出以会话为单位推进检查点，中断后传入最后一个完整会话ID即可从下一个会话继续，
+ *    继续导出时不再输出文件头，输出直接接在已写出的完整会话之后
+ * 3. 导入使用多行 INSERT ... VALUES (...), (...) 批量写入，每批单独提交；
+ *    按来源导入时已导入的行数和这一批数据在同一个事务中写入spring_ai_chat_memory_transfer，
+ *    中断后从该行数继续，不会因为进度晚于数据落盘而重复导入，全部完成后删除进度
+ * 4. 支持NDJSON（一行一条消息）和紧凑的二进制格式
+ * 5. 会读写全部用户的对话，只通过memory-transfer profile在命令行执行（见ChatMemoryTransferRunner），不对外提供HTTP接口
+ * 6. payload列（工具调用、工具响应和元数据）原样导出导入，不做解码
+ */
+public class ChatMemoryTransfer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatMemoryTransfer.class);
+
+    private static final int BINARY_MAGIC = 0x434D4558; // "CMEX"
+
+    private static final int BINARY_VERSION = 1;
+
+    private static final byte BINARY_ROW = 1;
+
+    private static final byte BINARY_END = 0;
+
+    private static final MessageType[] TYPES = MessageType.values();
+
+    private static final String EXPORT_SQL = "SELECT conversation_id, content, type, `timestamp`, payload "
+            + "FROM spring_ai_chat_memory WHERE conversation_id > ? ORDER BY conversation_id, `timestamp`";
+
+    private static final String SELECT_CONVERSATION_IDS_SQL = "SELECT DISTINCT conversation_id "
+            + "FROM spring_ai_chat_memory ORDER BY conversation_id";
+
+    /** 列出所有类型，MySQL可以按(type, timestamp)索引做范围扫描，而不是扫描整张表 */
+    private static final String SELECT_CONVERSATION_IDS_SINCE_SQL = "SELECT DISTINCT conversation_id "
+            + "FROM spring_ai_chat_memory WHERE type IN ('USER', 'ASSISTANT', 'SYSTEM', 'TOOL') AND `timestamp` >= ?";
+
+    private static final String INSERT_PREFIX = "INSERT INTO spring_ai_chat_memory "
+            + "(conversation_id, content, type, `timestamp`, payload) VALUES ";
+
+    private static final String SELECT_PROGRESS_SQL = "SELECT imported_rows FROM spring_ai_chat_memory_transfer "
+            + "WHERE source = ?";
+
+    private static final String UPDATE_PROGRESS_SQL = "UPDATE spring_ai_chat_memory_transfer "
+            + "SET imported_rows = ? WHERE source = ?";
+
+    private static final String INSERT_PROGRESS_SQL = "INSERT INTO spring_ai_chat_memory_transfer "
+            + "(imported_rows, source) VALUES (?, ?)";
+
+    private static final String DELETE_PROGRESS_SQL = "DELETE FROM spring_ai_chat_memory_transfer WHERE source = ?";
+
+    /** 设置了fetchSize的JdbcTemplate，只用于流式读取 */
+    private final JdbcTemplate streamingJdbcTemplate;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    /** 多行INSERT每条语句包含的行数 */
+    private final int insertBatchRows;
+
+    /** 满批使用的INSERT语句，预先拼好避免每批重复构造 */
+    private final String fullBatchInsertSql;
+
+    public ChatMemoryTransfer(JdbcTemplate jdbcTemplate, int fetchSize, int insertBatchRows) {
+        Assert.notNull(jdbcTemplate, "jdbcTemplate cannot be null");
+        Assert.isTrue(fetchSize > 0, "fetchSize must be positive");
+        Assert.isTrue(insertBatchRows > 0, "insertBatchRows must be positive");
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(
+                new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+        this.streamingJdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.streamingJdbcTemplate.setFetchSize(fetchSize);
+        this.insertBatchRows = insertBatchRows;
+        this.fullBatchInsertSql = insertSql(insertBatchRows);
+    }
+
+    /**
+     * 流式导出
+     *
+     * @param out 输出流，不会被关闭
+     * @param format 导出格式
+     * @param afterConversationId 从该会话之后继续导出，为null时从头开始；不为null时不输出文件头
+     * @param checkpoint 每写完并刷新一个完整会话后回调该会话ID，可以为null
+     * @return 导出结果
+     */
+    public ExportResult export(OutputStream out, Format format, @Nullable String afterConversationId,
+                               @Nullable Consumer<String> checkpoint) {
+        Assert.notNull(out, "out cannot be null");
+        Assert.notNull(format, "format cannot be null");
+        RowWriter writer = format == Format.NDJSON ? new NdjsonWriter(out) : new BinaryWriter(out);
+        long[] rows = { 0 };
+        long[] conversations = { 0 };
+        String[] current = { null };
+
+        try {
+            if (afterConversationId == null) {
+                writer.begin();
+            }
+            this.streamingJdbcTemplate.query(EXPORT_SQL, rs -> {
+                String conversationId = rs.getString(1);
+                if (!conversationId.equals(current[0])) {
+                    if (current[0] != null) {
+                        completeConversation(writer, current[0], checkpoint);
+                    }
+                    current[0] = conversationId;
+                    conversations[0]++;
+                }
+                try {
+                    writer.write(conversationId, MessageType.valueOf(rs.getString(3)), rs.getString(2),
+                            rs.getTimestamp(4).getTime(), rs.getString(5));
+                }
+                catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                rows[0]++;
+            }, afterConversationId == null ? "" : afterConversationId);
+            if (current[0] != null) {
+                completeConversation(writer, current[0], checkpoint);
+            }
+            writer.end();
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException("Failed to export chat memory", ex);
+        }
+        logger.info("导出聊天记忆完成，会话{}个，消息{}条", conversations[0], rows[0]);
+        return new ExportResult(rows[0], conversations[0], current[0]);
+    }
+
+    /**
+     * 流式导入
+     *
+     * @param in 输入流，不会被关闭
+     * @param format 输入格式
+     * @param skipRows 跳过的行数
+     * @return 导入结果，rows包含跳过的行数
+     */
+    public ImportResult importFrom(InputStream in, Format format, long skipRows) {
+        return importFrom(in, format, skipRows, null, null);
+    }
+
+    /**
+     * 可以中断后继续的流式导入，每批数据和累计行数在同一个事务中提交
+     *
+     * @param in 输入流，不会被关闭
+     * @param format 输入格式
+     * @param source 导入来源的标识（通常是文件的绝对路径），同一来源再次导入时从上次提交的行数继续
+     * @param progress 每批提交后回调累计导入的行数（包含跳过的行），可以为null
+     * @return 导入结果，rows包含跳过的行数
+     */
+    public ImportResult importFrom(InputStream in, Format format, String source, @Nullable LongConsumer progress) {
+        Assert.hasText(source, "source cannot be empty");
+        List<Long> committed = this.jdbcTemplate.queryForList(SELECT_PROGRESS_SQL, Long.class, source);
+        long skipRows = committed.isEmpty() ? 0 : committed.get(0);
+        if (skipRows > 0) {
+            logger.info("从导入进度继续，{}已导入{}行", source, skipRows);
+        }
+        ImportResult result = importFrom(in, format, skipRows, source, progress);
+        this.jdbcTemplate.update(DELETE_PROGRESS_SQL, source);
+        return result;
+    }
+
+    private ImportResult importFrom(InputStream in, Format format, long skipRows, @Nullable String source,
+                                    @Nullable LongConsumer progress) {
+        Assert.notNull(in, "in cannot be null");
+        Assert.notNull(format, "format cannot be null");
+        RowReader reader = format == Format.NDJSON ? new NdjsonReader(in) : new BinaryReader(in);
+        List<Object[]> batch = new ArrayList<>(this.insertBatchRows);
+        long read = 0;
+        long imported = skipRows;
+        try {
+            Row row;
+            while ((row = reader.next()) != null) {
+                if (read++ < skipRows) {
+                    continue;
+                }
+                batch.add(new Object[] { row.conversationId(), row.content(), row.type().name(),
+                        new Timestamp(row.timestamp()), row.payload() });
+                if (batch.size() == this.insertBatchRows) {
+                    imported = flush(batch, imported, source);
+                    if (progress != null) {
+                        progress.accept(imported);
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                imported = flush(batch, imported, source);
+                if (progress != null) {
+                    progress.accept(imported);
+                }
+            }
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException("Failed to import chat memory after " + imported + " rows", ex);
+        }
+        logger.info("导入聊天记忆完成，累计{}行", imported);
+        return new ImportResult(imported);
+    }
+
+    /**
+     * 流式遍历所有会话ID，不会把全部ID加载到内存
+     *
+     * @param action 对每个会话ID执行的操作
+     */
+    public void forEachConversationId(Consumer<String> action) {
+        this.streamingJdbcTemplate.query(SELECT_CONVERSATION_IDS_SQL, rs -> {
+            action.accept(rs.getString(1));
+        });
+    }
+
+    /**
+     * 流式遍历在since之后保存过的会话ID；saveAll会重写会话的全部行，最新一行的时间戳就是最后保存的时间
+     *
+     * @param since 起始时间（包含）
+     * @param action 对每个会话ID执行的操作
+     */
+    public void forEachConversationIdSince(Instant since, Consumer<String> action) {
+        Assert.notNull(since, "since cannot be null");
+        this.streamingJdbcTemplate.query(SELECT_CONVERSATION_IDS_SINCE_SQL, rs -> {
+            action.accept(rs.getString(1));
+        }, Timestamp.from(since));
+    }
+
+    private static void completeConversation(RowWriter writer, String conversationId,
+                                             @Nullable Consumer<String> checkpoint) {
+        if (checkpoint == null) {
+            return;
+        }
+        try {
+            writer.flush();
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        checkpoint.accept(conversationId);
+    }
+
+    /**
+     * 在一个事务中写入这一批数据，按来源导入时同时更新累计行数
+     *
+     * @return 写入后的累计行数
+     */
+    private long flush(List<Object[]> batch, long imported, @Nullable String source) {
+        String sql = batch.size() == this.insertBatchRows ? this.fullBatchInsertSql : insertSql(batch.size());
+        Object[] args = new Object[batch.size() * 5];
+        for (int i = 0; i < batch.size(); i++) {
+            System.arraycopy(batch.get(i), 0, args, i * 5, 5);
+        }
+        long total = imported + batch.size();
+        this.transactionTemplate.executeWithoutResult(status -> {
+            this.jdbcTemplate.update(sql, args);
+            if (source != null && this.jdbcTemplate.update(UPDATE_PROGRESS_SQL, total, source) == 0) {
+                this.jdbcTemplate.update(INSERT_PROGRESS_SQL, total, source);
+            }
+        });
+        batch.clear();
+        return total;
+    }
+
+    private static String insertSql(int rows) {
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX.length() + rows * 19).append(INSERT_PREFIX);
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append("(?, ?, ?, ?, ?)");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * 导出/导入格式
+     */
+    public enum Format {
+        /** 每行一个JSON对象 */
+        NDJSON,
+        /** 带长度前缀的二进制记录 */
+        BINARY
+    }
+
+    /**
+     * 导出结果
+     *
+     * @param rows 导出的消息数
+     * @param conversations 导出的会话数
+     * @param lastConversationId 最后一个导出的会话ID，可作为下一次导出的起点
+     */
+    public record ExportResult(long rows, long conversations, @Nullable String lastConversationId) {
+    }
+
+    /**
+     * 导入结果
+     *
+     * @param rows 累计导入的行数（包含跳过的行）
+     */
+    public record ImportResult(long rows) {
+    }
+
+    private record Row(String conversationId, MessageType type, String content, long timestamp,
+                       @Nullable String payload) {
+    }
+
+    private interface RowWriter {
+
+        void begin() throws IOException;
+
+        void write(String conversationId, MessageType type, String content, long timestamp, @Nullable String payload)
+                throws IOException;
+
+        void flush() throws IOException;
+
+        void end() throws IOException;
+    }
+
+    private interface RowReader {
+
+        @Nullable
+        Row next() throws IOException;
+    }
+
+    private static final class NdjsonWriter implements RowWriter {
+
+        private final BufferedWriter writer;
+
+        private final JSONObject line = new JSONObject(5);
+
+        NdjsonWriter(OutputStream out) {
+            this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        }
+
+        @Override
+        public void begin() {
+        }
+
+        @Override
+        public void write(String conversationId, MessageType type, String content, long timestamp,
+                          @Nullable String payload) throws IOException {
+            this.line.put("conversationId", conversationId);
+            this.line.put("type", type.name());
+            this.line.put("content", content);
+            this.line.put("timestamp", timestamp);
+            // 纯文本消息不输出payload字段，和旧版本导出的文件一致
+            if (payload == null) {
+                this.line.remove("payload");
+            }
+            else {
+                this.line.put("payload", payload);
+            }
+            this.writer.write(this.line.toJSONString());
+            this.writer.write('\n');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.writer.flush();
+        }
+
+        @Override
+        public void end() throws IOException {
+            this.writer.flush();
+        }
+    }
+
+    private static final class NdjsonReader implements RowReader {
+
+        private final BufferedReader reader;
+
+        NdjsonReader(InputStream in) {
+            this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+        }
+
+        @Override
+        @Nullable
+        public Row next() throws IOException {
+            String line;
+            do {
+                line = this.reader.readLine();
+                if (line == null) {
+                    return null;
+                }
+            } while (line.isBlank());
+            JSONObject json = JSON.parseObject(line);
+            return new Row(json.getString("conversationId"), MessageType.valueOf(json.getString("type")),
+                    json.getString("content"), json.getLongValue("timestamp"), json.getString("payload"));
+        }
+    }
+
+    private static final class BinaryWriter implements RowWriter {
+
+        private final DataOutputStream out;
+
+        BinaryWriter(OutputStream out) {
+            this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        }
+
+        @Override
+        public void begin() throws IOException {
+            this.out.writeInt(BINARY_MAGIC);
+            this.out.writeInt(BINARY_VERSION);
+        }
+
+        @Override
+        public void write(String conversationId, MessageType type, String content, long timestamp,
+                          @Nullable String payload) throws IOException {
+            byte[] text = content.getBytes(StandardCharsets.UTF_8);
+            this.out.writeByte(BINARY_ROW);
+            this.out.writeUTF(conversationId);
+            this.out.writeByte(type.ordinal());
+            this.out.writeLong(timestamp);
+            this.out.writeInt(text.length);
+            this.out.write(text);
+            if (payload == null) {
+                this.out.writeInt(-1);
+            }
+            else {
+                byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+                this.out.writeInt(bytes.length);
+                this.out.write(bytes);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.out.flush();
+        }
+
+        @Override
+        public void end() throws IOException {
+            this.out.writeByte(BINARY_END);
+            this.out.flush();
+        }
+    }
+
+    private static final class BinaryReader implements RowReader {
+
+        private final DataInputStream in;
+
+        private boolean started;
+
+        BinaryReader(InputStream in) {
+            this.in = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+        }
+
+        @Override
+        @Nullable
+        public Row next() throws IOException {
+            if (!this.started) {
+                if (this.in.readInt() != BINARY_MAGIC || this.in.readInt() != BINARY_VERSION) {
+                    throw new IOException("Not a chat memory export stream");
+                }
+                this.started = true;
+            }
+            byte marker;
+            try {
+                marker = this.in.readByte();
+            }
+            catch (EOFException ex) {
+                throw new IOException("Truncated chat memory export stream", ex);
+            }
+            if (marker == BINARY_END) {
+                return null;
+            }
+            String conversationId = this.in.readUTF();
+            MessageType type = TYPES[this.in.readByte()];
+            long timestamp = this.in.readLong();
+            byte[] text = new byte[this.in.readInt()];
+            this.in.readFully(text);
+            String payload = null;
+            int payloadLength = this.in.readInt();
+            if (payloadLength >= 0) {
+                byte[] bytes = new byte[payloadLength];
+                this.in.readFully(bytes);
+                payload = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return new Row(conversationId, type, new String(text, StandardCharsets.UTF_8), timestamp, payload);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.backend.controller.AI.Memory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.util.Assert;
+
+/**
+ * ChatMemoryTransferRunner - 命令行方式执行聊天记忆导出/导入
+ *
+ * 导出导入会读写所有用户的对话，不对外提供HTTP接口，只在memory-transfer profile下执行，执行完后进程退出：
+ * java -jar back-end.jar --spring.profiles.active=pro,memory-transfer \
+ *     --chat.memory.transfer.mode=export --chat.memory.transfer.file=/data/chat-memory.ndjson
+ *
+ * 1. 中断后用同样的参数重新执行即可继续，完成后删除进度
+ * 2. 导出的检查点写在 {file}.checkpoint 中，记录文件长度和最后一个完整会话ID，继续时先把文件截断到该长度，最多每秒落盘一次
+ * 3. 导入的进度以文件的绝对路径为来源，和每批数据在同一个事务中写入目标库（见ChatMemoryTransfer），
+ *    提交后、记录进度前中断也不会重复导入
+ */
+public class ChatMemoryTransferRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatMemoryTransferRunner.class);
+
+    /** 导出检查点的最小写入间隔 */
+    private static final long EXPORT_CHECKPOINT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final ChatMemoryTransfer transfer;
+
+    private final Mode mode;
+
+    private final Path file;
+
+    private final ChatMemoryTransfer.Format format;
+
+    private final Path checkpoint;
+
+    /**
+     * @param transfer 导出导入实现
+     * @param mode export或import
+     * @param file 导出的目标文件或导入的源文件
+     * @param format ndjson或binary
+     */
+    public ChatMemoryTransferRunner(ChatMemoryTransfer transfer, String mode, Path file, String format) {
+        Assert.notNull(transfer, "transfer cannot be null");
+        Assert.hasText(mode, "chat.memory.transfer.mode must be export or import");
+        Assert.notNull(file, "file cannot be null");
+        this.transfer = transfer;
+        this.mode = Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        this.file = file;
+        this.format = "binary".equalsIgnoreCase(format)
+                ? ChatMemoryTransfer.Format.BINARY : ChatMemoryTransfer.Format.NDJSON;
+        this.checkpoint = file.resolveSibling(file.getFileName() + ".checkpoint");
+    }
+
+    /**
+     * 执行导出或导入，有检查点时从检查点继续
+     */
+    public void run() throws IOException {
+        if (this.mode == Mode.EXPORT) {
+            export();
+        }
+        else {
+            importFile();
+        }
+        Files.deleteIfExists(this.checkpoint);
+    }
+
+    private void export() throws IOException {
+        long offset = 0;
+        String after = null;
+        if (Files.exists(this.checkpoint)) {
+            String[] parts = Files.readString(this.checkpoint, StandardCharsets.UTF_8).split("\t", 2);
+            offset = Long.parseLong(parts[0]);
+            after = parts[1];
+            logger.info("从检查点继续导出，会话{}之后，文件位置{}", after, offset);
+        }
+        try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // 丢弃检查点之后写了一半的会话
+            channel.truncate(offset);
+            channel.position(offset);
+            long[] lastCheckpoint = { System.nanoTime() };
+            ChatMemoryTransfer.ExportResult result = this.transfer.export(Channels.newOutputStream(channel),
+                    this.format, after, conversationId -> {
+                        long now = System.nanoTime();
+                        if (now - lastCheckpoint[0] < EXPORT_CHECKPOINT_INTERVAL_NANOS) {
+                            return;
+                        }
+                        lastCheckpoint[0] = now;
+                        try {
+                            // 数据先落盘，检查点记录的长度不会超过文件实际长度
+                            channel.force(false);
+                            writeCheckpoint(channel.position() + "\t" + conversationId);
+                        }
+                        catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                    });
+            channel.force(false);
+            logger.info("导出到{}完成，本次导出会话{}个，消息{}条", this.file, result.conversations(), result.rows());
+        }
+    }
+
+    private void importFile() throws IOException {
+        String source = this.file.toAbsolutePath().normalize().toString();
+        try (InputStream in = Files.newInputStream(this.file)) {
+            ChatMemoryTransfer.ImportResult result = this.transfer.importFrom(in, this.format, source, null);
+            logger.info("从{}导入完成，累计{}行", this.file, result.rows());
+        }
+    }
+
+    private void writeCheckpoint(String content) throws IOException {
+        Path temp = this.checkpoint.resolveSibling(this.checkpoint.getFileName() + ".tmp");
+        Files.writeString(temp, content, StandardCharsets.UTF_8);
+        Files.move(temp, this.checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 执行方式
+     */
+    public enum Mode {
+        EXPORT,
+        IMPORT
+    }
+}
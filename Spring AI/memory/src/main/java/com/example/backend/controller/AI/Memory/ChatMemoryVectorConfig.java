@@ -0,0 +1,39 @@
+package com.example.backend.controller.AI.Memory;
+
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+/**
+ * 向量检索记忆配置类
+ *
+ * 通过 chat.memory.vector.enabled=true 开启。
+ * 索引作为ChatMemoryListener注册到聊天记忆存储中，随saveAll增量更新；
+ * 向量使用spring.ai.openai.embedding配置的模型计算。
+ */
+@Configuration
+@EnableConfigurationProperties(ChatMemoryVectorProperties.class)
+@ConditionalOnProperty(prefix = "chat.memory.vector", name = "enabled", havingValue = "true")
+public class ChatMemoryVectorConfig {
+
+    @Bean(destroyMethod = "close")
+    public ChatMemoryVectorIndex chatMemoryVectorIndex(ChatMemoryVectorProperties properties,
+                                                       EmbeddingModel embeddingModel) {
+        return ChatMemoryVectorIndex.builder()
+                .directory(Path.of(properties.getDir()))
+                .embeddingModel(embeddingModel)
+                .m(properties.getM())
+                .efConstruction(properties.getEfConstruction())
+                .efSearch(properties.getEfSearch())
+                .topK(properties.getTopK())
+                .maxMessages(properties.getMaxMessages())
+                .minScore(properties.getMinScore())
+                .offHeap(properties.isOffHeap())
+                .workers(properties.getWorkers())
+                .build();
+    }
+}
@@ -0,0 +1,925 @@
+package com.example.backend.controller.AI.Memory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * ChatMemoryVectorIndex - 基于向量检索的长期对话记忆
+ *
+ * chat4发送按块裁剪的历史消息，数据库按窗口裁剪掉的更早消息按与当前问题的相似度召回，追加在历史之后：
+ * 1. 作为ChatMemoryListener随saveAll增量更新，只对没有见过的USER/ASSISTANT消息计算向量，
+ *    数据库按窗口裁剪掉的旧消息仍然保留在索引中，这正是召回的对象
+ * 2. 每个会话一个HnswGraph，向量保存在连续的float数组中，可选放在堆外
+ * 3. 索引变更追加写入本地日志(vectors.log)，启动时重放日志重建图；
+ *    删除和裁剪会让日志中的旧记录失效，失效记录过多时在启动时或运行中压缩日志
+ * 4. 计算向量和写日志在后台线程池上执行，不阻塞saveAll的调用方：
+ *    同一会话的变更按提交顺序串行执行，排队期间的多次提交合并为一次，待索引的消息按指纹去重；
+ *    不同会话在多个线程上并行，排队的任务不超过有待处理变更的会话数，向量模型变慢时不会无限积压；
+ *    召回时问题的向量化在boundedElastic上执行，不阻塞调用方的线程
+ * 5. 每条消息记录首次索引的时间，过期清理回调onExpired时删除早于该类型截止时间的消息，
+ *    窗口外只存在于索引中的旧消息也随之过期
+ * 6. 每个会话最多索引maxMessages条消息，超过时只保留最新的maxMessages的四分之三并重建图，
+ *    文本和向量占用的内存与会话数 × maxMessages成正比，不会随对话轮数无限增长
+ *
+ * 日志格式：MAGIC(int) VERSION(int) 之后是若干记录，
+ * ADD = 1(byte) conversationId(UTF) fingerprint(long) type(byte) indexedAt(long) textLen(int) text dims(int) floats
+ * DELETE = 2(byte) conversationId(UTF)
+ *
+ * 示例：
+ * ChatMemoryVectorIndex index = ChatMemoryVectorIndex.builder()
+ *     .directory(Path.of("./index/chat-memory-vector"))
+ *     .embeddingModel(embeddingModel)
+ *     .build();
+ */
+public final class ChatMemoryVectorIndex implements ChatMemoryListener, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatMemoryVectorIndex.class);
+
+    private static final int MAGIC = 0x434D5645; // "CMVE"
+
+    private static final int VERSION = 1;
+
+    private static final byte RECORD_ADD = 1;
+
+    private static final byte RECORD_DELETE = 2;
+
+    private static final String LOG_FILE = "vectors.log";
+
+    /** 失效记录超过该数量且多于有效记录时压缩日志 */
+    private static final int COMPACT_THRESHOLD = 1000;
+
+    private static final MessageType[] TYPES = MessageType.values();
+
+    private final Path logFile;
+
+    private final EmbeddingModel embeddingModel;
+
+    private final int m;
+
+    private final int efConstruction;
+
+    private final int efSearch;
+
+    private final int topK;
+
+    private final int maxMessages;
+
+    private final double minScore;
+
+    private final boolean offHeap;
+
+    private final Executor executor;
+
+    /** 由本类创建的线程池，关闭时一起关闭 */
+    @Nullable
+    private final ExecutorService ownedExecutor;
+
+    private final Map<String, Conversation> conversations = new ConcurrentHashMap<>();
+
+    /** 有待处理变更的会话，存在即表示该会话的任务已提交或正在执行 */
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+
+    private DataOutputStream log;
+
+    /** 日志中已失效的记录数，读写需持有this的锁 */
+    private long deadRecords;
+
+    private ChatMemoryVectorIndex(Builder builder) {
+        this.logFile = builder.directory.resolve(LOG_FILE);
+        this.embeddingModel = builder.embeddingModel;
+        this.m = builder.m;
+        this.efConstruction = builder.efConstruction;
+        this.efSearch = builder.efSearch;
+        this.topK = builder.topK;
+        this.maxMessages = builder.maxMessages;
+        this.minScore = builder.minScore;
+        this.offHeap = builder.offHeap;
+        if (builder.executor != null) {
+            this.executor = builder.executor;
+            this.ownedExecutor = null;
+        }
+        else {
+            AtomicInteger threads = new AtomicInteger();
+            this.ownedExecutor = Executors.newFixedThreadPool(builder.workers, runnable -> {
+                Thread thread = new Thread(runnable, "chat-memory-vector-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.executor = this.ownedExecutor;
+        }
+        try {
+            Files.createDirectories(builder.directory);
+            replay();
+            this.log = openLog();
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException("Failed to open chat memory vector index " + builder.directory, ex);
+        }
+    }
+
+    @Override
+    public void onSaved(String conversationId, List<Message> messages) {
+        submit(conversationId, pending -> pending.save(messages));
+    }
+
+    @Override
+    public void onDeleted(String conversationId) {
+        submit(conversationId, Pending::delete);
+    }
+
+    /**
+     * 删除早于各类型截止时间索引的消息，剩余的消息重建图，日志中写入删除记录后重新写入剩余的消息
+     */
+    @Override
+    public void onExpired(String conversationId, List<Message> remaining, Map<MessageType, Instant> cutoffs) {
+        submit(conversationId, pending -> pending.expire(cutoffs));
+    }
+
+    /**
+     * 召回与当前问题相关的较早消息
+     *
+     * @param conversationId 会话ID
+     * @param query 当前问题
+     * @param history 已经放入提示词的历史消息，召回结果中会排除它们
+     * @return 最多topK条消息，按原始顺序排列；向量化失败时为空列表
+     */
+    public Mono<List<Message>> recall(String conversationId, String query, List<Message> history) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        Conversation conversation = this.conversations.get(conversationId);
+        if (conversation == null || !StringUtils.hasText(query)) {
+            return Mono.just(List.of());
+        }
+        Set<Long> excluded = new HashSet<>();
+        for (Message message : history) {
+            if (StringUtils.hasText(message.getText())) {
+                excluded.add(fingerprint(message.getMessageType(), message.getText()));
+            }
+        }
+        return Mono.fromCallable(() -> this.embeddingModel.embed(query))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(vector -> search(conversation, vector, excluded))
+                .onErrorResume(ex -> {
+                    // 召回失败时只用历史消息继续对话
+                    logger.warn("会话{}的问题向量化失败，跳过召回", conversationId, ex);
+                    return Mono.just(List.of());
+                });
+    }
+
+    /**
+     * 会话已索引的消息数
+     */
+    public int size(String conversationId) {
+        Conversation conversation = this.conversations.get(conversationId);
+        if (conversation == null) {
+            return 0;
+        }
+        synchronized (conversation) {
+            return conversation.entries.size();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (this.ownedExecutor != null) {
+            this.ownedExecutor.shutdown();
+            try {
+                if (!this.ownedExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    logger.warn("向量索引关闭时仍有未完成的任务");
+                }
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            try {
+                this.log.close();
+            }
+            catch (IOException ex) {
+                logger.warn("关闭向量索引日志失败", ex);
+            }
+        }
+    }
+
+    private List<Message> search(Conversation conversation, float[] vector, Set<Long> excluded) {
+        int k = this.topK + excluded.size();
+        List<Entry> hits = new ArrayList<>(this.topK);
+        synchronized (conversation) {
+            if (conversation.graph == null || conversation.graph.dimensions() != vector.length) {
+                return List.of();
+            }
+            for (long result : conversation.graph.search(vector, k, Math.max(this.efSearch, k))) {
+                Entry entry = conversation.entries.get(HnswGraph.id(result));
+                if (HnswGraph.score(result) < this.minScore || excluded.contains(entry.fingerprint())) {
+                    continue;
+                }
+                hits.add(entry);
+                if (hits.size() == this.topK) {
+                    break;
+                }
+            }
+        }
+        hits.sort((a, b) -> Integer.compare(a.node(), b.node()));
+        List<Message> messages = new ArrayList<>(hits.size());
+        for (Entry entry : hits) {
+            messages.add(entry.type() == MessageType.USER ? new UserMessage(entry.text())
+                    : new AssistantMessage(entry.text()));
+        }
+        return messages;
+    }
+
+    /**
+     * 把变更合并到会话的待处理变更中，会话没有已提交的任务时提交一个
+     */
+    private void submit(String conversationId, Consumer<Pending> change) {
+        boolean[] created = new boolean[1];
+        this.pending.compute(conversationId, (id, pending) -> {
+            if (pending == null) {
+                pending = new Pending();
+                created[0] = true;
+            }
+            change.accept(pending);
+            return pending;
+        });
+        if (created[0]) {
+            this.executor.execute(() -> drain(conversationId));
+        }
+    }
+
+    /**
+     * 依次执行会话的待处理变更，执行期间新提交的变更在下一轮执行，没有变更时移除该会话
+     */
+    private void drain(String conversationId) {
+        while (true) {
+            Pending[] taken = new Pending[1];
+            this.pending.computeIfPresent(conversationId, (id, pending) -> {
+                if (pending.isEmpty()) {
+                    return null;
+                }
+                taken[0] = pending;
+                return new Pending();
+            });
+            if (taken[0] == null) {
+                return;
+            }
+            apply(conversationId, taken[0]);
+        }
+    }
+
+    /**
+     * 执行合并后的变更：删除在最前，过期只影响已经索引的消息，所以先于索引新消息执行
+     */
+    private void apply(String conversationId, Pending pending) {
+        if (pending.deleted) {
+            delete(conversationId);
+        }
+        if (!pending.cutoffs.isEmpty()) {
+            try {
+                expire(conversationId, pending.cutoffs);
+            }
+            catch (RuntimeException ex) {
+                logger.warn("会话{}的过期向量清理失败", conversationId, ex);
+            }
+        }
+        if (!pending.messages.isEmpty()) {
+            try {
+                index(conversationId, pending.messages);
+            }
+            catch (RuntimeException ex) {
+                // 没有记录指纹，下一次saveAll时这些消息会重新尝试
+                logger.warn("会话{}的消息向量化失败", conversationId, ex);
+            }
+        }
+    }
+
+    private void delete(String conversationId) {
+        synchronized (this) {
+            Conversation removed = this.conversations.remove(conversationId);
+            if (removed == null) {
+                return;
+            }
+            try {
+                this.log.writeByte(RECORD_DELETE);
+                this.log.writeUTF(conversationId);
+                this.log.flush();
+                synchronized (removed) {
+                    this.deadRecords += removed.entries.size() + 1;
+                }
+                compactIfNeeded();
+            }
+            catch (IOException ex) {
+                logger.warn("写入向量索引删除记录失败: {}", conversationId, ex);
+            }
+        }
+    }
+
+    /**
+     * @param messages 指纹到消息，只包含有文本的USER/ASSISTANT消息
+     */
+    private void index(String conversationId, Map<Long, Message> messages) {
+        Conversation conversation = this.conversations.computeIfAbsent(conversationId, id -> new Conversation());
+        List<Message> pending = new ArrayList<>();
+        List<Long> fingerprints = new ArrayList<>();
+        synchronized (conversation) {
+            for (Map.Entry<Long, Message> item : messages.entrySet()) {
+                if (!conversation.fingerprints.contains(item.getKey())) {
+                    pending.add(item.getValue());
+                    fingerprints.add(item.getKey());
+                }
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<String> texts = new ArrayList<>(pending.size());
+        for (Message message : pending) {
+            texts.add(message.getText());
+        }
+        List<float[]> vectors = this.embeddingModel.embed(texts);
+        long indexedAt = System.currentTimeMillis();
+
+        // 写日志和更新内存在同一把锁内，运行中压缩时看到的内存状态与日志一致
+        int oldest;
+        try {
+            synchronized (this) {
+                for (int i = 0; i < pending.size(); i++) {
+                    writeAdd(this.log, conversationId, fingerprints.get(i), pending.get(i).getMessageType(),
+                            indexedAt, pending.get(i).getText(), vectors.get(i));
+                }
+                this.log.flush();
+                synchronized (conversation) {
+                    for (int i = 0; i < pending.size(); i++) {
+                        conversation.add(fingerprints.get(i), pending.get(i).getMessageType(), indexedAt,
+                                pending.get(i).getText(), vectors.get(i));
+                    }
+                    oldest = oldestKept(conversation);
+                }
+            }
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException("Failed to append vector index log", ex);
+        }
+        if (oldest > 0) {
+            retain(conversationId, entry -> entry.node() >= oldest);
+        }
+    }
+
+    private void expire(String conversationId, Map<MessageType, Instant> cutoffs) {
+        retain(conversationId, entry -> {
+            Instant cutoff = cutoffs.get(entry.type());
+            return cutoff == null || entry.indexedAt() >= cutoff.toEpochMilli();
+        });
+    }
+
+    /**
+     * 超过maxMessages时保留的最早节点编号，只保留maxMessages的四分之三，避免之后每次保存都重建；没有超过时返回0
+     */
+    private int oldestKept(Conversation conversation) {
+        int size = conversation.entries.size();
+        if (size <= this.maxMessages) {
+            return 0;
+        }
+        return conversation.entries.get(size - (this.maxMessages - this.maxMessages / 4)).node();
+    }
+
+    /**
+     * 只保留满足条件的消息，重建图，日志中写入删除记录后重新写入保留的消息
+     */
+    private void retain(String conversationId, Predicate<Entry> keep) {
+        Conversation conversation = this.conversations.get(conversationId);
+        if (conversation == null) {
+            return;
+        }
+        Conversation rebuilt;
+        int replaced;
+        synchronized (conversation) {
+            rebuilt = retained(conversation, keep);
+            replaced = conversation.entries.size();
+        }
+        if (rebuilt == null) {
+            return;
+        }
+        try {
+            synchronized (this) {
+                this.log.writeByte(RECORD_DELETE);
+                this.log.writeUTF(conversationId);
+                for (Entry entry : rebuilt.entries) {
+                    writeAdd(this.log, conversationId, entry.fingerprint(), entry.type(), entry.indexedAt(),
+                            entry.text(), rebuilt.graph.vector(entry.node()));
+                }
+                this.log.flush();
+                if (rebuilt.entries.isEmpty()) {
+                    this.conversations.remove(conversationId);
+                }
+                else {
+                    this.conversations.put(conversationId, rebuilt);
+                }
+                // 删除记录和原来的所有ADD都已失效
+                this.deadRecords += replaced + 1;
+                compactIfNeeded();
+            }
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException("Failed to append vector index log", ex);
+        }
+    }
+
+    /**
+     * 用满足条件的消息构建新的会话索引，全部满足时返回null；调用方需持有会话的锁
+     */
+    @Nullable
+    private Conversation retained(Conversation conversation, Predicate<Entry> keep) {
+        List<Entry> kept = new ArrayList<>(conversation.entries.size());
+        for (Entry entry : conversation.entries) {
+            if (keep.test(entry)) {
+                kept.add(entry);
+            }
+        }
+        if (kept.size() == conversation.entries.size()) {
+            return null;
+        }
+        Conversation rebuilt = new Conversation();
+        for (Entry entry : kept) {
+            rebuilt.add(entry.fingerprint(), entry.type(), entry.indexedAt(), entry.text(),
+                    conversation.graph.vector(entry.node()));
+        }
+        return rebuilt;
+    }
+
+    /**
+     * 重放日志重建索引，末尾不完整的记录（写入时进程退出）会被截掉
+     */
+    private void replay() throws IOException {
+        if (!Files.exists(this.logFile)) {
+            return;
+        }
+        long records = 0;
+        long valid = 0;
+        try (CountingInputStream counter = new CountingInputStream(
+                new BufferedInputStream(Files.newInputStream(this.logFile), 1 << 16));
+             DataInputStream in = new DataInputStream(counter)) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a chat memory vector log: " + this.logFile);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported chat memory vector log version " + version + ": " + this.logFile);
+            }
+            valid = counter.count;
+            while (true) {
+                byte record;
+                try {
+                    record = in.readByte();
+                }
+                catch (EOFException ex) {
+                    break;
+                }
+                try {
+                    String conversationId = in.readUTF();
+                    if (record == RECORD_DELETE) {
+                        this.conversations.remove(conversationId);
+                    }
+                    else {
+                        long fingerprint = in.readLong();
+                        MessageType type = TYPES[in.readByte()];
+                        long indexedAt = in.readLong();
+                        byte[] text = new byte[in.readInt()];
+                        in.readFully(text);
+                        float[] vector = new float[in.readInt()];
+                        for (int i = 0; i < vector.length; i++) {
+                            vector[i] = in.readFloat();
+                        }
+                        this.conversations.computeIfAbsent(conversationId, id -> new Conversation())
+                                .add(fingerprint, type, indexedAt, new String(text, StandardCharsets.UTF_8), vector);
+                    }
+                }
+                catch (EOFException ex) {
+                    logger.warn("向量索引日志末尾有不完整的记录，已截断到{}字节", valid);
+                    break;
+                }
+                records++;
+                valid = counter.count;
+            }
+        }
+        try (FileChannel channel = FileChannel.open(this.logFile, StandardOpenOption.WRITE)) {
+            if (channel.size() > valid) {
+                channel.truncate(valid);
+            }
+        }
+
+        // 调小maxMessages后，超出的旧消息在加载时丢弃，并通过压缩从日志中去掉
+        boolean trimmed = false;
+        for (Map.Entry<String, Conversation> item : this.conversations.entrySet()) {
+            Conversation conversation = item.getValue();
+            int oldest = oldestKept(conversation);
+            if (oldest > 0) {
+                item.setValue(retained(conversation, entry -> entry.node() >= oldest));
+                trimmed = true;
+            }
+        }
+        long live = liveRecords();
+        logger.info("向量索引加载完成，会话{}个，消息{}条", this.conversations.size(), live);
+        this.deadRecords = records - live;
+        if (trimmed || compactionDue(live)) {
+            compact();
+        }
+    }
+
+    /**
+     * 失效记录过多时关闭日志、压缩后重新打开；调用方需持有this的锁
+     */
+    private void compactIfNeeded() throws IOException {
+        if (!compactionDue(liveRecords())) {
+            return;
+        }
+        this.log.close();
+        try {
+            compact();
+        }
+        finally {
+            this.log = openLog();
+        }
+    }
+
+    private boolean compactionDue(long live) {
+        return this.deadRecords > COMPACT_THRESHOLD && this.deadRecords > live;
+    }
+
+    private long liveRecords() {
+        long live = 0;
+        for (Conversation conversation : this.conversations.values()) {
+            synchronized (conversation) {
+                live += conversation.entries.size();
+            }
+        }
+        return live;
+    }
+
+    /**
+     * 用内存中的有效记录重写日志；运行中调用时需持有this的锁，期间其他会话的日志写入等待压缩完成
+     */
+    private void compact() throws IOException {
+        Path tmp = this.logFile.resolveSibling(LOG_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (Map.Entry<String, Conversation> item : this.conversations.entrySet()) {
+                Conversation conversation = item.getValue();
+                synchronized (conversation) {
+                    for (Entry entry : conversation.entries) {
+                        writeAdd(out, item.getKey(), entry.fingerprint(), entry.type(), entry.indexedAt(),
+                                entry.text(), conversation.graph.vector(entry.node()));
+                    }
+                }
+            }
+        }
+        Files.move(tmp, this.logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("向量索引日志压缩完成，去掉失效记录{}条", this.deadRecords);
+        this.deadRecords = 0;
+    }
+
+    private DataOutputStream openLog() throws IOException {
+        boolean exists = Files.exists(this.logFile) && Files.size(this.logFile) > 0;
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(this.logFile,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), 1 << 16));
+        if (!exists) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.flush();
+        }
+        return out;
+    }
+
+    private static void writeAdd(DataOutputStream out, String conversationId, long fingerprint, MessageType type,
+                                 long indexedAt, String text, float[] vector) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(RECORD_ADD);
+        out.writeUTF(conversationId);
+        out.writeLong(fingerprint);
+        out.writeByte(type.ordinal());
+        out.writeLong(indexedAt);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.writeInt(vector.length);
+        for (float v : vector) {
+            out.writeFloat(v);
+        }
+    }
+
+    /**
+     * 消息指纹：类型 + 文本的64位FNV-1a哈希，用于判断消息是否已经索引过
+     */
+    static long fingerprint(MessageType type, String text) {
+        long hash = 0xcbf29ce484222325L ^ type.ordinal();
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * 创建Builder实例
+     *
+     * @return 新的Builder实例
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 一个会话的索引：HNSW图 + 节点对应的消息，节点编号即entries下标
+     */
+    private final class Conversation {
+
+        @Nullable
+        private HnswGraph graph;
+
+        private final List<Entry> entries = new ArrayList<>();
+
+        private final Set<Long> fingerprints = new HashSet<>();
+
+        void add(long fingerprint, MessageType type, long indexedAt, String text, float[] vector) {
+            if (!this.fingerprints.add(fingerprint)) {
+                return;
+            }
+            if (this.graph == null) {
+                this.graph = new HnswGraph(vector.length, ChatMemoryVectorIndex.this.m,
+                        ChatMemoryVectorIndex.this.efConstruction, ChatMemoryVectorIndex.this.offHeap);
+            }
+            if (vector.length != this.graph.dimensions()) {
+                logger.warn("向量维度{}与索引维度{}不一致，已跳过", vector.length, this.graph.dimensions());
+                this.fingerprints.remove(fingerprint);
+                return;
+            }
+            int node = this.graph.add(vector);
+            this.entries.add(new Entry(node, fingerprint, type, indexedAt, text));
+        }
+    }
+
+    /**
+     * 一个会话排队期间合并的变更，只在pending.compute内修改
+     */
+    private static final class Pending {
+
+        private boolean deleted;
+
+        /** 各类型的过期截止时间，多次过期取较晚的截止时间 */
+        private final Map<MessageType, Instant> cutoffs = new EnumMap<>(MessageType.class);
+
+        /** 待索引的消息，按指纹去重并保持提交顺序 */
+        private final Map<Long, Message> messages = new LinkedHashMap<>();
+
+        void save(List<Message> messages) {
+            for (Message message : messages) {
+                MessageType type = message.getMessageType();
+                if ((type == MessageType.USER || type == MessageType.ASSISTANT)
+                        && StringUtils.hasText(message.getText())) {
+                    this.messages.putIfAbsent(fingerprint(type, message.getText()), message);
+                }
+            }
+        }
+
+        /**
+         * 之前排队的变更都不再需要执行
+         */
+        void delete() {
+            this.deleted = true;
+            this.cutoffs.clear();
+            this.messages.clear();
+        }
+
+        void expire(Map<MessageType, Instant> cutoffs) {
+            for (Map.Entry<MessageType, Instant> cutoff : cutoffs.entrySet()) {
+                this.cutoffs.merge(cutoff.getKey(), cutoff.getValue(), (a, b) -> a.isAfter(b) ? a : b);
+            }
+        }
+
+        boolean isEmpty() {
+            return !this.deleted && this.cutoffs.isEmpty() && this.messages.isEmpty();
+        }
+    }
+
+    /**
+     * @param indexedAt 首次索引的时间（毫秒）
+     */
+    private record Entry(int node, long fingerprint, MessageType type, long indexedAt, String text) {
+    }
+
+    /**
+     * 记录已读取字节数，用于截断末尾不完整的记录
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                this.count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                this.count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            this.count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Builder类 - 用于构建ChatMemoryVectorIndex实例
+     */
+    public static final class Builder {
+
+        private Path directory;
+
+        private EmbeddingModel embeddingModel;
+
+        private int m = 16;
+
+        private int efConstruction = 200;
+
+        private int efSearch = 64;
+
+        private int topK = 4;
+
+        private int maxMessages = 1000;
+
+        private double minScore = 0.3;
+
+        private boolean offHeap;
+
+        private int workers = 4;
+
+        @Nullable
+        private Executor executor;
+
+        private Builder() {
+        }
+
+        /**
+         * 设置索引目录
+         */
+        public Builder directory(Path directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        /**
+         * 设置向量模型
+         */
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        /**
+         * 设置HNSW每层的最大邻居数
+         */
+        public Builder m(int m) {
+            this.m = m;
+            return this;
+        }
+
+        /**
+         * 设置构建时的候选集大小
+         */
+        public Builder efConstruction(int efConstruction) {
+            this.efConstruction = efConstruction;
+            return this;
+        }
+
+        /**
+         * 设置查询时的候选集大小
+         */
+        public Builder efSearch(int efSearch) {
+            this.efSearch = efSearch;
+            return this;
+        }
+
+        /**
+         * 设置每次召回的消息数
+         */
+        public Builder topK(int topK) {
+            this.topK = topK;
+            return this;
+        }
+
+        /**
+         * 设置每个会话最多索引的消息数
+         */
+        public Builder maxMessages(int maxMessages) {
+            this.maxMessages = maxMessages;
+            return this;
+        }
+
+        /**
+         * 设置召回的最低余弦相似度
+         */
+        public Builder minScore(double minScore) {
+            this.minScore = minScore;
+            return this;
+        }
+
+        /**
+         * 设置向量是否存放在堆外
+         */
+        public Builder offHeap(boolean offHeap) {
+            this.offHeap = offHeap;
+            return this;
+        }
+
+        /**
+         * 设置默认线程池的线程数，即同时计算向量的会话数
+         */
+        public Builder workers(int workers) {
+            this.workers = workers;
+            return this;
+        }
+
+        /**
+         * 设置执行向量化和写日志的线程池，默认使用workers个线程的线程池；
+         * 同一会话的任务由索引自己串行化，线程池不需要保证执行顺序
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * 构建ChatMemoryVectorIndex实例
+         *
+         * @return 新的ChatMemoryVectorIndex实例
+         * @throws IllegalArgumentException 如果没有设置目录或向量模型
+         */
+        public ChatMemoryVectorIndex build() {
+            Assert.notNull(this.directory, "directory cannot be null");
+            Assert.notNull(this.embeddingModel, "embeddingModel cannot be null");
+            Assert.isTrue(this.topK > 0, "topK must be positive");
+            Assert.isTrue(this.maxMessages >= 4, "maxMessages must be at least 4");
+            Assert.isTrue(this.workers > 0, "workers must be positive");
+            return new ChatMemoryVectorIndex(this);
+        }
+    }
+}
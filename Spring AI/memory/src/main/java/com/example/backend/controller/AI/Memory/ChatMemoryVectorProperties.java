@@ -0,0 +1,44 @@
+package com.example.backend.controller.AI.Memory;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 向量检索记忆配置
+ *
+ * 对应配置前缀 chat.memory.vector
+ */
+@Data
+@ConfigurationProperties(prefix = "chat.memory.vector")
+public class ChatMemoryVectorProperties {
+
+    /** 是否启用向量检索记忆 */
+    private boolean enabled = false;
+
+    /** 索引目录 */
+    private String dir = "./index/chat-memory-vector";
+
+    /** HNSW每层的最大邻居数 */
+    private int m = 16;
+
+    /** 构建时的候选集大小 */
+    private int efConstruction = 200;
+
+    /** 查询时的候选集大小 */
+    private int efSearch = 64;
+
+    /** 每次召回的消息数 */
+    private int topK = 4;
+
+    /** 每个会话最多索引的消息数，超过时只保留最新的四分之三 */
+    private int maxMessages = 1000;
+
+    /** 召回的最低余弦相似度 */
+    private double minScore = 0.3;
+
+    /** 向量是否存放在堆外 */
+    private boolean offHeap = false;
+
+    /** 计算向量的线程数，同一会话的变更串行执行，不同会话并行 */
+    private int workers = 4;
+}
@@ -0,0 +1,247 @@
+package com.example.backend.controller.AI.Memory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import org.springframework.ai.chat.messages.AbstractMessage;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.lang.Nullable;
+
+/**
+ * ChatMessagePayload - 消息中文本以外部分的紧凑编码
+ *
+ * spring_ai_chat_memory 的 content 列只保存文本，工具调用、工具响应和消息元数据编码为一段JSON存入 payload 列：
+ * 1. 格式为 {"m":{元数据},"c":[[id,type,name,arguments],...],"r":[[id,name,responseData],...]}，
+ *    工具调用和响应使用数组而不是对象，省去重复的字段名
+ * 2. 纯文本消息（没有元数据、工具调用和工具响应）不写payload，列值为NULL，与旧数据一致
+ * 3. ASSISTANT和TOOL消息延迟解码：只读取文本时不解析payload，第一次访问工具调用、工具响应或元数据时才解析
+ * 4. 延迟解码的消息再次保存时，只要没有访问过元数据就直接复用原始payload，不重新编码
+ *
+ * 元数据值经过JSON往返后，自定义对象会变成JSONObject/JSONArray，基本类型和字符串保持不变。
+ */
+public final class ChatMessagePayload {
+
+    private static final String METADATA = "m";
+
+    private static final String TOOL_CALLS = "c";
+
+    private static final String TOOL_RESPONSES = "r";
+
+    private ChatMessagePayload() {
+    }
+
+    /**
+     * 编码消息中文本以外的部分
+     *
+     * @param message 消息
+     * @return 编码后的payload，纯文本消息返回null
+     */
+    @Nullable
+    public static String encode(Message message) {
+        if (message instanceof Lazy lazy) {
+            String raw = lazy.payload().rawIfUnchanged();
+            if (raw != null) {
+                return raw;
+            }
+        }
+        JSONObject json = new JSONObject(4);
+        Map<String, Object> metadata = new HashMap<>(message.getMetadata());
+        metadata.remove(AbstractMessage.MESSAGE_TYPE);
+        if (!metadata.isEmpty()) {
+            json.put(METADATA, metadata);
+        }
+        if (message instanceof AssistantMessage assistant && assistant.hasToolCalls()) {
+            List<List<String>> calls = new ArrayList<>(assistant.getToolCalls().size());
+            for (AssistantMessage.ToolCall call : assistant.getToolCalls()) {
+                calls.add(Arrays.asList(call.id(), call.type(), call.name(), call.arguments()));
+            }
+            json.put(TOOL_CALLS, calls);
+        }
+        if (message instanceof ToolResponseMessage tool && !tool.getResponses().isEmpty()) {
+            List<List<String>> responses = new ArrayList<>(tool.getResponses().size());
+            for (ToolResponseMessage.ToolResponse response : tool.getResponses()) {
+                responses.add(Arrays.asList(response.id(), response.name(), response.responseData()));
+            }
+            json.put(TOOL_RESPONSES, responses);
+        }
+        return json.isEmpty() ? null : json.toJSONString();
+    }
+
+    /**
+     * 由数据库中的一行还原消息
+     *
+     * @param type 消息类型
+     * @param content 消息文本
+     * @param payload payload列，旧数据和纯文本消息为null
+     * @return 消息，ASSISTANT和TOOL消息的payload延迟解码
+     */
+    public static Message toMessage(MessageType type, @Nullable String content, @Nullable String payload) {
+        String text = content == null ? "" : content;
+        if (payload == null) {
+            return switch (type) {
+                case USER -> new UserMessage(text);
+                case ASSISTANT -> new AssistantMessage(text);
+                case SYSTEM -> new SystemMessage(text);
+                case TOOL -> new ToolResponseMessage(List.of());
+            };
+        }
+        return switch (type) {
+            // 用户和系统消息只有元数据，没有延迟的必要
+            case USER -> UserMessage.builder().text(text).metadata(decode(payload).metadata()).build();
+            case SYSTEM -> SystemMessage.builder().text(text).metadata(decode(payload).metadata()).build();
+            case ASSISTANT -> new LazyAssistantMessage(text, new LazyPayload(payload));
+            case TOOL -> new LazyToolResponseMessage(new LazyPayload(payload));
+        };
+    }
+
+    private static Decoded decode(String payload) {
+        JSONObject json = JSON.parseObject(payload);
+        JSONObject metadata = json.getJSONObject(METADATA);
+        JSONArray calls = json.getJSONArray(TOOL_CALLS);
+        JSONArray responses = json.getJSONArray(TOOL_RESPONSES);
+
+        List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>(calls == null ? 0 : calls.size());
+        for (int i = 0; calls != null && i < calls.size(); i++) {
+            JSONArray call = calls.getJSONArray(i);
+            toolCalls.add(new AssistantMessage.ToolCall(call.getString(0), call.getString(1), call.getString(2),
+                    call.getString(3)));
+        }
+        List<ToolResponseMessage.ToolResponse> toolResponses = new ArrayList<>(
+                responses == null ? 0 : responses.size());
+        for (int i = 0; responses != null && i < responses.size(); i++) {
+            JSONArray response = responses.getJSONArray(i);
+            toolResponses.add(new ToolResponseMessage.ToolResponse(response.getString(0), response.getString(1),
+                    response.getString(2)));
+        }
+        return new Decoded(metadata == null ? Map.of() : new HashMap<>(metadata), List.copyOf(toolCalls),
+                List.copyOf(toolResponses));
+    }
+
+    private record Decoded(Map<String, Object> metadata, List<AssistantMessage.ToolCall> toolCalls,
+                           List<ToolResponseMessage.ToolResponse> responses) {
+    }
+
+    /**
+     * 持有原始payload的延迟解码消息
+     */
+    private interface Lazy {
+
+        LazyPayload payload();
+    }
+
+    /**
+     * 原始payload和解码结果，解码最多执行一次
+     */
+    private static final class LazyPayload {
+
+        private final String raw;
+
+        @Nullable
+        private volatile Decoded decoded;
+
+        /** 元数据已合并进消息并交给调用方，调用方可能修改，之后保存时需要重新编码 */
+        private volatile boolean metadataExposed;
+
+        LazyPayload(String raw) {
+            this.raw = raw;
+        }
+
+        Decoded decoded() {
+            Decoded result = this.decoded;
+            if (result == null) {
+                synchronized (this) {
+                    result = this.decoded;
+                    if (result == null) {
+                        result = decode(this.raw);
+                        this.decoded = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        Map<String, Object> metadata(Map<String, Object> own) {
+            if (!this.metadataExposed) {
+                synchronized (this) {
+                    if (!this.metadataExposed) {
+                        decoded().metadata().forEach(own::putIfAbsent);
+                        this.metadataExposed = true;
+                    }
+                }
+            }
+            return own;
+        }
+
+        @Nullable
+        String rawIfUnchanged() {
+            return this.metadataExposed ? null : this.raw;
+        }
+    }
+
+    private static final class LazyAssistantMessage extends AssistantMessage implements Lazy {
+
+        private final LazyPayload payload;
+
+        LazyAssistantMessage(String text, LazyPayload payload) {
+            super(text);
+            this.payload = payload;
+        }
+
+        @Override
+        public List<ToolCall> getToolCalls() {
+            return this.payload.decoded().toolCalls();
+        }
+
+        @Override
+        public boolean hasToolCalls() {
+            return !getToolCalls().isEmpty();
+        }
+
+        @Override
+        public Map<String, Object> getMetadata() {
+            return this.payload.metadata(super.getMetadata());
+        }
+
+        @Override
+        public LazyPayload payload() {
+            return this.payload;
+        }
+    }
+
+    private static final class LazyToolResponseMessage extends ToolResponseMessage implements Lazy {
+
+        private final LazyPayload payload;
+
+        LazyToolResponseMessage(LazyPayload payload) {
+            super(List.of());
+            this.payload = payload;
+        }
+
+        @Override
+        public List<ToolResponse> getResponses() {
+            return this.payload.decoded().responses();
+        }
+
+        @Override
+        public Map<String, Object> getMetadata() {
+            return this.payload.metadata(super.getMetadata());
+        }
+
+        @Override
+        public LazyPayload payload() {
+            return this.payload;
+        }
+    }
+}
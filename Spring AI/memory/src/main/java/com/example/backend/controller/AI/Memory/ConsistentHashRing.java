@@ -0,0 +1,100 @@
+package com.example.backend.controller.AI.Memory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.springframework.util.Assert;
+
+/**
+ * 一致性哈希环
+ *
+ * 每个分片在环上放置virtualNodes个虚拟节点，键路由到顺时针方向第一个虚拟节点所属的分片。
+ * 增加一个分片时，只有大约 1/N 的键会改变归属。
+ * 实例不可变，增加分片会返回新的哈希环。
+ */
+public final class ConsistentHashRing {
+
+    private final NavigableMap<Long, String> ring;
+
+    private final Set<String> nodes;
+
+    private final int virtualNodes;
+
+    private ConsistentHashRing(NavigableMap<Long, String> ring, Set<String> nodes, int virtualNodes) {
+        this.ring = ring;
+        this.nodes = nodes;
+        this.virtualNodes = virtualNodes;
+    }
+
+    /**
+     * 创建哈希环
+     *
+     * @param nodes 分片名称
+     * @param virtualNodes 每个分片的虚拟节点数
+     * @return 新的哈希环
+     */
+    public static ConsistentHashRing of(Set<String> nodes, int virtualNodes) {
+        Assert.notEmpty(nodes, "nodes cannot be empty");
+        Assert.isTrue(virtualNodes > 0, "virtualNodes must be positive");
+        NavigableMap<Long, String> ring = new TreeMap<>();
+        for (String node : nodes) {
+            place(ring, node, virtualNodes);
+        }
+        return new ConsistentHashRing(ring, Collections.unmodifiableSet(new TreeSet<>(nodes)), virtualNodes);
+    }
+
+    /**
+     * 返回增加了一个分片的新哈希环
+     */
+    public ConsistentHashRing withNode(String node) {
+        Assert.hasText(node, "node cannot be null or empty");
+        Assert.isTrue(!this.nodes.contains(node), "node already exists: " + node);
+        NavigableMap<Long, String> ring = new TreeMap<>(this.ring);
+        place(ring, node, this.virtualNodes);
+        Set<String> nodes = new TreeSet<>(this.nodes);
+        nodes.add(node);
+        return new ConsistentHashRing(ring, Collections.unmodifiableSet(nodes), this.virtualNodes);
+    }
+
+    /**
+     * 计算键所属的分片
+     */
+    public String route(String key) {
+        Map.Entry<Long, String> entry = this.ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : this.ring.firstEntry().getValue();
+    }
+
+    public Set<String> nodes() {
+        return this.nodes;
+    }
+
+    private static void place(NavigableMap<Long, String> ring, String node, int virtualNodes) {
+        for (int i = 0; i < virtualNodes; i++) {
+            ring.put(hash(node + "#" + i), node);
+        }
+    }
+
+    /**
+     * 取MD5的前8个字节作为哈希值，分布均匀且跨JVM稳定
+     */
+    static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < 8; i++) {
+                hash = (hash << 8) | (digest[i] & 0xFF);
+            }
+            return hash;
+        }
+        catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("MD5 not available", ex);
+        }
+    }
+}
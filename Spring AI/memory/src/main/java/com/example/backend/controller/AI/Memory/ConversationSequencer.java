@@ -0,0 +1,78 @@
+package com.example.backend.controller.AI.Memory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import org.springframework.util.Assert;
+
+/**
+ * ConversationSequencer - 按会话ID串行执行对话轮次
+ *
+ * saveAll是先删后插，同一个会话的两轮对话并发时，后保存的一轮会覆盖先保存的一轮。这里为每个会话维护一条异步队列：
+ * 1. 每个会话只记录队尾轮次的完成信号，新轮次在前一轮完成后才订阅，不同会话之间完全并行
+ * 2. 排队等待通过Reactor信号串联，不占用线程，也不使用锁；前一轮完成后，排队的轮次切换到scheduler上执行，
+ *    轮次内阻塞的JDBC和模型调用不会落在前一轮的完成线程（通常是netty事件循环）上
+ * 3. 轮次完成、出错或被取消（例如客户端断开）都会放行下一轮，但放行总是在前一轮完成之后：
+ *    排队中的轮次被取消时，要等它前面的轮次结束才放行它后面的轮次，队列顺序不会被打破
+ * 4. 会话空闲后从Map中移除，Map大小等于活跃会话数
+ */
+public class ConversationSequencer {
+
+    /** 会话ID到队尾轮次完成信号的映射 */
+    private final ConcurrentMap<String, Mono<Void>> tails = new ConcurrentHashMap<>();
+
+    /** 排队轮次的执行线程 */
+    private final Scheduler scheduler;
+
+    public ConversationSequencer() {
+        this(Schedulers.boundedElastic());
+    }
+
+    public ConversationSequencer(Scheduler scheduler) {
+        Assert.notNull(scheduler, "scheduler cannot be null");
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * 在会话队列中排队执行一轮对话
+     *
+     * @param conversationId 会话ID
+     * @param turn 一轮对话，从加载历史到保存记忆都应在返回的Flux内完成，订阅时才会调用
+     * @return 排队后的输出
+     */
+    public <T> Flux<T> sequence(String conversationId, Supplier<? extends Flux<T>> turn) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        Assert.notNull(turn, "turn cannot be null");
+        return Flux.defer(() -> {
+            Sinks.Empty<Void> done = Sinks.empty();
+            Mono<Void> tail = done.asMono();
+            Mono<Void> previous = this.tails.put(conversationId, tail);
+            Runnable release = () -> {
+                this.tails.remove(conversationId, tail);
+                done.tryEmitEmpty();
+            };
+            Flux<T> run = Flux.defer(turn);
+            if (previous == null) {
+                return run.doFinally(signal -> release.run());
+            }
+            // 前一轮已完成时立即放行，否则（本轮在排队中被取消）等前一轮完成后再放行
+            return previous.publishOn(this.scheduler)
+                    .thenMany(run)
+                    .doFinally(signal -> previous.doFinally(s -> release.run()).subscribe());
+        });
+    }
+
+    /**
+     * 当前有轮次在执行或排队的会话数
+     */
+    public int activeConversations() {
+        return this.tails.size();
+    }
+}
@@ -0,0 +1,506 @@
+package com.example.backend.controller.AI.Memory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+import org.springframework.util.Assert;
+
+/**
+ * HnswGraph - 基于HNSW（分层可导航小世界图）的近似最近邻索引
+ *
+ * 1. 向量写入时归一化，相似度为点积（即余弦相似度）
+ * 2. 所有节点的向量连续存放在一个float数组中，可选放在堆外的DirectByteBuffer里，减少GC扫描的对象
+ * 3. 邻居表为int数组，第0个元素是邻居数量，第0层最多2M个邻居，其余层最多M个
+ * 4. 候选集和结果集使用long编码的(相似度, 节点)小顶堆，搜索过程中不产生装箱对象
+ * 5. 只支持追加，节点编号从0开始按写入顺序递增
+ *
+ * 非线程安全，调用方负责加锁。
+ */
+final class HnswGraph {
+
+    private final int dimensions;
+
+    private final int m;
+
+    private final int maxM0;
+
+    private final int efConstruction;
+
+    private final double levelMultiplier;
+
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    private final Vectors vectors;
+
+    /** 节点 -> 层 -> 邻居表 */
+    private int[][][] links = new int[16][][];
+
+    private int size;
+
+    private int entryPoint = -1;
+
+    private int maxLevel = -1;
+
+    /**
+     * @param dimensions 向量维度
+     * @param m 每层的最大邻居数
+     * @param efConstruction 构建时的候选集大小
+     * @param offHeap 向量是否存放在堆外
+     */
+    HnswGraph(int dimensions, int m, int efConstruction, boolean offHeap) {
+        Assert.isTrue(dimensions > 0, "dimensions must be positive");
+        Assert.isTrue(m >= 2, "m must be at least 2");
+        this.dimensions = dimensions;
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.levelMultiplier = 1 / Math.log(m);
+        this.vectors = offHeap ? new OffHeapVectors(dimensions) : new HeapVectors(dimensions);
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    int dimensions() {
+        return this.dimensions;
+    }
+
+    /**
+     * 写入一个向量
+     *
+     * @param vector 向量，不要求已归一化
+     * @return 节点编号
+     */
+    int add(float[] vector) {
+        Assert.isTrue(vector.length == this.dimensions, "vector dimensions mismatch");
+        float[] query = normalize(vector);
+        int node = this.size;
+        if (node == this.links.length) {
+            this.links = Arrays.copyOf(this.links, node * 2);
+        }
+        this.vectors.set(node, query);
+        int level = randomLevel();
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[(l == 0 ? this.maxM0 : this.m) + 1];
+        }
+        this.links[node] = nodeLinks;
+        this.size++;
+
+        if (this.entryPoint < 0) {
+            this.entryPoint = node;
+            this.maxLevel = level;
+            return node;
+        }
+        int current = this.entryPoint;
+        for (int l = this.maxLevel; l > level; l--) {
+            current = greedy(query, current, l);
+        }
+        for (int l = Math.min(level, this.maxLevel); l >= 0; l--) {
+            long[] candidates = searchLayer(query, current, this.efConstruction, l);
+            int maxNeighbors = l == 0 ? this.maxM0 : this.m;
+            int[] selected = selectNeighbors(candidates, maxNeighbors);
+            int[] own = nodeLinks[l];
+            own[0] = selected.length;
+            System.arraycopy(selected, 0, own, 1, selected.length);
+            for (int neighbor : selected) {
+                connect(neighbor, node, l, maxNeighbors);
+            }
+            current = id(candidates[0]);
+        }
+        if (level > this.maxLevel) {
+            this.entryPoint = node;
+            this.maxLevel = level;
+        }
+        return node;
+    }
+
+    /**
+     * 近似最近邻搜索
+     *
+     * @param vector 查询向量
+     * @param k 返回的数量
+     * @param ef 第0层的候选集大小，越大越准、越慢
+     * @return 按相似度降序排列的编码结果，使用id()和score()解码
+     */
+    long[] search(float[] vector, int k, int ef) {
+        if (this.size == 0 || k <= 0) {
+            return new long[0];
+        }
+        Assert.isTrue(vector.length == this.dimensions, "vector dimensions mismatch");
+        float[] query = normalize(vector);
+        int current = this.entryPoint;
+        for (int l = this.maxLevel; l > 0; l--) {
+            current = greedy(query, current, l);
+        }
+        long[] results = searchLayer(query, current, Math.max(ef, k), 0);
+        return results.length > k ? Arrays.copyOf(results, k) : results;
+    }
+
+    /**
+     * 读取归一化后的向量
+     */
+    float[] vector(int node) {
+        return this.vectors.get(node);
+    }
+
+    static int id(long encoded) {
+        return (int) encoded;
+    }
+
+    static float score(long encoded) {
+        int bits = (int) (encoded >> 32);
+        return Float.intBitsToFloat(bits ^ ((bits >> 31) & 0x7fffffff));
+    }
+
+    /**
+     * 把(相似度, 节点)编码为一个long，按有符号long比较时顺序与相似度一致
+     */
+    private static long encode(float score, int node) {
+        int bits = Float.floatToIntBits(score);
+        bits ^= (bits >> 31) & 0x7fffffff;
+        return ((long) bits << 32) | (node & 0xffffffffL);
+    }
+
+    private int randomLevel() {
+        return (int) (-Math.log(1 - this.random.nextDouble()) * this.levelMultiplier);
+    }
+
+    private int greedy(float[] query, int start, int level) {
+        int current = start;
+        float best = this.vectors.dot(query, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] neighbors = this.links[current][level];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                float score = this.vectors.dot(query, neighbors[i]);
+                if (score > best) {
+                    best = score;
+                    current = neighbors[i];
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 在一层内做best-first搜索
+     *
+     * @return 按相似度降序排列的编码结果
+     */
+    private long[] searchLayer(float[] query, int entry, int ef, int level) {
+        BitSet visited = new BitSet(this.size);
+        // candidates存取反后的编码，堆顶是相似度最高的待扩展节点；results堆顶是当前结果中最差的
+        LongHeap candidates = new LongHeap(ef * 2);
+        LongHeap results = new LongHeap(ef + 1);
+        long start = encode(this.vectors.dot(query, entry), entry);
+        visited.set(entry);
+        candidates.push(~start);
+        results.push(start);
+        while (!candidates.isEmpty()) {
+            long candidate = ~candidates.pop();
+            if (results.size() >= ef && candidate < results.peek()) {
+                break;
+            }
+            int[] neighbors = this.links[id(candidate)][level];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int neighbor = neighbors[i];
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                long encoded = encode(this.vectors.dot(query, neighbor), neighbor);
+                if (results.size() < ef || encoded > results.peek()) {
+                    candidates.push(~encoded);
+                    results.push(encoded);
+                    if (results.size() > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+        long[] sorted = results.toArray();
+        Arrays.sort(sorted);
+        for (int i = 0, j = sorted.length - 1; i < j; i++, j--) {
+            long tmp = sorted[i];
+            sorted[i] = sorted[j];
+            sorted[j] = tmp;
+        }
+        return sorted;
+    }
+
+    /**
+     * 启发式选邻居：候选按相似度从高到低，只保留与查询点比与已选邻居都更近的候选，
+     * 使邻居分布在不同方向上；数量不足时用被跳过的候选补齐，保证小图的连通性
+     *
+     * @param candidates 按相似度降序排列的编码候选
+     */
+    private int[] selectNeighbors(long[] candidates, int maxNeighbors) {
+        int[] selected = new int[Math.min(maxNeighbors, candidates.length)];
+        int count = 0;
+        long[] skipped = new long[candidates.length];
+        int skippedCount = 0;
+        for (long candidate : candidates) {
+            if (count == selected.length) {
+                break;
+            }
+            int node = id(candidate);
+            float toQuery = score(candidate);
+            boolean diverse = true;
+            for (int i = 0; i < count; i++) {
+                if (this.vectors.dot(node, selected[i]) > toQuery) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[count++] = node;
+            }
+            else {
+                skipped[skippedCount++] = candidate;
+            }
+        }
+        for (int i = 0; i < skippedCount && count < selected.length; i++) {
+            selected[count++] = id(skipped[i]);
+        }
+        return count == selected.length ? selected : Arrays.copyOf(selected, count);
+    }
+
+    /**
+     * 把node加入neighbor的邻居表，超过上限时按启发式重新选择
+     */
+    private void connect(int neighbor, int node, int level, int maxNeighbors) {
+        int[] neighborLinks = this.links[neighbor][level];
+        int count = neighborLinks[0];
+        if (count < maxNeighbors) {
+            neighborLinks[count + 1] = node;
+            neighborLinks[0] = count + 1;
+            return;
+        }
+        long[] candidates = new long[count + 1];
+        for (int i = 0; i < count; i++) {
+            int existing = neighborLinks[i + 1];
+            candidates[i] = encode(this.vectors.dot(neighbor, existing), existing);
+        }
+        candidates[count] = encode(this.vectors.dot(neighbor, node), node);
+        Arrays.sort(candidates);
+        for (int i = 0, j = candidates.length - 1; i < j; i++, j--) {
+            long tmp = candidates[i];
+            candidates[i] = candidates[j];
+            candidates[j] = tmp;
+        }
+        int[] selected = selectNeighbors(candidates, maxNeighbors);
+        neighborLinks[0] = selected.length;
+        System.arraycopy(selected, 0, neighborLinks, 1, selected.length);
+    }
+
+    private float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        float[] normalized = new float[vector.length];
+        if (norm == 0) {
+            return normalized;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] * scale;
+        }
+        return normalized;
+    }
+
+    /**
+     * 向量存储，按节点编号连续存放
+     */
+    private interface Vectors {
+
+        void set(int node, float[] vector);
+
+        float[] get(int node);
+
+        float dot(float[] query, int node);
+
+        float dot(int a, int b);
+    }
+
+    private static final class HeapVectors implements Vectors {
+
+        private final int dimensions;
+
+        private float[] data;
+
+        HeapVectors(int dimensions) {
+            this.dimensions = dimensions;
+            this.data = new float[dimensions * 16];
+        }
+
+        @Override
+        public void set(int node, float[] vector) {
+            int offset = node * this.dimensions;
+            if (offset + this.dimensions > this.data.length) {
+                this.data = Arrays.copyOf(this.data, Math.max(this.data.length * 2, offset + this.dimensions));
+            }
+            System.arraycopy(vector, 0, this.data, offset, this.dimensions);
+        }
+
+        @Override
+        public float[] get(int node) {
+            int offset = node * this.dimensions;
+            return Arrays.copyOfRange(this.data, offset, offset + this.dimensions);
+        }
+
+        @Override
+        public float dot(float[] query, int node) {
+            float[] data = this.data;
+            int offset = node * this.dimensions;
+            float sum = 0;
+            for (int i = 0; i < this.dimensions; i++) {
+                sum += query[i] * data[offset + i];
+            }
+            return sum;
+        }
+
+        @Override
+        public float dot(int a, int b) {
+            float[] data = this.data;
+            int offsetA = a * this.dimensions;
+            int offsetB = b * this.dimensions;
+            float sum = 0;
+            for (int i = 0; i < this.dimensions; i++) {
+                sum += data[offsetA + i] * data[offsetB + i];
+            }
+            return sum;
+        }
+    }
+
+    private static final class OffHeapVectors implements Vectors {
+
+        private final int dimensions;
+
+        private FloatBuffer data;
+
+        OffHeapVectors(int dimensions) {
+            this.dimensions = dimensions;
+            this.data = allocate(dimensions * 16);
+        }
+
+        private static FloatBuffer allocate(int floats) {
+            return ByteBuffer.allocateDirect(floats * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+
+        @Override
+        public void set(int node, float[] vector) {
+            int offset = node * this.dimensions;
+            if (offset + this.dimensions > this.data.capacity()) {
+                FloatBuffer grown = allocate(Math.max(this.data.capacity() * 2, offset + this.dimensions));
+                grown.put(0, this.data, 0, this.data.capacity());
+                this.data = grown;
+            }
+            this.data.put(offset, vector);
+        }
+
+        @Override
+        public float[] get(int node) {
+            float[] vector = new float[this.dimensions];
+            this.data.get(node * this.dimensions, vector);
+            return vector;
+        }
+
+        @Override
+        public float dot(float[] query, int node) {
+            FloatBuffer data = this.data;
+            int offset = node * this.dimensions;
+            float sum = 0;
+            for (int i = 0; i < this.dimensions; i++) {
+                sum += query[i] * data.get(offset + i);
+            }
+            return sum;
+        }
+
+        @Override
+        public float dot(int a, int b) {
+            FloatBuffer data = this.data;
+            int offsetA = a * this.dimensions;
+            int offsetB = b * this.dimensions;
+            float sum = 0;
+            for (int i = 0; i < this.dimensions; i++) {
+                sum += data.get(offsetA + i) * data.get(offsetB + i);
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * long小顶堆
+     */
+    private static final class LongHeap {
+
+        private long[] heap;
+
+        private int size;
+
+        LongHeap(int capacity) {
+            this.heap = new long[Math.max(capacity, 4)];
+        }
+
+        int size() {
+            return this.size;
+        }
+
+        boolean isEmpty() {
+            return this.size == 0;
+        }
+
+        long peek() {
+            return this.heap[0];
+        }
+
+        void push(long value) {
+            if (this.size == this.heap.length) {
+                this.heap = Arrays.copyOf(this.heap, this.size * 2);
+            }
+            int i = this.size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (this.heap[parent] <= value) {
+                    break;
+                }
+                this.heap[i] = this.heap[parent];
+                i = parent;
+            }
+            this.heap[i] = value;
+        }
+
+        long pop() {
+            long top = this.heap[0];
+            long last = this.heap[--this.size];
+            int i = 0;
+            int half = this.size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < this.size && this.heap[child + 1] < this.heap[child]) {
+                    child++;
+                }
+                if (last <= this.heap[child]) {
+                    break;
+                }
+                this.heap[i] = this.heap[child];
+                i = child;
+            }
+            this.heap[i] = last;
+            return top;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(this.heap, this.size);
+        }
+    }
+}
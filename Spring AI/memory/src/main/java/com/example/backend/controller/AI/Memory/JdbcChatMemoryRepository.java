@@ -6,22 +6,23 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sql.DataSource;
 
+import com.example.backend.JFR.ChatMemorySqlEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.springframework.ai.chat.memory.ChatMemoryRepository;
 import org.springframework.ai.chat.memory.repository.jdbc.JdbcChatMemoryRepositoryDialect;
-import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.MessageType;
-import org.springframework.ai.chat.messages.SystemMessage;
-import org.springframework.ai.chat.messages.ToolResponseMessage;
-import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
@@ -40,6 +41,10 @@ import org.springframework.util.Assert;
  * 2. 管理会话ID
  * 3. 支持事务操作
  * 4. 支持多种数据库方言
+ * 5. 可选的冷会话归档：数据库中不存在的会话从归档段文件中读取
+ * 6. 写入提交后通知ChatMemoryListener，用于增量维护搜索索引等
+ * 7. 每次数据库操作发出ChatMemorySqlEvent（JFR事件），记录会话ID、行数和耗时
+ * 8. 工具调用、工具响应和元数据由ChatMessagePayload编码存入payload列，读取时延迟解码
  * 
  * 使用方式：
  * 1. 通过Builder模式创建实例
@@ -62,6 +67,13 @@ public final class JdbcChatMemoryRepository implements ChatMemoryRepository {
     /** 数据库方言，用于处理不同数据库的SQL语法差异 */
     private final JdbcChatMemoryRepositoryDialect dialect;
 
+    /** 冷会话归档，为null表示未启用归档 */
+    @Nullable
+    private final ChatMemoryArchiveStore archiveStore;
+
+    /** 变更监听器，在事务提交后回调 */
+    private final List<ChatMemoryListener> listeners;
+
     /** 日志记录器 */
     private static final Logger logger = LoggerFactory.getLogger(JdbcChatMemoryRepository.class);
 
@@ -71,30 +83,46 @@ public final class JdbcChatMemoryRepository implements ChatMemoryRepository {
      * @param jdbcTemplate JDBC操作模板
      * @param dialect 数据库方言
      * @param txManager 事务管理器，如果为null则使用默认的DataSourceTransactionManager
+     * @param archiveStore 冷会话归档，可以为null
+     * @param listeners 变更监听器
      * @throws IllegalArgumentException 如果jdbcTemplate或dialect为null
      */
     private JdbcChatMemoryRepository(JdbcTemplate jdbcTemplate, JdbcChatMemoryRepositoryDialect dialect,
-                                     PlatformTransactionManager txManager) {
+                                     PlatformTransactionManager txManager, @Nullable ChatMemoryArchiveStore archiveStore,
+                                     List<ChatMemoryListener> listeners) {
         Assert.notNull(jdbcTemplate, "jdbcTemplate cannot be null");
         Assert.notNull(dialect, "dialect cannot be null");
         this.jdbcTemplate = jdbcTemplate;
         this.dialect = dialect;
+        this.archiveStore = archiveStore;
+        this.listeners = List.copyOf(listeners);
         this.transactionTemplate = new TransactionTemplate(
                 txManager != null ? txManager : new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
     }
 
     /**
      * 查找所有会话ID
+     * 启用归档时会合并归档中的会话ID
      * 
      * @return 所有会话ID的列表
      */
     @Override
     public List<String> findConversationIds() {
-        return this.jdbcTemplate.queryForList(this.dialect.getSelectConversationIdsSql(), String.class);
+        ChatMemorySqlEvent event = new ChatMemorySqlEvent();
+        event.begin();
+        List<String> ids = this.jdbcTemplate.queryForList(this.dialect.getSelectConversationIdsSql(), String.class);
+        event.complete("findConversationIds", null, ids.size());
+        if (this.archiveStore == null) {
+            return ids;
+        }
+        Set<String> merged = new LinkedHashSet<>(ids);
+        merged.addAll(this.archiveStore.conversationIds());
+        return new ArrayList<>(merged);
     }
 
     /**
      * 根据会话ID查找所有消息
+     * 数据库中没有该会话时，如果启用了归档则从归档段文件中读取
      * 
      * @param conversationId 会话ID
      * @return 该会话的所有消息列表
@@ -103,7 +131,15 @@ public final class JdbcChatMemoryRepository implements ChatMemoryRepository {
     @Override
     public List<Message> findByConversationId(String conversationId) {
         Assert.hasText(conversationId, "conversationId cannot be null or empty");
-        return this.jdbcTemplate.query(this.dialect.getSelectMessagesSql(), new MessageRowMapper(), conversationId);
+        ChatMemorySqlEvent event = new ChatMemorySqlEvent();
+        event.begin();
+        List<Message> messages = this.jdbcTemplate.query(this.dialect.getSelectMessagesSql(), new MessageRowMapper(),
+                conversationId);
+        event.complete("find", conversationId, messages.size());
+        if (messages.isEmpty() && this.archiveStore != null) {
+            return this.archiveStore.find(conversationId);
+        }
+        return messages;
     }
 
     /**
@@ -120,16 +156,29 @@ public final class JdbcChatMemoryRepository implements ChatMemoryRepository {
         Assert.notNull(messages, "messages cannot be null");
         Assert.noNullElements(messages, "messages cannot contain null elements");
 
+        ChatMemorySqlEvent event = new ChatMemorySqlEvent();
+        event.begin();
         this.transactionTemplate.execute(status -> {
-            deleteByConversationId(conversationId);
+            this.jdbcTemplate.update(this.dialect.getDeleteMessagesSql(), conversationId);
             this.jdbcTemplate.batchUpdate(this.dialect.getInsertMessageSql(),
                     new AddBatchPreparedStatement(conversationId, messages));
             return null;
         });
+        event.complete("saveAll", conversationId, messages.size());
+        for (ChatMemoryListener listener : this.listeners) {
+            try {
+                listener.onSaved(conversationId, messages);
+            }
+            catch (RuntimeException ex) {
+                logger.warn("ChatMemoryListener {} failed for conversation {}", listener.getClass().getSimpleName(),
+                        conversationId, ex);
+            }
+        }
     }
 
     /**
      * 删除指定会话的所有消息
+     * 启用归档时同时在归档中记录墓碑，避免已删除的会话从归档中被读出
      * 
      * @param conversationId 要删除的会话ID
      * @throws IllegalArgumentException 如果conversationId为空
@@ -137,7 +186,63 @@ public final class JdbcChatMemoryRepository implements ChatMemoryRepository {
     @Override
     public void deleteByConversationId(String conversationId) {
         Assert.hasText(conversationId, "conversationId cannot be null or empty");
-        this.jdbcTemplate.update(this.dialect.getDeleteMessagesSql(), conversationId);
+        ChatMemorySqlEvent event = new ChatMemorySqlEvent();
+        event.begin();
+        int deleted = this.jdbcTemplate.update(this.dialect.getDeleteMessagesSql(), conversationId);
+        event.complete("delete", conversationId, deleted);
+        if (this.archiveStore != null) {
+            this.archiveStore.delete(conversationId);
+        }
+        for (ChatMemoryListener listener : this.listeners) {
+            try {
+                listener.onDeleted(conversationId);
+            }
+            catch (RuntimeException ex) {
+                logger.warn("ChatMemoryListener {} failed for conversation {}", listener.getClass().getSimpleName(),
+                        conversationId, ex);
+            }
+        }
+    }
+
+    /**
+     * 是否注册了ChatMemoryListener，没有时过期清理不需要收集受影响的会话
+     */
+    boolean hasListeners() {
+        return !this.listeners.isEmpty();
+    }
+
+    /**
+     * 过期清理在存储之外删除了会话的部分消息后，重新读取该会话并通知ChatMemoryListener
+     *
+     * @param conversationId 会话ID
+     * @param cutoffs 各消息类型的截止时间
+     */
+    void expired(String conversationId, Map<MessageType, Instant> cutoffs) {
+        List<Message> remaining = findByConversationId(conversationId);
+        for (ChatMemoryListener listener : this.listeners) {
+            try {
+                listener.onExpired(conversationId, remaining, cutoffs);
+            }
+            catch (RuntimeException ex) {
+                logger.warn("ChatMemoryListener {} failed for conversation {}", listener.getClass().getSimpleName(),
+                        conversationId, ex);
+            }
+        }
+    }
+
+    /**
+     * 会话记录所在的JDBC模板，供ChatHistoryReader直接按列读取
+     */
+    JdbcTemplate jdbcTemplate() {
+        return this.jdbcTemplate;
+    }
+
+    /**
+     * 冷会话归档，没有配置时为null
+     */
+    @Nullable
+    ChatMemoryArchiveStore archiveStore() {
+        return this.archiveStore;
     }
 
     /**
@@ -165,9 +270,11 @@ public final class JdbcChatMemoryRepository implements ChatMemoryRepository {
             var message = this.messages.get(i);
 
             ps.setString(1, this.conversationId);
-            ps.setString(2, message.getText());
+            // 工具响应消息没有文本，content列不允许NULL
+            ps.setString(2, message.getText() == null ? "" : message.getText());
             ps.setString(3, message.getMessageType().name());
             ps.setTimestamp(4, new Timestamp(this.instantSeq.getAndIncrement()));
+            ps.setString(5, ChatMessagePayload.encode(message));
         }
 
         @Override
@@ -178,7 +285,7 @@ public final class JdbcChatMemoryRepository implements ChatMemoryRepository {
 
     /**
      * 消息行映射器
-     * 负责将数据库查询结果映射为Message对象
+     * 负责将数据库查询结果映射为Message对象，payload列只取出字符串，解析推迟到第一次访问
      */
     private static class MessageRowMapper implements RowMapper<Message> {
 
@@ -187,16 +294,7 @@ public final class JdbcChatMemoryRepository implements ChatMemoryRepository {
         public Message mapRow(ResultSet rs, int i) throws SQLException {
             var content = rs.getString(1);
             var type = MessageType.valueOf(rs.getString(2));
-
-            return switch (type) {
-                case USER -> new UserMessage(content);
-                case ASSISTANT -> new AssistantMessage(content);
-                case SYSTEM -> new SystemMessage(content);
-                // The content is always stored empty for ToolResponseMessages.
-                // If we want to capture the actual content, we need to extend
-                // AddBatchPreparedStatement to support it.
-                case TOOL -> new ToolResponseMessage(List.of());
-            };
+            return ChatMessagePayload.toMessage(type, content, rs.getString(3));
         }
 
     }
@@ -224,6 +322,12 @@ public final class JdbcChatMemoryRepository implements ChatMemoryRepository {
         /** 事务管理器 */
         private PlatformTransactionManager platformTransactionManager;
 
+        /** 冷会话归档 */
+        private ChatMemoryArchiveStore archiveStore;
+
+        /** 变更监听器 */
+        private final List<ChatMemoryListener> listeners = new ArrayList<>();
+
         /** Builder的日志记录器 */
         private static final Logger logger = LoggerFactory.getLogger(Builder.class);
 
@@ -274,6 +378,28 @@ public final class JdbcChatMemoryRepository implements ChatMemoryRepository {
             return this;
         }
 
+        /**
+         * 设置冷会话归档
+         * 
+         * @param archiveStore 归档存储
+         * @return Builder实例，用于链式调用
+         */
+        public Builder archiveStore(ChatMemoryArchiveStore archiveStore) {
+            this.archiveStore = archiveStore;
+            return this;
+        }
+
+        /**
+         * 添加变更监听器
+         * 
+         * @param listeners 变更监听器
+         * @return Builder实例，用于链式调用
+         */
+        public Builder listeners(List<? extends ChatMemoryListener> listeners) {
+            this.listeners.addAll(listeners);
+            return this;
+        }
+
         /**
          * 构建JdbcChatMemoryRepository实例
          * 
@@ -285,7 +411,7 @@ public final class JdbcChatMemoryRepository implements ChatMemoryRepository {
             DataSource effectiveDataSource = resolveDataSource();
             JdbcChatMemoryRepositoryDialect effectiveDialect = resolveDialect(effectiveDataSource);
             return new JdbcChatMemoryRepository(resolveJdbcTemplate(), effectiveDialect,
-                    this.platformTransactionManager);
+                    this.platformTransactionManager, this.archiveStore, this.listeners);
         }
 
         private JdbcTemplate resolveJdbcTemplate() {
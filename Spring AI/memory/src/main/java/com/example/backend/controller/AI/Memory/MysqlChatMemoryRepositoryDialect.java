@@ -12,12 +12,12 @@ public class MysqlChatMemoryRepositoryDialect implements JdbcChatMemoryRepositor
 
     @Override
     public String getSelectMessagesSql() {
-        return "SELECT content, type FROM spring_ai_chat_memory WHERE conversation_id = ? ORDER BY `timestamp`";
+        return "SELECT content, type, payload FROM spring_ai_chat_memory WHERE conversation_id = ? ORDER BY `timestamp`";
     }
 
     @Override
     public String getInsertMessageSql() {
-        return "INSERT INTO spring_ai_chat_memory (conversation_id, content, type, `timestamp`) VALUES (?, ?, ?, ?)";
+        return "INSERT INTO spring_ai_chat_memory (conversation_id, content, type, `timestamp`, payload) VALUES (?, ?, ?, ?, ?)";
     }
 
     @Override
@@ -0,0 +1,152 @@
+package com.example.backend.controller.AI.Memory;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.util.Assert;
+
+/**
+ * ShardInstanceRegistry - 分片实例登记
+ *
+ * ShardedChatMemoryRepository迁移会话时只用JVM内的条带锁串行化同一会话的读写，其他实例按自己的哈希环读写：
+ * 滚动发布时仍在运行的旧实例会把会话写到旧分片上，迁移复制之后的写入会被删除或留在旧分片上再也读不到。
+ * 因此分片集合只能在只有一个实例运行时变更，这里在启动时强制检查：
+ * 1. 每个实例在它使用的所有分片上登记，并按心跳间隔刷新，记录自己的分片集合和是否正在迁移
+ * 2. 带有joining分片的实例登记后发现其他任何存活的实例，启动失败
+ * 3. 其他实例登记后发现分片集合不同或正在迁移的存活实例，启动失败
+ * 4. 先登记再检查，两个实例同时启动时双方都能看到对方；关闭时删除登记，异常退出的实例在超时后不再计入
+ *
+ * 心跳时间使用各实例的本地时钟，实例之间的时钟偏差需要远小于超时时间。
+ */
+public class ShardInstanceRegistry implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardInstanceRegistry.class);
+
+    private static final String UPDATE_SQL = "UPDATE spring_ai_chat_memory_instance "
+            + "SET shards = ?, rebalancing = ?, heartbeat = ? WHERE instance_id = ?";
+
+    private static final String INSERT_SQL = "INSERT INTO spring_ai_chat_memory_instance "
+            + "(shards, rebalancing, heartbeat, instance_id) VALUES (?, ?, ?, ?)";
+
+    private static final String SELECT_LIVE_SQL = "SELECT instance_id, shards, rebalancing "
+            + "FROM spring_ai_chat_memory_instance WHERE heartbeat >= ? AND instance_id <> ?";
+
+    private static final String DELETE_SQL = "DELETE FROM spring_ai_chat_memory_instance WHERE instance_id = ?";
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    /** 分片名称到所在数据库 */
+    private final Map<String, JdbcTemplate> shards;
+
+    /** 排序后以逗号连接的分片名称 */
+    private final String shardSet;
+
+    private final Duration timeout;
+
+    private final Clock clock;
+
+    /**
+     * @param shards 本实例使用的所有分片（包括joining的分片）
+     * @param heartbeatInterval 心跳间隔，超过3个间隔没有刷新的登记视为已退出
+     * @param clock 时钟
+     */
+    public ShardInstanceRegistry(Map<String, JdbcTemplate> shards, Duration heartbeatInterval, Clock clock) {
+        Assert.notEmpty(shards, "shards cannot be empty");
+        Assert.isTrue(heartbeatInterval.toMillis() > 0, "heartbeatInterval must be positive");
+        this.shards = Map.copyOf(shards);
+        this.shardSet = String.join(",", new TreeSet<>(shards.keySet()));
+        this.timeout = heartbeatInterval.multipliedBy(3);
+        this.clock = clock;
+    }
+
+    /**
+     * 登记本实例并检查其他存活的实例
+     *
+     * @param rebalancing 本实例是否要变更分片集合（有joining的分片）
+     * @throws IllegalStateException 如果存在冲突的实例，本实例的登记已被删除
+     */
+    public void register(boolean rebalancing) {
+        heartbeat(rebalancing);
+        List<String> conflicts = new ArrayList<>();
+        for (Instance other : liveInstances()) {
+            if (rebalancing) {
+                conflicts.add(other.id() + " is running with shards [" + other.shards() + "]");
+            }
+            else if (other.rebalancing()) {
+                conflicts.add(other.id() + " is rebalancing shards [" + other.shards() + "]");
+            }
+            else if (!other.shards().equals(this.shardSet)) {
+                conflicts.add(other.id() + " is running with different shards [" + other.shards() + "]");
+            }
+        }
+        if (!conflicts.isEmpty()) {
+            close();
+            throw new IllegalStateException("Chat memory shards [" + this.shardSet + "] conflict with running "
+                    + "instances, the shard set can only change while a single instance is running: " + conflicts);
+        }
+        logger.info("分片实例 {} 已登记，分片 [{}]", this.instanceId, this.shardSet);
+    }
+
+    /**
+     * 在所有分片上刷新本实例的登记
+     *
+     * @param rebalancing 是否正在迁移
+     */
+    public void heartbeat(boolean rebalancing) {
+        Timestamp now = Timestamp.from(this.clock.instant());
+        for (JdbcTemplate jdbcTemplate : this.shards.values()) {
+            Object[] args = { this.shardSet, rebalancing, now, this.instanceId };
+            if (jdbcTemplate.update(UPDATE_SQL, args) == 0) {
+                jdbcTemplate.update(INSERT_SQL, args);
+            }
+        }
+    }
+
+    /**
+     * 删除本实例在所有分片上的登记
+     */
+    @Override
+    public void close() {
+        for (Map.Entry<String, JdbcTemplate> shard : this.shards.entrySet()) {
+            try {
+                shard.getValue().update(DELETE_SQL, this.instanceId);
+            }
+            catch (RuntimeException ex) {
+                logger.warn("删除分片 {} 上的实例登记失败，将在心跳超时后失效", shard.getKey(), ex);
+            }
+        }
+    }
+
+    /**
+     * 所有分片上心跳未超时的其他实例，同一个实例在多个分片上的登记只计一次
+     */
+    private List<Instance> liveInstances() {
+        Timestamp since = Timestamp.from(this.clock.instant().minus(this.timeout));
+        Set<String> seen = new TreeSet<>();
+        List<Instance> instances = new ArrayList<>();
+        for (JdbcTemplate jdbcTemplate : this.shards.values()) {
+            jdbcTemplate.query(SELECT_LIVE_SQL, (RowCallbackHandler) rs -> {
+                String id = rs.getString(1);
+                if (seen.add(id)) {
+                    instances.add(new Instance(id, rs.getString(2), rs.getBoolean(3)));
+                }
+            }, since, this.instanceId);
+        }
+        return instances;
+    }
+
+    private record Instance(String id, String shards, boolean rebalancing) {
+    }
+}
@@ -0,0 +1,431 @@
+package com.example.backend.controller.AI.Memory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+/**
+ * ShardedChatMemoryRepository - 按会话ID分片的聊天记忆存储
+ *
+ * 通过一致性哈希把会话路由到多个ChatMemoryRepository（通常是连接不同数据库的JdbcChatMemoryRepository）：
+ * 1. findByConversationId / saveAll / deleteByConversationId 只访问会话所属的分片
+ * 2. findConversationIds 并行查询所有分片后合并结果
+ * 3. addShard 在线增加分片：新的读写立即按新哈希环路由，
+ *    后台把归属发生变化的会话从旧分片迁移到新分片，迁移期间读取会回落到旧分片；
+ *    迁移期间同一会话的读、写和迁移复制在同一把条带锁下进行，读取不会落在复制和删除之间
+ * 4. 迁移失败时保留旧哈希环，读取继续回落到旧分片，排除故障后调用resumeRebalance从头再扫一遍即可，
+ *    已迁移的会话不会重复复制
+ * 5. ChatMemoryListener只在对外的saveAll/deleteByConversationId后回调，迁移时的内部复制不会触发
+ * 6. 条带锁只在本JVM内有效，其他实例不知道迁移的存在：增加分片时必须只有一个实例在运行，
+ *    由ShardInstanceRegistry在启动时检查，ChatMemoryShardingConfig会拒绝在有其他实例时带着joining分片启动
+ *
+ * 示例：
+ * ShardedChatMemoryRepository repository = ShardedChatMemoryRepository.builder()
+ *     .shard("shard-0", repository0)
+ *     .shard("shard-1", repository1)
+ *     .build();
+ */
+public final class ShardedChatMemoryRepository implements ChatMemoryRepository, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardedChatMemoryRepository.class);
+
+    /** 迁移期间用于串行化同一会话读写的锁条带数 */
+    private static final int LOCK_STRIPES = 64;
+
+    /** 当前路由状态，整体替换保证读到的哈希环与分片表一致 */
+    private volatile RoutingState state;
+
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    /** 执行分散查询和后台迁移，查询都是阻塞JDBC调用，使用虚拟线程 */
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final List<ChatMemoryListener> listeners;
+
+    /** 最近一次迁移任务，只在synchronized方法中访问 */
+    @Nullable
+    private CompletableFuture<Integer> rebalancing;
+
+    private ShardedChatMemoryRepository(Map<String, ChatMemoryRepository> shards, int virtualNodes,
+                                        List<ChatMemoryListener> listeners) {
+        this.listeners = List.copyOf(listeners);
+        this.state = new RoutingState(ConsistentHashRing.of(shards.keySet(), virtualNodes), null, Map.copyOf(shards));
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            this.locks[i] = new Object();
+        }
+    }
+
+    /**
+     * 并行查询所有分片的会话ID并合并
+     */
+    @Override
+    public List<String> findConversationIds() {
+        Map<String, ChatMemoryRepository> shards = this.state.shards();
+        List<CompletableFuture<List<String>>> futures = new ArrayList<>(shards.size());
+        for (ChatMemoryRepository shard : shards.values()) {
+            futures.add(CompletableFuture.supplyAsync(shard::findConversationIds, this.executor));
+        }
+        // 迁移过程中同一个会话可能短暂出现在两个分片上
+        Set<String> ids = new LinkedHashSet<>();
+        for (CompletableFuture<List<String>> future : futures) {
+            ids.addAll(future.join());
+        }
+        return new ArrayList<>(ids);
+    }
+
+    @Override
+    public List<Message> findByConversationId(String conversationId) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        RoutingState current = this.state;
+        if (current.previous() == null) {
+            List<Message> messages = current.shards().get(current.ring().route(conversationId))
+                    .findByConversationId(conversationId);
+            // 读取期间开始了扩容，会话可能已经迁走，按迁移中的路由重新读一次
+            if (this.state != current) {
+                return findByConversationId(conversationId);
+            }
+            return messages;
+        }
+        // 与迁移复制使用同一把锁：否则可能先读到空的新分片，随后会话被复制并从旧分片删除，再回落读旧分片也是空的
+        synchronized (lockFor(conversationId)) {
+            current = this.state;
+            String owner = current.ring().route(conversationId);
+            List<Message> messages = current.shards().get(owner).findByConversationId(conversationId);
+            String previousOwner = current.previousOwner(conversationId);
+            if (messages.isEmpty() && previousOwner != null && !previousOwner.equals(owner)) {
+                return current.shards().get(previousOwner).findByConversationId(conversationId);
+            }
+            return messages;
+        }
+    }
+
+    @Override
+    public void saveAll(String conversationId, List<Message> messages) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        doSaveAll(conversationId, messages);
+        for (ChatMemoryListener listener : this.listeners) {
+            try {
+                listener.onSaved(conversationId, messages);
+            }
+            catch (RuntimeException ex) {
+                logger.warn("ChatMemoryListener {} failed for conversation {}", listener.getClass().getSimpleName(),
+                        conversationId, ex);
+            }
+        }
+    }
+
+    @Override
+    public void deleteByConversationId(String conversationId) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        doDelete(conversationId);
+        for (ChatMemoryListener listener : this.listeners) {
+            try {
+                listener.onDeleted(conversationId);
+            }
+            catch (RuntimeException ex) {
+                logger.warn("ChatMemoryListener {} failed for conversation {}", listener.getClass().getSimpleName(),
+                        conversationId, ex);
+            }
+        }
+    }
+
+    private void doSaveAll(String conversationId, List<Message> messages) {
+        RoutingState current = this.state;
+        if (current.previous() == null) {
+            current.shards().get(current.ring().route(conversationId)).saveAll(conversationId, messages);
+            // 写入期间如果发生了扩容，按新的路由重新写一次，避免数据留在旧分片
+            if (this.state != current) {
+                doSaveAll(conversationId, messages);
+            }
+            return;
+        }
+        synchronized (lockFor(conversationId)) {
+            current = this.state;
+            String owner = current.ring().route(conversationId);
+            current.shards().get(owner).saveAll(conversationId, messages);
+            String previousOwner = current.previousOwner(conversationId);
+            if (previousOwner != null && !previousOwner.equals(owner)) {
+                current.shards().get(previousOwner).deleteByConversationId(conversationId);
+            }
+        }
+    }
+
+    private void doDelete(String conversationId) {
+        RoutingState current = this.state;
+        if (current.previous() == null) {
+            current.shards().get(current.ring().route(conversationId)).deleteByConversationId(conversationId);
+            if (this.state != current) {
+                doDelete(conversationId);
+            }
+            return;
+        }
+        synchronized (lockFor(conversationId)) {
+            current = this.state;
+            String owner = current.ring().route(conversationId);
+            current.shards().get(owner).deleteByConversationId(conversationId);
+            String previousOwner = current.previousOwner(conversationId);
+            if (previousOwner != null && !previousOwner.equals(owner)) {
+                current.shards().get(previousOwner).deleteByConversationId(conversationId);
+            }
+        }
+    }
+
+    /**
+     * 在线增加分片
+     * 新哈希环立即生效，归属变化的会话在后台迁移
+     *
+     * @param name 分片名称
+     * @param shard 分片存储
+     * @return 迁移完成时返回迁移的会话数量
+     */
+    public CompletableFuture<Integer> addShard(String name, ChatMemoryRepository shard) {
+        return addShards(Map.of(name, shard));
+    }
+
+    /**
+     * 在线一次增加多个分片，只做一次迁移
+     *
+     * @param added 分片名称到存储的映射
+     * @return 迁移完成时返回迁移的会话数量
+     * @throws IllegalStateException 如果上一次迁移还没有完成
+     */
+    public synchronized CompletableFuture<Integer> addShards(Map<String, ? extends ChatMemoryRepository> added) {
+        Assert.notEmpty(added, "added shards cannot be empty");
+        RoutingState current = this.state;
+        Assert.state(current.previous() == null,
+                "previous rebalance has not finished, wait for it or call resumeRebalance() first");
+
+        ConsistentHashRing ring = current.ring();
+        Map<String, ChatMemoryRepository> shards = new LinkedHashMap<>(current.shards());
+        added.forEach((name, shard) -> {
+            Assert.hasText(name, "name cannot be null or empty");
+            Assert.notNull(shard, "shard cannot be null");
+            shards.put(name, shard);
+        });
+        for (String name : added.keySet()) {
+            ring = ring.withNode(name);
+        }
+        this.state = new RoutingState(ring, current.ring(), Map.copyOf(shards));
+        logger.info("新增分片 {}，开始迁移会话", added.keySet());
+        return startRebalance();
+    }
+
+    /**
+     * 继续上一次失败的迁移，没有未完成的迁移时直接返回0，迁移正在进行时返回进行中的任务
+     *
+     * @return 迁移完成时返回本次迁移的会话数量
+     */
+    public synchronized CompletableFuture<Integer> resumeRebalance() {
+        if (this.rebalancing != null && !this.rebalancing.isDone()) {
+            return this.rebalancing;
+        }
+        if (this.state.previous() == null) {
+            return CompletableFuture.completedFuture(0);
+        }
+        logger.info("继续未完成的分片迁移");
+        return startRebalance();
+    }
+
+    /**
+     * 在会话可能所在的分片上执行读取，分片按查找顺序排列：当前所属分片，迁移期间再加上旧分片。
+     * 迁移期间持有与迁移复制相同的锁，读取过程中会话不会在分片之间移动
+     *
+     * @param conversationId 会话ID
+     * @param reader 读取逻辑
+     * @return reader的结果
+     */
+    <T> T readFrom(String conversationId, Function<List<ChatMemoryRepository>, T> reader) {
+        RoutingState current = this.state;
+        if (current.previous() == null) {
+            T result = reader.apply(List.of(current.shards().get(current.ring().route(conversationId))));
+            if (this.state != current) {
+                return readFrom(conversationId, reader);
+            }
+            return result;
+        }
+        synchronized (lockFor(conversationId)) {
+            current = this.state;
+            String owner = current.ring().route(conversationId);
+            String previousOwner = current.previousOwner(conversationId);
+            if (previousOwner == null || previousOwner.equals(owner)) {
+                return reader.apply(List.of(current.shards().get(owner)));
+            }
+            return reader.apply(List.of(current.shards().get(owner), current.shards().get(previousOwner)));
+        }
+    }
+
+    /**
+     * 是否有迁移正在进行或失败后未完成
+     */
+    public boolean isRebalancing() {
+        return this.state.previous() != null;
+    }
+
+    /**
+     * 当前的分片名称
+     */
+    public Set<String> shardNames() {
+        return this.state.ring().nodes();
+    }
+
+    @Override
+    public void close() {
+        this.executor.close();
+    }
+
+    private CompletableFuture<Integer> startRebalance() {
+        this.rebalancing = CompletableFuture.supplyAsync(this::rebalance, this.executor)
+                .whenComplete((moved, ex) -> {
+                    if (ex != null) {
+                        logger.error("分片迁移失败，读取仍会回落到旧分片，排除故障后调用resumeRebalance()继续", ex);
+                        return;
+                    }
+                    finishRebalance();
+                    logger.info("分片迁移完成，共迁移{}个会话", moved);
+                });
+        return this.rebalancing;
+    }
+
+    private synchronized void finishRebalance() {
+        RoutingState current = this.state;
+        this.state = new RoutingState(current.ring(), null, current.shards());
+    }
+
+    /**
+     * 把每个旧分片上不再归属于它的会话移动到新的归属分片
+     * 已迁移的会话不在旧分片上，重复执行只会处理剩下的会话
+     */
+    private int rebalance() {
+        RoutingState current = this.state;
+        int moved = 0;
+        for (String source : current.previous().nodes()) {
+            ChatMemoryRepository sourceShard = current.shards().get(source);
+            for (String conversationId : sourceShard.findConversationIds()) {
+                String owner = current.ring().route(conversationId);
+                if (owner.equals(source)) {
+                    continue;
+                }
+                synchronized (lockFor(conversationId)) {
+                    ChatMemoryRepository target = current.shards().get(owner);
+                    List<Message> messages = sourceShard.findByConversationId(conversationId);
+                    // 目标分片已有数据说明迁移期间发生过写入，以目标分片为准
+                    if (!messages.isEmpty() && target.findByConversationId(conversationId).isEmpty()) {
+                        target.saveAll(conversationId, messages);
+                        moved++;
+                    }
+                    sourceShard.deleteByConversationId(conversationId);
+                }
+            }
+        }
+        return moved;
+    }
+
+    private Object lockFor(String conversationId) {
+        return this.locks[Math.floorMod(conversationId.hashCode(), LOCK_STRIPES)];
+    }
+
+    /**
+     * 创建Builder实例
+     *
+     * @return 新的Builder实例
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 路由状态
+     *
+     * @param ring 当前哈希环
+     * @param previous 迁移进行中时为旧哈希环，否则为null
+     * @param shards 分片名称到存储的映射
+     */
+    private record RoutingState(ConsistentHashRing ring, @Nullable ConsistentHashRing previous,
+                                Map<String, ChatMemoryRepository> shards) {
+
+        @Nullable
+        String previousOwner(String conversationId) {
+            return this.previous != null ? this.previous.route(conversationId) : null;
+        }
+    }
+
+    /**
+     * Builder类 - 用于构建ShardedChatMemoryRepository实例
+     */
+    public static final class Builder {
+
+        /** 分片名称到存储的映射，保持添加顺序 */
+        private final Map<String, ChatMemoryRepository> shards = new LinkedHashMap<>();
+
+        /** 每个分片的虚拟节点数 */
+        private int virtualNodes = 160;
+
+        /** 变更监听器 */
+        private final List<ChatMemoryListener> listeners = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * 添加分片
+         *
+         * @param name 分片名称，参与哈希计算，确定后不要修改
+         * @param repository 分片存储
+         * @return Builder实例，用于链式调用
+         */
+        public Builder shard(String name, ChatMemoryRepository repository) {
+            Assert.hasText(name, "name cannot be null or empty");
+            Assert.notNull(repository, "repository cannot be null");
+            this.shards.put(name, repository);
+            return this;
+        }
+
+        /**
+         * 设置每个分片的虚拟节点数
+         *
+         * @param virtualNodes 虚拟节点数
+         * @return Builder实例，用于链式调用
+         */
+        public Builder virtualNodes(int virtualNodes) {
+            this.virtualNodes = virtualNodes;
+            return this;
+        }
+
+        /**
+         * 添加变更监听器
+         *
+         * @param listeners 变更监听器
+         * @return Builder实例，用于链式调用
+         */
+        public Builder listeners(List<? extends ChatMemoryListener> listeners) {
+            this.listeners.addAll(listeners);
+            return this;
+        }
+
+        /**
+         * 构建ShardedChatMemoryRepository实例
+         *
+         * @return 新的ShardedChatMemoryRepository实例
+         * @throws IllegalArgumentException 如果没有添加任何分片
+         */
+        public ShardedChatMemoryRepository build() {
+            Assert.notEmpty(this.shards, "at least one shard must be configured");
+            return new ShardedChatMemoryRepository(this.shards, this.virtualNodes, this.listeners);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.backend.controller.AI.Prompt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.util.Assert;
+
+/**
+ * CompiledPromptTemplate - 预编译的提示词模板
+ *
+ * SystemPromptTemplate每次构造都会重新解析模板文本，这里只在加载时解析一次：
+ * 模板被切分为"文本片段"和"变量"交替的数组，渲染时按顺序拼接到一个预估好容量的StringBuilder，
+ * 不创建中间对象。
+ *
+ * 语法与SystemPromptTemplate默认的{name}占位符一致：变量名由字母、数字、下划线组成且不以数字开头，
+ * 其他花括号按普通文本处理。
+ */
+public final class CompiledPromptTemplate {
+
+    private final String name;
+
+    /** 文本片段，长度比variables多1，首尾可能为空字符串 */
+    private final String[] literals;
+
+    /** 变量名，第i个变量位于literals[i]与literals[i + 1]之间 */
+    private final String[] variables;
+
+    /** 所有文本片段的总长度，用于预估渲染结果的容量 */
+    private final int literalLength;
+
+    private final Set<String> variableNames;
+
+    private CompiledPromptTemplate(String name, String[] literals, String[] variables) {
+        this.name = name;
+        this.literals = literals;
+        this.variables = variables;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+        this.variableNames = Collections.unmodifiableSet(new LinkedHashSet<>(List.of(variables)));
+    }
+
+    /**
+     * 解析模板文本
+     *
+     * @param name 模板名称，用于错误信息
+     * @param text 模板文本
+     * @return 编译后的模板
+     */
+    public static CompiledPromptTemplate compile(String name, String text) {
+        Assert.notNull(text, "template text cannot be null");
+        List<String> literals = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == '{') {
+                int end = variableEnd(text, i + 1);
+                if (end > 0) {
+                    literals.add(literal.toString());
+                    literal.setLength(0);
+                    variables.add(text.substring(i + 1, end));
+                    i = end + 1;
+                    continue;
+                }
+            }
+            literal.append(c);
+            i++;
+        }
+        literals.add(literal.toString());
+        return new CompiledPromptTemplate(name, literals.toArray(String[]::new), variables.toArray(String[]::new));
+    }
+
+    /**
+     * 渲染模板
+     *
+     * @param values 变量值
+     * @return 渲染结果
+     * @throws IllegalArgumentException 如果缺少变量
+     */
+    public String render(Map<String, ?> values) {
+        int capacity = this.literalLength + this.variables.length * 16;
+        StringBuilder out = new StringBuilder(capacity);
+        out.append(this.literals[0]);
+        for (int i = 0; i < this.variables.length; i++) {
+            Object value = values.get(this.variables[i]);
+            if (value == null) {
+                throw new IllegalArgumentException("Missing variable '" + this.variables[i] + "' for prompt template '"
+                        + this.name + "'");
+            }
+            out.append(value);
+            out.append(this.literals[i + 1]);
+        }
+        return out.toString();
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public Set<String> getVariableNames() {
+        return this.variableNames;
+    }
+
+    /**
+     * 返回变量名结束的'}'位置，不是合法变量时返回-1
+     */
+    private static int variableEnd(String text, int start) {
+        if (start >= text.length() || !Character.isJavaIdentifierStart(text.charAt(start))
+                || text.charAt(start) == '$') {
+            return -1;
+        }
+        for (int i = start + 1; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '}') {
+                return i;
+            }
+            if (!Character.isLetterOrDigit(c) && c != '_') {
+                return -1;
+            }
+        }
+        return -1;
+    }
+}
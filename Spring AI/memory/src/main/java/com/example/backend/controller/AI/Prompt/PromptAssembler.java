@@ -0,0 +1,310 @@
+package com.example.backend.controller.AI.Prompt;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * PromptAssembler - 对前缀缓存友好的提示词组装
+ *
+ * 模型服务商的提示词缓存只对"与上一次请求逐字节相同的前缀"生效，这里按固定顺序组装消息，让相邻两轮的前缀尽量不变：
+ * 1. 系统提示词、固定内容（pinned）、对话摘要放在最前面，这部分在会话内基本不变
+ * 2. 然后是历史消息，超出窗口时按块整体丢弃最早的消息，而不是每轮滑动一条，窗口起点在一个块内的几轮中保持不变
+ * 3. 检索召回的较早消息合并为一条系统消息放在历史之后，它每轮都可能变化，放在后面不影响前面部分的缓存
+ * 4. 最后是当前用户消息
+ * 5. 所有文本做确定性规范化（Unicode NFC、统一换行、去掉行尾空白），并丢弃存储时带上的易变元数据
+ * 6. 固定部分和历史部分的最后一条消息带上CACHE_BOUNDARY元数据，标记可缓存前缀的边界
+ *
+ * 每次组装会与同一会话上一次的结果比较，统计可复用前缀占整个提示词的比例（前缀稳定度）。
+ */
+public class PromptAssembler {
+
+    /** 可缓存前缀边界的元数据键，值为边界名称 */
+    public static final String CACHE_BOUNDARY = "cache_boundary";
+
+    /** 固定部分（系统提示词、pinned、摘要）的边界 */
+    public static final String BOUNDARY_STATIC = "static";
+
+    /** 历史消息的边界 */
+    public static final String BOUNDARY_HISTORY = "history";
+
+    private static final Pattern LINE_BREAKS = Pattern.compile("\r\n?");
+
+    private static final Pattern TRAILING_SPACES = Pattern.compile("[ \t]+\n");
+
+    /** 最多保留多少个会话上一次组装的指纹 */
+    private static final int FINGERPRINT_LIMIT = 10_000;
+
+    private static final String RECALLED_HEADER = "以下是与当前问题相关的较早对话片段，仅供参考：";
+
+    private final int historyBlock;
+
+    private final Map<String, Fingerprint> fingerprints = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Fingerprint> eldest) {
+                    return size() > FINGERPRINT_LIMIT;
+                }
+            });
+
+    private final LongAdder assemblies = new LongAdder();
+
+    private final LongAdder reusedChars = new LongAdder();
+
+    private final LongAdder totalChars = new LongAdder();
+
+    /**
+     * @param historyBlock 历史窗口每次整体丢弃的消息数
+     */
+    public PromptAssembler(int historyBlock) {
+        Assert.isTrue(historyBlock > 0, "historyBlock must be positive");
+        this.historyBlock = historyBlock;
+    }
+
+    /**
+     * 开始组装一次提示词
+     *
+     * @param conversationId 会话ID，用于统计前缀稳定度，没有会话的接口可以传固定的名称
+     * @return 组装器
+     */
+    public Assembly prompt(String conversationId) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        return new Assembly(conversationId);
+    }
+
+    /**
+     * 按块裁剪历史消息：超过maxMessages时丢弃最早的若干块，使窗口起点只在块边界上移动
+     *
+     * @param history 按时间排序的历史消息
+     * @param maxMessages 最多保留的消息数
+     * @return 裁剪后的历史消息
+     */
+    public List<Message> trimHistory(List<Message> history, int maxMessages) {
+        int overflow = history.size() - maxMessages;
+        if (overflow <= 0) {
+            return history;
+        }
+        int drop = Math.min(history.size(), (overflow + this.historyBlock - 1) / this.historyBlock * this.historyBlock);
+        // 工具响应必须紧跟在工具调用之后，不能作为窗口的第一条
+        while (drop < history.size() && history.get(drop).getMessageType() == MessageType.TOOL) {
+            drop++;
+        }
+        return history.subList(drop, history.size());
+    }
+
+    /**
+     * 前缀稳定度统计
+     */
+    public PrefixStats stats() {
+        long reused = this.reusedChars.sum();
+        long total = this.totalChars.sum();
+        return new PrefixStats(this.assemblies.sum(), reused, total, total == 0 ? 0 : (double) reused / total);
+    }
+
+    /**
+     * 确定性规范化：Unicode NFC、统一为\n换行、去掉行尾空白和末尾空行
+     */
+    static String normalize(@Nullable String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFC);
+        normalized = LINE_BREAKS.matcher(normalized).replaceAll("\n");
+        normalized = TRAILING_SPACES.matcher(normalized).replaceAll("\n");
+        return normalized.stripTrailing();
+    }
+
+    private void recordStability(String conversationId, List<Message> messages) {
+        long[] hashes = new long[messages.size()];
+        int[] lengths = new int[messages.size()];
+        long total = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            String text = message.getText() == null ? "" : message.getText();
+            hashes[i] = ((long) message.getMessageType().ordinal() << 32) ^ (text.hashCode() & 0xffffffffL);
+            lengths[i] = text.length();
+            total += text.length();
+        }
+        Fingerprint previous = this.fingerprints.put(conversationId, new Fingerprint(hashes, lengths));
+        long reused = 0;
+        if (previous != null) {
+            int common = Math.min(previous.hashes.length, hashes.length);
+            for (int i = 0; i < common && previous.hashes[i] == hashes[i] && previous.lengths[i] == lengths[i]; i++) {
+                reused += lengths[i];
+            }
+        }
+        this.assemblies.increment();
+        this.reusedChars.add(reused);
+        this.totalChars.add(total);
+    }
+
+    /**
+     * 用规范化后的文本重建消息，只保留边界标记作为元数据
+     */
+    private static Message rebuild(Message message, @Nullable String boundary) {
+        Map<String, Object> metadata = new HashMap<>();
+        if (boundary != null) {
+            metadata.put(CACHE_BOUNDARY, boundary);
+        }
+        String text = normalize(message.getText());
+        return switch (message.getMessageType()) {
+            case SYSTEM -> SystemMessage.builder().text(text).metadata(metadata).build();
+            case USER -> UserMessage.builder()
+                    .text(text)
+                    .media(((UserMessage) message).getMedia())
+                    .metadata(metadata)
+                    .build();
+            case ASSISTANT -> {
+                AssistantMessage assistant = (AssistantMessage) message;
+                yield new AssistantMessage(text, metadata, assistant.getToolCalls(), assistant.getMedia());
+            }
+            case TOOL -> new ToolResponseMessage(((ToolResponseMessage) message).getResponses(), metadata);
+        };
+    }
+
+    /**
+     * 一次提示词组装，按 system → pinned → summary → history → recalled → user 的顺序输出
+     */
+    public final class Assembly {
+
+        private final String conversationId;
+
+        @Nullable
+        private String system;
+
+        private final List<Message> pinned = new ArrayList<>();
+
+        @Nullable
+        private String summary;
+
+        private List<Message> history = List.of();
+
+        private int maxHistory = Integer.MAX_VALUE;
+
+        private List<Message> recalled = List.of();
+
+        @Nullable
+        private Message user;
+
+        private Assembly(String conversationId) {
+            this.conversationId = conversationId;
+        }
+
+        /**
+         * 设置系统提示词
+         */
+        public Assembly system(@Nullable String system) {
+            this.system = system;
+            return this;
+        }
+
+        /**
+         * 添加固定内容，例如用户资料、长期记忆，应当在会话内保持不变
+         */
+        public Assembly pinned(Message message) {
+            this.pinned.add(message);
+            return this;
+        }
+
+        /**
+         * 设置对话摘要，作为系统消息放在固定部分的最后
+         */
+        public Assembly summary(@Nullable String summary) {
+            this.summary = summary;
+            return this;
+        }
+
+        /**
+         * 设置历史消息，超过maxMessages时按块裁剪
+         */
+        public Assembly history(List<Message> history, int maxMessages) {
+            this.history = history;
+            this.maxHistory = maxMessages;
+            return this;
+        }
+
+        /**
+         * 设置检索召回的较早消息，按原始顺序排列
+         */
+        public Assembly recalled(List<Message> recalled) {
+            this.recalled = recalled;
+            return this;
+        }
+
+        /**
+         * 设置当前用户消息
+         */
+        public Assembly user(String text) {
+            this.user = new UserMessage(text);
+            return this;
+        }
+
+        /**
+         * 组装消息并记录前缀稳定度
+         *
+         * @return 组装好的消息列表
+         */
+        public List<Message> messages() {
+            List<Message> staticPart = new ArrayList<>();
+            if (StringUtils.hasText(this.system)) {
+                staticPart.add(new SystemMessage(this.system));
+            }
+            staticPart.addAll(this.pinned);
+            if (StringUtils.hasText(this.summary)) {
+                staticPart.add(new SystemMessage(this.summary));
+            }
+            List<Message> window = trimHistory(this.history, this.maxHistory);
+
+            List<Message> messages = new ArrayList<>(staticPart.size() + window.size() + 2);
+            for (int i = 0; i < staticPart.size(); i++) {
+                messages.add(rebuild(staticPart.get(i), i == staticPart.size() - 1 ? BOUNDARY_STATIC : null));
+            }
+            for (int i = 0; i < window.size(); i++) {
+                messages.add(rebuild(window.get(i), i == window.size() - 1 ? BOUNDARY_HISTORY : null));
+            }
+            if (!this.recalled.isEmpty()) {
+                StringBuilder text = new StringBuilder(RECALLED_HEADER);
+                for (Message message : this.recalled) {
+                    text.append('\n').append(message.getMessageType() == MessageType.USER ? "用户：" : "助手：")
+                            .append(message.getText());
+                }
+                messages.add(rebuild(new SystemMessage(text.toString()), null));
+            }
+            if (this.user != null) {
+                messages.add(rebuild(this.user, null));
+            }
+            recordStability(this.conversationId, messages);
+            return messages;
+        }
+    }
+
+    /**
+     * 前缀稳定度统计
+     *
+     * @param assemblies 组装次数
+     * @param reusedChars 与同一会话上一次组装相同的前缀字符数之和
+     * @param totalChars 组装结果的字符数之和
+     * @param stability reusedChars / totalChars，越接近1说明越多的输入可以命中服务商的提示词缓存
+     */
+    public record PrefixStats(long assemblies, long reusedChars, long totalChars, double stability) {
+    }
+
+    private record Fingerprint(long[] hashes, int[] lengths) {
+    }
+}
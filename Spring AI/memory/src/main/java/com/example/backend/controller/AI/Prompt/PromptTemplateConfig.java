@@ -0,0 +1,28 @@
+package com.example.backend.controller.AI.Prompt;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+import java.nio.file.Path;
+
+/**
+ * 提示词模板配置类
+ *
+ * prompt.templates.dir 指向外部模板目录时，目录中的 *.st 文件覆盖内置模板并支持热加载。
+ * prompt.assembly.history-block 为PromptAssembler裁剪历史消息时每次整体丢弃的消息数。
+ */
+@Configuration
+public class PromptTemplateConfig {
+
+    @Bean(destroyMethod = "close")
+    public PromptTemplateRegistry promptTemplateRegistry(@Value("${prompt.templates.dir:}") String dir) {
+        return new PromptTemplateRegistry(StringUtils.hasText(dir) ? Path.of(dir) : null);
+    }
+
+    @Bean
+    public PromptAssembler promptAssembler(@Value("${prompt.assembly.history-block:10}") int historyBlock) {
+        return new PromptAssembler(historyBlock);
+    }
+}
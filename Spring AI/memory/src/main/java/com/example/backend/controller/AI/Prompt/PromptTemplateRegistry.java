@@ -0,0 +1,267 @@
+package com.example.backend.controller.AI.Prompt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+/**
+ * PromptTemplateRegistry - 提示词模板注册表
+ *
+ * 1. 启动时加载classpath:prompts/*.st，文件名（不含扩展名）即模板名称
+ * 2. 可选的外部目录中的同名模板覆盖classpath中的模板，目录变化时自动重新编译（热加载）
+ * 3. 模板只编译一次，请求时直接渲染；变量值相同的渲染结果会被缓存，固定人设的模板几乎没有渲染开销。
+ *    缓存的键是模板变量值的字符串快照，调用方之后修改传入的Map不会影响已缓存的结果；
+ *    每个模板按LRU保留最近使用的结果
+ */
+public class PromptTemplateRegistry implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PromptTemplateRegistry.class);
+
+    private static final String SUFFIX = ".st";
+
+    /** 每个模板最多缓存的渲染结果数 */
+    private static final int RENDER_CACHE_LIMIT = 256;
+
+    /** 生效的模板（外部目录优先） */
+    private final Map<String, Entry> templates = new ConcurrentHashMap<>();
+
+    /** classpath中的模板，外部模板被删除时回退到这里 */
+    private final Map<String, CompiledPromptTemplate> builtin = new ConcurrentHashMap<>();
+
+    @Nullable
+    private final Path externalDir;
+
+    @Nullable
+    private WatchService watchService;
+
+    public PromptTemplateRegistry(@Nullable Path externalDir) {
+        this.externalDir = externalDir;
+        loadClasspathTemplates();
+        if (externalDir != null && Files.isDirectory(externalDir)) {
+            loadExternalTemplates(externalDir);
+            watch(externalDir);
+        }
+    }
+
+    /**
+     * 注册或替换一个模板
+     *
+     * @param name 模板名称
+     * @param text 模板文本
+     */
+    public void register(String name, String text) {
+        Assert.hasText(name, "name cannot be null or empty");
+        this.templates.put(name, new Entry(CompiledPromptTemplate.compile(name, text)));
+    }
+
+    /**
+     * 获取编译后的模板
+     *
+     * @throws IllegalArgumentException 如果模板不存在
+     */
+    public CompiledPromptTemplate get(String name) {
+        return entry(name).template;
+    }
+
+    /**
+     * 渲染模板
+     *
+     * @param name 模板名称
+     * @param values 变量值
+     * @return 渲染结果
+     * @throws IllegalArgumentException 如果缺少变量
+     */
+    public String render(String name, Map<String, ?> values) {
+        Entry entry = entry(name);
+        List<String> key = cacheKey(entry.template, values);
+        if (key == null) {
+            return entry.template.render(values);
+        }
+        String rendered = entry.cache.get(key);
+        if (rendered == null) {
+            rendered = entry.template.render(values);
+            entry.cache.put(key, rendered);
+        }
+        return rendered;
+    }
+
+    /**
+     * 渲染模板并创建系统消息，用于替代 new SystemPromptTemplate(text).createMessage(values)
+     */
+    public SystemMessage createSystemMessage(String name, Map<String, ?> values) {
+        return new SystemMessage(render(name, values));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.watchService != null) {
+            this.watchService.close();
+        }
+    }
+
+    private Entry entry(String name) {
+        Entry entry = this.templates.get(name);
+        if (entry == null) {
+            throw new IllegalArgumentException("Unknown prompt template: " + name);
+        }
+        return entry;
+    }
+
+    /**
+     * 按模板变量的顺序取出变量值的字符串形式作为缓存的键，与渲染时拼接的内容一致；
+     * 模板用不到的键不参与缓存，缺少变量时返回null，交给模板抛出异常
+     */
+    @Nullable
+    private static List<String> cacheKey(CompiledPromptTemplate template, Map<String, ?> values) {
+        Set<String> variableNames = template.getVariableNames();
+        String[] key = new String[variableNames.size()];
+        int i = 0;
+        for (String variableName : variableNames) {
+            Object value = values.get(variableName);
+            if (value == null) {
+                return null;
+            }
+            key[i++] = String.valueOf(value);
+        }
+        return List.of(key);
+    }
+
+    private void loadClasspathTemplates() {
+        try {
+            Resource[] resources = new PathMatchingResourcePatternResolver().getResources("classpath*:prompts/*" + SUFFIX);
+            for (Resource resource : resources) {
+                String name = templateName(resource.getFilename());
+                try (InputStream in = resource.getInputStream()) {
+                    CompiledPromptTemplate template = CompiledPromptTemplate.compile(name,
+                            new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                    this.builtin.put(name, template);
+                    this.templates.put(name, new Entry(template));
+                }
+            }
+            logger.info("加载内置提示词模板{}个", resources.length);
+        }
+        catch (IOException ex) {
+            throw new IllegalStateException("Failed to load prompt templates from classpath", ex);
+        }
+    }
+
+    private void loadExternalTemplates(Path dir) {
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).forEach(this::reload);
+        }
+        catch (IOException ex) {
+            throw new IllegalStateException("Failed to load prompt templates from " + dir, ex);
+        }
+    }
+
+    /**
+     * 重新编译外部模板，文件已删除时回退到内置模板
+     */
+    private void reload(Path file) {
+        String name = templateName(file.getFileName().toString());
+        if (!Files.exists(file)) {
+            CompiledPromptTemplate fallback = this.builtin.get(name);
+            if (fallback != null) {
+                this.templates.put(name, new Entry(fallback));
+            }
+            else {
+                this.templates.remove(name);
+            }
+            logger.info("外部提示词模板 {} 已删除", name);
+            return;
+        }
+        try {
+            register(name, Files.readString(file, StandardCharsets.UTF_8));
+            logger.info("加载外部提示词模板 {}", name);
+        }
+        catch (IOException ex) {
+            // 编辑器保存过程中可能读到中间状态，保留旧版本，等下一次变更事件
+            logger.warn("读取提示词模板 {} 失败，继续使用旧版本", file, ex);
+        }
+    }
+
+    private void watch(Path dir) {
+        try {
+            this.watchService = FileSystems.getDefault().newWatchService();
+            dir.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        }
+        catch (IOException ex) {
+            logger.warn("无法监听提示词模板目录 {}，热加载不可用", dir, ex);
+            return;
+        }
+        Thread watcher = new Thread(this::watchLoop, "prompt-template-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watchLoop() {
+        try {
+            while (true) {
+                WatchKey key = this.watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.context() instanceof Path changed && changed.toString().endsWith(SUFFIX)) {
+                        reload(this.externalDir.resolve(changed));
+                    }
+                }
+                if (!key.reset()) {
+                    break;
+                }
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ClosedWatchServiceException ex) {
+            // 注册表已关闭
+        }
+    }
+
+    private static String templateName(String filename) {
+        return filename.substring(0, filename.length() - SUFFIX.length());
+    }
+
+    /**
+     * 编译后的模板及其渲染结果缓存，模板重新加载时整体替换
+     */
+    private static final class Entry {
+
+        private final CompiledPromptTemplate template;
+
+        private final Map<List<String>, String> cache = Collections.synchronizedMap(
+                new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<List<String>, String> eldest) {
+                        return size() > RENDER_CACHE_LIMIT;
+                    }
+                });
+
+        private Entry(CompiledPromptTemplate template) {
+            this.template = template;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.backend.controller.AI.Routing;
+
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * 模型端点路由配置类
+ *
+ * 通过 chat.routing.enabled=true 开启，注册为@Primary的ChatModel，
+ * 自动配置的ChatClient.Builder（AIChatController和AdvisorConfig使用的）会包装它而不是单个OpenAiChatModel。
+ */
+@Configuration
+@EnableConfigurationProperties(ChatRoutingProperties.class)
+@ConditionalOnProperty(prefix = "chat.routing", name = "enabled", havingValue = "true")
+public class ChatRoutingConfig {
+
+    @Bean
+    @Primary
+    public HedgingChatModel hedgingChatModel(ChatRoutingProperties properties, OpenAiChatModel openAiChatModel) {
+        HedgingChatModel.Builder builder = HedgingChatModel.builder()
+                .hedgeQuantile(properties.getHedgeQuantile())
+                .minSamples(properties.getMinSamples())
+                .initialHedgeDelay(properties.getInitialHedgeDelay())
+                .minHedgeDelay(properties.getMinHedgeDelay())
+                .ewmaAlpha(properties.getEwmaAlpha())
+                .errorPenalty(properties.getErrorPenalty());
+        if (properties.isIncludeDefault()) {
+            // 默认端点接受ComplexityRouter按请求选择的模型，其他端点总是使用各自配置的模型
+            builder.endpoint("default", openAiChatModel, true);
+        }
+        for (ChatRoutingProperties.Endpoint endpoint : properties.getEndpoints()) {
+            OpenAiApi api = OpenAiApi.builder()
+                    .baseUrl(endpoint.getBaseUrl())
+                    .apiKey(endpoint.getApiKey())
+                    .build();
+            builder.endpoint(endpoint.getName(), OpenAiChatModel.builder()
+                    .openAiApi(api)
+                    .defaultOptions(OpenAiChatOptions.builder().model(endpoint.getModel()).build())
+                    .build());
+        }
+        return builder.build();
+    }
+}
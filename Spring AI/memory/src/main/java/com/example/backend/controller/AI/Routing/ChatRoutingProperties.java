@@ -0,0 +1,65 @@
+package com.example.backend.controller.AI.Routing;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 模型端点路由配置
+ *
+ * 对应配置前缀 chat.routing，示例：
+ * chat:
+ *   routing:
+ *     enabled: true
+ *     endpoints:
+ *       - name: backup
+ *         base-url: https://api.example.com
+ *         api-key: xxx
+ *         model: gpt-4o-mini
+ */
+@Data
+@ConfigurationProperties(prefix = "chat.routing")
+public class ChatRoutingProperties {
+
+    /** 是否启用对冲路由 */
+    private boolean enabled = false;
+
+    /** 是否把spring.ai.openai自动配置的模型作为第一个端点 */
+    private boolean includeDefault = true;
+
+    /** 触发对冲的首token延迟分位 */
+    private double hedgeQuantile = 0.95;
+
+    /** 使用分位数前至少需要的样本数 */
+    private int minSamples = 20;
+
+    /** 样本不足时的对冲阈值 */
+    private Duration initialHedgeDelay = Duration.ofSeconds(2);
+
+    /** 对冲阈值下限 */
+    private Duration minHedgeDelay = Duration.ofMillis(50);
+
+    /** EWMA中新样本的权重 */
+    private double ewmaAlpha = 0.2;
+
+    /** 错误率对路由得分的惩罚系数 */
+    private double errorPenalty = 4.0;
+
+    /** 额外的OpenAI兼容端点 */
+    private List<Endpoint> endpoints = new ArrayList<>();
+
+    @Data
+    public static class Endpoint {
+
+        private String name;
+
+        private String baseUrl;
+
+        private String apiKey;
+
+        private String model;
+    }
+}
@@ -0,0 +1,358 @@
+package com.example.backend.controller.AI.Routing;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+/**
+ * ComplexityRouter - 按提示词复杂度选择模型
+ *
+ * 在调用ChatClient之前用几个本地就能算出来的特征决定这次请求走小模型还是大模型：
+ * 1. 当前消息的估算token数（中日韩字符按1个token，其他字符按4个一个token）
+ * 2. 会话中已有的消息数，按会话ID从ChatMemory中读取，受记忆窗口限制
+ * 3. 关键词，忽略大小写；以字母或数字开头/结尾的关键词按单词边界匹配（code不会命中decode），中文按子串匹配
+ * 规则按配置顺序匹配，都不命中时使用默认模型。
+ *
+ * 每个模型和每条规则的请求数、平均首token延迟和平均总耗时会被记录下来，
+ * 规则的统计额外给出与默认路由的延迟差，用于比较不同路由的延迟差异、调整规则。
+ */
+public class ComplexityRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ComplexityRouter.class);
+
+    /** 没有规则命中时的路由名称 */
+    public static final String DEFAULT_ROUTE = "default";
+
+    /** 关键词两侧不能紧挨着的字符，中日韩文字不在其中，中文关键词仍按子串匹配 */
+    private static final String WORD_CHAR = "[\\p{IsLatin}\\p{IsCyrillic}\\p{IsGreek}\\p{Nd}_]";
+
+    private final String defaultModel;
+
+    private final List<CompiledRule> rules;
+
+    @Nullable
+    private final ChatMemory chatMemory;
+
+    private final Map<String, Counters> modelCounters = new ConcurrentHashMap<>();
+
+    private final Map<String, Counters> routeCounters = new ConcurrentHashMap<>();
+
+    public ComplexityRouter(ComplexityRouterProperties properties) {
+        this(properties, null);
+    }
+
+    /**
+     * @param properties 路由配置
+     * @param chatMemory 用于读取会话消息数，为null时按会话ID路由的会话消息数都是0
+     */
+    public ComplexityRouter(ComplexityRouterProperties properties, @Nullable ChatMemory chatMemory) {
+        Assert.hasText(properties.getDefaultModel(), "chat.router.default-model cannot be null or empty");
+        this.defaultModel = properties.getDefaultModel();
+        this.chatMemory = chatMemory;
+        this.rules = new ArrayList<>();
+        for (ComplexityRouterProperties.Rule rule : properties.getRules()) {
+            Assert.hasText(rule.getName(), "name of routing rule cannot be null or empty");
+            Assert.isTrue(!DEFAULT_ROUTE.equals(rule.getName()), "routing rule cannot be named '" + DEFAULT_ROUTE + "'");
+            Assert.hasText(rule.getModel(), "model of routing rule '" + rule.getName() + "' cannot be null or empty");
+            this.rules.add(new CompiledRule(rule, keywordPattern(rule.getKeywords())));
+        }
+    }
+
+    /**
+     * 为一次请求选择模型，会话消息数从ChatMemory中读取；
+     * 读取受记忆窗口限制且多查一次存储，已经读出历史的调用方应使用route(String, int)
+     *
+     * @param message 当前用户消息
+     * @param conversationId 会话ID，没有记忆的接口传null
+     * @return 路由决策
+     */
+    public RouteDecision route(String message, @Nullable String conversationId) {
+        int historySize = 0;
+        if (this.chatMemory != null && conversationId != null) {
+            historySize = this.chatMemory.get(conversationId).size();
+        }
+        return route(message, historySize);
+    }
+
+    /**
+     * 为一次请求选择模型
+     *
+     * @param message 当前用户消息
+     * @param historySize 会话中已有的消息数，没有记忆的接口传0
+     * @return 路由决策
+     */
+    public RouteDecision route(String message, int historySize) {
+        int tokens = estimateTokens(message);
+        for (CompiledRule compiled : this.rules) {
+            if (compiled.matches(tokens, historySize, message)) {
+                return decide(compiled.rule.getModel(), compiled.rule.getName(), tokens, historySize);
+            }
+        }
+        return decide(this.defaultModel, DEFAULT_ROUTE, tokens, historySize);
+    }
+
+    /**
+     * 包装模型输出，记录首个元素和完成的耗时
+     *
+     * @param decision 路由决策
+     * @param output 模型的流式输出，应在delayElements等平滑处理之前包装
+     * @return 包装后的输出
+     */
+    public <T> Flux<T> track(RouteDecision decision, Flux<T> output) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean first = new AtomicBoolean();
+            Counters model = modelCounters(decision.model());
+            Counters route = routeCounters(decision.rule(), decision.model());
+            return output
+                    .doOnNext(item -> {
+                        if (first.compareAndSet(false, true)) {
+                            long ttft = System.nanoTime() - start;
+                            model.recordTtft(ttft);
+                            route.recordTtft(ttft);
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        long total = System.nanoTime() - start;
+                        model.recordCompleted(total);
+                        route.recordCompleted(total);
+                    })
+                    .doOnError(ex -> {
+                        model.errors.increment();
+                        route.errors.increment();
+                    });
+        });
+    }
+
+    /**
+     * 记录非流式调用的耗时，首token延迟与总耗时相同
+     */
+    public void recordCall(RouteDecision decision, long elapsedNanos) {
+        for (Counters counters : List.of(modelCounters(decision.model()),
+                routeCounters(decision.rule(), decision.model()))) {
+            counters.recordTtft(elapsedNanos);
+            counters.recordCompleted(elapsedNanos);
+        }
+    }
+
+    /**
+     * 每个模型的路由统计
+     */
+    public Map<String, ModelStats> stats() {
+        Map<String, ModelStats> stats = new LinkedHashMap<>();
+        this.modelCounters.forEach((model, counters) -> stats.put(model, counters.snapshot()));
+        return stats;
+    }
+
+    /**
+     * 每条规则（包括default）的路由统计，以及与默认路由的平均延迟差
+     */
+    public Map<String, RouteStats> routeStats() {
+        Counters defaults = this.routeCounters.getOrDefault(DEFAULT_ROUTE, new Counters(this.defaultModel));
+        Map<String, RouteStats> stats = new LinkedHashMap<>();
+        this.routeCounters.forEach((route, counters) -> stats.put(route, new RouteStats(counters.model,
+                counters.snapshot(),
+                delta(counters.ttftNanos, counters.ttftSamples, defaults.ttftNanos, defaults.ttftSamples),
+                delta(counters.totalNanos, counters.completed, defaults.totalNanos, defaults.completed))));
+        return stats;
+    }
+
+    /**
+     * 粗略估算token数，不依赖分词器：中日韩字符大多是一个token，其他文本约4个字符一个token
+     */
+    static int estimateTokens(String text) {
+        int cjk = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            Character.UnicodeScript script = Character.UnicodeScript.of(text.charAt(i));
+            if (script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+                    || script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL) {
+                cjk++;
+            }
+            else if (!Character.isWhitespace(text.charAt(i))) {
+                other++;
+            }
+        }
+        return cjk + (other + 3) / 4;
+    }
+
+    /**
+     * 编译关键词：忽略大小写，以字母或数字开头/结尾的一侧要求单词边界
+     */
+    @Nullable
+    static Pattern keywordPattern(List<String> keywords) {
+        List<String> alternatives = new ArrayList<>();
+        for (String keyword : keywords) {
+            if (keyword == null || keyword.isBlank()) {
+                continue;
+            }
+            String trimmed = keyword.strip();
+            StringBuilder regex = new StringBuilder();
+            if (isWordChar(trimmed.codePointAt(0))) {
+                regex.append("(?<!").append(WORD_CHAR).append(')');
+            }
+            regex.append(Pattern.quote(trimmed));
+            if (isWordChar(trimmed.codePointBefore(trimmed.length()))) {
+                regex.append("(?!").append(WORD_CHAR).append(')');
+            }
+            alternatives.add(regex.toString());
+        }
+        if (alternatives.isEmpty()) {
+            return null;
+        }
+        return Pattern.compile(String.join("|", alternatives), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+
+    private static boolean isWordChar(int codePoint) {
+        if (Character.isDigit(codePoint) || codePoint == '_') {
+            return true;
+        }
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.LATIN || script == Character.UnicodeScript.CYRILLIC
+                || script == Character.UnicodeScript.GREEK;
+    }
+
+    /**
+     * 与默认路由的平均延迟差（毫秒），任意一方还没有样本时为null
+     */
+    @Nullable
+    private static Double delta(LongAdder nanos, LongAdder samples, LongAdder baselineNanos,
+                                LongAdder baselineSamples) {
+        long count = samples.sum();
+        long baselineCount = baselineSamples.sum();
+        if (count == 0 || baselineCount == 0) {
+            return null;
+        }
+        return ((double) nanos.sum() / count - (double) baselineNanos.sum() / baselineCount) / 1_000_000d;
+    }
+
+    private RouteDecision decide(String model, String rule, int tokens, int historySize) {
+        modelCounters(model).requests.increment();
+        routeCounters(rule, model).requests.increment();
+        RouteDecision decision = new RouteDecision(model, rule, tokens, historySize);
+        logger.debug("模型路由: {}", decision);
+        return decision;
+    }
+
+    private Counters modelCounters(String model) {
+        return this.modelCounters.computeIfAbsent(model, key -> new Counters(key));
+    }
+
+    private Counters routeCounters(String rule, String model) {
+        return this.routeCounters.computeIfAbsent(rule, key -> new Counters(model));
+    }
+
+    /**
+     * 路由决策
+     *
+     * @param model 选中的模型
+     * @param rule 命中的规则名称，没有命中时为default
+     * @param estimatedTokens 当前消息的估算token数
+     * @param historySize 会话中已有的消息数
+     */
+    public record RouteDecision(String model, String rule, int estimatedTokens, int historySize) {
+
+        /**
+         * 转换为ChatClient可以使用的运行时选项
+         */
+        public ChatOptions options() {
+            return ChatOptions.builder().model(this.model).build();
+        }
+    }
+
+    /**
+     * 单个模型的统计
+     *
+     * @param requests 路由到该模型的请求数
+     * @param completed 成功完成的请求数
+     * @param errors 失败的请求数
+     * @param avgTtftMillis 平均首token延迟
+     * @param avgTotalMillis 平均总耗时
+     */
+    public record ModelStats(long requests, long completed, long errors, double avgTtftMillis, double avgTotalMillis) {
+    }
+
+    /**
+     * 单条路由规则的统计
+     *
+     * @param model 规则对应的模型
+     * @param stats 请求数和平均延迟
+     * @param ttftDeltaMillis 平均首token延迟减去默认路由的平均首token延迟，没有样本时为null
+     * @param totalDeltaMillis 平均总耗时减去默认路由的平均总耗时，没有样本时为null
+     */
+    public record RouteStats(String model, ModelStats stats, @Nullable Double ttftDeltaMillis,
+                             @Nullable Double totalDeltaMillis) {
+    }
+
+    private record CompiledRule(ComplexityRouterProperties.Rule rule, @Nullable Pattern keywords) {
+
+        boolean matches(int tokens, int historySize, String message) {
+            if (this.rule.getMinTokens() != null && tokens < this.rule.getMinTokens()) {
+                return false;
+            }
+            if (this.rule.getMaxTokens() != null && tokens > this.rule.getMaxTokens()) {
+                return false;
+            }
+            if (this.rule.getMinHistory() != null && historySize < this.rule.getMinHistory()) {
+                return false;
+            }
+            if (this.rule.getMaxHistory() != null && historySize > this.rule.getMaxHistory()) {
+                return false;
+            }
+            return this.keywords == null || this.keywords.matcher(message).find();
+        }
+    }
+
+    private static final class Counters {
+
+        private final String model;
+
+        private final LongAdder requests = new LongAdder();
+
+        private final LongAdder completed = new LongAdder();
+
+        private final LongAdder errors = new LongAdder();
+
+        private final LongAdder ttftNanos = new LongAdder();
+
+        private final LongAdder ttftSamples = new LongAdder();
+
+        private final LongAdder totalNanos = new LongAdder();
+
+        Counters(String model) {
+            this.model = model;
+        }
+
+        void recordTtft(long nanos) {
+            this.ttftNanos.add(nanos);
+            this.ttftSamples.increment();
+        }
+
+        void recordCompleted(long nanos) {
+            this.totalNanos.add(nanos);
+            this.completed.increment();
+        }
+
+        ModelStats snapshot() {
+            long samples = this.ttftSamples.sum();
+            long done = this.completed.sum();
+            return new ModelStats(this.requests.sum(), done, this.errors.sum(),
+                    samples == 0 ? 0 : this.ttftNanos.sum() / 1_000_000d / samples,
+                    done == 0 ? 0 : this.totalNanos.sum() / 1_000_000d / done);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.backend.controller.AI.Routing;
+
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 按复杂度路由配置类
+ *
+ * 通过 chat.router.enabled=true 开启，未开启时AIChatController使用ChatClient的默认模型。
+ * 会话消息数从ChatMemory中读取。
+ */
+@Configuration
+@EnableConfigurationProperties(ComplexityRouterProperties.class)
+@ConditionalOnProperty(prefix = "chat.router", name = "enabled", havingValue = "true")
+public class ComplexityRouterConfig {
+
+    @Bean
+    public ComplexityRouter complexityRouter(ComplexityRouterProperties properties,
+                                             ObjectProvider<ChatMemory> chatMemory) {
+        return new ComplexityRouter(properties, chatMemory.getIfAvailable());
+    }
+}
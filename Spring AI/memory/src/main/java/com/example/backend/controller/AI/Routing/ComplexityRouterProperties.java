@@ -0,0 +1,65 @@
+package com.example.backend.controller.AI.Routing;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按提示词复杂度选择模型的配置
+ *
+ * 对应配置前缀 chat.router，规则按顺序匹配，第一条命中的规则决定模型，都不命中时使用default-model：
+ * chat:
+ *   router:
+ *     enabled: true
+ *     default-model: gpt-4o-mini
+ *     rules:
+ *       - name: keyword
+ *         model: gpt-4o
+ *         keywords: [分析, 代码]
+ *       - name: long-prompt
+ *         model: gpt-4o
+ *         min-tokens: 400
+ */
+@Data
+@ConfigurationProperties(prefix = "chat.router")
+public class ComplexityRouterProperties {
+
+    /** 是否启用按复杂度路由 */
+    private boolean enabled = false;
+
+    /** 没有规则命中时使用的模型，通常是小而快的模型 */
+    private String defaultModel;
+
+    /** 路由规则，按顺序匹配 */
+    private List<Rule> rules = new ArrayList<>();
+
+    /**
+     * 路由规则，未配置的条件不参与判断，配置了的条件需要同时满足
+     */
+    @Data
+    public static class Rule {
+
+        /** 规则名称，记录在路由决策中 */
+        private String name;
+
+        /** 命中后使用的模型 */
+        private String model;
+
+        /** 当前消息的估算token数下限 */
+        private Integer minTokens;
+
+        /** 当前消息的估算token数上限 */
+        private Integer maxTokens;
+
+        /** 会话中已有消息数的下限，消息数从ChatMemory读取，不会超过记忆窗口（chat4最多保存20条），更大的下限永远不会命中 */
+        private Integer minHistory;
+
+        /** 会话中已有消息数的上限 */
+        private Integer maxHistory;
+
+        /** 消息包含其中任意一个关键词（忽略大小写，英文等按单词边界匹配，中文按子串匹配） */
+        private List<String> keywords = new ArrayList<>();
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.backend.controller.AI.Routing;
+
+import java.util.Arrays;
+
+/**
+ * EndpointStats - 单个模型端点的延迟与错误统计
+ *
+ * 1. 延迟使用EWMA平滑，新样本权重为alpha
+ * 2. 错误率同样使用EWMA，成功记0、失败记1
+ * 3. 最近SAMPLE_WINDOW个延迟样本保存在环形数组中，用于计算对冲阈值的分位数
+ *
+ * 所有方法都是同步的，临界区只有几次数组读写，远小于一次模型调用的开销。
+ */
+public class EndpointStats {
+
+    /** 计算分位数使用的样本窗口 */
+    private static final int SAMPLE_WINDOW = 256;
+
+    private final double alpha;
+
+    private final long[] samples = new long[SAMPLE_WINDOW];
+
+    private int sampleCount;
+
+    private int nextSample;
+
+    private double ewmaLatencyNanos;
+
+    private double ewmaErrorRate;
+
+    public EndpointStats(double alpha) {
+        this.alpha = alpha;
+    }
+
+    /**
+     * 记录一次成功请求的延迟（流式为首个token的时间）
+     */
+    public synchronized void recordLatency(long nanos) {
+        this.ewmaLatencyNanos = this.sampleCount == 0 ? nanos : ewma(this.ewmaLatencyNanos, nanos);
+        this.ewmaErrorRate = ewma(this.ewmaErrorRate, 0);
+        this.samples[this.nextSample] = nanos;
+        this.nextSample = (this.nextSample + 1) % SAMPLE_WINDOW;
+        this.sampleCount = Math.min(this.sampleCount + 1, SAMPLE_WINDOW);
+    }
+
+    /**
+     * 记录被取消的请求：只知道真实延迟不小于elapsed，比当前均值大时才计入
+     */
+    public synchronized void recordCancelled(long elapsedNanos) {
+        if (elapsedNanos > this.ewmaLatencyNanos) {
+            this.ewmaLatencyNanos = ewma(this.ewmaLatencyNanos, elapsedNanos);
+        }
+    }
+
+    public synchronized void recordError() {
+        this.ewmaErrorRate = ewma(this.ewmaErrorRate, 1);
+    }
+
+    /**
+     * 路由得分，越小越好：平滑延迟按错误率放大
+     *
+     * @param errorPenalty 错误率的惩罚系数
+     * @param priorNanos 还没有成功样本时假定的延迟，避免从未成功的端点因延迟为0排在最前
+     */
+    public synchronized double score(double errorPenalty, long priorNanos) {
+        double latency = this.sampleCount == 0 ? Math.max(priorNanos, this.ewmaLatencyNanos) : this.ewmaLatencyNanos;
+        return latency * (1 + errorPenalty * this.ewmaErrorRate);
+    }
+
+    /**
+     * 最近样本的分位数
+     *
+     * @param quantile 0到1之间的分位
+     * @param minSamples 样本不足该数量时返回-1
+     * @return 分位数（纳秒）
+     */
+    public long percentile(double quantile, int minSamples) {
+        long[] copy;
+        synchronized (this) {
+            if (this.sampleCount < minSamples) {
+                return -1;
+            }
+            copy = Arrays.copyOf(this.samples, this.sampleCount);
+        }
+        Arrays.sort(copy);
+        int index = (int) Math.ceil(quantile * copy.length) - 1;
+        return copy[Math.max(0, Math.min(index, copy.length - 1))];
+    }
+
+    public synchronized double getEwmaLatencyMillis() {
+        return this.ewmaLatencyNanos / 1_000_000d;
+    }
+
+    public synchronized double getEwmaErrorRate() {
+        return this.ewmaErrorRate;
+    }
+
+    private double ewma(double current, double sample) {
+        return current + this.alpha * (sample - current);
+    }
+}
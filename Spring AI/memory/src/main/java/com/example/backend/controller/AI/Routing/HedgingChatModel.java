@@ -0,0 +1,378 @@
+package com.example.backend.controller.AI.Routing;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.DefaultChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.util.Assert;
+
+/**
+ * HedgingChatModel - 多端点对冲请求的ChatModel
+ *
+ * 包装多个模型端点（通常是多个OpenAI兼容的base-url），降低尾延迟：
+ * 1. 每个端点维护EWMA延迟和错误率，得分最低的端点作为主端点，次低的作为对冲端点
+ * 2. 主端点在阈值时间内没有返回首个token时，向对冲端点再发一次请求，谁先返回内容就用谁，另一个流被取消
+ * 3. 阈值取主端点最近首token延迟的分位数（默认p95），样本不足时使用初始阈值
+ * 4. 主端点报错时立即触发对冲请求，相当于故障转移
+ * 5. 不同端点可能是不同服务商的不同模型：默认选项中不带模型名，避免ChatClient把第一个端点的模型名带进每个请求；
+ *    用endpoint(name, model)添加的端点总是使用自己配置的模型，请求中指定的模型（例如ComplexityRouter选择的模型）
+ *    只发给用endpoint(name, model, true)添加的端点
+ *
+ * 示例：
+ * HedgingChatModel model = HedgingChatModel.builder()
+ *     .endpoint("primary", primaryModel)
+ *     .endpoint("backup", backupModel)
+ *     .build();
+ */
+public final class HedgingChatModel implements ChatModel {
+
+    private static final Logger logger = LoggerFactory.getLogger(HedgingChatModel.class);
+
+    private final List<Endpoint> endpoints;
+
+    private final double hedgeQuantile;
+
+    private final int minSamples;
+
+    private final Duration initialHedgeDelay;
+
+    private final Duration minHedgeDelay;
+
+    private final double errorPenalty;
+
+    private HedgingChatModel(Builder builder) {
+        this.endpoints = new ArrayList<>();
+        builder.models.forEach((name, model) -> this.endpoints.add(new Endpoint(name, model,
+                builder.acceptsRequestModel.contains(name),
+                new EndpointStats(builder.ewmaAlpha), new EndpointStats(builder.ewmaAlpha))));
+        this.hedgeQuantile = builder.hedgeQuantile;
+        this.minSamples = builder.minSamples;
+        this.initialHedgeDelay = builder.initialHedgeDelay;
+        this.minHedgeDelay = builder.minHedgeDelay;
+        this.errorPenalty = builder.errorPenalty;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        List<Endpoint> ranked = rank(false);
+        Endpoint primary = ranked.get(0);
+        Mono<ChatResponse> first = trackedCall(primary, prompt);
+        if (ranked.size() == 1) {
+            return first.block();
+        }
+        Endpoint secondary = ranked.get(1);
+        Sinks.Empty<Void> primaryFailed = Sinks.empty();
+        Mono<ChatResponse> hedge = Mono.firstWithSignal(Mono.delay(hedgeDelay(primary.callStats())).then(),
+                        primaryFailed.asMono())
+                .then(Mono.defer(() -> {
+                    logger.debug("对冲请求: {} -> {}", primary.name(), secondary.name());
+                    return trackedCall(secondary, prompt);
+                }));
+        return Mono.firstWithValue(first.doOnError(ex -> primaryFailed.tryEmitEmpty()), hedge).block();
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        List<Endpoint> ranked = rank(true);
+        Endpoint primary = ranked.get(0);
+        Flux<ChatResponse> first = trackedStream(primary, prompt);
+        if (ranked.size() == 1) {
+            return first;
+        }
+        Endpoint secondary = ranked.get(1);
+        Sinks.Empty<Void> primaryFailed = Sinks.empty();
+        Flux<ChatResponse> hedge = Mono.firstWithSignal(Mono.delay(hedgeDelay(primary.streamStats())).then(),
+                        primaryFailed.asMono())
+                .thenMany(Flux.defer(() -> {
+                    logger.debug("对冲请求: {} -> {}", primary.name(), secondary.name());
+                    return trackedStream(secondary, prompt);
+                }));
+        return Flux.firstWithValue(first.doOnError(ex -> primaryFailed.tryEmitEmpty()), hedge);
+    }
+
+    /**
+     * 第一个端点的默认选项去掉模型名，各端点未指定的模型由自己的默认选项决定
+     */
+    @Override
+    public ChatOptions getDefaultOptions() {
+        ChatOptions options = this.endpoints.get(0).model().getDefaultOptions();
+        return options != null ? withoutModel(options) : null;
+    }
+
+    /**
+     * 各端点的统计快照，用于监控
+     */
+    public Map<String, EndpointSnapshot> snapshot() {
+        Map<String, EndpointSnapshot> snapshot = new LinkedHashMap<>();
+        for (Endpoint endpoint : this.endpoints) {
+            snapshot.put(endpoint.name(), new EndpointSnapshot(endpoint.streamStats().getEwmaLatencyMillis(),
+                    endpoint.callStats().getEwmaLatencyMillis(), endpoint.streamStats().getEwmaErrorRate(),
+                    endpoint.callStats().getEwmaErrorRate()));
+        }
+        return snapshot;
+    }
+
+    /**
+     * 按得分从低到高排序，得分相同时保持配置顺序
+     */
+    private List<Endpoint> rank(boolean streaming) {
+        List<Endpoint> ranked = new ArrayList<>(this.endpoints);
+        ranked.sort(Comparator.comparingDouble(endpoint ->
+                (streaming ? endpoint.streamStats() : endpoint.callStats())
+                        .score(this.errorPenalty, this.initialHedgeDelay.toNanos())));
+        return ranked;
+    }
+
+    private Duration hedgeDelay(EndpointStats stats) {
+        long percentile = stats.percentile(this.hedgeQuantile, this.minSamples);
+        if (percentile < 0) {
+            return this.initialHedgeDelay;
+        }
+        return Duration.ofNanos(Math.max(percentile, this.minHedgeDelay.toNanos()));
+    }
+
+    /**
+     * 不接受请求模型的端点去掉请求选项中的模型名，由端点自己的默认模型补上
+     */
+    private static Prompt forEndpoint(Endpoint endpoint, Prompt prompt) {
+        ChatOptions options = prompt.getOptions();
+        if (endpoint.acceptsRequestModel() || options == null || options.getModel() == null) {
+            return prompt;
+        }
+        return new Prompt(prompt.getInstructions(), withoutModel(options));
+    }
+
+    static ChatOptions withoutModel(ChatOptions options) {
+        if (options.getModel() == null) {
+            return options;
+        }
+        ChatOptions copy = options.copy();
+        if (copy instanceof OpenAiChatOptions openAiOptions) {
+            openAiOptions.setModel(null);
+            return openAiOptions;
+        }
+        if (copy instanceof DefaultChatOptions defaultOptions) {
+            defaultOptions.setModel(null);
+            return defaultOptions;
+        }
+        return ChatOptions.builder()
+                .frequencyPenalty(options.getFrequencyPenalty())
+                .maxTokens(options.getMaxTokens())
+                .presencePenalty(options.getPresencePenalty())
+                .stopSequences(options.getStopSequences())
+                .temperature(options.getTemperature())
+                .topK(options.getTopK())
+                .topP(options.getTopP())
+                .build();
+    }
+
+    private Flux<ChatResponse> trackedStream(Endpoint endpoint, Prompt request) {
+        Prompt prompt = forEndpoint(endpoint, request);
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean firstToken = new AtomicBoolean();
+            EndpointStats stats = endpoint.streamStats();
+            return endpoint.model().stream(prompt)
+                    .doOnNext(response -> {
+                        if (firstToken.compareAndSet(false, true)) {
+                            stats.recordLatency(System.nanoTime() - start);
+                        }
+                    })
+                    .doOnError(ex -> stats.recordError())
+                    .doOnCancel(() -> {
+                        if (!firstToken.get()) {
+                            stats.recordCancelled(System.nanoTime() - start);
+                        }
+                    });
+        });
+    }
+
+    private Mono<ChatResponse> trackedCall(Endpoint endpoint, Prompt request) {
+        Prompt prompt = forEndpoint(endpoint, request);
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean done = new AtomicBoolean();
+            EndpointStats stats = endpoint.callStats();
+            // 阻塞调用放到boundedElastic上，被对冲取消时结果直接丢弃
+            return Mono.fromCallable(() -> endpoint.model().call(prompt))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .doOnNext(response -> {
+                        done.set(true);
+                        stats.recordLatency(System.nanoTime() - start);
+                    })
+                    .doOnError(ex -> {
+                        done.set(true);
+                        stats.recordError();
+                    })
+                    .doOnCancel(() -> {
+                        if (!done.get()) {
+                            stats.recordCancelled(System.nanoTime() - start);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * 创建Builder实例
+     *
+     * @return 新的Builder实例
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private record Endpoint(String name, ChatModel model, boolean acceptsRequestModel, EndpointStats streamStats,
+                            EndpointStats callStats) {
+    }
+
+    /**
+     * 端点统计快照
+     *
+     * @param streamTtftMillis 流式首token的EWMA延迟
+     * @param callLatencyMillis 非流式调用的EWMA延迟
+     * @param streamErrorRate 流式请求的EWMA错误率
+     * @param callErrorRate 非流式调用的EWMA错误率
+     */
+    public record EndpointSnapshot(double streamTtftMillis, double callLatencyMillis, double streamErrorRate,
+                                   double callErrorRate) {
+    }
+
+    /**
+     * Builder类 - 用于构建HedgingChatModel实例
+     */
+    public static final class Builder {
+
+        /** 端点名称到模型的映射，保持配置顺序，得分相同时靠前的优先 */
+        private final Map<String, ChatModel> models = new LinkedHashMap<>();
+
+        /** 接受请求中指定模型的端点 */
+        private final Set<String> acceptsRequestModel = new HashSet<>();
+
+        private double hedgeQuantile = 0.95;
+
+        private int minSamples = 20;
+
+        private Duration initialHedgeDelay = Duration.ofSeconds(2);
+
+        private Duration minHedgeDelay = Duration.ofMillis(50);
+
+        private double ewmaAlpha = 0.2;
+
+        private double errorPenalty = 4.0;
+
+        private Builder() {
+        }
+
+        /**
+         * 添加端点，总是使用端点自己配置的模型
+         *
+         * @param name 端点名称
+         * @param model 端点模型
+         * @return Builder实例，用于链式调用
+         */
+        public Builder endpoint(String name, ChatModel model) {
+            return endpoint(name, model, false);
+        }
+
+        /**
+         * 添加端点
+         *
+         * @param name 端点名称
+         * @param model 端点模型
+         * @param acceptsRequestModel 是否使用请求中指定的模型，端点所在的服务商能识别这些模型名时才应开启
+         * @return Builder实例，用于链式调用
+         */
+        public Builder endpoint(String name, ChatModel model, boolean acceptsRequestModel) {
+            Assert.hasText(name, "name cannot be null or empty");
+            Assert.notNull(model, "model cannot be null");
+            this.models.put(name, model);
+            if (acceptsRequestModel) {
+                this.acceptsRequestModel.add(name);
+            }
+            else {
+                this.acceptsRequestModel.remove(name);
+            }
+            return this;
+        }
+
+        /**
+         * 设置触发对冲的延迟分位，例如0.95表示超过主端点p95首token延迟时对冲
+         */
+        public Builder hedgeQuantile(double hedgeQuantile) {
+            Assert.isTrue(hedgeQuantile > 0 && hedgeQuantile <= 1, "hedgeQuantile must be in (0, 1]");
+            this.hedgeQuantile = hedgeQuantile;
+            return this;
+        }
+
+        /**
+         * 设置使用分位数前至少需要的样本数
+         */
+        public Builder minSamples(int minSamples) {
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        /**
+         * 设置样本不足时使用的对冲阈值
+         */
+        public Builder initialHedgeDelay(Duration initialHedgeDelay) {
+            this.initialHedgeDelay = initialHedgeDelay;
+            return this;
+        }
+
+        /**
+         * 设置对冲阈值的下限，避免端点很快时几乎每个请求都被对冲
+         */
+        public Builder minHedgeDelay(Duration minHedgeDelay) {
+            this.minHedgeDelay = minHedgeDelay;
+            return this;
+        }
+
+        /**
+         * 设置EWMA中新样本的权重
+         */
+        public Builder ewmaAlpha(double ewmaAlpha) {
+            Assert.isTrue(ewmaAlpha > 0 && ewmaAlpha <= 1, "ewmaAlpha must be in (0, 1]");
+            this.ewmaAlpha = ewmaAlpha;
+            return this;
+        }
+
+        /**
+         * 设置错误率对得分的惩罚系数
+         */
+        public Builder errorPenalty(double errorPenalty) {
+            this.errorPenalty = errorPenalty;
+            return this;
+        }
+
+        /**
+         * 构建HedgingChatModel实例
+         *
+         * @return 新的HedgingChatModel实例
+         * @throws IllegalArgumentException 如果没有添加任何端点
+         */
+        public HedgingChatModel build() {
+            Assert.notEmpty(this.models, "at least one endpoint must be configured");
+            return new HedgingChatModel(this);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+-- 已有的 spring_ai_chat_memory 表增加 payload 列，保存工具调用、工具响应和消息元数据（ChatMessagePayload）
+-- 旧数据的 payload 为 NULL，读取时按纯文本消息处理
+-- 可重复执行：表不存在（随后由schema-mysql.sql按最新结构创建）或已有该列时什么都不做
+SET @chat_memory_ddl = IF(
+    (SELECT COUNT(*) FROM information_schema.TABLES
+        WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'spring_ai_chat_memory') = 1
+    AND (SELECT COUNT(*) FROM information_schema.COLUMNS
+        WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'spring_ai_chat_memory' AND COLUMN_NAME = 'payload') = 0,
+    'ALTER TABLE spring_ai_chat_memory ADD COLUMN payload MEDIUMTEXT NULL',
+    'DO 0');
+PREPARE chat_memory_migration FROM @chat_memory_ddl;
+EXECUTE chat_memory_migration;
+DEALLOCATE PREPARE chat_memory_migration;
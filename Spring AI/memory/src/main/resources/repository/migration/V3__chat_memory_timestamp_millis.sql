@@ -0,0 +1,13 @@
+-- spring_ai_chat_memory.timestamp 改为毫秒精度 TIMESTAMP(3)
+-- 同一次saveAll的消息时间戳逐条加1毫秒，秒级精度下会截断成相同的值，读取顺序和分页游标都会乱
+-- 已有数据保持原来的整秒值，ChatHistoryReader的游标会跳过同一时间戳下已返回的条数
+-- 可重复执行：表不存在（随后由schema-mysql.sql按最新结构创建）或已是毫秒精度时什么都不做
+SET @chat_memory_ddl = IF(
+    (SELECT COUNT(*) FROM information_schema.COLUMNS
+        WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'spring_ai_chat_memory' AND COLUMN_NAME = 'timestamp'
+        AND DATETIME_PRECISION < 3) = 1,
+    'ALTER TABLE spring_ai_chat_memory MODIFY `timestamp` TIMESTAMP(3) NOT NULL',
+    'DO 0');
+PREPARE chat_memory_migration FROM @chat_memory_ddl;
+EXECUTE chat_memory_migration;
+DEALLOCATE PREPARE chat_memory_migration;
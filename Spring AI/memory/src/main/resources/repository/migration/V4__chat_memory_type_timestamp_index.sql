@@ -0,0 +1,13 @@
+-- 增加 (type, timestamp) 索引，过期清理按消息类型分批删除时走索引范围扫描，不再全表扫描
+-- 可重复执行：表不存在（随后由schema-mysql.sql按最新结构创建）或已有该索引时什么都不做
+SET @chat_memory_ddl = IF(
+    (SELECT COUNT(*) FROM information_schema.TABLES
+        WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'spring_ai_chat_memory') = 1
+    AND (SELECT COUNT(*) FROM information_schema.STATISTICS
+        WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'spring_ai_chat_memory'
+        AND INDEX_NAME = 'spring_ai_chat_memory_type_timestamp_idx') = 0,
+    'CREATE INDEX spring_ai_chat_memory_type_timestamp_idx ON spring_ai_chat_memory (type, `timestamp`)',
+    'DO 0');
+PREPARE chat_memory_migration FROM @chat_memory_ddl;
+EXECUTE chat_memory_migration;
+DEALLOCATE PREPARE chat_memory_migration;
@@ -0,0 +1,19 @@
+-- 可选：把 spring_ai_chat_memory 改造为按 timestamp 的RANGE分区，配合 chat.memory.retention 整区删除过期消息
+-- 不会自动执行。PARTITION BY 会重建整张表并锁表，在低峰期手动执行：
+--   mysql -h <host> -u <user> -p <database> < chat_memory_partition.sql
+-- 1. 已有数据都落入 p_history 分区（上界为明天0点UTC），其中的消息由分批删除按各自的保留时长清理，
+--    分区上界超过最长保留时长后整区删除
+-- 2. 之后的分区由 ChatMemoryRetentionManager 按 partition-interval 从 pmax 中拆分
+-- 3. timestamp 列是 TIMESTAMP(3)，UNIX_TIMESTAMP 返回带小数的DECIMAL，用FLOOR取整后作为分区表达式
+-- 可重复执行：表已分区时什么都不做
+SET @chat_memory_ddl = IF(
+    (SELECT COUNT(*) FROM information_schema.PARTITIONS
+        WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'spring_ai_chat_memory'
+        AND PARTITION_NAME IS NOT NULL) = 0,
+    CONCAT('ALTER TABLE spring_ai_chat_memory PARTITION BY RANGE (FLOOR(UNIX_TIMESTAMP(`timestamp`))) (',
+        'PARTITION p_history VALUES LESS THAN (', FLOOR(UNIX_TIMESTAMP() / 86400) * 86400 + 86400, '), ',
+        'PARTITION pmax VALUES LESS THAN MAXVALUE)'),
+    'DO 0');
+PREPARE chat_memory_partition FROM @chat_memory_ddl;
+EXECUTE chat_memory_partition;
+DEALLOCATE PREPARE chat_memory_partition;
@@ -2,7 +2,21 @@ CREATE TABLE IF NOT EXISTS spring_ai_chat_memory (
     conversation_id VARCHAR(36) NOT NULL,
     content TEXT NOT NULL,
     type VARCHAR(10) NOT NULL,
-    `timestamp` TIMESTAMP NOT NULL,
+    `timestamp` TIMESTAMP(3) NOT NULL,
+    payload MEDIUMTEXT NULL,
     CONSTRAINT TYPE_CHECK CHECK (type IN ('USER', 'ASSISTANT', 'SYSTEM', 'TOOL')),
-    INDEX spring_ai_chat_memory_conversation_id_timestamp_idx (conversation_id, `timestamp`)
+    INDEX spring_ai_chat_memory_conversation_id_timestamp_idx (conversation_id, `timestamp`),
+    INDEX spring_ai_chat_memory_type_timestamp_idx (type, `timestamp`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+CREATE TABLE IF NOT EXISTS spring_ai_chat_memory_instance (
+    instance_id VARCHAR(36) NOT NULL PRIMARY KEY,
+    shards VARCHAR(1000) NOT NULL,
+    rebalancing BOOLEAN NOT NULL,
+    heartbeat TIMESTAMP(3) NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+CREATE TABLE IF NOT EXISTS spring_ai_chat_memory_transfer (
+    source VARCHAR(512) NOT NULL PRIMARY KEY,
+    imported_rows BIGINT NOT NULL
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
\ No newline at end of file
@@ -0,0 +1,52 @@
+package com.example.backend.JFR;
+
+import jdk.jfr.Recording;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class JfrStageReportTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void groupsEventsByStageAndConversation() throws Exception {
+        Path file = this.dir.resolve("stages.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(ChatMemorySqlEvent.class).withoutStackTrace();
+            recording.enable(JwtFilterEvent.class).withoutStackTrace();
+            recording.enable(ModelCallEvent.class).withoutStackTrace();
+            recording.start();
+
+            for (int i = 0; i < 3; i++) {
+                ChatMemorySqlEvent find = new ChatMemorySqlEvent();
+                find.begin();
+                find.complete("find", "c" + (i % 2), 10);
+            }
+            JwtFilterEvent jwt = new JwtFilterEvent();
+            jwt.begin();
+            jwt.complete("/api/AI/chat4", "bypass");
+            ModelCallEvent model = new ModelCallEvent();
+            model.begin();
+            model.complete("stream", "c0", "stub", 2, 10, 20, 4, 1_000_000);
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        Map<String, JfrStageReport.Stage> all = JfrStageReport.read(file, null);
+        assertEquals(3, all.get("memory/find").count());
+        assertEquals(1, all.get("jwt").count());
+        assertEquals(1, all.get("model/stream").count());
+
+        Map<String, JfrStageReport.Stage> c0 = JfrStageReport.read(file, "c0");
+        assertEquals(2, c0.get("memory/find").count());
+        assertFalse(c0.containsKey("jwt"));
+    }
+}
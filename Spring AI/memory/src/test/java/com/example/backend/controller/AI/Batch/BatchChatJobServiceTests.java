@@ -0,0 +1,269 @@
+package com.example.backend.controller.AI.Batch;
+
+import com.alibaba.fastjson.JSON;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.retry.TransientAiException;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchChatJobServiceTests {
+
+    private static final int ITEMS = 40;
+
+    private static final int OWNER = 1;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void processesItemsWithBoundedConcurrencyAndRetry() throws Exception {
+        StubChatModel model = new StubChatModel();
+        try (BatchChatJobService service = newService(model)) {
+            BatchChatJobService.JobStatus status = await(service,
+                    service.submit(OWNER, input(), "upper", null).id());
+
+            assertEquals(BatchChatJobService.JobState.SUCCEEDED, status.state());
+            assertEquals(ITEMS + 1, status.total());
+            assertEquals(ITEMS, status.succeeded());
+            assertEquals(1, status.failed());
+            assertEquals(2, status.retries());
+            assertTrue(model.maxActive.get() <= 4, "too many concurrent calls: " + model.maxActive.get());
+
+            List<String> lines = Files.readAllLines(service.results(OWNER, status.id()));
+            assertEquals(ITEMS + 1, lines.size());
+            assertTrue(lines.stream().map(JSON::parseObject)
+                    .anyMatch(line -> "first".equals(line.getString("id")) && "ITEM 0".equals(line.getString("output"))));
+        }
+    }
+
+    @Test
+    void resumesInterruptedJobFromResults() throws Exception {
+        String id;
+        try (BatchChatJobService service = newService(new StubChatModel())) {
+            id = await(service, service.submit(OWNER, input(), null, null).id()).id();
+        }
+        // 模拟进程在处理途中退出：状态仍为RUNNING，结果只写了一部分，最后一行写了一半
+        Path jobDirectory = this.dir.resolve(id);
+        Path jobFile = jobDirectory.resolve("job.json");
+        Files.writeString(jobFile, Files.readString(jobFile).replace("SUCCEEDED", "RUNNING"));
+        Path results = jobDirectory.resolve("results.ndjson");
+        List<String> lines = Files.readAllLines(results);
+        Files.writeString(results, String.join("\n", lines.subList(0, 10)) + "\n{\"line\":", StandardCharsets.UTF_8);
+
+        StubChatModel model = new StubChatModel();
+        try (BatchChatJobService service = newService(model)) {
+            service.resumeInterrupted();
+            BatchChatJobService.JobStatus status = await(service, id);
+            assertEquals(BatchChatJobService.JobState.SUCCEEDED, status.state());
+            assertEquals(ITEMS, status.succeeded());
+            // 已有结果的10条不再调用模型，最多加上flaky的两次重试
+            assertTrue(model.calls.get() <= ITEMS + 1 - 10 + 2, "re-processed completed items: " + model.calls.get());
+            List<String> resumed = Files.readAllLines(results);
+            assertEquals(ITEMS + 1, resumed.size());
+            assertEquals(ITEMS + 1, resumed.stream().map(line -> JSON.parseObject(line).getLongValue("line"))
+                    .distinct().count());
+        }
+    }
+
+    @Test
+    void concurrentResumesStartOnePipeline() throws Exception {
+        StubChatModel model = new StubChatModel();
+        try (BatchChatJobService service = newService(model)) {
+            String id = service.submit(OWNER, input(), null, null).id();
+            service.cancel(OWNER, id);
+
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            try {
+                CountDownLatch ready = new CountDownLatch(1);
+                List<Future<?>> resumes = new ArrayList<>();
+                for (int i = 0; i < 8; i++) {
+                    resumes.add(executor.submit(() -> {
+                        ready.await();
+                        return service.resume(OWNER, id);
+                    }));
+                }
+                ready.countDown();
+                for (Future<?> resume : resumes) {
+                    resume.get();
+                }
+            }
+            finally {
+                executor.shutdown();
+            }
+
+            BatchChatJobService.JobStatus status = await(service, id);
+            assertEquals(BatchChatJobService.JobState.SUCCEEDED, status.state());
+            List<String> lines = Files.readAllLines(service.results(OWNER, id));
+            assertEquals(ITEMS + 1, lines.size());
+            assertEquals(ITEMS + 1, lines.stream().map(line -> JSON.parseObject(line).getLongValue("line"))
+                    .distinct().count());
+        }
+    }
+
+    @Test
+    void jobsAreOnlyVisibleToTheirOwner() throws Exception {
+        try (BatchChatJobService service = newService(new StubChatModel())) {
+            String id = await(service, service.submit(OWNER, input(), null, null).id()).id();
+            int other = OWNER + 1;
+
+            assertEquals(1, service.list(OWNER).size());
+            assertTrue(service.list(other).isEmpty());
+            assertNull(service.status(other, id));
+            assertNull(service.results(other, id));
+            assertNull(service.resume(other, id));
+            assertFalse(service.cancel(other, id));
+        }
+        // 重启后从job.json恢复的任务仍然属于提交者
+        try (BatchChatJobService service = newService(new StubChatModel())) {
+            assertEquals(1, service.list(OWNER).size());
+            assertTrue(service.list(OWNER + 1).isEmpty());
+        }
+    }
+
+    @Test
+    void timeoutStartsWhenTheCallRunsNotWhileQueued() throws Exception {
+        // 5个任务共用1个调用线程，每次调用100ms：排队等待最多约400ms，超过超时时间，但单次调用不超过
+        try (BatchChatJobService service = BatchChatJobService.builder()
+                .chatClient(ChatClient.create(new StubChatModel(100)))
+                .directory(this.dir)
+                .concurrency(1)
+                .maxRetries(0)
+                .itemTimeout(Duration.ofMillis(300))
+                .build()) {
+            List<String> ids = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                byte[] input = "a\nb\nc\nd\n".getBytes(StandardCharsets.UTF_8);
+                ids.add(service.submit(OWNER, new ByteArrayInputStream(input), null, null).id());
+            }
+            for (String id : ids) {
+                BatchChatJobService.JobStatus status = await(service, id);
+                assertEquals(BatchChatJobService.JobState.SUCCEEDED, status.state());
+                assertEquals(4, status.succeeded());
+                assertEquals(0, status.failed());
+            }
+        }
+    }
+
+    @Test
+    void rejectsUploadsOverTheLimit() throws Exception {
+        try (BatchChatJobService service = BatchChatJobService.builder()
+                .chatClient(ChatClient.create(new StubChatModel()))
+                .directory(this.dir)
+                .maxUploadBytes(64)
+                .build()) {
+            byte[] input = "x\n".repeat(100).getBytes(StandardCharsets.UTF_8);
+            assertThrows(IllegalArgumentException.class,
+                    () -> service.submit(OWNER, new ByteArrayInputStream(input), null, null));
+            assertTrue(service.list(OWNER).isEmpty());
+            try (Stream<Path> jobs = Files.list(this.dir)) {
+                assertEquals(0, jobs.count(), "rejected upload left files behind");
+            }
+        }
+    }
+
+    private BatchChatJobService newService(ChatModel model) {
+        return BatchChatJobService.builder()
+                .chatClient(ChatClient.create(model))
+                .directory(this.dir)
+                .concurrency(4)
+                .retryBackoff(Duration.ofMillis(10))
+                .checkpointInterval(5)
+                .build();
+    }
+
+    /**
+     * ITEMS条有效输入（第一条为JSON，其余为纯文本，其中一条前两次调用失败）、一个空行和一条缺少text的JSON
+     */
+    private static ByteArrayInputStream input() {
+        StringBuilder input = new StringBuilder("{\"id\": \"first\", \"text\": \"item 0\"}\n\n");
+        for (int i = 1; i < ITEMS; i++) {
+            input.append(i == 7 ? "flaky" : "item " + i).append('\n');
+        }
+        input.append("{\"id\": \"broken\"}\n");
+        return new ByteArrayInputStream(input.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static BatchChatJobService.JobStatus await(BatchChatJobService service, String id)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(20).toNanos();
+        BatchChatJobService.JobStatus status = service.status(OWNER, id);
+        while (status.state() == BatchChatJobService.JobState.RUNNING && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+            status = service.status(OWNER, id);
+        }
+        return status;
+    }
+
+    /**
+     * 把用户消息转成大写的本地模型，每次调用耗时delayMillis，"flaky"前两次调用抛出可重试的异常
+     */
+    private static final class StubChatModel implements ChatModel {
+
+        private final long delayMillis;
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private final AtomicInteger active = new AtomicInteger();
+
+        private final AtomicInteger maxActive = new AtomicInteger();
+
+        private final Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+
+        StubChatModel() {
+            this(10);
+        }
+
+        StubChatModel(long delayMillis) {
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            this.calls.incrementAndGet();
+            this.maxActive.accumulateAndGet(this.active.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(this.delayMillis);
+                String text = prompt.getUserMessage().getText();
+                if ("flaky".equals(text)
+                        && this.attempts.computeIfAbsent(text, key -> new AtomicInteger()).incrementAndGet() <= 2) {
+                    throw new TransientAiException("busy");
+                }
+                return new ChatResponse(List.of(new Generation(new AssistantMessage(text.toUpperCase()))));
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(ex);
+            }
+            finally {
+                this.active.decrementAndGet();
+            }
+        }
+    }
+}
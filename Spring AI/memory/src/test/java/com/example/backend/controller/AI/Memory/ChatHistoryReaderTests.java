@@ -0,0 +1,160 @@
+package com.example.backend.controller.AI.Memory;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ChatHistoryReaderTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void pagesThroughRowsSharingATimestamp() {
+        DataSource dataSource = ChatMemoryTestDatabase.dataSource();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        // 升级到TIMESTAMP(3)之前写入的记录是整秒，同一轮的多条消息时间戳相同
+        List<String> expected = new ArrayList<>();
+        long second = 1_700_000_000_000L;
+        for (int i = 0; i < 11; i++) {
+            String content = "m" + i;
+            expected.add(content);
+            jdbcTemplate.update("INSERT INTO spring_ai_chat_memory (conversation_id, content, type, `timestamp`) "
+                    + "VALUES (?, ?, ?, ?)", "c1", content, "USER", new Timestamp(second + (i / 5) * 1000L));
+        }
+        ChatHistoryReader reader = new ChatHistoryReader(ChatMemoryTestDatabase.repository(dataSource), 3);
+
+        for (int limit = 1; limit <= 12; limit++) {
+            assertEquals(expected, readAll(reader, "c1", limit), "limit " + limit);
+        }
+    }
+
+    @Test
+    void rejectsCursorsThatAreNotTimestampAndSkip() {
+        ChatHistoryReader reader = new ChatHistoryReader(ChatMemoryTestDatabase.repository(), 10);
+        for (String value : List.of("1700000000000", "1700000000000.-1", ".3", "x.1")) {
+            String cursor = Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString(value.getBytes(StandardCharsets.US_ASCII));
+            assertThrows(IllegalArgumentException.class,
+                    () -> reader.page("c1", cursor, 10, ChatHistoryReader.Projection.FULL), value);
+        }
+    }
+
+    @Test
+    void projectsContent() {
+        JdbcChatMemoryRepository repository = ChatMemoryTestDatabase.repository();
+        String longText = "长".repeat(ChatHistoryReader.PREVIEW_LENGTH + 20);
+        repository.saveAll("c1", List.of(new UserMessage(longText), new AssistantMessage("short")));
+        ChatHistoryReader reader = new ChatHistoryReader(repository, 10);
+
+        List<ChatHistoryReader.ChatHistoryItem> full = reader.page("c1", null, 10, ChatHistoryReader.Projection.FULL)
+                .items();
+        assertEquals(longText, full.get(0).content());
+        assertEquals(MessageType.ASSISTANT, full.get(1).type());
+
+        List<ChatHistoryReader.ChatHistoryItem> preview = reader
+                .page("c1", null, 10, ChatHistoryReader.Projection.PREVIEW).items();
+        assertEquals(longText.substring(0, ChatHistoryReader.PREVIEW_LENGTH), preview.get(0).content());
+        assertEquals("short", preview.get(1).content());
+
+        ChatHistoryReader.ChatHistoryPage meta = reader.page("c1", null, 10, ChatHistoryReader.Projection.META);
+        assertNull(meta.items().get(0).content());
+        assertNull(meta.nextCursor());
+    }
+
+    @Test
+    void readsArchivedConversations() {
+        try (ChatMemoryArchiveStore archiveStore = new ChatMemoryArchiveStore(this.dir)) {
+            List<ChatMemoryArchiveStore.ArchivedMessage> archived = new ArrayList<>();
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < 7; i++) {
+                archived.add(new ChatMemoryArchiveStore.ArchivedMessage(
+                        i % 2 == 0 ? MessageType.USER : MessageType.ASSISTANT, "a" + i, 1_000L + i / 3, null));
+                expected.add("a" + i);
+            }
+            TreeMap<String, List<ChatMemoryArchiveStore.ArchivedMessage>> conversations = new TreeMap<>();
+            conversations.put("archived", archived);
+            archiveStore.write(conversations);
+            JdbcChatMemoryRepository repository = ChatMemoryTestDatabase
+                    .repositoryBuilder(ChatMemoryTestDatabase.dataSource())
+                    .archiveStore(archiveStore)
+                    .build();
+            ChatHistoryReader reader = new ChatHistoryReader(repository, 10);
+
+            assertEquals(expected, readAll(reader, "archived", 2));
+            assertEquals(expected, stream(reader, "archived"));
+        }
+    }
+
+    @Test
+    void readsConversationsFromTheirShard() {
+        try (ShardedChatMemoryRepository repository = ShardedChatMemoryRepository.builder()
+                .shard("shard-0", ChatMemoryTestDatabase.repository())
+                .shard("shard-1", ChatMemoryTestDatabase.repository())
+                .build()) {
+            for (int i = 0; i < 20; i++) {
+                repository.saveAll("c" + i, messages(i));
+            }
+            ChatHistoryReader reader = new ChatHistoryReader(repository, 2);
+
+            for (int i = 0; i < 20; i++) {
+                List<String> expected = messages(i).stream().map(Message::getText).toList();
+                assertEquals(expected, readAll(reader, "c" + i, 2));
+                assertEquals(expected, stream(reader, "c" + i));
+            }
+        }
+    }
+
+    private static List<String> readAll(ChatHistoryReader reader, String conversationId, int limit) {
+        List<String> contents = new ArrayList<>();
+        String cursor = null;
+        do {
+            ChatHistoryReader.ChatHistoryPage page = reader.page(conversationId, cursor, limit,
+                    ChatHistoryReader.Projection.FULL);
+            page.items().forEach(item -> contents.add(item.content()));
+            cursor = page.nextCursor();
+        }
+        while (cursor != null);
+        return contents;
+    }
+
+    private static List<String> stream(ChatHistoryReader reader, String conversationId) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long count = reader.stream(conversationId, ChatHistoryReader.Projection.FULL, out);
+        List<String> contents = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            contents.add(JSON.parseObject(line, JSONObject.class).getString("content"));
+        }
+        assertEquals(contents.size(), count);
+        return contents;
+    }
+
+    private static List<Message> messages(int i) {
+        List<Message> messages = new ArrayList<>();
+        for (int turn = 0; turn < 3; turn++) {
+            messages.add(new UserMessage("question " + i + "-" + turn));
+            messages.add(new AssistantMessage("answer " + i + "-" + turn));
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.backend.controller.AI.Memory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChatMemoryArchiveStoreTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsConversationsAcrossReopen() {
+        ToolResponseMessage tool = new ToolResponseMessage(List.of(
+                new ToolResponseMessage.ToolResponse("call-1", "search", "{\"hits\":3}")));
+        try (ChatMemoryArchiveStore store = new ChatMemoryArchiveStore(this.dir)) {
+            store.write(conversations(0, 50));
+            SortedMap<String, List<ChatMemoryArchiveStore.ArchivedMessage>> newer = new TreeMap<>();
+            newer.put(id(7), List.of(archived(new UserMessage("rewritten"), 5_000L),
+                    archived(tool, 5_001L)));
+            store.write(newer);
+        }
+        try (ChatMemoryArchiveStore store = new ChatMemoryArchiveStore(this.dir)) {
+            assertEquals(50, store.conversationIds().size());
+            assertEquals(messages(3), texts(store.find(id(3))));
+            // 新段覆盖旧段，工具响应通过payload完整还原
+            List<Message> rewritten = store.find(id(7));
+            assertEquals("rewritten", rewritten.get(0).getText());
+            assertEquals(MessageType.TOOL, rewritten.get(1).getMessageType());
+            assertEquals(tool.getResponses(), ((ToolResponseMessage) rewritten.get(1)).getResponses());
+            assertEquals(5_001L, store.findArchived(id(7)).get(1).timestamp());
+            assertTrue(store.find("missing").isEmpty());
+            assertFalse(store.contains("missing"));
+        }
+    }
+
+    @Test
+    void ignoresIncompleteSegmentAndTombstoneTails() throws IOException {
+        try (ChatMemoryArchiveStore store = new ChatMemoryArchiveStore(this.dir)) {
+            store.write(conversations(0, 100));
+            store.delete(id(1));
+        }
+        Path segment = this.dir.resolve("segment-0000000001.seg");
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 10);
+        }
+        Files.writeString(this.dir.resolve("tombstones.log"), "1", StandardOpenOption.APPEND);
+        Files.writeString(this.dir.resolve("segment-0000000002.seg.tmp"), "partial");
+
+        try (ChatMemoryArchiveStore store = new ChatMemoryArchiveStore(this.dir)) {
+            Set<String> ids = store.conversationIds();
+            assertEquals(98, ids.size());
+            assertFalse(ids.contains(id(99)));
+            assertFalse(store.contains(id(99)));
+            assertTrue(store.find(id(1)).isEmpty());
+            assertEquals(messages(98), texts(store.find(id(98))));
+            assertFalse(Files.exists(this.dir.resolve("segment-0000000002.seg.tmp")));
+            // 新段序号接在已有的段之后
+            assertEquals(2, store.write(conversations(99, 100)));
+            assertEquals(messages(99), texts(store.find(id(99))));
+            store.delete(id(5));
+        }
+        // 半行被截掉后追加的墓碑仍然可以解析
+        try (ChatMemoryArchiveStore store = new ChatMemoryArchiveStore(this.dir)) {
+            assertFalse(store.contains(id(5)));
+            assertTrue(store.find(id(1)).isEmpty());
+        }
+    }
+
+    @Test
+    void tombstonesHideOnlyOlderSegments() {
+        try (ChatMemoryArchiveStore store = new ChatMemoryArchiveStore(this.dir)) {
+            store.write(conversations(0, 10));
+            Set<String> before = store.conversationIds();
+            assertSame(before, store.conversationIds());
+
+            store.delete(id(2));
+            assertFalse(store.contains(id(2)));
+            assertTrue(store.find(id(2)).isEmpty());
+            assertEquals(9, store.conversationIds().size());
+
+            store.write(conversations(2, 3));
+            assertEquals(messages(2), texts(store.find(id(2))));
+            assertEquals(10, store.conversationIds().size());
+        }
+        try (ChatMemoryArchiveStore store = new ChatMemoryArchiveStore(this.dir)) {
+            assertEquals(messages(2), texts(store.find(id(2))));
+            store.delete(id(2));
+        }
+        try (ChatMemoryArchiveStore store = new ChatMemoryArchiveStore(this.dir)) {
+            assertFalse(store.contains(id(2)));
+            assertEquals(9, store.conversationIds().size());
+        }
+    }
+
+    @Test
+    void readsBlocksStraddlingMappedRegions() {
+        try (ChatMemoryArchiveStore store = new ChatMemoryArchiveStore(this.dir, 64)) {
+            store.write(conversations(0, 200));
+        }
+        try (ChatMemoryArchiveStore store = new ChatMemoryArchiveStore(this.dir, 64)) {
+            for (int i = 0; i < 200; i++) {
+                assertEquals(messages(i), texts(store.find(id(i))));
+            }
+            assertEquals(200, store.conversationIds().size());
+        }
+    }
+
+    @Test
+    void rejectsReadsAfterClose() {
+        ChatMemoryArchiveStore store = new ChatMemoryArchiveStore(this.dir);
+        store.write(conversations(0, 3));
+        store.close();
+        store.close();
+        assertThrows(IllegalStateException.class, () -> store.find(id(0)));
+        assertThrows(IllegalStateException.class, () -> store.contains(id(0)));
+    }
+
+    private static SortedMap<String, List<ChatMemoryArchiveStore.ArchivedMessage>> conversations(int from, int to) {
+        SortedMap<String, List<ChatMemoryArchiveStore.ArchivedMessage>> conversations = new TreeMap<>();
+        for (int i = from; i < to; i++) {
+            List<String> texts = messages(i);
+            conversations.put(id(i), List.of(
+                    archived(new UserMessage(texts.get(0)), 1_000L + i),
+                    archived(new AssistantMessage(texts.get(1)), 1_001L + i)));
+        }
+        return conversations;
+    }
+
+    private static ChatMemoryArchiveStore.ArchivedMessage archived(Message message, long timestamp) {
+        return new ChatMemoryArchiveStore.ArchivedMessage(message.getMessageType(), message.getText(), timestamp,
+                ChatMessagePayload.encode(message));
+    }
+
+    private static String id(int i) {
+        return String.format("c%04d", i);
+    }
+
+    private static List<String> messages(int i) {
+        return List.of("question " + i + " " + "x".repeat(i % 7), "answer " + i);
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.backend.controller.AI.Memory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChatMemoryArchiverTests {
+
+    private static final Duration IDLE_AFTER = Duration.ofDays(7);
+
+    @TempDir
+    Path dir;
+
+    private final DataSource dataSource = ChatMemoryTestDatabase.dataSource();
+
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(this.dataSource);
+
+    @Test
+    void archivedConversationsAreReadBackThroughTheRepository() {
+        ToolResponseMessage tool = new ToolResponseMessage(List.of(
+                new ToolResponseMessage.ToolResponse("call-1", "search", "{\"hits\":3}")));
+        insert("c1", List.of(new UserMessage("question"), tool, new AssistantMessage("answer")), 10);
+        insert("c2", List.of(new UserMessage("other")), 8);
+        insert("fresh", List.of(new UserMessage("today")), 1);
+
+        try (ChatMemoryArchiveStore archiveStore = new ChatMemoryArchiveStore(this.dir)) {
+            JdbcChatMemoryRepository repository = repository(archiveStore);
+            assertEquals(2, archiver(archiveStore, Clock.systemUTC()).archiveIdle());
+
+            assertEquals(1, count());
+            List<Message> messages = repository.findByConversationId("c1");
+            assertEquals(3, messages.size());
+            assertEquals("question", messages.get(0).getText());
+            assertEquals(tool.getResponses(), ((ToolResponseMessage) messages.get(1)).getResponses());
+            assertEquals("answer", messages.get(2).getText());
+            assertEquals(Set.of("fresh", "c1", "c2"), Set.copyOf(repository.findConversationIds()));
+
+            repository.deleteByConversationId("c1");
+            assertTrue(repository.findByConversationId("c1").isEmpty());
+            assertEquals(Set.of("fresh", "c2"), Set.copyOf(repository.findConversationIds()));
+        }
+    }
+
+    @Test
+    void savingAnArchivedConversationMovesItBackToTheDatabase() {
+        insert("c1", List.of(new UserMessage("question"), new AssistantMessage("answer")), 10);
+        try (ChatMemoryArchiveStore archiveStore = new ChatMemoryArchiveStore(this.dir)) {
+            JdbcChatMemoryRepository repository = repository(archiveStore);
+            archiver(archiveStore, Clock.systemUTC()).archiveIdle();
+
+            // ChatMemory读出归档中的历史，追加新的一轮后整体保存
+            List<Message> history = new ArrayList<>(repository.findByConversationId("c1"));
+            history.add(new UserMessage("follow-up"));
+            repository.saveAll("c1", history);
+            assertEquals(3, count("c1"));
+            assertEquals(3, repository.findByConversationId("c1").size());
+            assertEquals(List.of("c1"), repository.findConversationIds());
+
+            // 刚保存的会话不会再被归档，再次空闲后新的段覆盖旧段
+            assertEquals(0, archiver(archiveStore, Clock.systemUTC()).archiveIdle());
+            Clock later = Clock.fixed(Instant.now().plus(IDLE_AFTER).plusSeconds(60), ZoneOffset.UTC);
+            assertEquals(1, archiver(archiveStore, later).archiveIdle());
+            assertEquals(0, count("c1"));
+            assertEquals(List.of("question", "answer", "follow-up"),
+                    repository.findByConversationId("c1").stream().map(Message::getText).toList());
+        }
+    }
+
+    @Test
+    void rowsSavedWhileArchivingSurviveTheDelete() {
+        insert("c1", List.of(new UserMessage("question"), new AssistantMessage("answer")), 10);
+        JdbcChatMemoryRepository concurrent = ChatMemoryTestDatabase.repository(this.dataSource);
+        // 段文件写完、删库之前，另一个请求保存了新的一轮
+        try (ChatMemoryArchiveStore archiveStore = new ChatMemoryArchiveStore(this.dir) {
+            @Override
+            public synchronized long write(SortedMap<String, List<ArchivedMessage>> conversations) {
+                long sequence = super.write(conversations);
+                concurrent.saveAll("c1", List.of(new UserMessage("question"), new AssistantMessage("answer"),
+                        new UserMessage("new turn")));
+                return sequence;
+            }
+        }) {
+            JdbcChatMemoryRepository repository = repository(archiveStore);
+            assertEquals(1, archiver(archiveStore, Clock.systemUTC()).archiveIdle());
+
+            assertEquals(3, count("c1"));
+            assertEquals(List.of("question", "answer", "new turn"),
+                    repository.findByConversationId("c1").stream().map(Message::getText).toList());
+            assertEquals(2, archiveStore.find("c1").size());
+        }
+    }
+
+    private JdbcChatMemoryRepository repository(ChatMemoryArchiveStore archiveStore) {
+        return ChatMemoryTestDatabase.repositoryBuilder(this.dataSource).archiveStore(archiveStore).build();
+    }
+
+    private ChatMemoryArchiver archiver(ChatMemoryArchiveStore archiveStore, Clock clock) {
+        return new ChatMemoryArchiver(this.jdbcTemplate, archiveStore, IDLE_AFTER, 10, clock);
+    }
+
+    /**
+     * 按daysAgo天前的时间戳逐条写入消息，每条相差1毫秒
+     */
+    private void insert(String conversationId, List<Message> messages, int daysAgo) {
+        long timestamp = Instant.now().minus(Duration.ofDays(daysAgo)).toEpochMilli();
+        for (Message message : messages) {
+            this.jdbcTemplate.update("INSERT INTO spring_ai_chat_memory (conversation_id, content, type, `timestamp`, "
+                            + "payload) VALUES (?, ?, ?, ?, ?)", conversationId,
+                    message.getText() == null ? "" : message.getText(), message.getMessageType().name(),
+                    new Timestamp(timestamp++), ChatMessagePayload.encode(message));
+        }
+    }
+
+    private int count() {
+        return this.jdbcTemplate.queryForObject("SELECT COUNT(*) FROM spring_ai_chat_memory", Integer.class);
+    }
+
+    private int count(String conversationId) {
+        return this.jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM spring_ai_chat_memory WHERE conversation_id = ?", Integer.class, conversationId);
+    }
+}
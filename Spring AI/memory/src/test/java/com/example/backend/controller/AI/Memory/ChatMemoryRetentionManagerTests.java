@@ -0,0 +1,248 @@
+package com.example.backend.controller.AI.Memory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChatMemoryRetentionManagerTests {
+
+    private static final Instant NOW = Instant.parse("2026-10-18T00:00:00Z");
+
+    @TempDir
+    Path dir;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        this.jdbcTemplate = new JdbcTemplate(ChatMemoryTestDatabase.dataSource());
+    }
+
+    @Test
+    void purgesEachMessageTypeByItsOwnTtlInChunks() {
+        for (int i = 0; i < 5; i++) {
+            insert("old", MessageType.USER, NOW.minus(Duration.ofDays(100)).plusSeconds(i));
+            insert("old", MessageType.TOOL, NOW.minus(Duration.ofDays(10)).plusSeconds(i));
+        }
+        insert("recent", MessageType.USER, NOW.minus(Duration.ofDays(10)));
+        insert("recent", MessageType.TOOL, NOW.minus(Duration.ofDays(1)));
+
+        ChatMemoryRetentionProperties properties = new ChatMemoryRetentionProperties();
+        properties.setMode(ChatMemoryRetentionProperties.Mode.AUTO);
+        properties.setDefaultTtl(Duration.ofDays(90));
+        properties.getTtl().put(MessageType.TOOL, Duration.ofDays(7));
+        properties.setDeleteChunkSize(2);
+
+        ChatMemoryRetentionManager manager = new ChatMemoryRetentionManager(this.jdbcTemplate, properties,
+                Clock.fixed(NOW, ZoneOffset.UTC));
+        manager.initialize();
+        ChatMemoryRetentionManager.RetentionResult result = manager.purgeExpired();
+
+        assertEquals(0, result.droppedPartitions());
+        assertEquals(10, result.deletedRows());
+        assertEquals(2, this.jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM spring_ai_chat_memory WHERE conversation_id = 'recent'", Integer.class));
+        assertEquals(0, this.jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM spring_ai_chat_memory WHERE conversation_id = 'old'", Integer.class));
+    }
+
+    @Test
+    void notifiesListenersOfExpiredConversations() {
+        insert("partial", MessageType.USER, NOW.minus(Duration.ofDays(10)));
+        insert("partial", MessageType.TOOL, NOW.minus(Duration.ofDays(10)));
+        insert("gone", MessageType.USER, NOW.minus(Duration.ofDays(100)));
+        insert("fresh", MessageType.USER, NOW.minus(Duration.ofDays(1)));
+        Map<String, Integer> saved = new TreeMap<>();
+        List<String> deleted = new ArrayList<>();
+        JdbcChatMemoryRepository repository = ChatMemoryTestDatabase
+                .repositoryBuilder(this.jdbcTemplate.getDataSource())
+                .listeners(List.of(new ChatMemoryListener() {
+                    @Override
+                    public void onSaved(String conversationId, List<Message> messages) {
+                        saved.put(conversationId, messages.size());
+                    }
+
+                    @Override
+                    public void onDeleted(String conversationId) {
+                        deleted.add(conversationId);
+                    }
+                }))
+                .build();
+
+        ChatMemoryRetentionProperties properties = new ChatMemoryRetentionProperties();
+        properties.getTtl().put(MessageType.TOOL, Duration.ofDays(7));
+        new ChatMemoryRetentionManager(this.jdbcTemplate, properties, Clock.fixed(NOW, ZoneOffset.UTC), repository)
+                .purgeExpired();
+
+        assertEquals(Map.of("partial", 1), saved);
+        assertEquals(List.of("gone"), deleted);
+    }
+
+    @Test
+    void archivedMessagesExpireByTheirTypeTtl() {
+        insert("mixed", MessageType.USER, NOW.minus(Duration.ofDays(20)));
+        insert("mixed", MessageType.TOOL, NOW.minus(Duration.ofDays(9)));
+        insert("tools", MessageType.TOOL, NOW.minus(Duration.ofDays(12)));
+        insert("active", MessageType.TOOL, NOW.minus(Duration.ofDays(2)));
+        ChatMemoryRetentionProperties properties = new ChatMemoryRetentionProperties();
+        properties.getTtl().put(MessageType.TOOL, Duration.ofDays(10));
+
+        try (ChatMemoryArchiveStore archiveStore = new ChatMemoryArchiveStore(this.dir)) {
+            JdbcChatMemoryRepository repository = ChatMemoryTestDatabase
+                    .repositoryBuilder(this.jdbcTemplate.getDataSource())
+                    .archiveStore(archiveStore)
+                    .build();
+            new ChatMemoryArchiver(this.jdbcTemplate, archiveStore, Duration.ofDays(7), 10,
+                    Clock.fixed(NOW, ZoneOffset.UTC)).archiveIdle();
+            assertEquals(Set.of("mixed", "tools"), archiveStore.conversationIds());
+
+            ChatMemoryRetentionManager.RetentionResult result = new ChatMemoryRetentionManager(this.jdbcTemplate,
+                    properties, Clock.fixed(NOW, ZoneOffset.UTC), repository).purgeExpired();
+            assertEquals(1, result.archivedConversations());
+            assertTrue(repository.findByConversationId("tools").isEmpty());
+            assertEquals(2, repository.findByConversationId("mixed").size());
+
+            // 三天后归档中的工具消息也超过了10天
+            result = new ChatMemoryRetentionManager(this.jdbcTemplate, properties,
+                    Clock.fixed(NOW.plus(Duration.ofDays(3)), ZoneOffset.UTC), repository).purgeExpired();
+            assertEquals(1, result.archivedConversations());
+            assertEquals(List.of(MessageType.USER), repository.findByConversationId("mixed").stream()
+                    .map(Message::getMessageType).toList());
+            assertEquals(1, repository.findByConversationId("active").size());
+        }
+        try (ChatMemoryArchiveStore reopened = new ChatMemoryArchiveStore(this.dir)) {
+            assertEquals(Set.of("mixed"), reopened.conversationIds());
+            assertEquals(1, reopened.find("mixed").size());
+        }
+    }
+
+    @Test
+    void partitionedTableDropsExpiredPartitionsAndStillDeletesStraddlingRows() {
+        PartitionedJdbcTemplate jdbcTemplate = new PartitionedJdbcTemplate(this.jdbcTemplate.getDataSource());
+        this.jdbcTemplate = jdbcTemplate;
+        // 分区脚本建立的历史分区已整体过期，下一个分区跨越90天的截止时间
+        jdbcTemplate.partitions.put("p_history", NOW.minus(Duration.ofDays(95)).getEpochSecond());
+        jdbcTemplate.partitions.put("p_straddling", NOW.minus(Duration.ofDays(85)).getEpochSecond());
+        jdbcTemplate.partitions.put("pmax", Long.MAX_VALUE);
+        insert("c1", MessageType.USER, NOW.minus(Duration.ofDays(92)));
+        insert("c1", MessageType.USER, NOW.minus(Duration.ofDays(88)));
+        insert("c1", MessageType.TOOL, NOW.minus(Duration.ofDays(8)));
+        insert("c1", MessageType.TOOL, NOW.minus(Duration.ofDays(1)));
+
+        ChatMemoryRetentionProperties properties = new ChatMemoryRetentionProperties();
+        properties.setMode(ChatMemoryRetentionProperties.Mode.PARTITION);
+        properties.setDefaultTtl(Duration.ofDays(90));
+        properties.getTtl().put(MessageType.TOOL, Duration.ofDays(7));
+        properties.setPartitionsAhead(2);
+
+        ChatMemoryRetentionManager manager = new ChatMemoryRetentionManager(jdbcTemplate, properties,
+                Clock.fixed(NOW, ZoneOffset.UTC));
+        manager.initialize();
+        ChatMemoryRetentionManager.RetentionResult result = manager.purgeExpired();
+
+        assertEquals(1, result.droppedPartitions());
+        assertFalse(jdbcTemplate.partitions.containsKey("p_history"));
+        // 保留时长等于最长值的USER也要逐行删除跨越截止时间的分区中的过期消息
+        assertEquals(2, result.deletedRows());
+        assertEquals(2, this.jdbcTemplate.queryForObject("SELECT COUNT(*) FROM spring_ai_chat_memory", Integer.class));
+        // 未来分区补齐到明天0点之后的partitionsAhead+1个间隔
+        long highest = jdbcTemplate.partitions.values().stream()
+                .filter(bound -> bound != Long.MAX_VALUE)
+                .max(Long::compare)
+                .orElseThrow();
+        assertEquals(NOW.plus(Duration.ofDays(4)).getEpochSecond(), highest);
+        assertTrue(jdbcTemplate.ddl.stream().noneMatch(sql -> sql.contains("PARTITION BY")));
+    }
+
+    @Test
+    void neverPartitionsTheTableItself() {
+        PartitionedJdbcTemplate jdbcTemplate = new PartitionedJdbcTemplate(this.jdbcTemplate.getDataSource());
+        ChatMemoryRetentionProperties properties = new ChatMemoryRetentionProperties();
+        properties.setMode(ChatMemoryRetentionProperties.Mode.PARTITION);
+        ChatMemoryRetentionManager manager = new ChatMemoryRetentionManager(jdbcTemplate, properties,
+                Clock.fixed(NOW, ZoneOffset.UTC));
+
+        IllegalStateException ex = assertThrows(IllegalStateException.class, manager::initialize);
+        assertTrue(ex.getMessage().contains(ChatMemoryRetentionManager.PARTITION_SCRIPT));
+        assertTrue(jdbcTemplate.ddl.isEmpty());
+
+        properties.setMode(ChatMemoryRetentionProperties.Mode.AUTO);
+        manager.initialize();
+        manager.purgeExpired();
+        assertTrue(jdbcTemplate.ddl.isEmpty());
+    }
+
+    private void insert(String conversationId, MessageType type, Instant timestamp) {
+        this.jdbcTemplate.update(
+                "INSERT INTO spring_ai_chat_memory (conversation_id, content, type, `timestamp`) VALUES (?, ?, ?, ?)",
+                conversationId, "content", type.name(), Timestamp.from(timestamp));
+    }
+
+    /**
+     * 模拟MySQL分区元数据：分区查询返回partitions中的内容，分区DDL只记录并更新partitions，其余语句在H2中执行
+     */
+    private static final class PartitionedJdbcTemplate extends JdbcTemplate {
+
+        private static final Pattern DEFINITION = Pattern.compile("PARTITION (\\w+) VALUES LESS THAN \\((\\d+)\\)");
+
+        private final Map<String, Long> partitions = new TreeMap<>();
+
+        private final List<String> ddl = new ArrayList<>();
+
+        PartitionedJdbcTemplate(DataSource dataSource) {
+            super(dataSource);
+        }
+
+        @Override
+        public void query(String sql, RowCallbackHandler rch) {
+            if (!sql.contains("information_schema.PARTITIONS")) {
+                super.query(sql, rch);
+                return;
+            }
+            StringBuilder values = new StringBuilder("SELECT * FROM (VALUES ('', '')");
+            this.partitions.forEach((name, bound) -> values.append(", ('").append(name).append("', '")
+                    .append(bound == Long.MAX_VALUE ? "MAXVALUE" : bound).append("')"));
+            super.query(values.append(") AS t(n, d) WHERE n <> ''").toString(), rch);
+        }
+
+        @Override
+        public void execute(String sql) {
+            this.ddl.add(sql);
+            if (sql.contains(" DROP PARTITION ")) {
+                for (String name : sql.substring(sql.indexOf(" DROP PARTITION ") + 16).split(",\\s*")) {
+                    this.partitions.remove(name);
+                }
+            }
+            else if (sql.contains(" REORGANIZE PARTITION ")) {
+                Matcher matcher = DEFINITION.matcher(sql);
+                while (matcher.find()) {
+                    this.partitions.put(matcher.group(1), Long.parseLong(matcher.group(2)));
+                }
+            }
+        }
+    }
+}
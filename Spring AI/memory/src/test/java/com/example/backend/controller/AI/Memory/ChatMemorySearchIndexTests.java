@@ -0,0 +1,187 @@
+package com.example.backend.controller.AI.Memory;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChatMemorySearchIndexTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void indexesSavedConversationsAndReplacesThemOnSave() throws IOException {
+        try (ChatMemorySearchIndex index = new ChatMemorySearchIndex(this.dir)) {
+            JdbcChatMemoryRepository repository = ChatMemoryTestDatabase
+                    .repositoryBuilder(ChatMemoryTestDatabase.dataSource())
+                    .listeners(List.of(index))
+                    .build();
+            repository.saveAll("c1", List.of(new UserMessage("我喜欢吃苹果"), new AssistantMessage("apple pie is great")));
+            repository.saveAll("c2", List.of(new UserMessage("tell me about apple orchards")));
+
+            ChatMemorySearchIndex.SearchPage all = index.search(null, "apple", 0, 10);
+            assertEquals(2, all.total());
+            assertNull(all.nextCursor());
+            ChatMemorySearchIndex.SearchHit hit = index.search("c1", "apple", 0, 10).hits().get(0);
+            assertEquals("c1", hit.conversationId());
+            assertEquals(1, hit.position());
+            assertEquals(MessageType.ASSISTANT, hit.type());
+            assertEquals("我喜欢吃苹果", index.search(null, "苹果", 0, 10).hits().get(0).content());
+
+            // saveAll替换会话的全部文档
+            repository.saveAll("c1", List.of(new UserMessage("bananas only")));
+            assertEquals(0, index.search("c1", "apple", 0, 10).total());
+            assertEquals(1, index.search("c1", "bananas", 0, 10).total());
+            assertEquals(1, index.search(null, "apple", 0, 10).total());
+        }
+    }
+
+    @Test
+    void deletedConversationsLeaveTheIndex() throws IOException {
+        try (ChatMemorySearchIndex index = new ChatMemorySearchIndex(this.dir)) {
+            JdbcChatMemoryRepository repository = ChatMemoryTestDatabase
+                    .repositoryBuilder(ChatMemoryTestDatabase.dataSource())
+                    .listeners(List.of(index))
+                    .build();
+            repository.saveAll("c1", List.of(new UserMessage("apple")));
+            repository.saveAll("c2", List.of(new UserMessage("apple")));
+            repository.deleteByConversationId("c1");
+
+            List<ChatMemorySearchIndex.SearchHit> hits = index.search(null, "apple", 0, 10).hits();
+            assertEquals(1, hits.size());
+            assertEquals("c2", hits.get(0).conversationId());
+        }
+    }
+
+    @Test
+    void catchesUpWithConversationsSavedAfterTheLastCommit() throws IOException {
+        DataSource dataSource = ChatMemoryTestDatabase.dataSource();
+        JdbcChatMemoryRepository repository = ChatMemoryTestDatabase.repository(dataSource);
+        for (int i = 0; i < 12; i++) {
+            repository.saveAll("c" + i, List.of(new UserMessage("question " + i + " about apple"),
+                    new AssistantMessage("answer " + i)));
+        }
+        ChatMemoryTransfer transfer = new ChatMemoryTransfer(new JdbcTemplate(dataSource), 10, 4);
+        try (ChatMemorySearchIndex index = new ChatMemorySearchIndex(this.dir)) {
+            assertTrue(index.isEmpty());
+            assertNull(index.highWaterMark());
+            assertEquals(12, maintainer(index, repository, transfer).catchUp());
+            assertEquals(12, index.search(null, "apple", 0, 20).total());
+            assertNotNull(index.highWaterMark());
+        }
+
+        // 没有挂监听器的写入相当于崩溃前还没提交的增量，重新打开时按高水位补齐
+        repository.saveAll("c99", List.of(new UserMessage("late apple")));
+        try (ChatMemorySearchIndex index = new ChatMemorySearchIndex(this.dir)) {
+            assertEquals(12, index.search(null, "apple", 0, 20).total());
+            maintainer(index, repository, transfer).catchUp();
+            assertEquals(13, index.search(null, "apple", 0, 20).total());
+        }
+
+        // 分片时没有按时间查询的入口，重建全部会话
+        repository.saveAll("c100", List.of(new UserMessage("sharded apple")));
+        try (ChatMemorySearchIndex index = new ChatMemorySearchIndex(this.dir)) {
+            assertEquals(14, maintainer(index, repository, null).catchUp());
+            assertEquals(14, index.search(null, "apple", 0, 20).total());
+        }
+    }
+
+    @Test
+    void commitsDuringCatchUpDoNotAdvanceTheHighWaterMarkPastItsStart() throws IOException {
+        try (ChatMemorySearchIndex index = new ChatMemorySearchIndex(this.dir)) {
+            Instant since = Instant.parse("2026-01-01T00:00:00Z");
+            index.capHighWaterMark(since);
+            index.onSaved("c1", List.of(new UserMessage("apple")));
+            index.commit();
+            assertEquals(since, index.highWaterMark());
+
+            index.capHighWaterMark(null);
+            index.onSaved("c2", List.of(new UserMessage("apple")));
+            index.commit();
+            assertTrue(index.highWaterMark().isAfter(since));
+        }
+    }
+
+    @Test
+    void deletesAreCommittedImmediately() throws IOException {
+        try (ChatMemorySearchIndex index = new ChatMemorySearchIndex(this.dir)) {
+            index.onSaved("c1", List.of(new UserMessage("apple")));
+            index.commit();
+            // 删除不会留下更新的时间戳，不能等定时提交
+            index.onDeleted("c1");
+            try (FSDirectory directory = FSDirectory.open(this.dir);
+                 DirectoryReader reader = DirectoryReader.open(directory)) {
+                assertEquals(0, reader.numDocs());
+            }
+        }
+    }
+
+    @Test
+    void capsPageDepthAndPagesWithCursors() throws IOException {
+        try (ChatMemorySearchIndex index = new ChatMemorySearchIndex(this.dir, 20)) {
+            List<Message> messages = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                messages.add(new UserMessage("apple note " + i));
+            }
+            index.onSaved("c1", messages);
+
+            assertEquals(10, index.search(null, "apple", 1, 10).hits().size());
+            assertThrows(IllegalArgumentException.class, () -> index.search(null, "apple", 2, 10));
+            assertThrows(IllegalArgumentException.class, () -> index.searchAfter(null, "apple", "not a cursor", 10));
+
+            Set<Integer> positions = new HashSet<>();
+            List<ChatMemorySearchIndex.SearchHit> firstPages = new ArrayList<>();
+            String cursor = null;
+            int pages = 0;
+            do {
+                ChatMemorySearchIndex.SearchPage page = index.searchAfter(null, "apple", cursor, 7);
+                assertEquals(30, page.total());
+                for (ChatMemorySearchIndex.SearchHit hit : page.hits()) {
+                    assertTrue(positions.add(hit.position()), "duplicate hit " + hit.position());
+                    if (firstPages.size() < 20) {
+                        firstPages.add(hit);
+                    }
+                }
+                cursor = page.nextCursor();
+                pages++;
+            }
+            while (cursor != null);
+            assertEquals(30, positions.size());
+            assertEquals(5, pages);
+
+            // 游标翻页与按页码翻页的顺序一致
+            List<ChatMemorySearchIndex.SearchHit> byPage = new ArrayList<>(index.search(null, "apple", 0, 10).hits());
+            byPage.addAll(index.search(null, "apple", 1, 10).hits());
+            assertEquals(byPage, firstPages);
+        }
+    }
+
+    private static ChatMemorySearchConfig.SearchIndexMaintainer maintainer(ChatMemorySearchIndex index,
+                                                                           ChatMemoryRepository repository,
+                                                                           ChatMemoryTransfer transfer) {
+        return new ChatMemorySearchConfig.SearchIndexMaintainer(index, repository, transfer,
+                new ChatMemorySearchProperties());
+    }
+}
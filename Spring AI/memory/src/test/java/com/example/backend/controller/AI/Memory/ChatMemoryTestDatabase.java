@@ -0,0 +1,38 @@
+package com.example.backend.controller.AI.Memory;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+import java.util.UUID;
+
+/**
+ * 测试用的聊天记忆数据库：每次调用都创建一个独立的内存H2库（MySQL兼容模式）并执行建表脚本
+ */
+final class ChatMemoryTestDatabase {
+
+    private ChatMemoryTestDatabase() {
+    }
+
+    static DataSource dataSource() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        new ResourceDatabasePopulator(new ClassPathResource("repository/schema-h2.sql")).execute(dataSource);
+        return dataSource;
+    }
+
+    static JdbcChatMemoryRepository.Builder repositoryBuilder(DataSource dataSource) {
+        return JdbcChatMemoryRepository.builder()
+                .dataSource(dataSource)
+                .dialect(new MysqlChatMemoryRepositoryDialect());
+    }
+
+    static JdbcChatMemoryRepository repository(DataSource dataSource) {
+        return repositoryBuilder(dataSource).build();
+    }
+
+    static JdbcChatMemoryRepository repository() {
+        return repository(dataSource());
+    }
+}
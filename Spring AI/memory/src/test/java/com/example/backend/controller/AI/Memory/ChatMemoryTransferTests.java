@@ -0,0 +1,173 @@
+package com.example.backend.controller.AI.Memory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ChatMemoryTransferTests {
+
+    private static final int CONVERSATIONS = 30;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsBothFormats() {
+        DataSource source = populatedDatabase();
+        for (ChatMemoryTransfer.Format format : ChatMemoryTransfer.Format.values()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ChatMemoryTransfer.ExportResult exported = transfer(source).export(out, format, null, null);
+            assertEquals(CONVERSATIONS, exported.conversations());
+
+            DataSource target = ChatMemoryTestDatabase.dataSource();
+            ChatMemoryTransfer.ImportResult imported = transfer(target)
+                    .importFrom(new ByteArrayInputStream(out.toByteArray()), format, 0);
+            assertEquals(exported.rows(), imported.rows());
+            assertSameMemory(source, target);
+        }
+    }
+
+    @Test
+    void resumedExportContinuesWithoutHeader() {
+        DataSource source = populatedDatabase();
+        ByteArrayOutputStream full = new ByteArrayOutputStream();
+        transfer(source).export(full, ChatMemoryTransfer.Format.BINARY, null, null);
+
+        // 在第10个会话写完后中断，保留已刷新的部分，再从该会话之后继续
+        ByteArrayOutputStream partial = new ByteArrayOutputStream();
+        List<String> completed = new ArrayList<>();
+        int[] size = new int[1];
+        transfer(source).export(partial, ChatMemoryTransfer.Format.BINARY, null, conversationId -> {
+            completed.add(conversationId);
+            if (completed.size() == 10) {
+                size[0] = partial.size();
+            }
+        });
+        ByteArrayOutputStream resumed = new ByteArrayOutputStream();
+        resumed.write(partial.toByteArray(), 0, size[0]);
+        transfer(source).export(resumed, ChatMemoryTransfer.Format.BINARY, completed.get(9), null);
+
+        assertArrayEquals(full.toByteArray(), resumed.toByteArray());
+    }
+
+    @Test
+    void resumedImportDoesNotDuplicateCommittedBatches() {
+        DataSource source = populatedDatabase();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChatMemoryTransfer.ExportResult exported = transfer(source)
+                .export(out, ChatMemoryTransfer.Format.NDJSON, null, null);
+
+        DataSource target = ChatMemoryTestDatabase.dataSource();
+        List<Long> progress = new ArrayList<>();
+        new ChatMemoryTransfer(new JdbcTemplate(target), 10, 7).importFrom(new ByteArrayInputStream(out.toByteArray()),
+                ChatMemoryTransfer.Format.NDJSON, "memory.ndjson", progress::add);
+        assertEquals(exported.rows(), progress.get(progress.size() - 1));
+        assertEquals(7L, progress.get(0));
+        assertEquals(0, progressRows(target));
+
+        // 第3批提交后、调用方记录进度之前中断，再次导入从事务内记录的行数继续，这一批不会重复写入
+        DataSource resumed = ChatMemoryTestDatabase.dataSource();
+        long interruptedAt = progress.get(2);
+        ChatMemoryTransfer transfer = new ChatMemoryTransfer(new JdbcTemplate(resumed), 10, 7);
+        assertThrows(IllegalStateException.class, () -> transfer.importFrom(
+                new ByteArrayInputStream(out.toByteArray()), ChatMemoryTransfer.Format.NDJSON, "memory.ndjson",
+                rows -> {
+                    if (rows == interruptedAt) {
+                        throw new IllegalStateException("interrupted");
+                    }
+                }));
+        assertEquals(interruptedAt, count(resumed));
+        assertEquals(1, progressRows(resumed));
+
+        List<Long> resumedProgress = new ArrayList<>();
+        transfer.importFrom(new ByteArrayInputStream(out.toByteArray()), ChatMemoryTransfer.Format.NDJSON,
+                "memory.ndjson", resumedProgress::add);
+        assertEquals(interruptedAt + 7, resumedProgress.get(0));
+        assertSameMemory(source, resumed);
+        assertEquals(0, progressRows(resumed));
+    }
+
+    @Test
+    void runnerResumesExportFromCheckpointFile() throws Exception {
+        DataSource source = populatedDatabase();
+        Path file = this.dir.resolve("memory.bin");
+        ByteArrayOutputStream full = new ByteArrayOutputStream();
+        transfer(source).export(full, ChatMemoryTransfer.Format.BINARY, null, null);
+
+        // 模拟上一次执行在第5个会话后留下检查点，之后又写了半个会话
+        ByteArrayOutputStream partial = new ByteArrayOutputStream();
+        String[] fifth = new String[1];
+        int[] size = new int[1];
+        int[] seen = new int[1];
+        transfer(source).export(partial, ChatMemoryTransfer.Format.BINARY, null, conversationId -> {
+            if (++seen[0] == 5) {
+                fifth[0] = conversationId;
+                size[0] = partial.size();
+            }
+        });
+        Files.write(file, Arrays.copyOf(partial.toByteArray(), size[0] + 20));
+        Files.writeString(this.dir.resolve("memory.bin.checkpoint"), size[0] + "\t" + fifth[0]);
+
+        new ChatMemoryTransferRunner(transfer(source), "export", file, "binary").run();
+
+        assertArrayEquals(full.toByteArray(), Files.readAllBytes(file));
+        assertFalse(Files.exists(this.dir.resolve("memory.bin.checkpoint")));
+
+        DataSource target = ChatMemoryTestDatabase.dataSource();
+        new ChatMemoryTransferRunner(transfer(target), "import", file, "binary").run();
+        assertSameMemory(source, target);
+    }
+
+    private static DataSource populatedDatabase() {
+        DataSource dataSource = ChatMemoryTestDatabase.dataSource();
+        JdbcChatMemoryRepository repository = ChatMemoryTestDatabase.repository(dataSource);
+        for (int i = 0; i < CONVERSATIONS; i++) {
+            List<Message> messages = new ArrayList<>();
+            messages.add(new UserMessage("question " + i));
+            if (i % 3 == 0) {
+                messages.add(new ToolResponseMessage(List.of(
+                        new ToolResponseMessage.ToolResponse("call-" + i, "search", "{\"hits\":" + i + "}"))));
+            }
+            messages.add(new AssistantMessage("answer " + i));
+            repository.saveAll(String.format("c%03d", i), messages);
+        }
+        return dataSource;
+    }
+
+    private static ChatMemoryTransfer transfer(DataSource dataSource) {
+        return new ChatMemoryTransfer(new JdbcTemplate(dataSource), 10, 4);
+    }
+
+    private static long count(DataSource dataSource) {
+        return new JdbcTemplate(dataSource).queryForObject("SELECT COUNT(*) FROM spring_ai_chat_memory", Long.class);
+    }
+
+    private static int progressRows(DataSource dataSource) {
+        return new JdbcTemplate(dataSource).queryForObject("SELECT COUNT(*) FROM spring_ai_chat_memory_transfer",
+                Integer.class);
+    }
+
+    private static void assertSameMemory(DataSource expected, DataSource actual) {
+        String sql = "SELECT conversation_id, type, content, `timestamp`, payload FROM spring_ai_chat_memory "
+                + "ORDER BY conversation_id, `timestamp`";
+        assertEquals(new JdbcTemplate(expected).queryForList(sql), new JdbcTemplate(actual).queryForList(sql));
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.backend.controller.AI.Memory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChatMemoryVectorIndexTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void hnswMatchesBruteForce() {
+        Random random = new Random(7);
+        float[][] vectors = new float[2000][32];
+        for (float[] vector : vectors) {
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = (float) random.nextGaussian();
+            }
+        }
+        for (boolean offHeap : new boolean[] { false, true }) {
+            HnswGraph graph = new HnswGraph(32, 16, 200, offHeap);
+            for (float[] vector : vectors) {
+                graph.add(vector);
+            }
+            int found = 0;
+            for (int q = 0; q < 50; q++) {
+                float[] query = vectors[random.nextInt(vectors.length)].clone();
+                query[0] += 0.5f;
+                List<Integer> expected = IntStream.range(0, vectors.length).boxed()
+                        .sorted(Comparator.comparingDouble(i -> -cosine(query, vectors[i])))
+                        .limit(10)
+                        .toList();
+                for (long result : graph.search(query, 10, 64)) {
+                    if (expected.contains(HnswGraph.id(result))) {
+                        found++;
+                    }
+                }
+            }
+            assertTrue(found >= 450, "recall@10 too low: " + found / 500.0);
+        }
+    }
+
+    @Test
+    void recallsOlderRelevantMessagesOutsideHistory() {
+        StubEmbeddingModel embeddingModel = new StubEmbeddingModel();
+        try (ChatMemoryVectorIndex index = newIndex(embeddingModel)) {
+            List<Message> history = conversation();
+            index.onSaved("u1", history);
+            // 第二次保存同样的消息不会重新向量化
+            int calls = embeddingModel.calls.get();
+            index.onSaved("u1", history);
+            assertEquals(calls, embeddingModel.calls.get());
+
+            // 已经在提示词历史中的消息不会再被召回
+            List<Message> trimmed = history.subList(4, history.size());
+            List<Message> recalled = index.recall("u1", "what is my cat name", trimmed).block();
+            assertEquals("my cat name is mimi", recalled.get(0).getText());
+            assertTrue(recalled.stream().noneMatch(trimmed::contains));
+            assertTrue(index.recall("u1", "what is my cat name", history).block().isEmpty());
+            assertTrue(index.recall("u2", "what is my cat name", List.of()).block().isEmpty());
+        }
+    }
+
+    @Test
+    void reloadsFromLogAndForgetsDeletedConversations() {
+        StubEmbeddingModel embeddingModel = new StubEmbeddingModel();
+        try (ChatMemoryVectorIndex index = newIndex(embeddingModel)) {
+            index.onSaved("u1", conversation());
+            index.onSaved("u2", conversation());
+            index.onDeleted("u2");
+        }
+        int calls = embeddingModel.calls.get();
+        try (ChatMemoryVectorIndex index = newIndex(embeddingModel)) {
+            assertEquals(conversation().size(), index.size("u1"));
+            assertEquals(0, index.size("u2"));
+            index.onSaved("u1", conversation());
+            assertEquals(calls, embeddingModel.calls.get());
+            assertEquals("my cat name is mimi",
+                    index.recall("u1", "cat name", List.of()).block().get(0).getText());
+        }
+    }
+
+    @Test
+    void expiresMessagesIndexedBeforeTheirTypeCutoff() {
+        StubEmbeddingModel embeddingModel = new StubEmbeddingModel();
+        Instant future = Instant.now().plusSeconds(60);
+        try (ChatMemoryVectorIndex index = newIndex(embeddingModel)) {
+            index.onSaved("u1", conversation());
+            index.onSaved("u2", conversation());
+            // USER消息已过期，ASSISTANT消息还在保留期内
+            index.onExpired("u1", List.of(), Map.of(MessageType.USER, future, MessageType.ASSISTANT, Instant.EPOCH));
+            index.onExpired("u2", List.of(), Map.of(MessageType.USER, future, MessageType.ASSISTANT, future));
+            assertEquals(3, index.size("u1"));
+            assertEquals(0, index.size("u2"));
+            assertTrue(index.recall("u1", "my cat name", List.of()).block().stream()
+                    .allMatch(message -> message instanceof AssistantMessage));
+        }
+        try (ChatMemoryVectorIndex index = newIndex(embeddingModel)) {
+            assertEquals(3, index.size("u1"));
+            assertEquals(0, index.size("u2"));
+        }
+    }
+
+    @Test
+    void dropsOldestMessagesOverTheLimit() {
+        StubEmbeddingModel embeddingModel = new StubEmbeddingModel();
+        try (ChatMemoryVectorIndex index = newIndex(embeddingModel, 8)) {
+            List<Message> history = new ArrayList<>();
+            for (int i = 0; i < 9; i++) {
+                history.add(new UserMessage("question number " + i + " about topic" + i));
+                index.onSaved("u1", List.copyOf(history));
+            }
+            // 第9条超过上限，只保留最新的四分之三（6条），之后不会每次保存都重建
+            assertEquals(6, index.size("u1"));
+            assertTrue(index.recall("u1", "topic0", List.of()).block().stream()
+                    .noneMatch(message -> message.getText().contains("topic0")));
+            assertEquals("question number 8 about topic8",
+                    index.recall("u1", "topic8", List.of()).block().get(0).getText());
+        }
+        try (ChatMemoryVectorIndex index = newIndex(embeddingModel, 4)) {
+            // 调小上限后重新加载，超出的旧消息在加载时丢弃
+            assertEquals(3, index.size("u1"));
+        }
+    }
+
+    @Test
+    void compactsTheLogWhileRunning() throws IOException {
+        StubEmbeddingModel embeddingModel = new StubEmbeddingModel();
+        Path log = this.dir.resolve("vectors.log");
+        try (ChatMemoryVectorIndex index = newIndex(embeddingModel, 8)) {
+            for (int i = 0; i < 1500; i++) {
+                index.onSaved("u1", List.of(new UserMessage("question number " + i + " about topic" + i)));
+            }
+            // 每次裁剪写入一条删除记录和保留的6条ADD，不压缩时日志中约有4500条ADD（每条三百多字节）
+            assertEquals(6, index.size("u1"));
+            assertTrue(Files.size(log) < 1100 * 400, "log was not compacted: " + Files.size(log));
+        }
+        try (ChatMemoryVectorIndex index = newIndex(embeddingModel, 8)) {
+            assertEquals(6, index.size("u1"));
+        }
+    }
+
+    @Test
+    void coalescesChangesQueuedForTheSameConversation() {
+        StubEmbeddingModel embeddingModel = new StubEmbeddingModel();
+        List<Runnable> queued = new ArrayList<>();
+        try (ChatMemoryVectorIndex index = newIndex(embeddingModel, 1000, queued::add)) {
+            List<Message> history = conversation();
+            index.onSaved("u1", history.subList(0, 2));
+            index.onSaved("u1", history.subList(0, 4));
+            index.onSaved("u1", history);
+            index.onSaved("u2", history);
+            index.onDeleted("u2");
+            index.onSaved("u2", history.subList(0, 2));
+            // 每个会话只排队一个任务，执行时多次保存合并为一次向量化，删除之前的保存不再执行
+            assertEquals(2, queued.size());
+            queued.forEach(Runnable::run);
+            assertEquals(2, embeddingModel.calls.get());
+            assertEquals(6, index.size("u1"));
+            assertEquals(2, index.size("u2"));
+
+            index.onDeleted("u1");
+            assertEquals(3, queued.size());
+        }
+    }
+
+    private ChatMemoryVectorIndex newIndex(EmbeddingModel embeddingModel) {
+        return newIndex(embeddingModel, 1000);
+    }
+
+    private ChatMemoryVectorIndex newIndex(EmbeddingModel embeddingModel, int maxMessages) {
+        return newIndex(embeddingModel, maxMessages, Runnable::run);
+    }
+
+    private ChatMemoryVectorIndex newIndex(EmbeddingModel embeddingModel, int maxMessages, Executor executor) {
+        return ChatMemoryVectorIndex.builder()
+                .directory(this.dir)
+                .embeddingModel(embeddingModel)
+                .topK(2)
+                .maxMessages(maxMessages)
+                .executor(executor)
+                .build();
+    }
+
+    private static List<Message> conversation() {
+        return List.of(
+                new UserMessage("my cat name is mimi"),
+                new AssistantMessage("nice, mimi is a lovely name"),
+                new UserMessage("i live in hangzhou near the west lake"),
+                new AssistantMessage("hangzhou is beautiful in spring"),
+                new UserMessage("recommend a book about databases"),
+                new AssistantMessage("try designing data intensive applications"));
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+
+    /**
+     * 本地词袋向量：每个单词哈希到一个维度上计数，相同单词越多越相似
+     */
+    private static final class StubEmbeddingModel implements EmbeddingModel {
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            this.calls.incrementAndGet();
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions()) {
+                embeddings.add(new Embedding(embed(text.toLowerCase()), embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+
+        @Override
+        public float[] embed(String text) {
+            float[] vector = new float[64];
+            Arrays.stream(text.split("\\W+"))
+                    .filter(word -> word.length() > 2)
+                    .forEach(word -> vector[Math.floorMod(word.hashCode(), vector.length)]++);
+            return vector;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.backend.controller.AI.Memory;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChatMessagePayloadTests {
+
+    private static final AssistantMessage.ToolCall CALL = new AssistantMessage.ToolCall("call-1", "function",
+            "weather", "{\"city\":\"杭州\"}");
+
+    private static final ToolResponseMessage.ToolResponse RESPONSE = new ToolResponseMessage.ToolResponse("call-1",
+            "weather", "{\"temp\":21}");
+
+    @Test
+    void textOnlyMessagesHaveNoPayload() {
+        assertNull(ChatMessagePayload.encode(new UserMessage("hi")));
+        assertNull(ChatMessagePayload.encode(new AssistantMessage("hello")));
+    }
+
+    @Test
+    void toolMessagesAndMetadataSurviveReload() {
+        DataSource dataSource = ChatMemoryTestDatabase.dataSource();
+        JdbcChatMemoryRepository repository = ChatMemoryTestDatabase.repository(dataSource);
+
+        repository.saveAll("c1", List.of(
+                new UserMessage("今天杭州天气怎么样"),
+                new AssistantMessage("", Map.of("finishReason", "TOOL_CALLS"), List.of(CALL)),
+                new ToolResponseMessage(List.of(RESPONSE)),
+                new AssistantMessage("21度")));
+
+        List<Message> messages = repository.findByConversationId("c1");
+        assertEquals(4, messages.size());
+        AssistantMessage call = (AssistantMessage) messages.get(1);
+        assertTrue(call.hasToolCalls());
+        assertEquals(List.of(CALL), call.getToolCalls());
+        assertEquals("TOOL_CALLS", call.getMetadata().get("finishReason"));
+        assertEquals(MessageType.ASSISTANT, call.getMetadata().get("messageType"));
+        assertEquals(List.of(RESPONSE), ((ToolResponseMessage) messages.get(2)).getResponses());
+        assertFalse(((AssistantMessage) messages.get(3)).hasToolCalls());
+
+        // 再次保存后仍然完整
+        repository.saveAll("c1", messages);
+        assertEquals(List.of(RESPONSE),
+                ((ToolResponseMessage) repository.findByConversationId("c1").get(2)).getResponses());
+        assertNull(new JdbcTemplate(dataSource).queryForObject(
+                "SELECT payload FROM spring_ai_chat_memory WHERE type = 'USER'", String.class));
+    }
+
+    @Test
+    void untouchedLazyMessageReusesRawPayload() {
+        String payload = ChatMessagePayload.encode(new ToolResponseMessage(List.of(RESPONSE)));
+        Message message = ChatMessagePayload.toMessage(MessageType.TOOL, "", payload);
+        assertSame(payload, ChatMessagePayload.encode(message));
+        assertEquals(List.of(RESPONSE), ((ToolResponseMessage) message).getResponses());
+    }
+}
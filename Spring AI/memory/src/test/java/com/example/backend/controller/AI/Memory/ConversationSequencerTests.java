@@ -0,0 +1,125 @@
+package com.example.backend.controller.AI.Memory;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversationSequencerTests {
+
+    private static final int CONVERSATIONS = 20;
+
+    private static final int TURNS = 10;
+
+    private final ConversationSequencer sequencer = new ConversationSequencer();
+
+    @Test
+    void concurrentTurnsDoNotLoseMessages() {
+        JdbcChatMemoryRepository repository = ChatMemoryTestDatabase.repository();
+
+        Flux.range(0, CONVERSATIONS * TURNS)
+                .flatMap(i -> {
+                    String conversationId = "c" + (i % CONVERSATIONS);
+                    return this.sequencer.sequence(conversationId, () -> turn(repository, conversationId, i))
+                            .subscribeOn(Schedulers.parallel());
+                }, CONVERSATIONS * TURNS)
+                .blockLast(Duration.ofSeconds(60));
+
+        for (int c = 0; c < CONVERSATIONS; c++) {
+            List<Message> messages = repository.findByConversationId("c" + c);
+            assertEquals(TURNS * 2, messages.size(), "messages lost in conversation c" + c);
+            Set<String> questions = new HashSet<>();
+            for (int i = 0; i < messages.size(); i += 2) {
+                questions.add(messages.get(i).getText());
+                assertEquals(messages.get(i).getText().replace("question", "answer"), messages.get(i + 1).getText());
+            }
+            assertEquals(TURNS, questions.size());
+        }
+        assertEquals(0, this.sequencer.activeConversations());
+    }
+
+    @Test
+    void differentConversationsRunInParallel() {
+        long start = System.nanoTime();
+        Flux.range(0, 50)
+                .flatMap(i -> this.sequencer.sequence("c" + i, () -> Mono.delay(Duration.ofMillis(200)).flux()), 50)
+                .blockLast(Duration.ofSeconds(10));
+        // 串行执行需要10秒
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(3)) < 0);
+    }
+
+    @Test
+    void cancelledTurnReleasesConversation() throws Exception {
+        Disposable stuck = this.sequencer.sequence("c", Flux::never).subscribe();
+        CompletableFuture<String> next = this.sequencer.sequence("c", () -> Flux.just("next")).next().toFuture();
+        assertFalse(next.isDone());
+
+        stuck.dispose();
+        assertEquals("next", next.get(5, TimeUnit.SECONDS));
+        assertEquals(0, this.sequencer.activeConversations());
+    }
+
+    @Test
+    void cancelledQueuedTurnKeepsOrder() throws Exception {
+        Disposable running = this.sequencer.sequence("c", Flux::never).subscribe();
+        Disposable queued = this.sequencer.sequence("c", () -> Flux.just("queued")).subscribe();
+        CompletableFuture<String> waiting = this.sequencer.sequence("c", () -> Flux.just("waiting")).next().toFuture();
+
+        // 排队中的轮次被取消，后面的轮次仍要等正在执行的轮次结束
+        queued.dispose();
+        Thread.sleep(100);
+        assertFalse(waiting.isDone());
+
+        running.dispose();
+        assertEquals("waiting", waiting.get(5, TimeUnit.SECONDS));
+        assertEquals(0, this.sequencer.activeConversations());
+    }
+
+    @Test
+    void queuedTurnRunsOnScheduler() throws Exception {
+        Sinks.Empty<Void> first = Sinks.empty();
+        this.sequencer.sequence("c", () -> first.asMono().flux()).subscribe();
+        CompletableFuture<String> next = this.sequencer.sequence("c",
+                () -> Flux.just(Thread.currentThread().getName())).next().toFuture();
+
+        Thread emitter = new Thread(first::tryEmitEmpty, "event-loop");
+        emitter.start();
+        emitter.join();
+        assertTrue(next.get(5, TimeUnit.SECONDS).startsWith("boundedElastic"));
+    }
+
+    /**
+     * 模拟chat4的一轮：加载历史、等待模型输出、先删后插保存
+     */
+    private static Flux<String> turn(JdbcChatMemoryRepository repository, String conversationId, int i) {
+        return Flux.defer(() -> {
+            List<Message> history = new ArrayList<>(repository.findByConversationId(conversationId));
+            history.add(new UserMessage("question " + i));
+            return Mono.delay(Duration.ofMillis(ThreadLocalRandom.current().nextInt(1, 10)))
+                    .map(tick -> "answer " + i)
+                    .doOnNext(answer -> {
+                        history.add(new AssistantMessage(answer));
+                        repository.saveAll(conversationId, history);
+                    })
+                    .flux();
+        });
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.backend.controller.AI.Memory;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardInstanceRegistryTests {
+
+    private static final Instant NOW = Instant.parse("2026-10-18T00:00:00Z");
+
+    private static final Duration HEARTBEAT = Duration.ofSeconds(10);
+
+    private final JdbcTemplate shard0 = new JdbcTemplate(ChatMemoryTestDatabase.dataSource());
+
+    private final JdbcTemplate shard1 = new JdbcTemplate(ChatMemoryTestDatabase.dataSource());
+
+    @Test
+    void joiningShardsRequireTheOnlyRunningInstance() {
+        ShardInstanceRegistry running = registry(Map.of("shard-0", this.shard0), NOW);
+        running.register(false);
+
+        ShardInstanceRegistry joining = registry(Map.of("shard-0", this.shard0, "shard-1", this.shard1), NOW);
+        IllegalStateException ex = assertThrows(IllegalStateException.class, () -> joining.register(true));
+        assertTrue(ex.getMessage().contains("single instance"));
+        // 启动失败的实例不留下登记
+        assertEquals(1, count(this.shard0));
+        assertEquals(0, count(this.shard1));
+
+        running.close();
+        joining.register(true);
+        assertEquals(1, count(this.shard0));
+        assertEquals(1, count(this.shard1));
+    }
+
+    @Test
+    void rejectsInstancesWithADifferentShardSetOrDuringRebalance() {
+        ShardInstanceRegistry joining = registry(Map.of("shard-0", this.shard0, "shard-1", this.shard1), NOW);
+        joining.register(true);
+
+        // 迁移中的实例存活时，即使分片集合相同也不能启动
+        Map<String, JdbcTemplate> both = Map.of("shard-1", this.shard1, "shard-0", this.shard0);
+        assertThrows(IllegalStateException.class, () -> registry(both, NOW).register(false));
+        joining.heartbeat(false);
+        registry(both, NOW).register(false);
+        assertThrows(IllegalStateException.class,
+                () -> registry(Map.of("shard-0", this.shard0), NOW).register(false));
+    }
+
+    @Test
+    void ignoresInstancesWhoseHeartbeatTimedOut() {
+        registry(Map.of("shard-0", this.shard0), NOW).register(false);
+
+        Instant later = NOW.plus(HEARTBEAT.multipliedBy(3)).plusSeconds(1);
+        registry(Map.of("shard-0", this.shard0, "shard-1", this.shard1), later).register(true);
+        assertEquals(2, count(this.shard0));
+    }
+
+    private static ShardInstanceRegistry registry(Map<String, JdbcTemplate> shards, Instant now) {
+        return new ShardInstanceRegistry(shards, HEARTBEAT, Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    private static int count(JdbcTemplate jdbcTemplate) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM spring_ai_chat_memory_instance", Integer.class);
+    }
+}
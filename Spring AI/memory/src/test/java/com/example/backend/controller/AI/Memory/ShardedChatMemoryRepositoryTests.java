@@ -0,0 +1,225 @@
+package com.example.backend.controller.AI.Memory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedChatMemoryRepositoryTests {
+
+    private static final int CONVERSATIONS = 200;
+
+    private ShardedChatMemoryRepository repository;
+
+    @AfterEach
+    void tearDown() {
+        if (this.repository != null) {
+            this.repository.close();
+        }
+    }
+
+    @Test
+    void routesConversationsAcrossShardsAndScatterGathersIds() {
+        JdbcChatMemoryRepository[] shards = {
+                ChatMemoryTestDatabase.repository(),
+                ChatMemoryTestDatabase.repository(),
+                ChatMemoryTestDatabase.repository()
+        };
+        this.repository = ShardedChatMemoryRepository.builder()
+                .shard("shard-0", shards[0])
+                .shard("shard-1", shards[1])
+                .shard("shard-2", shards[2])
+                .build();
+
+        for (int i = 0; i < CONVERSATIONS; i++) {
+            this.repository.saveAll("c" + i, messages(i));
+        }
+
+        int total = 0;
+        for (JdbcChatMemoryRepository shard : shards) {
+            int size = shard.findConversationIds().size();
+            assertTrue(size > 0, "every shard should own some conversations");
+            total += size;
+        }
+        assertEquals(CONVERSATIONS, total);
+        assertEquals(CONVERSATIONS, new HashSet<>(this.repository.findConversationIds()).size());
+        assertEquals(messages(42).get(1).getText(), this.repository.findByConversationId("c42").get(1).getText());
+    }
+
+    @Test
+    void rebalancesOnlineWithoutLosingConversations() {
+        JdbcChatMemoryRepository[] shards = {
+                ChatMemoryTestDatabase.repository(),
+                ChatMemoryTestDatabase.repository()
+        };
+        this.repository = ShardedChatMemoryRepository.builder()
+                .shard("shard-0", shards[0])
+                .shard("shard-1", shards[1])
+                .build();
+        for (int i = 0; i < CONVERSATIONS; i++) {
+            this.repository.saveAll("c" + i, messages(i));
+        }
+
+        JdbcChatMemoryRepository added = ChatMemoryTestDatabase.repository();
+        int moved = this.repository.addShard("shard-2", added).join();
+
+        assertTrue(moved > 0);
+        assertEquals(moved, added.findConversationIds().size());
+        Set<String> seen = new HashSet<>();
+        for (JdbcChatMemoryRepository shard : List.of(shards[0], shards[1], added)) {
+            for (String id : shard.findConversationIds()) {
+                assertTrue(seen.add(id), "conversation stored on more than one shard: " + id);
+            }
+        }
+        assertEquals(CONVERSATIONS, seen.size());
+        for (int i = 0; i < CONVERSATIONS; i++) {
+            assertEquals(2, this.repository.findByConversationId("c" + i).size());
+        }
+    }
+
+    @Test
+    void writesDuringRebalanceAreNotLost() throws Exception {
+        JdbcChatMemoryRepository[] shards = {
+                ChatMemoryTestDatabase.repository(),
+                ChatMemoryTestDatabase.repository()
+        };
+        this.repository = ShardedChatMemoryRepository.builder()
+                .shard("shard-0", shards[0])
+                .shard("shard-1", shards[1])
+                .build();
+        for (int i = 0; i < CONVERSATIONS; i++) {
+            this.repository.saveAll("c" + i, messages(i));
+        }
+
+        // 每个写线程负责一部分会话，迁移进行时反复整体覆盖，记录每个会话最后写入的内容
+        int writers = 4;
+        String[] latest = new String[CONVERSATIONS];
+        JdbcChatMemoryRepository added = ChatMemoryTestDatabase.repository();
+        try (ExecutorService executor = Executors.newFixedThreadPool(writers)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                int writer = w;
+                futures.add(executor.submit(() -> {
+                    for (int round = 0; round < 10; round++) {
+                        for (int i = writer; i < CONVERSATIONS; i += writers) {
+                            String text = "round " + round + " of " + i;
+                            this.repository.saveAll("c" + i, List.of(new UserMessage(text)));
+                            latest[i] = text;
+                        }
+                    }
+                }));
+            }
+            this.repository.addShard("shard-2", added).join();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+
+        assertFalse(this.repository.isRebalancing());
+        Set<String> seen = new HashSet<>();
+        for (JdbcChatMemoryRepository shard : List.of(shards[0], shards[1], added)) {
+            for (String id : shard.findConversationIds()) {
+                assertTrue(seen.add(id), "conversation stored on more than one shard: " + id);
+            }
+        }
+        assertEquals(CONVERSATIONS, seen.size());
+        for (int i = 0; i < CONVERSATIONS; i++) {
+            List<Message> messages = this.repository.findByConversationId("c" + i);
+            assertEquals(1, messages.size());
+            assertEquals(latest[i], messages.get(0).getText());
+        }
+    }
+
+    @Test
+    void failedRebalanceCanBeResumed() {
+        JdbcChatMemoryRepository[] shards = {
+                ChatMemoryTestDatabase.repository(),
+                ChatMemoryTestDatabase.repository()
+        };
+        FailingRepository flaky = new FailingRepository(shards[1]);
+        this.repository = ShardedChatMemoryRepository.builder()
+                .shard("shard-0", shards[0])
+                .shard("shard-1", flaky)
+                .build();
+        for (int i = 0; i < CONVERSATIONS; i++) {
+            this.repository.saveAll("c" + i, messages(i));
+        }
+
+        flaky.failing = true;
+        JdbcChatMemoryRepository added = ChatMemoryTestDatabase.repository();
+        assertThrows(CompletionException.class, () -> this.repository.addShard("shard-2", added).join());
+        assertTrue(this.repository.isRebalancing());
+        assertThrows(IllegalStateException.class,
+                () -> this.repository.addShard("shard-3", ChatMemoryTestDatabase.repository()));
+        // 迁移失败期间读取仍能回落到旧分片
+        for (int i = 0; i < CONVERSATIONS; i++) {
+            assertEquals(2, this.repository.findByConversationId("c" + i).size());
+        }
+
+        flaky.failing = false;
+        assertTrue(this.repository.resumeRebalance().join() > 0);
+        assertFalse(this.repository.isRebalancing());
+        assertEquals(CONVERSATIONS, new HashSet<>(this.repository.findConversationIds()).size());
+        for (int i = 0; i < CONVERSATIONS; i++) {
+            assertEquals(2, this.repository.findByConversationId("c" + i).size());
+        }
+        assertEquals(0, this.repository.resumeRebalance().join());
+    }
+
+    private static List<Message> messages(int i) {
+        return List.of(new UserMessage("question " + i), new AssistantMessage("answer " + i));
+    }
+
+    /**
+     * 可以让会话ID查询失败的分片，用于模拟迁移过程中分片故障
+     */
+    private static final class FailingRepository implements ChatMemoryRepository {
+
+        private final ChatMemoryRepository delegate;
+
+        private volatile boolean failing;
+
+        FailingRepository(ChatMemoryRepository delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public List<String> findConversationIds() {
+            if (this.failing) {
+                throw new IllegalStateException("shard unavailable");
+            }
+            return this.delegate.findConversationIds();
+        }
+
+        @Override
+        public List<Message> findByConversationId(String conversationId) {
+            return this.delegate.findByConversationId(conversationId);
+        }
+
+        @Override
+        public void saveAll(String conversationId, List<Message> messages) {
+            this.delegate.saveAll(conversationId, messages);
+        }
+
+        @Override
+        public void deleteByConversationId(String conversationId) {
+            this.delegate.deleteByConversationId(conversationId);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.backend.controller.AI.Prompt;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PromptAssemblerTests {
+
+    private final PromptAssembler assembler = new PromptAssembler(4);
+
+    @Test
+    void ordersStaticPartBeforeHistoryAndMarksBoundaries() {
+        List<Message> messages = this.assembler.prompt("c")
+                .summary("summary")
+                .system("system")
+                .history(List.of(new UserMessage("q"), new AssistantMessage("a")), 10)
+                .user("now")
+                .messages();
+
+        assertEquals(List.of(MessageType.SYSTEM, MessageType.SYSTEM, MessageType.USER, MessageType.ASSISTANT,
+                MessageType.USER), messages.stream().map(Message::getMessageType).toList());
+        assertEquals("system", messages.get(0).getText());
+        assertEquals(PromptAssembler.BOUNDARY_STATIC, messages.get(1).getMetadata().get(PromptAssembler.CACHE_BOUNDARY));
+        assertEquals(PromptAssembler.BOUNDARY_HISTORY, messages.get(3).getMetadata().get(PromptAssembler.CACHE_BOUNDARY));
+        assertFalse(messages.get(4).getMetadata().containsKey(PromptAssembler.CACHE_BOUNDARY));
+    }
+
+    @Test
+    void normalizesTextDeterministically() {
+        assertEquals("a\nb", PromptAssembler.normalize("a  \r\nb\n\n"));
+        assertEquals("\u00e9", PromptAssembler.normalize("e\u0301"));
+    }
+
+    @Test
+    void trimsHistoryInBlocks() {
+        List<Message> history = history(10);
+        assertEquals(10, this.assembler.trimHistory(history, 10).size());
+        assertEquals(6, this.assembler.trimHistory(history, 9).size());
+        assertEquals(6, this.assembler.trimHistory(history, 6).size());
+        assertEquals(2, this.assembler.trimHistory(history, 5).size());
+    }
+
+    @Test
+    void appendOnlyTurnsKeepPrefixStable() {
+        List<Message> history = new ArrayList<>();
+        for (int turn = 0; turn < 20; turn++) {
+            this.assembler.prompt("c").system("system prompt").history(history, 12).user("question " + turn).messages();
+            history = new ArrayList<>(this.assembler.trimHistory(history, 12));
+            history.add(new UserMessage("question " + turn));
+            history.add(new AssistantMessage("answer " + turn));
+        }
+        PromptAssembler.PrefixStats stats = this.assembler.stats();
+        assertEquals(20, stats.assemblies());
+        assertTrue(stats.stability() > 0.5, "stability was " + stats.stability());
+    }
+
+    private static List<Message> history(int size) {
+        List<Message> history = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            history.add(i % 2 == 0 ? new UserMessage("q" + i) : new AssistantMessage("a" + i));
+        }
+        return history;
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.backend.controller.AI.Prompt;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.prompt.SystemPromptTemplate;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PromptTemplateRegistryTests {
+
+    private static final Map<String, Object> PERSONA = Map.of("name", "Bob", "voice", "pirate");
+
+    @TempDir
+    Path dir;
+
+    private final PromptTemplateRegistry registry = new PromptTemplateRegistry(null);
+
+    @Test
+    void shippedTemplatesRenderLikeSystemPromptTemplate() throws IOException {
+        String text;
+        try (InputStream in = new ClassPathResource("prompts/assistant.st").getInputStream()) {
+            text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        String expected = new SystemPromptTemplate(text).createMessage(PERSONA).getText();
+        assertEquals(expected, this.registry.render("assistant", PERSONA));
+        assertEquals(expected, this.registry.createSystemMessage("assistant", PERSONA).getText());
+    }
+
+    @Test
+    void externalTemplatesOverrideTheClasspathAndReloadOnChange() throws Exception {
+        String builtin = this.registry.render("assistant", PERSONA);
+        Files.writeString(this.dir.resolve("assistant.st"), "Ahoy, I am {name}.");
+        try (PromptTemplateRegistry external = new PromptTemplateRegistry(this.dir)) {
+            assertEquals("Ahoy, I am Bob.", external.render("assistant", PERSONA));
+
+            Files.writeString(this.dir.resolve("assistant.st"), "Arr, {name} speaks like a {voice}.");
+            awaitRendered("Arr, Bob speaks like a pirate.", () -> external.render("assistant", PERSONA));
+
+            Files.writeString(this.dir.resolve("farewell.st"), "Bye from {name}");
+            awaitRendered("Bye from Bob", () -> {
+                try {
+                    return external.render("farewell", PERSONA);
+                }
+                catch (IllegalArgumentException ex) {
+                    return null;
+                }
+            });
+
+            // 删除外部模板后回退到classpath中的同名模板
+            Files.delete(this.dir.resolve("assistant.st"));
+            awaitRendered(builtin, () -> external.render("assistant", PERSONA));
+        }
+    }
+
+    @Test
+    void cachedRendersFollowLaterChangesToTheCallersMap() {
+        this.registry.register("greeting", "Hello {name}, I am {voice}.");
+        Map<String, Object> values = new HashMap<>();
+        values.put("name", "Alice");
+        values.put("voice", "a pirate");
+        assertEquals("Hello Alice, I am a pirate.", this.registry.render("greeting", values));
+
+        values.put("name", "Bob");
+        assertEquals("Hello Bob, I am a pirate.", this.registry.render("greeting", values));
+        values.put("name", "Alice");
+        values.put("unused", "ignored");
+        assertEquals("Hello Alice, I am a pirate.", this.registry.render("greeting", values));
+
+        StringBuilder voice = new StringBuilder("a robot");
+        values.put("voice", voice);
+        assertEquals("Hello Alice, I am a robot.", this.registry.render("greeting", values));
+        voice.append(" chef");
+        assertEquals("Hello Alice, I am a robot chef.", this.registry.render("greeting", values));
+    }
+
+    @Test
+    void keepsRenderingCorrectlyPastTheCacheLimit() {
+        this.registry.register("numbered", "#{n}");
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 1_000; i++) {
+                assertEquals("#" + i, this.registry.render("numbered", Map.of("n", i)));
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> this.registry.render("numbered", Map.of()));
+    }
+
+    /**
+     * 热加载在监听线程中异步进行，轮询直到渲染出期望的结果
+     */
+    private static void awaitRendered(String expected, Supplier<String> render) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        String actual = render.get();
+        while (!expected.equals(actual) && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+            actual = render.get();
+        }
+        assertEquals(expected, actual);
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.backend.controller.AI.Prompt;
+
+import org.springframework.ai.chat.prompt.SystemPromptTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 提示词渲染基准测试
+ *
+ * 对比chat6原来的写法（每次new SystemPromptTemplate再createMessage）与PromptTemplateRegistry，
+ * 输出每次渲染的耗时和分配的字节数。不是单元测试，需要手动运行：
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=com.example.backend.controller.AI.Prompt.PromptTemplateRenderBenchmark
+ */
+public class PromptTemplateRenderBenchmark {
+
+    private static final String TEXT = """
+            You are a helpful AI assistant that helps people find information.
+            Your name is {name}
+            You should reply to the user's request with your name and also in the style of a {voice}.
+            """;
+
+    private static final Map<String, Object> PERSONA = Map.of("name", "嘿嘿", "voice", "小孩子");
+
+    private static final int WARMUP = 20_000;
+
+    private static final int ITERATIONS = 200_000;
+
+    private static Object sink;
+
+    public static void main(String[] args) {
+        PromptTemplateRegistry registry = new PromptTemplateRegistry(null);
+        registry.register("bench", TEXT);
+        CompiledPromptTemplate compiled = registry.get("bench");
+
+        run("SystemPromptTemplate (per request)", () -> new SystemPromptTemplate(TEXT).createMessage(PERSONA));
+        run("CompiledPromptTemplate.render", () -> compiled.render(PERSONA));
+        run("PromptTemplateRegistry.createSystemMessage", () -> registry.createSystemMessage("bench", PERSONA));
+    }
+
+    private static void run(String name, Supplier<Object> task) {
+        for (int i = 0; i < WARMUP; i++) {
+            sink = task.get();
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink = task.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        System.out.printf("%-45s %10.1f ns/op %10d B/op%n", name, (double) elapsed / ITERATIONS,
+                allocated / ITERATIONS);
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.backend.controller.AI.Routing;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.messages.UserMessage;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ComplexityRouterTests {
+
+    private final ComplexityRouter router = new ComplexityRouter(properties());
+
+    @Test
+    void trivialPromptsUseDefaultModel() {
+        ComplexityRouter.RouteDecision decision = this.router.route("hi", 2);
+        assertEquals("small", decision.model());
+        assertEquals("default", decision.rule());
+    }
+
+    @Test
+    void rulesMatchInOrder() {
+        assertEquals("keyword", this.router.route("帮我分析一下这段日志", 0).rule());
+        assertEquals("keyword", this.router.route("Please ANALYZE this", 0).rule());
+        assertEquals("long-prompt", this.router.route("字".repeat(500), 0).rule());
+        assertEquals("long-history", this.router.route("好的", 12).rule());
+        assertEquals("large", this.router.route("好的", 12).model());
+    }
+
+    @Test
+    void englishKeywordsMatchWholeWords() {
+        assertEquals("keyword", this.router.route("can you review my code?", 0).rule());
+        assertEquals("keyword", this.router.route("code: 1+1", 0).rule());
+        assertEquals("default", this.router.route("decode this base64", 0).rule());
+        assertEquals("default", this.router.route("the codec is broken", 0).rule());
+        assertEquals("default", this.router.route("psychoanalyze", 0).rule());
+        // 中文没有单词边界，仍按子串匹配
+        assertEquals("keyword", this.router.route("帮我分析代码", 0).rule());
+        assertEquals("keyword", this.router.route("用analyze看看", 0).rule());
+    }
+
+    @Test
+    void readsConversationLengthFromChatMemory() {
+        ChatMemory chatMemory = MessageWindowChatMemory.builder().maxMessages(20).build();
+        for (int i = 0; i < 12; i++) {
+            chatMemory.add("c1", new UserMessage("message " + i));
+        }
+        ComplexityRouter router = new ComplexityRouter(properties(), chatMemory);
+
+        assertEquals("long-history", router.route("好的", "c1").rule());
+        assertEquals(12, router.route("好的", "c1").historySize());
+        assertEquals("default", router.route("好的", "c2").rule());
+        assertEquals("default", router.route("好的", (String) null).rule());
+    }
+
+    @Test
+    void recordsLatencyDeltasBetweenRoutes() {
+        ComplexityRouter router = new ComplexityRouter(properties());
+        router.recordCall(router.route("hi", 0), Duration.ofMillis(100).toNanos());
+        router.recordCall(router.route("hi", 0), Duration.ofMillis(200).toNanos());
+        router.recordCall(router.route("分析", 0), Duration.ofMillis(400).toNanos());
+        router.route("好的", 12);
+
+        ComplexityRouter.RouteStats keyword = router.routeStats().get("keyword");
+        assertEquals("large", keyword.model());
+        assertEquals(250, keyword.ttftDeltaMillis(), 1e-9);
+        assertEquals(250, keyword.totalDeltaMillis(), 1e-9);
+        assertEquals(0, router.routeStats().get("default").totalDeltaMillis(), 1e-9);
+        // 还没有完成的请求，没有延迟差
+        ComplexityRouter.RouteStats history = router.routeStats().get("long-history");
+        assertEquals(1, history.stats().requests());
+        assertNull(history.totalDeltaMillis());
+        assertTrue(router.stats().get("large").avgTotalMillis() > 0);
+    }
+
+    @Test
+    void estimatesTokensForMixedText() {
+        assertEquals(4, ComplexityRouter.estimateTokens("你好世界"));
+        assertEquals(3, ComplexityRouter.estimateTokens("hello world!"));
+        assertEquals(0, ComplexityRouter.estimateTokens(""));
+    }
+
+    @Test
+    void recordsRequestsAndLatencyPerModel() {
+        ComplexityRouter.RouteDecision decision = this.router.route("hi", 0);
+        this.router.track(decision, Flux.just("a", "b")).blockLast();
+        this.router.route("分析", 0);
+
+        ComplexityRouter.ModelStats small = this.router.stats().get("small");
+        assertEquals(1, small.requests());
+        assertEquals(1, small.completed());
+        assertEquals(1, this.router.stats().get("large").requests());
+        assertEquals(0, this.router.stats().get("large").completed());
+    }
+
+    private static ComplexityRouterProperties properties() {
+        ComplexityRouterProperties properties = new ComplexityRouterProperties();
+        properties.setDefaultModel("small");
+        properties.setRules(List.of(
+                rule("keyword", null, null, List.of("分析", "analyze", "code")),
+                rule("long-prompt", 400, null, List.of()),
+                rule("long-history", null, 12, List.of())));
+        return properties;
+    }
+
+    private static ComplexityRouterProperties.Rule rule(String name, Integer minTokens, Integer minHistory,
+                                                        List<String> keywords) {
+        ComplexityRouterProperties.Rule rule = new ComplexityRouterProperties.Rule();
+        rule.setName(name);
+        rule.setModel("large");
+        rule.setMinTokens(minTokens);
+        rule.setMinHistory(minHistory);
+        rule.setKeywords(keywords);
+        return rule;
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.backend.controller.AI.Routing;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HedgingChatModelTests {
+
+    private static final Prompt PROMPT = new Prompt("hi");
+
+    @Test
+    void fastPrimaryIsNotHedged() {
+        StubChatModel primary = new StubChatModel("primary", Duration.ofMillis(10), false);
+        StubChatModel backup = new StubChatModel("backup", Duration.ofMillis(10), false);
+        HedgingChatModel model = HedgingChatModel.builder()
+                .endpoint("primary", primary)
+                .endpoint("backup", backup)
+                .initialHedgeDelay(Duration.ofMillis(300))
+                .build();
+
+        assertEquals("primary", text(model.stream(PROMPT)));
+        assertEquals(1, primary.subscriptions.get());
+        assertEquals(0, backup.subscriptions.get());
+    }
+
+    @Test
+    void slowPrimaryIsHedgedAndLoserCancelled() {
+        StubChatModel primary = new StubChatModel("primary", Duration.ofSeconds(5), false);
+        StubChatModel backup = new StubChatModel("backup", Duration.ofMillis(10), false);
+        HedgingChatModel model = HedgingChatModel.builder()
+                .endpoint("primary", primary)
+                .endpoint("backup", backup)
+                .initialHedgeDelay(Duration.ofMillis(100))
+                .build();
+
+        long start = System.nanoTime();
+        assertEquals("backup", text(model.stream(PROMPT)));
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(2)) < 0);
+        assertEquals(1, primary.cancellations.get());
+        assertEquals(0, backup.cancellations.get());
+    }
+
+    @Test
+    void warmedUpPrimaryIsHedgedAtItsMeasuredPercentile() {
+        StubChatModel primary = new StubChatModel("primary", Duration.ofMillis(30), false);
+        StubChatModel backup = new StubChatModel("backup", Duration.ofMillis(10), false);
+        HedgingChatModel model = HedgingChatModel.builder()
+                .endpoint("primary", primary)
+                .endpoint("backup", backup)
+                .minSamples(5)
+                .minHedgeDelay(Duration.ofMillis(10))
+                .initialHedgeDelay(Duration.ofSeconds(5))
+                .build();
+        for (int i = 0; i < 5; i++) {
+            assertEquals("primary", text(model.stream(PROMPT)));
+        }
+        assertEquals(0, backup.subscriptions.get());
+
+        // 样本足够后阈值是约30ms的p95，而不是5秒的初始阈值
+        primary.delay = Duration.ofSeconds(3);
+        long start = System.nanoTime();
+        assertEquals("backup", text(model.stream(PROMPT)));
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(1)) < 0);
+        assertEquals(1, backup.subscriptions.get());
+        assertEquals(1, primary.cancellations.get());
+    }
+
+    @Test
+    void hedgeDelayIsFlooredAtMinHedgeDelay() {
+        StubChatModel primary = new StubChatModel("primary", Duration.ZERO, false);
+        StubChatModel backup = new StubChatModel("backup", Duration.ofMillis(10), false);
+        HedgingChatModel model = HedgingChatModel.builder()
+                .endpoint("primary", primary)
+                .endpoint("backup", backup)
+                .minSamples(5)
+                .minHedgeDelay(Duration.ofMillis(500))
+                .initialHedgeDelay(Duration.ofSeconds(5))
+                .build();
+        for (int i = 0; i < 5; i++) {
+            text(model.stream(PROMPT));
+        }
+
+        // 测得的p95只有几毫秒，200ms的请求仍在下限之内，不对冲
+        primary.delay = Duration.ofMillis(200);
+        assertEquals("primary", text(model.stream(PROMPT)));
+        assertEquals(0, backup.subscriptions.get());
+
+        primary.delay = Duration.ofSeconds(3);
+        long start = System.nanoTime();
+        assertEquals("backup", text(model.stream(PROMPT)));
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        assertTrue(elapsed.compareTo(Duration.ofMillis(500)) >= 0, elapsed::toString);
+        assertTrue(elapsed.compareTo(Duration.ofSeconds(2)) < 0, elapsed::toString);
+    }
+
+    @Test
+    void slowCallIsHedgedAndLoserCancelled() {
+        StubChatModel primary = new StubChatModel("primary", Duration.ofSeconds(5), false);
+        StubChatModel backup = new StubChatModel("backup", Duration.ofMillis(10), false);
+        HedgingChatModel model = HedgingChatModel.builder()
+                .endpoint("primary", primary)
+                .endpoint("backup", backup)
+                .initialHedgeDelay(Duration.ofMillis(100))
+                .build();
+
+        long start = System.nanoTime();
+        assertEquals("backup", model.call(PROMPT).getResult().getOutput().getText());
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(2)) < 0);
+        // 被取消的主端点按已等待的时间计入延迟，没有记为错误
+        HedgingChatModel.EndpointSnapshot snapshot = model.snapshot().get("primary");
+        assertTrue(snapshot.callLatencyMillis() > 0);
+        assertEquals(0.0, snapshot.callErrorRate());
+        assertEquals(1, backup.subscriptions.get());
+    }
+
+    @Test
+    void primaryErrorFailsOverImmediately() {
+        StubChatModel primary = new StubChatModel("primary", Duration.ofMillis(5), true);
+        StubChatModel backup = new StubChatModel("backup", Duration.ofMillis(10), false);
+        HedgingChatModel model = HedgingChatModel.builder()
+                .endpoint("primary", primary)
+                .endpoint("backup", backup)
+                .initialHedgeDelay(Duration.ofSeconds(10))
+                .build();
+
+        long start = System.nanoTime();
+        assertEquals("backup", text(model.stream(PROMPT)));
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(2)) < 0);
+        assertEquals("backup", model.call(PROMPT).getResult().getOutput().getText());
+    }
+
+    @Test
+    void routesAwayFromFailingEndpoint() {
+        StubChatModel primary = new StubChatModel("primary", Duration.ofMillis(5), true);
+        StubChatModel backup = new StubChatModel("backup", Duration.ofMillis(20), false);
+        HedgingChatModel model = HedgingChatModel.builder()
+                .endpoint("primary", primary)
+                .endpoint("backup", backup)
+                .build();
+
+        text(model.stream(PROMPT));
+        text(model.stream(PROMPT));
+        // 第一次请求后primary的错误率升高，之后backup成为主端点，primary只作为对冲端点
+        assertTrue(model.snapshot().get("primary").streamErrorRate() > 0);
+        assertEquals(2, backup.subscriptions.get());
+        assertEquals(1, primary.subscriptions.get());
+    }
+
+    @Test
+    void allEndpointsFailing() {
+        StubChatModel primary = new StubChatModel("primary", Duration.ofMillis(5), true);
+        StubChatModel backup = new StubChatModel("backup", Duration.ofMillis(5), true);
+        HedgingChatModel model = HedgingChatModel.builder()
+                .endpoint("primary", primary)
+                .endpoint("backup", backup)
+                .build();
+
+        assertThrows(RuntimeException.class, () -> text(model.stream(PROMPT)));
+    }
+
+    @Test
+    void endpointsWithDifferentModelsKeepTheirOwnModel() {
+        StubChatModel primary = new StubChatModel("primary", Duration.ofMillis(5), true);
+        StubChatModel backup = new StubChatModel("backup", Duration.ofMillis(10), false);
+        HedgingChatModel model = HedgingChatModel.builder()
+                .endpoint("primary", primary, true)
+                .endpoint("backup", backup)
+                .initialHedgeDelay(Duration.ofSeconds(10))
+                .build();
+        // ChatClient会把默认选项带进每个请求，默认选项中不能有第一个端点的模型名
+        assertNull(model.getDefaultOptions().getModel());
+
+        Prompt prompt = new Prompt("hi", ChatOptions.builder().model("primary-large").temperature(0.3).build());
+        assertEquals("backup", text(model.stream(prompt)));
+        assertEquals(List.of("primary-large"), primary.requestedModels);
+        // 备用端点收到的请求不带模型名，由它自己的默认模型补上，其他选项保留
+        assertEquals(Collections.singletonList(null), backup.requestedModels);
+        assertEquals(0.3, backup.lastOptions.getTemperature());
+        assertEquals("primary-large", prompt.getOptions().getModel());
+    }
+
+    private static String text(Flux<ChatResponse> responses) {
+        StringBuilder text = new StringBuilder();
+        responses.doOnNext(response -> text.append(response.getResult().getOutput().getText()))
+                .blockLast(Duration.ofSeconds(10));
+        return text.toString();
+    }
+
+    /**
+     * 在固定延迟后返回自己名字的本地模型，记录订阅和取消次数
+     */
+    private static final class StubChatModel implements ChatModel {
+
+        private final String name;
+
+        private volatile Duration delay;
+
+        private final boolean failing;
+
+        private final AtomicInteger subscriptions = new AtomicInteger();
+
+        private final AtomicInteger cancellations = new AtomicInteger();
+
+        private final List<String> requestedModels = new CopyOnWriteArrayList<>();
+
+        private volatile ChatOptions lastOptions;
+
+        private StubChatModel(String name, Duration delay, boolean failing) {
+            this.name = name;
+            this.delay = delay;
+            this.failing = failing;
+        }
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            return stream(prompt).blockLast();
+        }
+
+        @Override
+        public ChatOptions getDefaultOptions() {
+            return ChatOptions.builder().model(this.name + "-model").build();
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            if (prompt.getOptions() != null) {
+                this.lastOptions = prompt.getOptions();
+                this.requestedModels.add(prompt.getOptions().getModel());
+            }
+            Flux<ChatResponse> response = this.failing
+                    ? Flux.error(new IllegalStateException(this.name + " unavailable"))
+                    : Flux.just(new ChatResponse(List.of(new Generation(new AssistantMessage(this.name)))));
+            return response.delaySubscription(this.delay)
+                    .doOnSubscribe(subscription -> this.subscriptions.incrementAndGet())
+                    .doOnCancel(this.cancellations::incrementAndGet);
+        }
+    }
+}
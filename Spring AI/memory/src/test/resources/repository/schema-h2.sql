@@ -0,0 +1,22 @@
+CREATE TABLE IF NOT EXISTS spring_ai_chat_memory (
+    conversation_id VARCHAR(36) NOT NULL,
+    content TEXT NOT NULL,
+    type VARCHAR(10) NOT NULL,
+    `timestamp` TIMESTAMP(3) NOT NULL,
+    payload CLOB NULL,
+    CONSTRAINT TYPE_CHECK CHECK (type IN ('USER', 'ASSISTANT', 'SYSTEM', 'TOOL'))
+);
+CREATE INDEX IF NOT EXISTS spring_ai_chat_memory_conversation_id_timestamp_idx
+    ON spring_ai_chat_memory (conversation_id, `timestamp`);
+CREATE INDEX IF NOT EXISTS spring_ai_chat_memory_type_timestamp_idx
+    ON spring_ai_chat_memory (type, `timestamp`);
+CREATE TABLE IF NOT EXISTS spring_ai_chat_memory_instance (
+    instance_id VARCHAR(36) NOT NULL PRIMARY KEY,
+    shards VARCHAR(1000) NOT NULL,
+    rebalancing BOOLEAN NOT NULL,
+    heartbeat TIMESTAMP(3) NOT NULL
+);
+CREATE TABLE IF NOT EXISTS spring_ai_chat_memory_transfer (
+    source VARCHAR(512) NOT NULL PRIMARY KEY,
+    imported_rows BIGINT NOT NULL
+);